@@ -0,0 +1,47 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco;
+
+import com.gs.tablasco.compare.ComparisonMetrics;
+
+/**
+ * Receives the metrics of each comparison made by a <tt>TableComparator</tt>, for instance to find which phase to tune
+ * the best match threshold or the partial match timeout for. Tables may be compared concurrently (see
+ * <tt>TableVerifier.withTableParallelism</tt>), so listeners must be thread-safe.
+ */
+public interface ComparisonListener
+{
+    /**
+     * Called once a pair of tables has been compared, before the break report is written, so the metrics do not
+     * include the time taken to write it yet; see <tt>breakReportWritten</tt>.
+     *
+     * @param comparisonName the name of the compared tables
+     * @param metrics        the timings and counts of the comparison
+     */
+    void comparisonCompleted(String comparisonName, ComparisonMetrics metrics);
+
+    /**
+     * Called once a break report of the results of comparisons passed to this listener has been written. A report
+     * may cover several comparisons, so its metrics add up theirs and the time taken to write it.
+     *
+     * @param reportName the name of the report
+     * @param metrics    the timings and counts of the comparisons in the report, including <tt>HTML_RENDER</tt>
+     */
+    default void breakReportWritten(String reportName, ComparisonMetrics metrics)
+    {
+    }
+}
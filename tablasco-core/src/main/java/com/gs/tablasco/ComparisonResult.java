@@ -16,6 +16,8 @@
 
 package com.gs.tablasco;
 
+import com.gs.tablasco.compare.ComparisonMetrics;
+import com.gs.tablasco.compare.ComparisonPhase;
 import com.gs.tablasco.compare.FormattableTable;
 import com.gs.tablasco.compare.Metadata;
 import com.gs.tablasco.compare.SummaryResultTable;
@@ -24,6 +26,7 @@ import org.eclipse.collections.api.tuple.Pair;
 import org.eclipse.collections.impl.block.factory.Functions;
 import org.eclipse.collections.impl.block.factory.Predicates;
 import org.eclipse.collections.impl.factory.Lists;
+import org.eclipse.collections.impl.list.mutable.FastList;
 import org.eclipse.collections.impl.tuple.Tuples;
 import org.eclipse.collections.impl.utility.ListIterate;
 
@@ -44,16 +47,38 @@ public class ComparisonResult implements Serializable
 
     private final List<Pair<String, FormattableTable>> formattableTables;
     private final HtmlOptions htmlOptions;
+    private final ComparisonMetrics metrics;
+    private final transient List<ComparisonListener> listeners;
 
     public ComparisonResult(String name, FormattableTable formattableTable, HtmlOptions htmlOptions)
     {
-        this(Lists.fixedSize.of(Tuples.pair(name, formattableTable)), htmlOptions);
+        this(name, formattableTable, htmlOptions, ComparisonMetrics.NONE);
+    }
+
+    public ComparisonResult(String name, FormattableTable formattableTable, HtmlOptions htmlOptions, ComparisonMetrics metrics)
+    {
+        this(Lists.fixedSize.of(Tuples.pair(name, formattableTable)), htmlOptions, metrics);
     }
 
     public ComparisonResult(List<Pair<String, FormattableTable>> formattableTables, HtmlOptions htmlOptions)
+    {
+        this(formattableTables, htmlOptions, ComparisonMetrics.NONE);
+    }
+
+    public ComparisonResult(List<Pair<String, FormattableTable>> formattableTables, HtmlOptions htmlOptions, ComparisonMetrics metrics)
+    {
+        this(formattableTables, htmlOptions, metrics, Lists.fixedSize.of());
+    }
+
+    /**
+     * @param listeners listeners of the comparisons, told when break reports of these results are written
+     */
+    ComparisonResult(List<Pair<String, FormattableTable>> formattableTables, HtmlOptions htmlOptions, ComparisonMetrics metrics, List<ComparisonListener> listeners)
     {
         this.formattableTables = formattableTables;
         this.htmlOptions = htmlOptions;
+        this.metrics = metrics;
+        this.listeners = listeners;
     }
 
     public boolean isSuccess()
@@ -73,12 +98,40 @@ public class ComparisonResult implements Serializable
 
     public void generateBreakReport(String comparisonName, Path outputPath, Metadata metadata, int compareCount)
     {
+        ComparisonMetrics.Timer timer = this.metrics.start(ComparisonPhase.HTML_RENDER);
         new HtmlFormatter(this.htmlOptions).appendResults(outputPath, comparisonName, this.getOrderedTables(), metadata, compareCount);
+        timer.stop();
+        this.breakReportWritten(comparisonName);
     }
 
     public void writeBreakReportToStream(String comparisonName, Metadata metadata, OutputStream stream) throws TransformerException, UnsupportedEncodingException
     {
+        ComparisonMetrics.Timer timer = this.metrics.start(ComparisonPhase.HTML_RENDER);
         new HtmlFormatter(this.htmlOptions).appendResults(comparisonName, this.getOrderedTables(), metadata, 1, null, stream);
+        timer.stop();
+        this.breakReportWritten(comparisonName);
+    }
+
+    private void breakReportWritten(String comparisonName)
+    {
+        // listeners are not serialized
+        if (this.listeners != null)
+        {
+            for (ComparisonListener listener : this.listeners)
+            {
+                listener.breakReportWritten(comparisonName, this.metrics);
+            }
+        }
+    }
+
+    /**
+     * Returns the timings and counts of the comparisons, added up over combined results, including the time taken to
+     * write break reports so far. Metrics are only recorded if enabled with <tt>withComparisonMetrics</tt>, otherwise
+     * this is <tt>ComparisonMetrics.NONE</tt>.
+     */
+    public ComparisonMetrics getMetrics()
+    {
+        return this.metrics;
     }
 
     private Map<String, FormattableTable> getOrderedTables()
@@ -95,7 +148,7 @@ public class ComparisonResult implements Serializable
 
     public ComparisonResult combine(ComparisonResult result, boolean mergeSummarizedResults)
     {
-        return new ComparisonResult(this.combineTables(result, mergeSummarizedResults), result.htmlOptions);
+        return new ComparisonResult(this.combineTables(result, mergeSummarizedResults), result.htmlOptions, ComparisonMetrics.merge(this.metrics, result.metrics), addListeners(addListeners(FastList.newList(), this.listeners), result.listeners));
     }
 
     private List<Pair<String, FormattableTable>> combineTables(ComparisonResult result, boolean mergeSummarizedResults)
@@ -117,6 +170,54 @@ public class ComparisonResult implements Serializable
         return allTables;
     }
 
+    /**
+     * Collects the tables of several results in the order they are added, without copying them for every result as
+     * repeated calls to <tt>combine</tt> would.
+     */
+    public static class Builder
+    {
+        private final List<Pair<String, FormattableTable>> formattableTables = FastList.newList();
+        private final HtmlOptions htmlOptions;
+        private ComparisonMetrics metrics = ComparisonMetrics.NONE;
+        private final List<ComparisonListener> listeners = FastList.newList();
+
+        public Builder(HtmlOptions htmlOptions)
+        {
+            this.htmlOptions = htmlOptions;
+        }
+
+        public Builder add(ComparisonResult result)
+        {
+            this.formattableTables.addAll(result.formattableTables);
+            this.metrics = ComparisonMetrics.merge(this.metrics, result.metrics);
+            addListeners(this.listeners, result.listeners);
+            return this;
+        }
+
+        public ComparisonResult build()
+        {
+            return new ComparisonResult(FastList.newList(this.formattableTables), this.htmlOptions, this.metrics, FastList.newList(this.listeners));
+        }
+    }
+
+    /**
+     * Adds the listeners not added yet, so that listeners of several combined comparisons are told once per report.
+     */
+    private static List<ComparisonListener> addListeners(List<ComparisonListener> listeners, List<ComparisonListener> newListeners)
+    {
+        if (newListeners != null)
+        {
+            for (ComparisonListener listener : newListeners)
+            {
+                if (!ListIterate.anySatisfy(listeners, each -> each == listener))
+                {
+                    listeners.add(listener);
+                }
+            }
+        }
+        return listeners;
+    }
+
     private static SummaryResultTable mergeSummarizedResults(Pair<String, FormattableTable> existing, Pair<String, FormattableTable> incoming)
     {
         return SummaryResultTable.class.cast(existing.getTwo()).merge(SummaryResultTable.class.cast(incoming.getTwo()));
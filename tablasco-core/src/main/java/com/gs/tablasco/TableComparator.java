@@ -20,15 +20,20 @@ package com.gs.tablasco;
 import com.gs.tablasco.adapters.TableAdapters;
 import com.gs.tablasco.compare.*;
 import com.gs.tablasco.compare.indexmap.IndexMapTableComparator;
+import com.gs.tablasco.compare.indexmap.ShardedTableComparator;
+import com.gs.tablasco.compare.indexmap.SpillingTableComparator;
 import com.gs.tablasco.investigation.Investigation;
 import com.gs.tablasco.investigation.Sherlock;
 import org.eclipse.collections.api.block.function.Function;
 import org.eclipse.collections.api.block.predicate.Predicate;
 import org.eclipse.collections.api.block.procedure.Procedure2;
 import org.eclipse.collections.impl.block.factory.Functions;
+import org.eclipse.collections.impl.factory.Lists;
 import org.eclipse.collections.impl.factory.Sets;
+import org.eclipse.collections.impl.tuple.Tuples;
 
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -57,6 +62,20 @@ public class TableComparator<T extends TableComparator<T>>
 
     private int htmlRowLimit = HtmlFormatter.DEFAULT_ROW_LIMIT;
     private boolean summarisedResults = false;
+    private boolean columnarSnapshot = false;
+    private int parallelism = 1;
+    private int partialMatchCandidateLimit = 0;
+    private int failFastBreakLimit = 0;
+    private boolean compactResults = false;
+    private boolean anytimePartialMatch = false;
+    private boolean sortedKeys = false;
+    private boolean keyJoin = false;
+    private int shardCount = 1;
+    private int shardThreadCount = 1;
+    private long spillMemoryBudgetBytes = 0L;
+    private Path spillDirectory = null;
+    private boolean comparisonMetrics = false;
+    private ComparisonListener comparisonListener = null;
 
     private final ColumnComparators.Builder columnComparatorsBuilder = new ColumnComparators.Builder();
 
@@ -136,7 +155,8 @@ public class TableComparator<T extends TableComparator<T>>
 
     /**
      * Returns the same instance of <tt>TableComparator</tt> configured to exclude matched rows from the comparison
-     * output.
+     * output. Combine with {@link #withCompactResults(boolean) withCompactResults} so that runs of matched rows are
+     * neither stored nor formatted cell by cell either.
      *
      * @param hideMatchedRows whether to hide matched rows or not
      * @return this
@@ -326,6 +346,97 @@ public class TableComparator<T extends TableComparator<T>>
         return self();
     }
 
+    /**
+     * Returns the same instance of <tt>TableComparator</tt> configured to take a columnar snapshot of both tables
+     * before comparing them. The snapshot is built once per table after adaptation and stores values in primitive
+     * arrays, so that the comparison no longer calls through the adapter chain for every cell. This trades a copy of
+     * the data for faster access and is worthwhile for large tables or tables wrapped in several adapters. When
+     * spilling (see <tt>withSpill</tt>), each partition is snapshotted as it is compared instead, so that the copy never
+     * holds more than a partition.
+     *
+     * @param columnarSnapshot whether to snapshot tables before comparing them
+     * @return this
+     */
+    public final T withColumnarSnapshot(boolean columnarSnapshot)
+    {
+        this.columnarSnapshot = columnarSnapshot;
+        return self();
+    }
+
+    /**
+     * Returns the same instance of <tt>TableComparator</tt> configured to format and hash rows, and to score partial
+     * matches, on up to the specified number of threads. Tables must support concurrent reads, which a columnar
+     * snapshot always does. As partial matches are scored faster, the number of row pairs scored by the best-match
+     * algorithm before grouping rows by column values is raised in proportion; results are otherwise identical to
+     * those of a single-threaded comparison.
+     *
+     * @param parallelism number of threads, 1 (the default) compares on the calling thread
+     * @return this
+     */
+    public final T withParallelism(int parallelism)
+    {
+        this.parallelism = parallelism;
+        return self();
+    }
+
+    /**
+     * Returns the same instance of <tt>TableComparator</tt> configured to keep at most the specified number of best
+     * scoring candidates for each missing row when partially matching rows, putting a ceiling on the memory used when
+     * many rows break. A missing row whose candidates all match other rows better is reported as missing rather than
+     * partially matched to a lower scoring row. A value of zero or less (the default) results in no limit.
+     *
+     * @param partialMatchCandidateLimit number of candidates kept per missing row
+     * @return this
+     */
+    public final T withPartialMatchCandidateLimit(int partialMatchCandidateLimit)
+    {
+        this.partialMatchCandidateLimit = partialMatchCandidateLimit;
+        return self();
+    }
+
+    /**
+     * Returns the same instance of <tt>TableComparator</tt> configured to stop comparing a table at its first break.
+     * Rows are not partially matched and no cells are kept, so the result only tells whether the tables match and
+     * where the first break is; this is much cheaper when only a pass or fail is needed.
+     *
+     * @param failFast whether to stop at the first break or not
+     * @return this
+     */
+    public final T withFailFast(boolean failFast)
+    {
+        return this.withFailFast(failFast ? 1 : 0);
+    }
+
+    /**
+     * Returns the same instance of <tt>TableComparator</tt> configured to stop comparing a table once the specified
+     * number of breaks has been found, as described in {@link #withFailFast(boolean) withFailFast}. A value of zero or
+     * less (the default) results in a full comparison.
+     *
+     * @param breakLimit number of breaks after which to stop
+     * @return this
+     */
+    public final T withFailFast(int breakLimit)
+    {
+        this.failFastBreakLimit = breakLimit;
+        return self();
+    }
+
+    /**
+     * Returns the same instance of <tt>TableComparator</tt> configured to keep compact results, holding the row indices
+     * and a byte per cell rather than a result cell per cell. Cells are created from the compared tables when results
+     * are formatted, so the tables stay in memory for as long as the results do. This mostly pays off for large tables
+     * whose matched rows are hidden (see <tt>withHideMatchedRows</tt>), as runs of matched rows are then only kept as
+     * spans of row indices. Off by default, including when matched rows are hidden.
+     *
+     * @param compactResults whether to keep compact results or not
+     * @return this
+     */
+    public final T withCompactResults(boolean compactResults)
+    {
+        this.compactResults = compactResults;
+        return self();
+    }
+
     /**
      * Returns the same instance of <tt>TableComparator</tt> configured with the specified partial match timeout. A value
      * of zero or less results in no timeout.
@@ -339,6 +450,114 @@ public class TableComparator<T extends TableComparator<T>>
         return self();
     }
 
+    /**
+     * Returns the same instance of <tt>TableComparator</tt> configured to keep the rows partially matched so far when
+     * the partial match timeout is reached, reporting the rest as missing or surplus, instead of failing with an
+     * exception. The HTML output then states that partial matching was cut short. This allows for tight timeouts
+     * without losing the breaks found in time.
+     *
+     * @param anytimePartialMatch whether to keep partial matches on timeout or not
+     * @return this
+     */
+    public final T withAnytimePartialMatch(boolean anytimePartialMatch)
+    {
+        this.anytimePartialMatch = anytimePartialMatch;
+        return self();
+    }
+
+    /**
+     * Returns the same instance of <tt>TableComparator</tt> configured to match the rows of keyed tables (see
+     * <tt>KeyedComparableTable</tt>) by walking both tables in key order rather than hashing every row. Tables that are
+     * not sorted by their key columns are compared as usual, so this only changes how fast the comparison is.
+     *
+     * @param sortedKeys whether keyed tables are expected to be sorted by key or not
+     * @return this
+     */
+    public final T withSortedKeys(boolean sortedKeys)
+    {
+        this.sortedKeys = sortedKeys;
+        return self();
+    }
+
+    /**
+     * Returns the same instance of <tt>TableComparator</tt> configured to join the rows of keyed tables (see
+     * <tt>KeyedComparableTable</tt>) on their key columns rather than hashing every row, so that rows with changed
+     * values are paired by key without partial matching. Results are the same either way.
+     *
+     * @param keyJoin whether to join keyed tables on their key columns or not
+     * @return this
+     */
+    public final T withKeyJoin(boolean keyJoin)
+    {
+        this.keyJoin = keyJoin;
+        return self();
+    }
+
+    /**
+     * Returns the same instance of <tt>TableComparator</tt> configured to split keyed tables (see
+     * <tt>KeyedComparableTable</tt>) into shards by the hash of their key columns and to compare the shards on the
+     * specified number of threads, like the Spark verifier does across a cluster. Rows sharing a key are always
+     * compared within the same shard; however row order is only verified, and rows whose key does not match are only
+     * partially matched, within each shard. Tables must support concurrent reads.
+     *
+     * @param shardCount  number of shards, 1 (the default) compares tables in one piece
+     * @param threadCount number of threads comparing shards
+     * @return this
+     */
+    public final T withShards(int shardCount, int threadCount)
+    {
+        this.shardCount = shardCount;
+        this.shardThreadCount = threadCount;
+        return self();
+    }
+
+    /**
+     * Returns the same instance of <tt>TableComparator</tt> configured to compare keyed tables (see
+     * <tt>KeyedComparableTable</tt>) that do not fit in memory by spilling their rows to files partitioned by the hash
+     * of their key columns and comparing one partition at a time. Partitions are matched like shards (see
+     * <tt>withShards</tt>), which this option takes precedence over. Requires <tt>withSummarisedResults</tt>, which
+     * keeps the results of earlier partitions from filling the heap as well: comparisons that spill without it fail.
+     * Cell values must be serializable.
+     *
+     * @param memoryBudgetBytes the memory available to compare a partition
+     * @param spillDirectory    directory of the spill files, or <tt>null</tt> for the default temporary directory
+     * @return this
+     */
+    public final T withSpill(long memoryBudgetBytes, Path spillDirectory)
+    {
+        this.spillMemoryBudgetBytes = memoryBudgetBytes;
+        this.spillDirectory = spillDirectory;
+        return self();
+    }
+
+    /**
+     * Returns the same instance of <tt>TableComparator</tt> configured to record the wall time and allocations of each
+     * phase of comparisons, how rows were matched and the columns rows were grouped by, see
+     * <tt>ComparisonResult.getMetrics</tt>.
+     *
+     * @param comparisonMetrics whether to record metrics, false by default
+     * @return this
+     */
+    public final T withComparisonMetrics(boolean comparisonMetrics)
+    {
+        this.comparisonMetrics = comparisonMetrics;
+        return self();
+    }
+
+    /**
+     * Returns the same instance of <tt>TableComparator</tt> configured to record metrics of comparisons (see
+     * <tt>withComparisonMetrics</tt>) and to pass them to the specified listener as each comparison completes, and
+     * again with the time taken to write the break report once it is written.
+     *
+     * @param comparisonListener the listener
+     * @return this
+     */
+    public final T withComparisonListener(ComparisonListener comparisonListener)
+    {
+        this.comparisonListener = comparisonListener;
+        return this.withComparisonMetrics(true);
+    }
+
     /**
      * Returns the same instance of <tt>TableComparator</tt> configured with no partial match timeout.
      *
@@ -364,8 +583,15 @@ public class TableComparator<T extends TableComparator<T>>
     {
         ComparableTable adaptedLhsTable = skipLhsAdaptation ? lhsTable : this.lhsAdapter.valueOf(lhsTable);
         ComparableTable adaptedRhsTable = skipRhsAdaptation ? rhsTable : this.rhsAdapter.valueOf(rhsTable);
-        FormattableTable resultTable = getVerifiedResults(adaptedLhsTable, adaptedRhsTable);
-        return new ComparisonResult(getComparisonName(lhsTable, rhsTable), resultTable, this.getHtmlOptions(Sets.fixedSize.of()));
+        ComparisonMetrics metrics = this.comparisonMetrics ? new ComparisonMetrics() : ComparisonMetrics.NONE;
+        FormattableTable resultTable = getVerifiedResults(adaptedLhsTable, adaptedRhsTable, metrics);
+        String comparisonName = getComparisonName(lhsTable, rhsTable);
+        if (this.comparisonListener != null)
+        {
+            this.comparisonListener.comparisonCompleted(comparisonName, metrics);
+        }
+        List<ComparisonListener> listeners = this.comparisonListener == null ? Lists.fixedSize.of() : Lists.fixedSize.of(this.comparisonListener);
+        return new ComparisonResult(Lists.fixedSize.of(Tuples.pair(comparisonName, resultTable)), this.getHtmlOptions(Sets.fixedSize.of()), metrics, listeners);
     }
 
     /**
@@ -383,7 +609,7 @@ public class TableComparator<T extends TableComparator<T>>
         new Sherlock().handle(investigation, outputPath, appendToHtml);
     }
 
-    private FormattableTable getVerifiedResults(ComparableTable adaptedLhsTable, ComparableTable adaptedRhsTable)
+    private FormattableTable getVerifiedResults(ComparableTable adaptedLhsTable, ComparableTable adaptedRhsTable, ComparisonMetrics metrics)
     {
         if (adaptedRhsTable != null && adaptedRhsTable.getColumnCount() == 0)
         {
@@ -394,7 +620,32 @@ public class TableComparator<T extends TableComparator<T>>
             throw new IllegalStateException("LHS table '" + adaptedLhsTable.getTableName() + "' has no columns");
         }
 
-        ResultTable resultTable = newSingleTableComparator().compare(adaptedRhsTable, adaptedLhsTable);
+        boolean spill = this.spillMemoryBudgetBytes > 0L && this.failFastBreakLimit <= 0;
+        if (this.columnarSnapshot && !spill)
+        {
+            adaptedLhsTable = snapshot(adaptedLhsTable);
+            adaptedRhsTable = snapshot(adaptedRhsTable);
+        }
+
+        if (this.failFastBreakLimit > 0)
+        {
+            return newSingleTableComparator(metrics).compareFailFast(adaptedRhsTable, adaptedLhsTable, this.failFastBreakLimit);
+        }
+        if (spill)
+        {
+            if (!this.summarisedResults)
+            {
+                throw new IllegalStateException("Spilling requires summarised results, otherwise the results of all partitions are held in memory");
+            }
+            // tables that do not fit in memory are snapshotted a partition at a time, once read back from the spill files
+            SpillingTableComparator comparator = new SpillingTableComparator(this.getColumnComparatorsBuilder().build(), comparators -> this.newPartitionComparator(comparators, metrics), this.spillMemoryBudgetBytes, this.spillDirectory);
+            SummaryResultTable summary = new SummaryResultTable();
+            comparator.compare(adaptedRhsTable, adaptedLhsTable, partitionResults -> summary.merge(new SummaryResultTable(partitionResults)));
+            return summary;
+        }
+        ResultTable resultTable = this.shardCount > 1
+                ? new ShardedTableComparator(this.getColumnComparatorsBuilder().build(), comparators -> this.newSingleTableComparator(comparators, metrics), this.shardCount, this.shardThreadCount).compare(adaptedRhsTable, adaptedLhsTable)
+                : newSingleTableComparator(metrics).compare(adaptedRhsTable, adaptedLhsTable);
 
         return this.summarisedResults ? new SummaryResultTable(resultTable) : resultTable;
     }
@@ -404,10 +655,33 @@ public class TableComparator<T extends TableComparator<T>>
         return new HtmlOptions(this.assertionSummary, this.htmlRowLimit, this.hideMatchedTables, this.hideMatchedRows, this.hideMatchedColumns, tablesToAlwaysShowMatchedRowsFor);
     }
 
-    private SingleTableComparator newSingleTableComparator()
+    private SingleTableComparator newPartitionComparator(ColumnComparators comparators, ComparisonMetrics metrics)
+    {
+        IndexMapTableComparator comparator = this.newSingleTableComparator(comparators, metrics);
+        return this.columnarSnapshot ? (rhsData, lhsData) -> comparator.compare(snapshot(rhsData), snapshot(lhsData)) : comparator;
+    }
+
+    private static ComparableTable snapshot(ComparableTable table)
+    {
+        return table == null ? null : ColumnarComparableTable.of(table);
+    }
+
+    private IndexMapTableComparator newSingleTableComparator(ComparisonMetrics metrics)
+    {
+        return this.newSingleTableComparator(this.getColumnComparatorsBuilder().build(), metrics);
+    }
+
+    private IndexMapTableComparator newSingleTableComparator(ColumnComparators comparators, ComparisonMetrics metrics)
     {
-        ColumnComparators comparators = this.getColumnComparatorsBuilder().build();
-        return new IndexMapTableComparator(comparators, this.compareRowOrder, IndexMapTableComparator.DEFAULT_BEST_MATCH_THRESHOLD, this.ignoreSurplusRows, this.ignoreMissingRows, this.ignoreSurplusColumns, this.ignoreMissingColumns, this.partialMatchTimeoutMillis);
+        int bestMatchThreshold = (int) Math.min(Integer.MAX_VALUE, (long) IndexMapTableComparator.DEFAULT_BEST_MATCH_THRESHOLD * this.parallelism);
+        return new IndexMapTableComparator(comparators, this.compareRowOrder, bestMatchThreshold, this.ignoreSurplusRows, this.ignoreMissingRows, this.ignoreSurplusColumns, this.ignoreMissingColumns, this.partialMatchTimeoutMillis)
+                .withParallelism(this.parallelism)
+                .withPartialMatchCandidateLimit(this.partialMatchCandidateLimit)
+                .withCompactResults(this.compactResults)
+                .withAnytimePartialMatch(this.anytimePartialMatch)
+                .withSortedKeys(this.sortedKeys)
+                .withKeyJoin(this.keyJoin)
+                .withMetrics(metrics);
     }
 
     private String getComparisonName(ComparableTable lhsTable, ComparableTable rhsTable)
@@ -34,22 +34,151 @@ public abstract class CellComparator implements HashingStrategy
 
     protected abstract boolean compare(Object rhs, Object lhs);
 
+    /**
+     * Returns a comparator with the same configuration and its own formatter. Formatters are not thread-safe, so
+     * threads comparing concurrently each need their own copy.
+     * <p>
+     * By default, the copy has its own formatter but hands comparisons and hashing to this comparator, one thread at a
+     * time, so that subclasses that do not override this method are still safe to use concurrently. Subclasses
+     * override it to compare concurrently.
+     */
+    public CellComparator copy()
+    {
+        return new SynchronizedCopy(this);
+    }
+
+    public boolean compareDoubles(double rhs, double lhs)
+    {
+        return this.compare((Object) rhs, (Object) lhs);
+    }
+
     public static boolean isFloatingPoint(Object object)
     {
         return object instanceof Double || object instanceof Float;
     }
 
+    private static boolean isIntegral(Object object)
+    {
+        return object instanceof Long || object instanceof Integer || object instanceof Short || object instanceof Byte;
+    }
+
+    /**
+     * Values are equal if they are formatted identically or if <tt>compare</tt> considers them equal. Numbers are
+     * decided without formatting wherever the number format allows it: integral values are then formatted exactly, so
+     * they are equal when their values are, and floating point values are only formatted when they are within a
+     * rounding step of each other.
+     */
     @Override
     public boolean equals(Object rhs, Object lhs)
     {
+        if (isFloatingPoint(rhs) && isFloatingPoint(lhs))
+        {
+            return compare(rhs, lhs)
+                    || this.formatter.mayFormatEqually(((Number) rhs).doubleValue(), ((Number) lhs).doubleValue())
+                    && this.formatter.format(rhs).equals(this.formatter.format(lhs));
+        }
+        if (isIntegral(rhs) && isIntegral(lhs))
+        {
+            return this.formatter.formatEqually(((Number) rhs).longValue(), ((Number) lhs).longValue()) || compare(rhs, lhs);
+        }
         String formattedRhs = this.getFormatter().format(rhs);
         String formattedLhs = this.getFormatter().format(lhs);
         return formattedRhs.equals(formattedLhs) || compare(rhs, lhs);
     }
 
+    /**
+     * Equivalent to <tt>equals(Double.valueOf(rhs), Double.valueOf(lhs))</tt>, only boxing the values if they have to be
+     * formatted.
+     */
+    public boolean equalsDoubles(double rhs, double lhs)
+    {
+        return compareDoubles(rhs, lhs)
+                || this.formatter.mayFormatEqually(rhs, lhs) && this.formatter.format(rhs).equals(this.formatter.format(lhs));
+    }
+
+    /**
+     * Equivalent to <tt>equals(rhs, lhs)</tt> for values that have already been formatted with this comparator's
+     * formatter, saving the cost of formatting them again.
+     */
+    public boolean equals(Object rhs, String formattedRhs, Object lhs, String formattedLhs)
+    {
+        return formattedRhs.equals(formattedLhs) || compare(rhs, lhs);
+    }
+
     @Override
     public int computeHashCode(Object object)
     {
         return this.formatter.format(object).hashCode();
     }
+
+    private static final class SynchronizedCopy extends CellComparator
+    {
+        private final CellComparator source;
+
+        private SynchronizedCopy(CellComparator source)
+        {
+            super(source.getFormatter().copy());
+            this.source = source;
+        }
+
+        @Override
+        public CellComparator copy()
+        {
+            return new SynchronizedCopy(this.source);
+        }
+
+        @Override
+        protected boolean compare(Object rhs, Object lhs)
+        {
+            synchronized (this.source)
+            {
+                return this.source.compare(rhs, lhs);
+            }
+        }
+
+        @Override
+        public boolean compareDoubles(double rhs, double lhs)
+        {
+            synchronized (this.source)
+            {
+                return this.source.compareDoubles(rhs, lhs);
+            }
+        }
+
+        @Override
+        public boolean equals(Object rhs, Object lhs)
+        {
+            synchronized (this.source)
+            {
+                return this.source.equals(rhs, lhs);
+            }
+        }
+
+        @Override
+        public boolean equalsDoubles(double rhs, double lhs)
+        {
+            synchronized (this.source)
+            {
+                return this.source.equalsDoubles(rhs, lhs);
+            }
+        }
+
+        @Override
+        public boolean equals(Object rhs, String formattedRhs, Object lhs, String formattedLhs)
+        {
+            synchronized (this.source)
+            {
+                return this.source.equals(rhs, formattedRhs, lhs, formattedLhs);
+            }
+        }
+
+        @Override
+        public int computeHashCode(Object object)
+        {
+            synchronized (this.source)
+            {
+                return this.source.computeHashCode(object);
+            }
+        }
+    }
 }
@@ -18,6 +18,9 @@ package com.gs.tablasco.compare;
 
 import org.eclipse.collections.api.block.function.Function;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -28,12 +31,16 @@ import java.util.Date;
 public class CellFormatter implements Function<Object, String>
 {
     private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final BigDecimal EXPONENT_PROBE = BigDecimal.TEN.pow(20);
 
     private final NumberFormat numberFormat;
     private final double tolerance;
     private final StringBuilder builder;
     private final String lhsLabel;
     private final String rhsLabel;
+    private NumberFormat roundedNumberFormat;
+    private boolean roundsDecimals;
+    private double maxRoundingDifference;
 
     public CellFormatter(double tolerance, boolean isGroupingUsed, String lhsLabel, String rhsLabel)
     {
@@ -54,6 +61,15 @@ public class CellFormatter implements Function<Object, String>
         return numberFormat;
     }
 
+    /**
+     * Returns a formatter with the same configuration. Formatters are not thread-safe, so threads formatting
+     * concurrently each need their own copy.
+     */
+    public CellFormatter copy()
+    {
+        return new CellFormatter(this.tolerance, this.numberFormat.isGroupingUsed(), this.lhsLabel, this.rhsLabel);
+    }
+
     @Override
     public String valueOf(Object object)
     {
@@ -94,6 +110,144 @@ public class CellFormatter implements Function<Object, String>
         return this.formatString(String.valueOf(value));
     }
 
+    /**
+     * Equivalent to <tt>format(Double.valueOf(value))</tt>, without boxing the value.
+     */
+    public String format(double value)
+    {
+        if (Double.isNaN(value))
+        {
+            return "NaN";
+        }
+        String formatted = this.numberFormat.format(value);
+        if (isNegativeZero(formatted))
+        {
+            return formatted.substring(1);
+        }
+        return formatted;
+    }
+
+    /**
+     * Equivalent to <tt>format(Long.valueOf(value))</tt>, without boxing the value.
+     */
+    public String format(long value)
+    {
+        return this.numberFormat.format(value);
+    }
+
+    /**
+     * Returns <tt>true</tt> if two decimals are formatted identically, without formatting them if possible.
+     */
+    public boolean formatEqually(BigDecimal number1, BigDecimal number2)
+    {
+        if (number1.compareTo(number2) == 0)
+        {
+            return true;
+        }
+        if (this.roundsDecimals())
+        {
+            int fractionDigits = this.numberFormat.getMaximumFractionDigits();
+            BigDecimal rounded1 = number1.scale() > fractionDigits ? number1.setScale(fractionDigits, this.numberFormat.getRoundingMode()) : number1;
+            BigDecimal rounded2 = number2.scale() > fractionDigits ? number2.setScale(fractionDigits, this.numberFormat.getRoundingMode()) : number2;
+            if (rounded1.compareTo(rounded2) != 0)
+            {
+                return false;
+            }
+            // values rounding to zero from either side may only differ by a minus sign
+            if (rounded1.signum() != 0 || number1.signum() == number2.signum())
+            {
+                return true;
+            }
+        }
+        return this.format(number1).equals(this.format(number2));
+    }
+
+    /**
+     * Returns <tt>true</tt> if numbers are written as a function of their value rounded to the fraction digits of the
+     * number format, i.e. if this is not a subclass formatting them differently and the number format is a decimal
+     * format without a multiplier, an exponent or a limit on integer digits. Only the default rounding mode is trusted
+     * to round like <tt>BigDecimal</tt> does. This is checked again whenever the number format has changed since, as it
+     * can be configured through <tt>getNumberFormat</tt>.
+     */
+    private boolean roundsDecimals()
+    {
+        if (this.getClass() != CellFormatter.class)
+        {
+            return false;
+        }
+        if (!this.numberFormat.equals(this.roundedNumberFormat))
+        {
+            this.roundedNumberFormat = (NumberFormat) this.numberFormat.clone();
+            this.roundsDecimals = this.numberFormat instanceof DecimalFormat
+                    && ((DecimalFormat) this.numberFormat).getMultiplier() == 1
+                    && this.numberFormat.getMaximumIntegerDigits() == Integer.MAX_VALUE
+                    && this.numberFormat.getRoundingMode() == RoundingMode.HALF_EVEN
+                    && !this.numberFormat.format(EXPONENT_PROBE).contains(((DecimalFormat) this.numberFormat).getDecimalFormatSymbols().getExponentSeparator());
+            this.maxRoundingDifference = 2.0d * Math.pow(10.0d, -this.numberFormat.getMaximumFractionDigits());
+        }
+        return this.roundsDecimals;
+    }
+
+    /**
+     * Returns <tt>true</tt> if two strings are formatted identically, i.e. are equal once trimmed and with whitespace
+     * characters replaced by spaces, without formatting them.
+     */
+    public boolean formatEqually(String string1, String string2)
+    {
+        if (string1.equals(string2))
+        {
+            return true;
+        }
+        if (this.getClass() != CellFormatter.class)
+        {
+            return this.format(string1).equals(this.format(string2));
+        }
+        int start1 = trimmedStart(string1);
+        int end1 = trimmedEnd(string1, start1);
+        int start2 = trimmedStart(string2);
+        int end2 = trimmedEnd(string2, start2);
+        if (end1 - start1 != end2 - start2)
+        {
+            return false;
+        }
+        for (int i = 0; i < end1 - start1; i++)
+        {
+            char c1 = string1.charAt(start1 + i);
+            char c2 = string2.charAt(start2 + i);
+            if (c1 != c2 && !(Character.isWhitespace(c1) && Character.isWhitespace(c2)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the index of the first character <tt>String.trim</tt> keeps.
+     */
+    private static int trimmedStart(String value)
+    {
+        int start = 0;
+        while (start < value.length() && value.charAt(start) <= ' ')
+        {
+            start++;
+        }
+        return start;
+    }
+
+    /**
+     * Returns the index after the last character <tt>String.trim</tt> keeps.
+     */
+    private static int trimmedEnd(String value, int start)
+    {
+        int end = value.length();
+        while (end > start && value.charAt(end - 1) <= ' ')
+        {
+            end--;
+        }
+        return end;
+    }
+
     private String formatString(String untrimmedValue)
     {
         String value = untrimmedValue.trim();
@@ -118,6 +272,32 @@ public class CellFormatter implements Function<Object, String>
         return changed ? this.builder.toString() : value;
     }
 
+    /**
+     * Returns <tt>false</tt> if the two numbers cannot be formatted identically because they are more than a rounding
+     * step of the current number format apart, without actually formatting them.
+     */
+    public boolean mayFormatEqually(double number1, double number2)
+    {
+        if (number1 == number2 || Double.isNaN(number1) && Double.isNaN(number2))
+        {
+            return true;
+        }
+        return !this.roundsDecimals() || Math.abs(number1 - number2) <= this.maxRoundingDifference;
+    }
+
+    /**
+     * Returns <tt>true</tt> if two integral values are formatted identically, without formatting them if possible.
+     */
+    public boolean formatEqually(long number1, long number2)
+    {
+        if (number1 == number2)
+        {
+            return true;
+        }
+        // the number format writes integral values exactly
+        return !this.roundsDecimals() && this.format(Long.valueOf(number1)).equals(this.format(Long.valueOf(number2)));
+    }
+
     public static boolean isNegativeZero(String formatted)
     {
         if (!isCharAt(formatted, 0, '-'))
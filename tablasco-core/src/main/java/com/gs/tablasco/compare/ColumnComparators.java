@@ -45,6 +45,28 @@ public class ColumnComparators implements Serializable
                 new ToleranceCellComparator(getCellFormatter(toleranceVarianceValues.tolerance, false))));
     }
 
+    private ColumnComparators(ColumnComparators source)
+    {
+        this.lhsLabel = source.lhsLabel;
+        this.rhsLabel = source.rhsLabel;
+        this.defaultCellComparator = copy(source.defaultCellComparator);
+        this.comparatorsByColumn = source.comparatorsByColumn.collectValues((columnName, cellComparators) -> copy(cellComparators));
+    }
+
+    /**
+     * Returns comparators with the same configuration that do not share any state with these ones, for use by
+     * another thread.
+     */
+    public ColumnComparators copy()
+    {
+        return new ColumnComparators(this);
+    }
+
+    private static Twin<CellComparator> copy(Twin<CellComparator> cellComparators)
+    {
+        return Tuples.twin(cellComparators.getOne().copy(), cellComparators.getTwo().copy());
+    }
+
     public CellComparator getDefaultComparator()
     {
         return this.defaultCellComparator.getOne();
@@ -0,0 +1,422 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare;
+
+import com.gs.tablasco.ComparableTable;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, column-oriented snapshot of a <tt>ComparableTable</tt>. Every value of the source table (including any
+ * adapters stacked on top of it) is read exactly once and stored per column in the most compact form that preserves
+ * the original value type:
+ * <ul>
+ * <li>columns containing only <tt>Double</tt> values are stored as <tt>double[]</tt></li>
+ * <li>columns containing only <tt>Long</tt> or only <tt>Integer</tt> values are stored as <tt>long[]</tt></li>
+ * <li>columns containing only <tt>String</tt> values are stored as <tt>int[]</tt> codes into a column dictionary</li>
+ * <li>all other columns are stored as <tt>Object[]</tt></li>
+ * </ul>
+ * Nulls are tracked with a bitmap per column. <tt>getValueAt</tt> returns values equal to (and of the same type as) the
+ * source values, boxing numbers on every call; the comparison engine instead formats and hashes rows with
+ * {@link #format}, and compares double columns with {@link #getDouble}, neither of which box.
+ */
+public class ColumnarComparableTable implements ComparableTable
+{
+    private final String tableName;
+    private final int rowCount;
+    private final String[] columnNames;
+    private final Column[] columns;
+
+    private ColumnarComparableTable(ComparableTable table)
+    {
+        this.tableName = table.getTableName();
+        this.rowCount = table.getRowCount();
+        this.columnNames = new String[table.getColumnCount()];
+        this.columns = new Column[this.columnNames.length];
+        Object[] buffer = new Object[this.rowCount];
+        for (int col = 0; col < this.columnNames.length; col++)
+        {
+            this.columnNames[col] = table.getColumnName(col);
+            for (int row = 0; row < this.rowCount; row++)
+            {
+                buffer[row] = table.getValueAt(row, col);
+            }
+            this.columns[col] = newColumn(buffer, this.rowCount);
+        }
+    }
+
+    /**
+     * Creates a columnar snapshot of the given table. If the table is a <tt>KeyedComparableTable</tt> the snapshot is
+     * also keyed on the same columns.
+     *
+     * @param table the table to snapshot
+     * @return the snapshot, or the table itself if it already is a snapshot
+     */
+    public static ColumnarComparableTable of(ComparableTable table)
+    {
+        if (table instanceof ColumnarComparableTable)
+        {
+            return (ColumnarComparableTable) table;
+        }
+        if (table instanceof KeyedComparableTable)
+        {
+            return new Keyed((KeyedComparableTable) table);
+        }
+        return new ColumnarComparableTable(table);
+    }
+
+    @Override
+    public String getTableName()
+    {
+        return this.tableName;
+    }
+
+    @Override
+    public int getRowCount()
+    {
+        return this.rowCount;
+    }
+
+    @Override
+    public int getColumnCount()
+    {
+        return this.columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int columnIndex)
+    {
+        return this.columnNames[columnIndex];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex)
+    {
+        Column column = this.columns[columnIndex];
+        return column.isNull(rowIndex) ? null : column.getValue(rowIndex);
+    }
+
+    public boolean isNull(int rowIndex, int columnIndex)
+    {
+        return this.columns[columnIndex].isNull(rowIndex);
+    }
+
+    /**
+     * Returns <tt>true</tt> if the column is stored in a primitive form, i.e. holds only doubles, only integral numbers
+     * or only strings.
+     */
+    public boolean isTypedColumn(int columnIndex)
+    {
+        return !(this.columns[columnIndex] instanceof ObjectColumn);
+    }
+
+    public boolean isDoubleColumn(int columnIndex)
+    {
+        return this.columns[columnIndex] instanceof DoubleColumn;
+    }
+
+    public double getDouble(int rowIndex, int columnIndex)
+    {
+        return ((DoubleColumn) this.columns[columnIndex]).values[rowIndex];
+    }
+
+    /**
+     * Marks the rows of a block of two double columns whose values are not within a tolerance of each other, or are
+     * null in either column, see {@link DoubleColumnKernel#markMismatches}.
+     *
+     * @param mismatches the bitmap in which bit <tt>i</tt> is set for the rows <tt>rhsFrom + i</tt> and
+     *                   <tt>lhsFrom + i</tt>
+     */
+    public static void markDoubleMismatches(ColumnarComparableTable rhsData, int rhsColumnIndex, int rhsFrom, ColumnarComparableTable lhsData, int lhsColumnIndex, int lhsFrom, int length, double tolerance, long[] mismatches)
+    {
+        DoubleColumn rhsColumn = (DoubleColumn) rhsData.columns[rhsColumnIndex];
+        DoubleColumn lhsColumn = (DoubleColumn) lhsData.columns[lhsColumnIndex];
+        DoubleColumnKernel.markMismatches(rhsColumn.values, rhsFrom, lhsColumn.values, lhsFrom, length, tolerance, mismatches);
+        rhsColumn.markNulls(rhsFrom, length, mismatches);
+        lhsColumn.markNulls(lhsFrom, length, mismatches);
+    }
+
+    /**
+     * Returns <tt>formatter.format(getValueAt(rowIndex, columnIndex))</tt>, reading numbers from their primitive column
+     * without boxing them. Strings are formatted once per distinct value of a column and the same key is returned for
+     * every row holding that value, so that hashing it is also only done once.
+     */
+    public String format(int rowIndex, int columnIndex, CellFormatter formatter)
+    {
+        Column column = this.columns[columnIndex];
+        if (column.isNull(rowIndex))
+        {
+            return formatter.format(null);
+        }
+        if (formatter.getClass() != CellFormatter.class)
+        {
+            // a custom formatter may format primitives or strings differently
+            return formatter.format(column.getValue(rowIndex));
+        }
+        return column.format(rowIndex, formatter);
+    }
+
+    private static Column newColumn(Object[] values, int size)
+    {
+        Class<?> type = null;
+        for (int i = 0; i < size; i++)
+        {
+            Object value = values[i];
+            if (value != null)
+            {
+                if (type == null)
+                {
+                    type = value.getClass();
+                }
+                else if (type != value.getClass())
+                {
+                    return new ObjectColumn(values, size);
+                }
+            }
+        }
+        if (type == Double.class)
+        {
+            return new DoubleColumn(values, size);
+        }
+        if (type == Long.class || type == Integer.class)
+        {
+            return new LongColumn(values, size, type == Integer.class);
+        }
+        if (type == String.class)
+        {
+            return new StringColumn(values, size);
+        }
+        return new ObjectColumn(values, size);
+    }
+
+    private abstract static class Column
+    {
+        private final long[] nulls;
+        private final boolean hasNulls;
+
+        private Column(Object[] values, int size)
+        {
+            this.nulls = new long[(size + 63) >>> 6];
+            boolean hasNulls = false;
+            for (int i = 0; i < size; i++)
+            {
+                if (values[i] == null)
+                {
+                    this.nulls[i >>> 6] |= 1L << i;
+                    hasNulls = true;
+                }
+            }
+            this.hasNulls = hasNulls;
+        }
+
+        boolean isNull(int row)
+        {
+            return (this.nulls[row >>> 6] & (1L << row)) != 0L;
+        }
+
+        /**
+         * Sets bit <tt>i</tt> of <tt>bits</tt> if row <tt>from + i</tt> is null.
+         */
+        void markNulls(int from, int length, long[] bits)
+        {
+            if (this.hasNulls)
+            {
+                for (int i = 0; i < length; i++)
+                {
+                    if (this.isNull(from + i))
+                    {
+                        bits[i >>> 6] |= 1L << i;
+                    }
+                }
+            }
+        }
+
+        abstract Object getValue(int row);
+
+        String format(int row, CellFormatter formatter)
+        {
+            return formatter.format(this.getValue(row));
+        }
+    }
+
+    private static final class DoubleColumn extends Column
+    {
+        private final double[] values;
+
+        private DoubleColumn(Object[] values, int size)
+        {
+            super(values, size);
+            this.values = new double[size];
+            for (int i = 0; i < size; i++)
+            {
+                if (values[i] != null)
+                {
+                    this.values[i] = (Double) values[i];
+                }
+            }
+        }
+
+        @Override
+        Object getValue(int row)
+        {
+            return this.values[row];
+        }
+
+        @Override
+        String format(int row, CellFormatter formatter)
+        {
+            return formatter.format(this.values[row]);
+        }
+    }
+
+    private static final class LongColumn extends Column
+    {
+        private final long[] values;
+        private final boolean isInteger;
+
+        private LongColumn(Object[] values, int size, boolean isInteger)
+        {
+            super(values, size);
+            this.isInteger = isInteger;
+            this.values = new long[size];
+            for (int i = 0; i < size; i++)
+            {
+                if (values[i] != null)
+                {
+                    this.values[i] = ((Number) values[i]).longValue();
+                }
+            }
+        }
+
+        @Override
+        Object getValue(int row)
+        {
+            long value = this.values[row];
+            return this.isInteger ? (Object) Integer.valueOf((int) value) : (Object) Long.valueOf(value);
+        }
+
+        @Override
+        String format(int row, CellFormatter formatter)
+        {
+            return formatter.format(this.values[row]);
+        }
+    }
+
+    private static final class StringColumn extends Column
+    {
+        private final int[] codes;
+        private final String[] dictionary;
+        private volatile String[] formattedDictionary;
+
+        private StringColumn(Object[] values, int size)
+        {
+            super(values, size);
+            this.codes = new int[size];
+            ObjectIntHashMap<String> codesByValue = new ObjectIntHashMap<>();
+            String[] dictionary = new String[16];
+            for (int i = 0; i < size; i++)
+            {
+                String value = (String) values[i];
+                if (value == null)
+                {
+                    this.codes[i] = -1;
+                }
+                else
+                {
+                    int code = codesByValue.getIfAbsent(value, -1);
+                    if (code < 0)
+                    {
+                        code = codesByValue.size();
+                        codesByValue.put(value, code);
+                        if (code == dictionary.length)
+                        {
+                            dictionary = Arrays.copyOf(dictionary, code * 2);
+                        }
+                        dictionary[code] = value;
+                    }
+                    this.codes[i] = code;
+                }
+            }
+            this.dictionary = Arrays.copyOf(dictionary, codesByValue.size());
+        }
+
+        @Override
+        Object getValue(int row)
+        {
+            return this.dictionary[this.codes[row]];
+        }
+
+        /**
+         * Strings are formatted independently of the formatter's configuration, so the formatted dictionary is built
+         * once and shared by all formatters; threads racing to build it build identical copies.
+         */
+        @Override
+        String format(int row, CellFormatter formatter)
+        {
+            String[] formattedDictionary = this.formattedDictionary;
+            if (formattedDictionary == null)
+            {
+                formattedDictionary = new String[this.dictionary.length];
+                for (int code = 0; code < formattedDictionary.length; code++)
+                {
+                    formattedDictionary[code] = formatter.format(this.dictionary[code]);
+                }
+                this.formattedDictionary = formattedDictionary;
+            }
+            return formattedDictionary[this.codes[row]];
+        }
+    }
+
+    private static final class ObjectColumn extends Column
+    {
+        private final Object[] values;
+
+        private ObjectColumn(Object[] values, int size)
+        {
+            super(values, size);
+            this.values = Arrays.copyOf(values, size);
+        }
+
+        @Override
+        Object getValue(int row)
+        {
+            return this.values[row];
+        }
+    }
+
+    private static final class Keyed extends ColumnarComparableTable implements KeyedComparableTable
+    {
+        private final boolean[] keyColumns;
+
+        private Keyed(KeyedComparableTable table)
+        {
+            super(table);
+            this.keyColumns = new boolean[table.getColumnCount()];
+            for (int col = 0; col < this.keyColumns.length; col++)
+            {
+                this.keyColumns[col] = table.isKeyColumn(col);
+            }
+        }
+
+        @Override
+        public boolean isKeyColumn(int columnIndex)
+        {
+            return columnIndex >= 0 && columnIndex < this.keyColumns.length && this.keyColumns[columnIndex];
+        }
+    }
+}
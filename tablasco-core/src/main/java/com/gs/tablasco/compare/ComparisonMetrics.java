@@ -0,0 +1,256 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare;
+
+import org.eclipse.collections.impl.list.mutable.FastList;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Timings and counts of a comparison: the wall time and the bytes allocated by the comparing thread in each
+ * {@link ComparisonPhase}, the number of rows by how they were matched, and the columns unmatched rows were grouped by
+ * before partial matching. Comparisons split across threads (see <tt>withShards</tt>) add up the phases of every part,
+ * and work done on other threads for a phase (see <tt>withParallelism</tt>) counts towards its wall time but not its
+ * allocations. Allocations are -1 where the JVM does not measure them.
+ * <p>
+ * Metrics are recorded concurrently by the parts of a comparison through a {@link Timer}. {@link #NONE} records
+ * nothing, without reading clocks.
+ */
+public class ComparisonMetrics implements Serializable
+{
+    public static final ComparisonMetrics NONE = new ComparisonMetrics(false);
+
+    private static final Timer NO_TIMER = new Timer(NONE);
+
+    /**
+     * How the rows of the compared tables were matched.
+     */
+    public enum RowOutcome
+    {
+        /** Rows matched in place from the first row. */
+        HAPPY_PATH,
+        /** Rows matched in place from the last row backwards. */
+        REVERSE_HAPPY_PATH,
+        /** Rows matched by hashing their values, or by their keys. */
+        MATCHED,
+        /** Rows partially matched with a row with some different values. */
+        PARTIALLY_MATCHED,
+        /** Expected rows without a match. */
+        MISSING,
+        /** Actual rows without a match. */
+        SURPLUS,
+        /** Matched rows found in a different order, also counted by how they were matched. */
+        OUT_OF_ORDER
+    }
+
+    private final boolean enabled;
+    private final long[] elapsedNanos = new long[ComparisonPhase.values().length];
+    private final long[] allocatedBytes = new long[ComparisonPhase.values().length];
+    private final long[] rowCounts = new long[RowOutcome.values().length];
+    private final Set<String> groupingColumns = new LinkedHashSet<>();
+
+    public ComparisonMetrics()
+    {
+        this(true);
+    }
+
+    private ComparisonMetrics(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled()
+    {
+        return this.enabled;
+    }
+
+    /**
+     * Starts timing a phase on the current thread.
+     */
+    public Timer start(ComparisonPhase phase)
+    {
+        return this.enabled ? new Timer(this).start(phase) : NO_TIMER;
+    }
+
+    public synchronized void addPhase(ComparisonPhase phase, long elapsedNanos, long allocatedBytes)
+    {
+        if (this.enabled)
+        {
+            this.elapsedNanos[phase.ordinal()] += elapsedNanos;
+            this.allocatedBytes[phase.ordinal()] = this.allocatedBytes[phase.ordinal()] < 0L || allocatedBytes < 0L ? -1L : this.allocatedBytes[phase.ordinal()] + allocatedBytes;
+        }
+    }
+
+    public synchronized void addRows(RowOutcome outcome, long count)
+    {
+        if (this.enabled)
+        {
+            this.rowCounts[outcome.ordinal()] += count;
+        }
+    }
+
+    public synchronized void addGroupingColumn(String columnName)
+    {
+        if (this.enabled)
+        {
+            this.groupingColumns.add(columnName);
+        }
+    }
+
+    public synchronized long getElapsedNanos(ComparisonPhase phase)
+    {
+        return this.elapsedNanos[phase.ordinal()];
+    }
+
+    public synchronized long getAllocatedBytes(ComparisonPhase phase)
+    {
+        return this.allocatedBytes[phase.ordinal()];
+    }
+
+    public synchronized long getRowCount(RowOutcome outcome)
+    {
+        return this.rowCounts[outcome.ordinal()];
+    }
+
+    /**
+     * Returns the columns unmatched rows were grouped by, in the order they were first grouped by.
+     */
+    public synchronized List<String> getGroupingColumns()
+    {
+        return FastList.newList(this.groupingColumns);
+    }
+
+    /**
+     * Returns metrics adding up two comparisons, or <tt>NONE</tt> if neither recorded any.
+     */
+    public static ComparisonMetrics merge(ComparisonMetrics metrics, ComparisonMetrics otherMetrics)
+    {
+        if (!metrics.enabled && !otherMetrics.enabled)
+        {
+            return NONE;
+        }
+        ComparisonMetrics merged = new ComparisonMetrics();
+        merged.add(metrics);
+        merged.add(otherMetrics);
+        return merged;
+    }
+
+    private void add(ComparisonMetrics metrics)
+    {
+        synchronized (metrics)
+        {
+            for (ComparisonPhase phase : ComparisonPhase.values())
+            {
+                this.addPhase(phase, metrics.elapsedNanos[phase.ordinal()], metrics.allocatedBytes[phase.ordinal()]);
+            }
+            for (RowOutcome outcome : RowOutcome.values())
+            {
+                this.addRows(outcome, metrics.rowCounts[outcome.ordinal()]);
+            }
+            this.groupingColumns.addAll(metrics.groupingColumns);
+        }
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        for (ComparisonPhase phase : ComparisonPhase.values())
+        {
+            builder.append(phase).append(": ").append(this.elapsedNanos[phase.ordinal()] / 1000000L).append(" ms, ").append(this.allocatedBytes[phase.ordinal()]).append(" bytes\n");
+        }
+        for (RowOutcome outcome : RowOutcome.values())
+        {
+            builder.append(outcome).append(": ").append(this.rowCounts[outcome.ordinal()]).append(" rows\n");
+        }
+        return builder.append("Grouping columns: ").append(this.groupingColumns).toString();
+    }
+
+    /**
+     * Times the phases of a comparison run one after the other on one thread.
+     */
+    public static final class Timer
+    {
+        private final ComparisonMetrics metrics;
+        private ComparisonPhase phase;
+        private long startNanos;
+        private long startBytes;
+
+        private Timer(ComparisonMetrics metrics)
+        {
+            this.metrics = metrics;
+        }
+
+        private Timer start(ComparisonPhase phase)
+        {
+            this.phase = phase;
+            this.startBytes = AllocationCounter.getAllocatedBytes();
+            this.startNanos = System.nanoTime();
+            return this;
+        }
+
+        /**
+         * Records the current phase and starts timing the next one.
+         */
+        public void lap(ComparisonPhase nextPhase)
+        {
+            if (this.metrics.enabled)
+            {
+                this.stop();
+                this.start(nextPhase);
+            }
+        }
+
+        public void stop()
+        {
+            if (this.metrics.enabled && this.phase != null)
+            {
+                long elapsedNanos = System.nanoTime() - this.startNanos;
+                long endBytes = AllocationCounter.getAllocatedBytes();
+                this.metrics.addPhase(this.phase, elapsedNanos, this.startBytes < 0L || endBytes < 0L ? -1L : endBytes - this.startBytes);
+                this.phase = null;
+            }
+        }
+    }
+
+    /**
+     * Reads the bytes allocated by the current thread where the JVM supports it.
+     */
+    private static final class AllocationCounter
+    {
+        private static final com.sun.management.ThreadMXBean THREADS = getThreadMXBean();
+
+        private static com.sun.management.ThreadMXBean getThreadMXBean()
+        {
+            java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            if (threads instanceof com.sun.management.ThreadMXBean && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported())
+            {
+                return (com.sun.management.ThreadMXBean) threads;
+            }
+            return null;
+        }
+
+        private static long getAllocatedBytes()
+        {
+            return THREADS != null && THREADS.isThreadAllocatedMemoryEnabled() ? THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) : -1L;
+        }
+    }
+}
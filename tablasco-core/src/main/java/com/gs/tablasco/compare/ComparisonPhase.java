@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare;
+
+/**
+ * The phases of comparing a pair of tables, in the order they run, for which <tt>ComparisonMetrics</tt> records wall
+ * time and allocated bytes.
+ */
+public enum ComparisonPhase
+{
+    /** Matching columns by name and comparing headers. */
+    HEADERS,
+    /** Matching rows in place from the first row until the first mismatch. */
+    HAPPY_PATH,
+    /** Matching rows in place from the last row backwards until the last mismatch. */
+    REVERSE_HAPPY_PATH,
+    /** Matching the remaining rows by hashing their values, or by their keys. */
+    ROW_HASHING,
+    /** Grouping rows left unmatched by key or by column values before partially matching each group. */
+    ADAPTIVE_GROUPING,
+    /** Scoring and pairing the rows of each group by their number of matching cells. */
+    BEST_MATCH,
+    /** Merging partial matches with matched rows and the rows left missing or surplus. */
+    LINKING,
+    /** Ordering rows as in the tables and finding rows out of order. */
+    FINAL_ORDERING,
+    /** Creating the result table. */
+    RESULT_BUILD,
+    /** Writing the HTML break report. */
+    HTML_RENDER
+}
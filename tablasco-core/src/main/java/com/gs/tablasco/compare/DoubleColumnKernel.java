@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare;
+
+/**
+ * Compares blocks of two double columns with a tolerance, as <tt>ToleranceCellComparator.compareDoubles</tt> does:
+ * values are equal if they are identical, both NaN or no further apart than the tolerance, so <tt>-0.0</tt> equals
+ * <tt>0.0</tt>. The comparison yields a bitmap of the elements that are not equal.
+ * <p>
+ * Blocks are compared with a scalar loop unless the jar was built with the <tt>java21</tt> profile, runs on Java 21 or
+ * later and the <tt>jdk.incubator.vector</tt> module is resolved, e.g. with <tt>--add-modules jdk.incubator.vector</tt>.
+ * Then the Java 21 implementation in <tt>META-INF/versions/21</tt>, which uses the incubating Vector API, is loaded
+ * reflectively instead.
+ */
+public final class DoubleColumnKernel
+{
+    private static final Implementation VECTOR_IMPLEMENTATION = loadVectorImplementation();
+
+    private DoubleColumnKernel()
+    {
+    }
+
+    private static Implementation loadVectorImplementation()
+    {
+        try
+        {
+            return (Implementation) Class.forName("com.gs.tablasco.compare.VectorDoubleColumnKernel").getDeclaredConstructor().newInstance();
+        }
+        catch (ReflectiveOperationException | LinkageError e)
+        {
+            // not a multi-release jar, an older JVM or jdk.incubator.vector is not resolved
+            return null;
+        }
+    }
+
+    /**
+     * @return whether blocks are compared with vector instructions
+     */
+    public static boolean isVectorized()
+    {
+        return VECTOR_IMPLEMENTATION != null;
+    }
+
+    /**
+     * Sets bit <tt>i</tt> of <tt>mismatches</tt> if elements <tt>rhsFrom + i</tt> and <tt>lhsFrom + i</tt> of the two
+     * blocks are not within the tolerance of each other. Other bits are left unchanged, so the mismatches of several
+     * columns can be marked in the same bitmap.
+     *
+     * @param length     the number of elements compared
+     * @param mismatches the bitmap, with at least <tt>(length + 63) / 64</tt> elements
+     */
+    public static void markMismatches(double[] rhs, int rhsFrom, double[] lhs, int lhsFrom, int length, double tolerance, long[] mismatches)
+    {
+        if (VECTOR_IMPLEMENTATION == null)
+        {
+            ScalarDoubleColumnKernel.markMismatches(rhs, rhsFrom, lhs, lhsFrom, 0, length, tolerance, mismatches);
+        }
+        else
+        {
+            VECTOR_IMPLEMENTATION.markMismatches(rhs, rhsFrom, lhs, lhsFrom, length, tolerance, mismatches);
+        }
+    }
+
+    /**
+     * An implementation that is loaded reflectively because it cannot be compiled for Java 8.
+     */
+    interface Implementation
+    {
+        void markMismatches(double[] rhs, int rhsFrom, double[] lhs, int lhsFrom, int length, double tolerance, long[] mismatches);
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare;
+
+import com.gs.tablasco.HtmlOptions;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.w3c.dom.Element;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * The outcome of a fail-fast comparison: whether the tables match and, if not, where the first break is and how many
+ * breaks were found before the comparison stopped. No result cells are kept for the compared rows, so there is
+ * nothing to show but a one line description of the first break.
+ */
+public class FailFastResultTable implements FormattableTable, Serializable
+{
+    private final List<ResultCell> headers;
+    private final int passedCellCount;
+    private final int breakCount;
+    private final boolean stoppedEarly;
+    private final int rhsRowIndex;
+    private final int lhsRowIndex;
+    private final String columnName;
+    private final String description;
+
+    private FailFastResultTable(Builder builder)
+    {
+        this.headers = builder.headers;
+        this.passedCellCount = builder.passedCellCount;
+        this.breakCount = builder.breakCount;
+        this.stoppedEarly = builder.isFull();
+        this.rhsRowIndex = builder.rhsRowIndex;
+        this.lhsRowIndex = builder.lhsRowIndex;
+        this.columnName = builder.columnName;
+        this.description = builder.description;
+    }
+
+    @Override
+    public boolean isSuccess()
+    {
+        return this.breakCount == 0;
+    }
+
+    /**
+     * Returns the number of breaks found, which is at most the break limit the comparison was run with.
+     */
+    public int getBreakCount()
+    {
+        return this.breakCount;
+    }
+
+    /**
+     * Returns whether the break limit was reached, in which case the comparison stopped there and the tables may have
+     * more breaks than counted.
+     */
+    public boolean isStoppedEarly()
+    {
+        return this.stoppedEarly;
+    }
+
+    /**
+     * Returns the rhs row of the first break, or -1 if it is a header break or the row is missing from rhs.
+     */
+    public int getFirstBreakRhsRowIndex()
+    {
+        return this.rhsRowIndex;
+    }
+
+    /**
+     * Returns the lhs row of the first break, or -1 if it is a header break or the row is surplus to rhs.
+     */
+    public int getFirstBreakLhsRowIndex()
+    {
+        return this.lhsRowIndex;
+    }
+
+    /**
+     * Returns the column of the first break, or <tt>null</tt> if it is a break of a whole row.
+     */
+    public String getFirstBreakColumnName()
+    {
+        return this.columnName;
+    }
+
+    public String getFirstBreakDescription()
+    {
+        return this.description;
+    }
+
+    @Override
+    public int getPassedCellCount()
+    {
+        return this.passedCellCount;
+    }
+
+    @Override
+    public int getTotalCellCount()
+    {
+        return this.passedCellCount + this.breakCount;
+    }
+
+    @Override
+    public List<ResultCell> getHeaders()
+    {
+        return this.headers;
+    }
+
+    @Override
+    public int getMatchedColumnsAhead(int col)
+    {
+        return 0;
+    }
+
+    @Override
+    public void appendTo(String testName, String tableName, Element table, HtmlOptions htmlOptions)
+    {
+        HtmlFormatterUtils.appendHeaderRow(table, this, htmlOptions);
+        if (!this.isSuccess())
+        {
+            HtmlFormatterUtils.appendSpanningRow(table, this, "fail multi", this.toString(), null);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        if (this.isSuccess())
+        {
+            return "No breaks";
+        }
+        StringBuilder builder = new StringBuilder()
+                .append(this.breakCount)
+                .append(this.stoppedEarly ? " or more" : "")
+                .append(this.breakCount == 1 && !this.stoppedEarly ? " break" : " breaks")
+                .append(", first at ");
+        if (this.rhsRowIndex < 0 && this.lhsRowIndex < 0)
+        {
+            builder.append("header");
+        }
+        else
+        {
+            builder.append("rhs row ").append(this.rhsRowIndex).append(", lhs row ").append(this.lhsRowIndex);
+        }
+        if (this.columnName != null)
+        {
+            builder.append(", column '").append(this.columnName).append('\'');
+        }
+        return builder.append(": ").append(this.description).toString();
+    }
+
+    public static class Builder
+    {
+        private final int breakLimit;
+        private final List<ResultCell> headers = FastList.newList();
+        private int passedCellCount;
+        private int breakCount;
+        private int rhsRowIndex = -1;
+        private int lhsRowIndex = -1;
+        private String columnName;
+        private String description;
+
+        /**
+         * @param breakLimit number of breaks after which the comparison can stop
+         */
+        public Builder(int breakLimit)
+        {
+            this.breakLimit = Math.max(1, breakLimit);
+        }
+
+        public Builder withHeader(String columnName)
+        {
+            this.headers.add(ResultCell.createCustomCell(columnName, "pass"));
+            return this;
+        }
+
+        public Builder withPassedCells(int cellCount)
+        {
+            this.passedCellCount += cellCount;
+            return this;
+        }
+
+        /**
+         * Records a break, keeping the location of the first one.
+         *
+         * @param rhsRowIndex the rhs row, or -1
+         * @param lhsRowIndex the lhs row, or -1
+         * @param columnName  the column, or <tt>null</tt> for a whole row
+         * @return whether the break limit has been reached
+         */
+        public boolean addBreak(int rhsRowIndex, int lhsRowIndex, String columnName, String description)
+        {
+            if (this.breakCount == 0)
+            {
+                this.rhsRowIndex = rhsRowIndex;
+                this.lhsRowIndex = lhsRowIndex;
+                this.columnName = columnName;
+                this.description = description;
+            }
+            this.breakCount++;
+            return this.isFull();
+        }
+
+        public boolean isFull()
+        {
+            return this.breakCount >= this.breakLimit;
+        }
+
+        public FailFastResultTable build()
+        {
+            return new FailFastResultTable(this);
+        }
+    }
+}
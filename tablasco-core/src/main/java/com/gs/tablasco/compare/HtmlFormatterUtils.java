@@ -106,6 +106,18 @@ public class HtmlFormatterUtils
         return testName.replaceAll("\\W+", "_") + '.' + tableName.replaceAll("\\W+", "_");
     }
 
+    static void appendPartialMatchTruncatedRow(Element table, int colspan)
+    {
+        Document document = table.getOwnerDocument();
+        Element tr = document.createElement("tr");
+        table.appendChild(tr);
+        Element td = document.createElement("td");
+        td.setAttribute("class", "fail multi");
+        td.setAttribute("colspan", String.valueOf(colspan));
+        td.appendChild(document.createTextNode("Partial matching timed out, rows it did not get to are shown as missing or surplus"));
+        tr.appendChild(td);
+    }
+
     static void appendMultiMatchedRow(Element table, int colspan, int matchedRows)
     {
         Document document = table.getOwnerDocument();
@@ -62,6 +62,22 @@ public abstract class ResultCell implements Serializable
         return new FailedCell(cellComparator.getFormatter(), rhs, lhs);
     }
 
+    /**
+     * Creates the cell <tt>createMatchedCell</tt> creates for values that are known to be equal.
+     */
+    public static ResultCell createPassedCell(CellFormatter formatter, Object rhsAndLhs)
+    {
+        return new PassedCell(formatter, rhsAndLhs);
+    }
+
+    /**
+     * Creates the cell <tt>createMatchedCell</tt> creates for values that are known to differ.
+     */
+    public static ResultCell createFailedCell(CellFormatter formatter, Object rhs, Object lhs)
+    {
+        return new FailedCell(formatter, rhs, lhs);
+    }
+
     public static ResultCell createMissingCell(CellFormatter formatter, Object lhs)
     {
         return new MissingCell(formatter, lhs);
@@ -23,19 +23,32 @@ import org.eclipse.collections.impl.utility.Iterate;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 
 public class ResultTable implements FormattableTable
 {
     private final List<List<ResultCell>> tableCells;
+    private final boolean[] matchedColumns;
     private final int[] matchedColumnsAhead;
     private final int totalCellCount;
     private final int passedCellCount;
+    private final boolean partialMatchTruncated;
 
     public ResultTable(boolean[] keyColumns, List<List<ResultCell>> tableCells)
+    {
+        this(keyColumns, tableCells, false);
+    }
+
+    /**
+     * @param partialMatchTruncated whether partial matching timed out, leaving rows it did not get to unmatched
+     */
+    public ResultTable(boolean[] keyColumns, List<List<ResultCell>> tableCells, boolean partialMatchTruncated)
     {
         this.tableCells = tableCells;
+        this.partialMatchTruncated = partialMatchTruncated;
         List<ResultCell> headers = tableCells.get(0);
         boolean[] matchedColumns = tableCells.size() > 0 ? new boolean[headers.size()] : new boolean[0];
         Arrays.fill(matchedColumns, true);
@@ -55,15 +68,104 @@ public class ResultTable implements FormattableTable
             }
             isMatched = dataIsMatched;
         }
-        this.matchedColumnsAhead = new int[matchedColumns.length];
-        for (int i = 0; i < this.matchedColumnsAhead.length; i++)
-        {
-            this.matchedColumnsAhead[i] = getMatchedColumnsAhead(i, matchedColumns);
-        }
+        this.matchedColumns = matchedColumns;
+        this.matchedColumnsAhead = getMatchedColumnsAhead(matchedColumns);
         this.totalCellCount = total;
         this.passedCellCount = passed;
     }
 
+    /**
+     * For subclasses that keep their cells in another form and override <tt>getComparedRows</tt>.
+     *
+     * @param matchedColumns  whether each column is a non-key column whose header passed and whose cells did not fail
+     * @param totalCellCount  number of cells, including headers
+     * @param passedCellCount number of passed cells, including headers
+     * @param partialMatchTruncated whether partial matching timed out, leaving rows it did not get to unmatched
+     */
+    protected ResultTable(boolean[] matchedColumns, int totalCellCount, int passedCellCount, boolean partialMatchTruncated)
+    {
+        this(null, matchedColumns, totalCellCount, passedCellCount, partialMatchTruncated);
+    }
+
+    private ResultTable(List<List<ResultCell>> tableCells, boolean[] matchedColumns, int totalCellCount, int passedCellCount, boolean partialMatchTruncated)
+    {
+        this.tableCells = tableCells;
+        this.partialMatchTruncated = partialMatchTruncated;
+        this.matchedColumns = matchedColumns;
+        this.matchedColumnsAhead = getMatchedColumnsAhead(matchedColumns);
+        this.totalCellCount = totalCellCount;
+        this.passedCellCount = passedCellCount;
+    }
+
+    /**
+     * Concatenates results of comparing tables with the same columns, such as the partitions of a table, into one
+     * table with the headers of the first. A column is matched if it is matched in all of them. Rows are read from the
+     * results as they are read from the concatenation, so results keeping their cells in another form are not
+     * expanded.
+     *
+     * @param resultTables results with identical headers, in the order their rows should appear in
+     */
+    public static ResultTable concat(List<ResultTable> resultTables)
+    {
+        MergedResultTable merged = newMergedResultTable(resultTables);
+        for (int source = 0; source < resultTables.size(); source++)
+        {
+            merged.addRows(source, 0, resultTables.get(source).getComparedRows().size() - 1);
+        }
+        return merged;
+    }
+
+    /**
+     * Merges results of comparing tables with the same columns, such as the shards of a table, into one table with
+     * the headers of the first, as <tt>concat</tt> does but interleaving their rows in the given order.
+     *
+     * @param resultTables results with identical headers
+     * @param rowSources   for each row of the merged table, the index of the results it is taken from
+     * @param sourceRows   for each row of the merged table, the index of the row in the compared rows of its results,
+     *                     not counting the headers
+     */
+    public static ResultTable merge(List<ResultTable> resultTables, int[] rowSources, int[] sourceRows)
+    {
+        MergedResultTable merged = newMergedResultTable(resultTables);
+        for (int row = 0; row < rowSources.length; row++)
+        {
+            merged.addRows(rowSources[row], sourceRows[row], 1);
+        }
+        return merged;
+    }
+
+    private static MergedResultTable newMergedResultTable(List<ResultTable> resultTables)
+    {
+        List<ResultCell> headers = resultTables.get(0).getHeaders();
+        int passedHeaderCount = Iterate.count(headers, ResultCell.IS_PASSED_CELL);
+        boolean[] matchedColumns = new boolean[headers.size()];
+        Arrays.fill(matchedColumns, true);
+        int total = headers.size();
+        int passed = passedHeaderCount;
+        boolean partialMatchTruncated = false;
+        for (ResultTable resultTable : resultTables)
+        {
+            for (int col = 0; col < matchedColumns.length; col++)
+            {
+                matchedColumns[col] &= resultTable.matchedColumns[col];
+            }
+            total += resultTable.totalCellCount - headers.size();
+            passed += resultTable.passedCellCount - passedHeaderCount;
+            partialMatchTruncated |= resultTable.partialMatchTruncated;
+        }
+        return new MergedResultTable(resultTables, headers, matchedColumns, total, passed, partialMatchTruncated);
+    }
+
+    private static int[] getMatchedColumnsAhead(boolean[] matchedColumns)
+    {
+        int[] matchedColumnsAhead = new int[matchedColumns.length];
+        for (int i = 0; i < matchedColumnsAhead.length; i++)
+        {
+            matchedColumnsAhead[i] = getMatchedColumnsAhead(i, matchedColumns);
+        }
+        return matchedColumnsAhead;
+    }
+
     private static int getMatchedColumnsAhead(int col, boolean[] matchedColumns)
     {
         int matchedColumnsAhead = 0;
@@ -101,6 +203,11 @@ public class ResultTable implements FormattableTable
         return this.passedCellCount;
     }
 
+    public boolean isPartialMatchTruncated()
+    {
+        return this.partialMatchTruncated;
+    }
+
     public List<List<ResultCell>> getComparedRows()
     {
         return this.tableCells;
@@ -118,45 +225,78 @@ public class ResultTable implements FormattableTable
         return this.matchedColumnsAhead[column];
     }
 
+    /**
+     * Returns whether a row has passed cells and no failed cells, in which case it can be hidden.
+     *
+     * @param rowIndex the index of the row in <tt>getComparedRows()</tt>
+     */
+    protected boolean isMatchedRow(int rowIndex)
+    {
+        boolean passed = false;
+        for (ResultCell cell : this.getComparedRows().get(rowIndex))
+        {
+            if (ResultCell.IS_FAILED_CELL.accept(cell))
+            {
+                return false;
+            }
+            passed |= ResultCell.IS_PASSED_CELL.accept(cell);
+        }
+        return passed;
+    }
+
+    /**
+     * Returns the number of consecutive rows, starting at the given one, that are matched as defined by
+     * <tt>isMatchedRow</tt>. Subclasses keeping runs of matched rows can return a whole run so that it is skipped at once
+     * when matched rows are hidden.
+     *
+     * @param rowIndex the index of the row in <tt>getComparedRows()</tt>
+     * @return the number of matched rows from the given row on, at least one if the row is matched
+     */
+    protected int getMatchedRowsFrom(int rowIndex)
+    {
+        return this.isMatchedRow(rowIndex) ? 1 : 0;
+    }
+
     @Override
     public void appendTo(String testName, String tableName, Element table, HtmlOptions htmlOptions)
     {
         List<List<ResultCell>> results = this.getComparedRows();
         HtmlFormatterUtils.appendHeaderRow(table, this, htmlOptions);
+        if (this.partialMatchTruncated)
+        {
+            HtmlFormatterUtils.appendPartialMatchTruncatedRow(table, this.getHeaders().size());
+        }
 
         int matchedRows = 0;
         int dataRowIndex = 1;
         int rowsAppended = 0;
         while (dataRowIndex < results.size() && rowsAppended < htmlOptions.getHtmlRowLimit())
         {
-            List<ResultCell> row = results.get(dataRowIndex);
             if (htmlOptions.isHideMatchedRowsFor(tableName))
             {
-                int failedCount = Iterate.count(row, ResultCell.IS_FAILED_CELL);
-                int passedCount = Iterate.count(row, ResultCell.IS_PASSED_CELL);
-                if (failedCount == 0 && passedCount > 0)
+                int matchedRowsFrom = this.getMatchedRowsFrom(dataRowIndex);
+                if (matchedRowsFrom > 0)
                 {
-                    matchedRows++;
+                    matchedRows += matchedRowsFrom;
+                    dataRowIndex += matchedRowsFrom;
+                    continue;
                 }
-                else
+                if (matchedRows > 0)
                 {
-                    if (matchedRows > 0)
-                    {
-                        HtmlFormatterUtils.appendMultiMatchedRow(table, this.getHeaders().size(), matchedRows);
-                        rowsAppended++;
-                    }
-                    matchedRows = 0;
-                    if (rowsAppended >= htmlOptions.getHtmlRowLimit())
-                    {
-                        break;
-                    }
-                    HtmlFormatterUtils.appendDataRow(table, this, null, null, row, htmlOptions);
+                    HtmlFormatterUtils.appendMultiMatchedRow(table, this.getHeaders().size(), matchedRows);
                     rowsAppended++;
                 }
+                matchedRows = 0;
+                if (rowsAppended >= htmlOptions.getHtmlRowLimit())
+                {
+                    break;
+                }
+                HtmlFormatterUtils.appendDataRow(table, this, null, null, results.get(dataRowIndex), htmlOptions);
+                rowsAppended++;
             }
             else
             {
-                HtmlFormatterUtils.appendDataRow(table, this, null, null, row, htmlOptions);
+                HtmlFormatterUtils.appendDataRow(table, this, null, null, results.get(dataRowIndex), htmlOptions);
                 rowsAppended++;
             }
             dataRowIndex++;
@@ -178,4 +318,154 @@ public class ResultTable implements FormattableTable
             tr.appendChild(td);
         }
     }
+
+    /**
+     * The rows of several result tables, kept as runs of consecutive rows of one of them.
+     */
+    private static final class MergedResultTable extends ResultTable
+    {
+        private final List<ResultTable> resultTables;
+        private final List<ResultCell> headers;
+        private int rowCount;
+        private int runCount;
+        private int[] runStarts = new int[16];
+        private int[] runSources = new int[16];
+        private int[] runSourceRows = new int[16];
+
+        private MergedResultTable(List<ResultTable> resultTables, List<ResultCell> headers, boolean[] matchedColumns, int totalCellCount, int passedCellCount, boolean partialMatchTruncated)
+        {
+            super(matchedColumns, totalCellCount, passedCellCount, partialMatchTruncated);
+            this.resultTables = resultTables;
+            this.headers = headers;
+        }
+
+        /**
+         * Appends consecutive rows of one of the results, extending the last run if they follow on from it.
+         */
+        private void addRows(int source, int sourceRow, int count)
+        {
+            if (count == 0)
+            {
+                return;
+            }
+            int last = this.runCount - 1;
+            if (last < 0 || this.runSources[last] != source || this.runSourceRows[last] + this.rowCount - this.runStarts[last] != sourceRow)
+            {
+                if (this.runCount == this.runStarts.length)
+                {
+                    int capacity = this.runCount * 2;
+                    this.runStarts = Arrays.copyOf(this.runStarts, capacity);
+                    this.runSources = Arrays.copyOf(this.runSources, capacity);
+                    this.runSourceRows = Arrays.copyOf(this.runSourceRows, capacity);
+                }
+                this.runStarts[this.runCount] = this.rowCount;
+                this.runSources[this.runCount] = source;
+                this.runSourceRows[this.runCount] = sourceRow;
+                this.runCount++;
+            }
+            this.rowCount += count;
+        }
+
+        private int findRun(int row)
+        {
+            int low = 0;
+            int high = this.runCount - 1;
+            while (low < high)
+            {
+                int mid = (low + high + 1) >>> 1;
+                if (this.runStarts[mid] <= row)
+                {
+                    low = mid;
+                }
+                else
+                {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+
+        private int runEnd(int run)
+        {
+            return run + 1 < this.runCount ? this.runStarts[run + 1] : this.rowCount;
+        }
+
+        /**
+         * Returns the index of a row of this table in <tt>getComparedRows()</tt> of the results it comes from.
+         */
+        private int sourceRowIndex(int run, int row)
+        {
+            return this.runSourceRows[run] + row - this.runStarts[run] + 1;
+        }
+
+        @Override
+        public List<List<ResultCell>> getComparedRows()
+        {
+            return new Rows();
+        }
+
+        @Override
+        public List<ResultCell> getHeaders()
+        {
+            return this.headers;
+        }
+
+        @Override
+        protected boolean isMatchedRow(int rowIndex)
+        {
+            if (rowIndex == 0)
+            {
+                return super.isMatchedRow(rowIndex);
+            }
+            int run = this.findRun(rowIndex - 1);
+            return this.resultTables.get(this.runSources[run]).isMatchedRow(this.sourceRowIndex(run, rowIndex - 1));
+        }
+
+        @Override
+        protected int getMatchedRowsFrom(int rowIndex)
+        {
+            if (rowIndex == 0)
+            {
+                return super.getMatchedRowsFrom(rowIndex);
+            }
+            int row = rowIndex - 1;
+            int run = this.findRun(row);
+            while (run < this.runCount)
+            {
+                int runEnd = this.runEnd(run);
+                int matchedRows = this.resultTables.get(this.runSources[run]).getMatchedRowsFrom(this.sourceRowIndex(run, row));
+                row += Math.min(matchedRows, runEnd - row);
+                if (row < runEnd)
+                {
+                    break;
+                }
+                run++;
+            }
+            return row - (rowIndex - 1);
+        }
+
+        private final class Rows extends AbstractList<List<ResultCell>> implements RandomAccess
+        {
+            @Override
+            public List<ResultCell> get(int index)
+            {
+                if (index < 0 || index > MergedResultTable.this.rowCount)
+                {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size());
+                }
+                if (index == 0)
+                {
+                    return MergedResultTable.this.headers;
+                }
+                int run = MergedResultTable.this.findRun(index - 1);
+                return MergedResultTable.this.resultTables.get(MergedResultTable.this.runSources[run]).getComparedRows().get(MergedResultTable.this.sourceRowIndex(run, index - 1));
+            }
+
+            @Override
+            public int size()
+            {
+                return MergedResultTable.this.rowCount + 1;
+            }
+        }
+    }
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare;
+
+/**
+ * The portable implementation of {@link DoubleColumnKernel}, also used for the elements a vectorised kernel leaves
+ * over.
+ */
+final class ScalarDoubleColumnKernel
+{
+    private ScalarDoubleColumnKernel()
+    {
+    }
+
+    /**
+     * Marks the mismatches of elements <tt>from</tt> (inclusive) to <tt>to</tt> (exclusive) of two blocks.
+     */
+    static void markMismatches(double[] rhs, int rhsFrom, double[] lhs, int lhsFrom, int from, int to, double tolerance, long[] mismatches)
+    {
+        for (int i = from; i < to; i++)
+        {
+            double rhsValue = rhs[rhsFrom + i];
+            double lhsValue = lhs[lhsFrom + i];
+            if (!(rhsValue == lhsValue || rhsValue != rhsValue && lhsValue != lhsValue || Math.abs(lhsValue - rhsValue) <= tolerance))
+            {
+                mismatches[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+}
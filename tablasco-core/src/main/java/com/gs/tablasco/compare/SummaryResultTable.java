@@ -38,6 +38,7 @@ public class SummaryResultTable implements FormattableTable, Serializable
     private int passedCellCount;
     private int totalCellCount;
     private List<ResultCell> headers;
+    private boolean partialMatchTruncated;
 
     public SummaryResultTable() {}
 
@@ -46,6 +47,7 @@ public class SummaryResultTable implements FormattableTable, Serializable
         this.headers = resultTable.getHeaders();
         this.passedCellCount += resultTable.getPassedCellCount();
         this.totalCellCount += resultTable.getTotalCellCount();
+        this.partialMatchTruncated = resultTable.isPartialMatchTruncated();
         List<List<ResultCell>> comparedRows = resultTable.getComparedRows();
         for (int i = 1; i < comparedRows.size(); i++)
         {
@@ -67,6 +69,7 @@ public class SummaryResultTable implements FormattableTable, Serializable
         }
         this.passedCellCount += resultTable.getPassedCellCount();
         this.totalCellCount += resultTable.getTotalCellCount();
+        this.partialMatchTruncated |= resultTable.isPartialMatchTruncated();
 
         for (Map.Entry<String, SummaryResult> entry : resultTable.getResultsByKey().entrySet())
         {
@@ -108,6 +111,11 @@ public class SummaryResultTable implements FormattableTable, Serializable
         return this.totalCellCount;
     }
 
+    public boolean isPartialMatchTruncated()
+    {
+        return this.partialMatchTruncated;
+    }
+
     public Map<String, SummaryResult> getResultsByKey()
     {
         return this.resultsByKey;
@@ -170,6 +178,10 @@ public class SummaryResultTable implements FormattableTable, Serializable
     public void appendTo(final String testName, final String tableName, final Element table, final HtmlOptions htmlOptions)
     {
         HtmlFormatterUtils.appendHeaderRow(table, this, htmlOptions);
+        if (this.partialMatchTruncated)
+        {
+            HtmlFormatterUtils.appendPartialMatchTruncatedRow(table, this.headers.size());
+        }
         Iterate.forEachWithIndex(this.getResultsByKey().keySet(), (ObjectIntProcedure<String>) (key, index) ->
         {
             SummaryResult summaryResult = getResultsByKey().get(key);
@@ -23,18 +23,28 @@ public class ToleranceCellComparator extends CellComparator
         super(formatter);
     }
 
+    @Override
+    public ToleranceCellComparator copy()
+    {
+        return new ToleranceCellComparator(this.getFormatter().copy());
+    }
+
     @Override
     public boolean compare(Object rhs, Object lhs)
     {
         if (isFloatingPoint(lhs) && isFloatingPoint(rhs))
         {
-            double rhsVal = ((Number) rhs).doubleValue();
-            double lhsVal = ((Number) lhs).doubleValue();
-            return Double.compare(lhsVal, rhsVal) == 0 || Math.abs(lhsVal - rhsVal) <= getFormatter().getTolerance();
+            return this.compareDoubles(((Number) rhs).doubleValue(), ((Number) lhs).doubleValue());
         }
         return false;
     }
 
+    @Override
+    public boolean compareDoubles(double rhs, double lhs)
+    {
+        return Double.compare(lhs, rhs) == 0 || Math.abs(lhs - rhs) <= getFormatter().getTolerance();
+    }
+
     public static double getDifference(Object rhs, Object lhs)
     {
         return ((Number) lhs).doubleValue() - ((Number) rhs).doubleValue();
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare;
+
+import com.gs.tablasco.ComparableTable;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Date;
+
+/**
+ * A comparator bound to the type of the values of one column, as inferred from a sample of both tables. Values of
+ * that type are compared by a kernel specialised for it, which gives the same result as the configured comparator
+ * without formatting the values where possible; any other values, e.g. nulls or rows that do not match the sample,
+ * are compared by the configured comparator itself.
+ */
+public abstract class TypedCellComparator extends CellComparator
+{
+    private static final int SAMPLE_SIZE = 64;
+
+    private final CellComparator delegate;
+    private final Class<?> type;
+
+    private TypedCellComparator(CellComparator delegate, Class<?> type)
+    {
+        super(delegate.getFormatter());
+        this.delegate = delegate;
+        this.type = type;
+    }
+
+    /**
+     * Returns a comparator specialised for the type of a column of two tables, or the comparator itself if the
+     * column's values are of mixed or unsupported types or if the comparator is not one of the built-in ones.
+     */
+    public static CellComparator specialize(CellComparator comparator, ComparableTable rhsData, int rhsColumnIndex, ComparableTable lhsData, int lhsColumnIndex)
+    {
+        if (comparator.getClass() != ToleranceCellComparator.class && comparator.getClass() != VarianceCellComparator.class)
+        {
+            return comparator;
+        }
+        Class<?> type = sampleType(rhsData, rhsColumnIndex);
+        if (type == null || type != sampleType(lhsData, lhsColumnIndex))
+        {
+            return comparator;
+        }
+        return bind(comparator, type);
+    }
+
+    private static CellComparator bind(CellComparator comparator, Class<?> type)
+    {
+        if (type == Double.class)
+        {
+            return new DoubleComparator(comparator);
+        }
+        if (type == Long.class || type == Integer.class)
+        {
+            return new IntegralComparator(comparator, type);
+        }
+        if (type == BigDecimal.class)
+        {
+            return new DecimalComparator(comparator);
+        }
+        if (type == String.class)
+        {
+            return new StringComparator(comparator);
+        }
+        if (type == LocalDate.class || type == LocalDateTime.class || Date.class.isAssignableFrom(type))
+        {
+            return new TemporalComparator(comparator, type);
+        }
+        return comparator;
+    }
+
+    /**
+     * Returns the class shared by the non-null values of evenly spaced rows of a column, or <tt>null</tt> if they
+     * differ or are all null.
+     */
+    private static Class<?> sampleType(ComparableTable table, int columnIndex)
+    {
+        int rowCount = table.getRowCount();
+        int step = Math.max(1, rowCount / SAMPLE_SIZE);
+        Class<?> type = null;
+        for (int rowIndex = 0; rowIndex < rowCount; rowIndex += step)
+        {
+            Object value = table.getValueAt(rowIndex, columnIndex);
+            if (value != null)
+            {
+                if (type == null)
+                {
+                    type = value.getClass();
+                }
+                else if (type != value.getClass())
+                {
+                    return null;
+                }
+            }
+        }
+        return type;
+    }
+
+    public Class<?> getType()
+    {
+        return this.type;
+    }
+
+    public CellComparator getDelegate()
+    {
+        return this.delegate;
+    }
+
+    @Override
+    public CellComparator copy()
+    {
+        return bind(this.delegate.copy(), this.type);
+    }
+
+    @Override
+    protected boolean compare(Object rhs, Object lhs)
+    {
+        return this.delegate.compare(rhs, lhs);
+    }
+
+    @Override
+    public boolean compareDoubles(double rhs, double lhs)
+    {
+        return this.delegate.compareDoubles(rhs, lhs);
+    }
+
+    @Override
+    public boolean equals(Object rhs, Object lhs)
+    {
+        if (rhs != null && lhs != null && rhs.getClass() == this.type && lhs.getClass() == this.type)
+        {
+            return this.equalValues(rhs, lhs);
+        }
+        return this.delegate.equals(rhs, lhs);
+    }
+
+    /**
+     * Equivalent to <tt>equals(rhs, lhs)</tt> for two non-null values of this comparator's type.
+     */
+    protected abstract boolean equalValues(Object rhs, Object lhs);
+
+    private static final class DoubleComparator extends TypedCellComparator
+    {
+        private DoubleComparator(CellComparator delegate)
+        {
+            super(delegate, Double.class);
+        }
+
+        @Override
+        protected boolean equalValues(Object rhs, Object lhs)
+        {
+            return this.equalsDoubles((Double) rhs, (Double) lhs);
+        }
+    }
+
+    private static final class IntegralComparator extends TypedCellComparator
+    {
+        private IntegralComparator(CellComparator delegate, Class<?> type)
+        {
+            super(delegate, type);
+        }
+
+        @Override
+        protected boolean equalValues(Object rhs, Object lhs)
+        {
+            // the built-in comparators only tolerate floating point values
+            return this.getFormatter().formatEqually(((Number) rhs).longValue(), ((Number) lhs).longValue());
+        }
+    }
+
+    private static final class DecimalComparator extends TypedCellComparator
+    {
+        private DecimalComparator(CellComparator delegate)
+        {
+            super(delegate, BigDecimal.class);
+        }
+
+        @Override
+        protected boolean equalValues(Object rhs, Object lhs)
+        {
+            return this.getFormatter().formatEqually((BigDecimal) rhs, (BigDecimal) lhs);
+        }
+    }
+
+    private static final class StringComparator extends TypedCellComparator
+    {
+        private StringComparator(CellComparator delegate)
+        {
+            super(delegate, String.class);
+        }
+
+        @Override
+        protected boolean equalValues(Object rhs, Object lhs)
+        {
+            return this.getFormatter().formatEqually((String) rhs, (String) lhs);
+        }
+    }
+
+    /**
+     * Temporal values are formatted to the second, so values within the same second are equal without formatting
+     * them.
+     */
+    private static final class TemporalComparator extends TypedCellComparator
+    {
+        private TemporalComparator(CellComparator delegate, Class<?> type)
+        {
+            super(delegate, type);
+        }
+
+        @Override
+        protected boolean equalValues(Object rhs, Object lhs)
+        {
+            return epochSecond(rhs) == epochSecond(lhs) || this.getDelegate().equals(rhs, lhs);
+        }
+
+        private static long epochSecond(Object value)
+        {
+            if (value instanceof LocalDate)
+            {
+                return ((LocalDate) value).toEpochDay() * 86400L;
+            }
+            if (value instanceof LocalDateTime)
+            {
+                return ((LocalDateTime) value).toEpochSecond(ZoneOffset.UTC);
+            }
+            return Math.floorDiv(((Date) value).getTime(), 1000L);
+        }
+    }
+}
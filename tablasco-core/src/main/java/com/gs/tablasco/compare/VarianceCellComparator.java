@@ -27,21 +27,35 @@ public class VarianceCellComparator extends CellComparator
         this.varianceThreshold = varianceThreshold;
     }
 
+    @Override
+    public VarianceCellComparator copy()
+    {
+        return new VarianceCellComparator(this.getFormatter().copy(), this.varianceThreshold);
+    }
+
     @Override
     public boolean compare(Object rhs, Object lhs)
     {
         if (isFloatingPoint(lhs) && isFloatingPoint(rhs))
         {
-            double variance = getVariance(rhs, lhs);
-            return Math.abs(variance) <= this.varianceThreshold;
+            return this.compareDoubles(((Number) rhs).doubleValue(), ((Number) lhs).doubleValue());
         }
         return false;
     }
 
+    @Override
+    public boolean compareDoubles(double rhs, double lhs)
+    {
+        return Math.abs(getVariance(rhs, lhs)) <= this.varianceThreshold;
+    }
+
     public static double getVariance(Object rhs, Object lhs)
     {
-        double number1 = ((Number) rhs).doubleValue();
-        double number2 = ((Number) lhs).doubleValue();
+        return getVariance(((Number) rhs).doubleValue(), ((Number) lhs).doubleValue());
+    }
+
+    private static double getVariance(double number1, double number2)
+    {
         return (number1 - number2) * 100.0d / number2;
     }
 }
@@ -19,6 +19,8 @@ package com.gs.tablasco.compare.indexmap;
 import com.gs.tablasco.ComparableTable;
 import com.gs.tablasco.compare.CellComparator;
 import com.gs.tablasco.compare.ColumnComparators;
+import com.gs.tablasco.compare.ComparisonMetrics;
+import com.gs.tablasco.compare.ComparisonPhase;
 import org.eclipse.collections.api.block.function.Function;
 import org.eclipse.collections.api.list.MutableList;
 import org.eclipse.collections.api.multimap.list.MutableListMultimap;
@@ -42,58 +44,105 @@ public class AdaptivePartialMatcher implements PartialMatcher
     private final ComparableTable lhsData;
     private final ColumnComparators columnComparators;
     private final long bestMatchThreshold;
+    private final int parallelism;
+    private final int candidateLimit;
+    private final ComparisonPlan plan;
+    private final ComparisonMetrics metrics;
 
     public AdaptivePartialMatcher(ComparableTable rhsData, ComparableTable lhsData, ColumnComparators columnComparators, int bestMatchThreshold)
+    {
+        this(rhsData, lhsData, columnComparators, bestMatchThreshold, 1);
+    }
+
+    public AdaptivePartialMatcher(ComparableTable rhsData, ComparableTable lhsData, ColumnComparators columnComparators, int bestMatchThreshold, int parallelism)
+    {
+        this(rhsData, lhsData, columnComparators, bestMatchThreshold, parallelism, 0);
+    }
+
+    public AdaptivePartialMatcher(ComparableTable rhsData, ComparableTable lhsData, ColumnComparators columnComparators, int bestMatchThreshold, int parallelism, int candidateLimit)
     {
         this.rhsData = rhsData;
         this.lhsData = lhsData;
         this.columnComparators = columnComparators;
         this.bestMatchThreshold = (long) bestMatchThreshold;
+        this.parallelism = parallelism;
+        this.candidateLimit = candidateLimit;
+        this.plan = null;
+        this.metrics = ComparisonMetrics.NONE;
+    }
+
+    AdaptivePartialMatcher(ComparableTable rhsData, ComparableTable lhsData, ComparisonPlan plan, int bestMatchThreshold, int parallelism, int candidateLimit, ComparisonMetrics metrics)
+    {
+        this.rhsData = rhsData;
+        this.lhsData = lhsData;
+        this.columnComparators = null;
+        this.bestMatchThreshold = (long) bestMatchThreshold;
+        this.parallelism = parallelism;
+        this.candidateLimit = candidateLimit;
+        this.plan = plan;
+        this.metrics = metrics;
     }
 
     @Override
     public void match(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> matchedColumns)
     {
-        this.groupAndMatch(allMissingRows, allSurplusRows, matchedColumns, null, 0);
+        this.match(allMissingRows, allSurplusRows, matchedColumns, new CancellationToken());
+    }
+
+    @Override
+    public void match(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> matchedColumns, CancellationToken cancellationToken)
+    {
+        ComparisonPlan plan = this.plan == null ? ComparisonPlan.compile(matchedColumns, this.rhsData, this.lhsData, this.columnComparators) : this.plan;
+        this.groupAndMatch(allMissingRows, allSurplusRows, matchedColumns, plan, null, 0, cancellationToken);
     }
 
-    private void groupAndMatch(MutableList<UnmatchedIndexMap> missingRows, MutableList<UnmatchedIndexMap> surplusRows, MutableList<IndexMap> matchedColumns, MutableList<IndexMap> columnsOrderedBySelectivity, int columnIndex)
+    private void groupAndMatch(MutableList<UnmatchedIndexMap> missingRows, MutableList<UnmatchedIndexMap> surplusRows, MutableList<IndexMap> matchedColumns, ComparisonPlan plan, MutableList<IndexMap> columnsOrderedBySelectivity, int columnIndex, CancellationToken cancellationToken)
     {
+        cancellationToken.checkCancelled();
         if ((long) missingRows.size() * (long) surplusRows.size() <= this.bestMatchThreshold)
         {
             LOGGER.debug("Matching {} missing and {} surplus rows using best-match algorithm", missingRows.size(), surplusRows.size());
-            new BestMatchPartialMatcher(this.rhsData, this.lhsData, this.columnComparators).match(missingRows, surplusRows, matchedColumns);
+            this.bestMatch(missingRows, surplusRows, matchedColumns, plan, cancellationToken);
             return;
         }
+        ComparisonMetrics.Timer timer = this.metrics.start(ComparisonPhase.ADAPTIVE_GROUPING);
         MutableList<IndexMap> initializedColumnsOrderedBySelectivity = columnsOrderedBySelectivity;
         if (columnIndex == 0)
         {
-            initializedColumnsOrderedBySelectivity = getColumnsOrderedBySelectivity(missingRows, surplusRows, matchedColumns);
+            initializedColumnsOrderedBySelectivity = getColumnsOrderedBySelectivity(missingRows, surplusRows, matchedColumns, plan);
         }
         if (columnIndex >= initializedColumnsOrderedBySelectivity.size())
         {
+            timer.stop();
             LOGGER.info("Matching remaining {} missing and {} surplus rows using best-match algorithm", missingRows.size(), surplusRows.size());
-            new BestMatchPartialMatcher(this.rhsData, this.lhsData, this.columnComparators).match(missingRows, surplusRows, matchedColumns);
+            this.bestMatch(missingRows, surplusRows, matchedColumns, plan, cancellationToken);
             return;
         }
         IndexMap column = initializedColumnsOrderedBySelectivity.get(columnIndex);
         LOGGER.info("Grouping by '{}' column", this.rhsData.getColumnName(column.getRhsIndex()));
-        CellComparator lhsComparator = this.columnComparators.getComparator(lhsData.getColumnName(column.getLhsIndex()));
-        MutableListMultimap<String, UnmatchedIndexMap> missingRowsByColumn = missingRows.groupBy(Functions.chain(lhsValueFunction(column), lhsComparator.getFormatter()));
-        CellComparator rhsComparator = this.columnComparators.getComparator(rhsData.getColumnName(column.getRhsIndex()));
-        MutableListMultimap<String, UnmatchedIndexMap> surplusRowsByColumn = surplusRows.groupBy(Functions.chain(rhsValueFunction(column), rhsComparator.getFormatter()));
-        for (String key : missingRowsByColumn.keysView())
+        this.metrics.addGroupingColumn(this.rhsData.getColumnName(column.getRhsIndex()));
+        int position = plan.positionOf(column);
+        MutableListMultimap<String, UnmatchedIndexMap> missingRowsByColumn = missingRows.groupBy(Functions.chain(lhsValueFunction(column), plan.getLhsFormatter(position)));
+        MutableListMultimap<String, UnmatchedIndexMap> surplusRowsByColumn = surplusRows.groupBy(Functions.chain(rhsValueFunction(column), plan.getRhsFormatter(position)));
+        // groups are independent, so matching the smallest first only changes how many are matched if cancelled
+        MutableList<String> keys = missingRowsByColumn.keysView()
+                .select(surplusRowsByColumn::containsKey)
+                .toSortedListBy(key -> (long) missingRowsByColumn.get(key).size() * (long) surplusRowsByColumn.get(key).size());
+        timer.stop();
+        for (String key : keys)
         {
             LOGGER.debug("Matching '{}'", key);
-            MutableList<UnmatchedIndexMap> missingByKey = missingRowsByColumn.get(key);
-            MutableList<UnmatchedIndexMap> surplusByKey = surplusRowsByColumn.get(key);
-            if (surplusByKey != null)
-            {
-                groupAndMatch(missingByKey, surplusByKey, matchedColumns, initializedColumnsOrderedBySelectivity, columnIndex + 1);
-            }
+            groupAndMatch(missingRowsByColumn.get(key), surplusRowsByColumn.get(key), matchedColumns, plan, initializedColumnsOrderedBySelectivity, columnIndex + 1, cancellationToken);
         }
     }
 
+    private void bestMatch(MutableList<UnmatchedIndexMap> missingRows, MutableList<UnmatchedIndexMap> surplusRows, MutableList<IndexMap> matchedColumns, ComparisonPlan plan, CancellationToken cancellationToken)
+    {
+        ComparisonMetrics.Timer timer = this.metrics.start(ComparisonPhase.BEST_MATCH);
+        new BestMatchPartialMatcher(this.rhsData, this.lhsData, plan, this.parallelism, this.candidateLimit).match(missingRows, surplusRows, matchedColumns, cancellationToken);
+        timer.stop();
+    }
+
     private Function<UnmatchedIndexMap, Object> rhsValueFunction(final IndexMap column)
     {
         return object -> AdaptivePartialMatcher.this.rhsData.getValueAt(object.getRhsIndex(), column.getRhsIndex());
@@ -104,16 +153,15 @@ public class AdaptivePartialMatcher implements PartialMatcher
         return object -> AdaptivePartialMatcher.this.lhsData.getValueAt(object.getLhsIndex(), column.getLhsIndex());
     }
 
-    private MutableList<IndexMap> getColumnsOrderedBySelectivity(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> columnIndices)
+    private MutableList<IndexMap> getColumnsOrderedBySelectivity(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> columnIndices, ComparisonPlan plan)
     {
         LOGGER.info("Calculating column selectivity");
         MutableList<Pair<IndexMap, Integer>> columnSelectivities = Lists.mutable.of();
         for (IndexMap column : columnIndices)
         {
-            CellComparator lhsComparator = this.columnComparators.getComparator(lhsData.getColumnName(column.getLhsIndex()));
-            Set<String> lhsValues = getColumnValues(allMissingRows, Functions.chain(lhsValueFunction(column), lhsComparator.getFormatter()));
-            CellComparator rhsComparator = this.columnComparators.getComparator(rhsData.getColumnName(column.getRhsIndex()));
-            Set<String> rhsValues = getColumnValues(allSurplusRows, Functions.chain(rhsValueFunction(column), rhsComparator.getFormatter()));
+            int position = plan.positionOf(column);
+            Set<String> lhsValues = getColumnValues(allMissingRows, Functions.chain(lhsValueFunction(column), plan.getLhsFormatter(position)));
+            Set<String> rhsValues = getColumnValues(allSurplusRows, Functions.chain(rhsValueFunction(column), plan.getRhsFormatter(position)));
             rhsValues.retainAll(lhsValues);
             int selectivity = rhsValues.size();
             if (selectivity > 0)
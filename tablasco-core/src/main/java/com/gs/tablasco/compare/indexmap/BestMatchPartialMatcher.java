@@ -18,48 +18,265 @@ package com.gs.tablasco.compare.indexmap;
 
 import com.gs.tablasco.ComparableTable;
 import com.gs.tablasco.compare.CellComparator;
+import com.gs.tablasco.compare.CellFormatter;
 import com.gs.tablasco.compare.ColumnComparators;
+import com.gs.tablasco.compare.ColumnarComparableTable;
 import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.eclipse.collections.impl.map.mutable.primitive.ObjectIntHashMap;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 public class BestMatchPartialMatcher implements PartialMatcher
 {
+    private static final long MIN_PAIRS_PER_TASK = 100000L;
+
     private final ComparableTable rhsData;
     private final ComparableTable lhsData;
     private final ColumnComparators columnComparators;
+    private final int parallelism;
+    private final int candidateLimit;
+    private final ComparisonPlan plan;
 
     public BestMatchPartialMatcher(ComparableTable rhsData, ComparableTable lhsData, ColumnComparators columnComparators)
+    {
+        this(rhsData, lhsData, columnComparators, 1);
+    }
+
+    /**
+     * @param parallelism number of threads scoring chunks of missing rows; results do not depend on it
+     */
+    public BestMatchPartialMatcher(ComparableTable rhsData, ComparableTable lhsData, ColumnComparators columnComparators, int parallelism)
+    {
+        this(rhsData, lhsData, columnComparators, parallelism, 0);
+    }
+
+    /**
+     * @param parallelism    number of threads scoring chunks of missing rows; results do not depend on it
+     * @param candidateLimit maximum number of best scoring surplus rows considered for each missing row, zero or less
+     *                       for no limit; a missing row whose candidates all match other rows is left unmatched
+     */
+    public BestMatchPartialMatcher(ComparableTable rhsData, ComparableTable lhsData, ColumnComparators columnComparators, int parallelism, int candidateLimit)
     {
         this.rhsData = rhsData;
         this.lhsData = lhsData;
         this.columnComparators = columnComparators;
+        this.parallelism = parallelism;
+        this.candidateLimit = candidateLimit;
+        this.plan = null;
+    }
+
+    BestMatchPartialMatcher(ComparableTable rhsData, ComparableTable lhsData, ComparisonPlan plan, int parallelism, int candidateLimit)
+    {
+        this.rhsData = rhsData;
+        this.lhsData = lhsData;
+        this.columnComparators = null;
+        this.parallelism = parallelism;
+        this.candidateLimit = candidateLimit;
+        this.plan = plan;
     }
 
     @Override
     public void match(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> matchedColumns)
     {
-        for (UnmatchedIndexMap lhs : allMissingRows)
+        this.match(allMissingRows, allSurplusRows, matchedColumns, new CancellationToken());
+    }
+
+    @Override
+    public void match(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> matchedColumns, CancellationToken cancellationToken)
+    {
+        CellComparator[] comparators = this.plan == null ? this.getLhsComparators(matchedColumns) : this.plan.getLhsComparators(matchedColumns);
+        int[] weights = new int[matchedColumns.size()];
+        MutableList<ObjectIntHashMap<String>> dictionaries = FastList.newList(comparators.length);
+        for (int colIndex = 0; colIndex < comparators.length; colIndex++)
+        {
+            int inverseColumnNumber = comparators.length - colIndex;
+            weights[colIndex] = inverseColumnNumber * inverseColumnNumber;
+            dictionaries.add(new ObjectIntHashMap<>());
+        }
+        MutableList<UnmatchedIndexMap> rankedSurplusRows = allSurplusRows.toSortedListBy(IndexMap::getRhsIndex);
+        Fingerprints missing = new Fingerprints(this.lhsData, allMissingRows, matchedColumns, comparators, dictionaries, true);
+        Fingerprints surplus = new Fingerprints(this.rhsData, rankedSurplusRows, matchedColumns, comparators, dictionaries, false);
+        Scorer scorer = new Scorer(comparators, weights, missing, surplus, this.candidateLimit, cancellationToken);
+
+        long pairCount = (long) allMissingRows.size() * (long) allSurplusRows.size();
+        int taskCount = (int) Math.min(4L * this.parallelism, Math.min(allMissingRows.size(), pairCount / MIN_PAIRS_PER_TASK));
+        PartialMatchCandidates candidates = this.parallelism > 1 && taskCount > 1
+                ? this.scoreInParallel(allMissingRows, scorer, taskCount)
+                : scorer.score(0, allMissingRows.size());
+        // if cancelled, the rows scored until then are still linked before giving up
+        candidates.link(allMissingRows, rankedSurplusRows);
+        cancellationToken.checkCancelled();
+    }
+
+    private CellComparator[] getLhsComparators(MutableList<IndexMap> matchedColumns)
+    {
+        CellComparator[] comparators = new CellComparator[matchedColumns.size()];
+        for (int colIndex = 0; colIndex < comparators.length; colIndex++)
         {
-            for (UnmatchedIndexMap rhs : allSurplusRows)
+            comparators[colIndex] = this.columnComparators.getComparator(this.lhsData.getColumnName(matchedColumns.get(colIndex).getLhsIndex()));
+        }
+        return comparators;
+    }
+
+    /**
+     * Scores chunks of missing rows concurrently, then joins the candidate matches in chunk order so that the outcome
+     * is the same as scoring on a single thread. If cancelled, chunks are joined up to the first one left incomplete,
+     * so that the candidates are those of the leading rows scored.
+     */
+    private PartialMatchCandidates scoreInParallel(MutableList<UnmatchedIndexMap> allMissingRows, Scorer scorer, int taskCount)
+    {
+        List<Callable<PartialMatchCandidates>> tasks = FastList.newList(taskCount);
+        for (int task = 0; task < taskCount; task++)
+        {
+            int from = (int) ((long) allMissingRows.size() * task / taskCount);
+            int to = (int) ((long) allMissingRows.size() * (task + 1) / taskCount);
+            tasks.add(() -> scorer.score(from, to));
+        }
+        try
+        {
+            List<PartialMatchCandidates> ranges = FastList.newList(taskCount);
+            for (Future<PartialMatchCandidates> range : ForkJoinPools.get(this.parallelism).invokeAll(tasks))
             {
-                int matchScore = 0;
-                for (int colIndex = 0; colIndex < matchedColumns.size(); colIndex++)
+                PartialMatchCandidates candidates = range.get();
+                ranges.add(candidates);
+                if (!candidates.isComplete())
                 {
-                    IndexMap column = matchedColumns.get(colIndex);
-                    Object lhsValue = this.lhsData.getValueAt(lhs.getLhsIndex(), column.getLhsIndex());
-                    Object rhsValue = this.rhsData.getValueAt(rhs.getRhsIndex(), column.getRhsIndex());
-                    CellComparator comparator = this.columnComparators.getComparator(lhsData.getColumnName(column.getLhsIndex()));
-                    if (comparator.equals(rhsValue, lhsValue))
+                    break;
+                }
+            }
+            return PartialMatchCandidates.concat(ranges);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * The matched columns of a set of rows, encoded row by row as integer codes of their formatted values. Codes of
+     * the same column are equal if and only if the formatted values are. Floating point values are also kept as
+     * doubles because the comparators may consider them equal despite different formatting. Columnar snapshots are
+     * read without boxing, and each distinct string of theirs is formatted and hashed once.
+     */
+    private static final class Fingerprints
+    {
+        private final int columnCount;
+        private final int[] codes;
+        private final double[] doubles;
+        private final boolean[] floatingPoint;
+
+        private Fingerprints(ComparableTable table, List<UnmatchedIndexMap> rows, List<IndexMap> columns, CellComparator[] comparators, List<ObjectIntHashMap<String>> dictionaries, boolean lhs)
+        {
+            this.columnCount = columns.size();
+            this.codes = new int[rows.size() * this.columnCount];
+            this.doubles = new double[this.codes.length];
+            this.floatingPoint = new boolean[this.codes.length];
+            for (int colIndex = 0; colIndex < this.columnCount; colIndex++)
+            {
+                IndexMap column = columns.get(colIndex);
+                CellFormatter formatter = comparators[colIndex].getFormatter();
+                ObjectIntHashMap<String> dictionary = dictionaries.get(colIndex);
+                int columnIndex = lhs ? column.getLhsIndex() : column.getRhsIndex();
+                ColumnarComparableTable columnar = table instanceof ColumnarComparableTable && ((ColumnarComparableTable) table).isTypedColumn(columnIndex)
+                        ? (ColumnarComparableTable) table
+                        : null;
+                boolean doubleColumn = columnar != null && columnar.isDoubleColumn(columnIndex);
+                for (int position = 0; position < rows.size(); position++)
+                {
+                    UnmatchedIndexMap row = rows.get(position);
+                    int rowIndex = lhs ? row.getLhsIndex() : row.getRhsIndex();
+                    int cell = position * this.columnCount + colIndex;
+                    if (columnar == null)
+                    {
+                        Object value = table.getValueAt(rowIndex, columnIndex);
+                        this.codes[cell] = dictionary.getIfAbsentPut(formatter.format(value), dictionary.size());
+                        if (CellComparator.isFloatingPoint(value))
+                        {
+                            this.floatingPoint[cell] = true;
+                            this.doubles[cell] = ((Number) value).doubleValue();
+                        }
+                    }
+                    else
                     {
-                        int inverseColumnNumber = matchedColumns.size() - colIndex;
-                        matchScore += inverseColumnNumber * inverseColumnNumber;
+                        this.codes[cell] = dictionary.getIfAbsentPut(columnar.format(rowIndex, columnIndex, formatter), dictionary.size());
+                        if (doubleColumn && !columnar.isNull(rowIndex, columnIndex))
+                        {
+                            this.floatingPoint[cell] = true;
+                            this.doubles[cell] = columnar.getDouble(rowIndex, columnIndex);
+                        }
                     }
                 }
-                if (matchScore > 0)
+            }
+        }
+    }
+
+    private static final class Scorer
+    {
+        private final CellComparator[] comparators;
+        private final int[] weights;
+        private final Fingerprints missing;
+        private final Fingerprints surplus;
+        private final int candidateLimit;
+        private final CancellationToken cancellationToken;
+
+        private Scorer(CellComparator[] comparators, int[] weights, Fingerprints missing, Fingerprints surplus, int candidateLimit, CancellationToken cancellationToken)
+        {
+            this.comparators = comparators;
+            this.weights = weights;
+            this.missing = missing;
+            this.surplus = surplus;
+            this.candidateLimit = candidateLimit;
+            this.cancellationToken = cancellationToken;
+        }
+
+        /**
+         * Returns the surplus rows with a positive score against each of the given missing rows, up to the candidate
+         * limit. Cells match if their codes are equal or, for floating point values, if
+         * the comparator considers them equal; only the latter requires calling the comparator, which does not
+         * format (and is therefore thread-safe) when comparing doubles. Scoring stops early if cancelled, returning
+         * the candidates of the rows scored so far.
+         */
+        private PartialMatchCandidates score(int from, int to)
+        {
+            int columnCount = this.weights.length;
+            int surplusCount = this.surplus.codes.length / Math.max(1, columnCount);
+            PartialMatchCandidates candidates = new PartialMatchCandidates(to - from, this.candidateLimit);
+            for (int lhsPosition = from; lhsPosition < to && !this.cancellationToken.isCancelled(); lhsPosition++)
+            {
+                int lhsOffset = lhsPosition * columnCount;
+                for (int rhsPosition = 0; rhsPosition < surplusCount; rhsPosition++)
                 {
-                    lhs.addMatch(matchScore, rhs);
+                    int rhsOffset = rhsPosition * columnCount;
+                    int matchScore = 0;
+                    for (int colIndex = 0; colIndex < columnCount; colIndex++)
+                    {
+                        int lhsCell = lhsOffset + colIndex;
+                        int rhsCell = rhsOffset + colIndex;
+                        if (this.missing.codes[lhsCell] == this.surplus.codes[rhsCell]
+                                || this.missing.floatingPoint[lhsCell] && this.surplus.floatingPoint[rhsCell]
+                                && this.comparators[colIndex].compareDoubles(this.surplus.doubles[rhsCell], this.missing.doubles[lhsCell]))
+                        {
+                            matchScore += this.weights[colIndex];
+                        }
+                    }
+                    if (matchScore > 0)
+                    {
+                        candidates.add(matchScore, rhsPosition);
+                    }
                 }
+                candidates.endRow();
             }
+            return candidates;
         }
-        UnmatchedIndexMap.linkBestMatches(allMissingRows);
     }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare.indexmap;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Signals a partial matcher, possibly running on other threads, to give up. Matchers poll the token between rows or
+ * groups of rows, so they stop shortly after it is cancelled.
+ */
+public class CancellationToken
+{
+    private volatile boolean cancelled;
+
+    public void cancel()
+    {
+        this.cancelled = true;
+    }
+
+    public boolean isCancelled()
+    {
+        return this.cancelled;
+    }
+
+    /**
+     * @throws CancellationException if the token has been cancelled
+     */
+    public void checkCancelled()
+    {
+        if (this.cancelled)
+        {
+            throw new CancellationException("Partial match cancelled");
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare.indexmap;
+
+import com.gs.tablasco.ComparableTable;
+import com.gs.tablasco.compare.CellComparator;
+import com.gs.tablasco.compare.ColumnarComparableTable;
+import com.gs.tablasco.compare.DoubleColumnKernel;
+import com.gs.tablasco.compare.ToleranceCellComparator;
+import com.gs.tablasco.compare.TypedCellComparator;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.list.mutable.primitive.DoubleArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Matches rows by position between two columnar snapshots a block of rows at a time. The double columns compared with
+ * a tolerance are compared a whole block at once by {@link DoubleColumnKernel}, and only the rows it marks are
+ * compared cell by cell, as the kernel's mismatches may still be formatted identically. All other columns are
+ * compared cell by cell.
+ */
+final class ColumnarHappyPath
+{
+    private static final int BLOCK_SIZE = 1024;
+
+    private final CellComparator[] comparators;
+    private final MutableList<IndexMap> matchedColumns;
+    private final ColumnarComparableTable rhsData;
+    private final ColumnarComparableTable lhsData;
+    private final int[] kernelColumns;
+    private final double[] tolerances;
+    private final int[] otherColumns;
+    private final long[] mismatches = new long[BLOCK_SIZE >>> 6];
+
+    private ColumnarHappyPath(CellComparator[] comparators, MutableList<IndexMap> matchedColumns, ColumnarComparableTable rhsData, ColumnarComparableTable lhsData, int[] kernelColumns, double[] tolerances, int[] otherColumns)
+    {
+        this.comparators = comparators;
+        this.matchedColumns = matchedColumns;
+        this.rhsData = rhsData;
+        this.lhsData = lhsData;
+        this.kernelColumns = kernelColumns;
+        this.tolerances = tolerances;
+        this.otherColumns = otherColumns;
+    }
+
+    /**
+     * @return the happy path of two tables, or <tt>null</tt> if they are not both columnar snapshots with double
+     * columns compared with a tolerance
+     */
+    static ColumnarHappyPath of(CellComparator[] comparators, MutableList<IndexMap> matchedColumns, ComparableTable rhsData, ComparableTable lhsData)
+    {
+        if (!(rhsData instanceof ColumnarComparableTable) || !(lhsData instanceof ColumnarComparableTable))
+        {
+            return null;
+        }
+        ColumnarComparableTable rhsColumns = (ColumnarComparableTable) rhsData;
+        ColumnarComparableTable lhsColumns = (ColumnarComparableTable) lhsData;
+        IntArrayList kernelColumns = new IntArrayList();
+        DoubleArrayList tolerances = new DoubleArrayList();
+        IntArrayList otherColumns = new IntArrayList();
+        for (int i = 0; i < comparators.length; i++)
+        {
+            IndexMap column = matchedColumns.get(i);
+            if (isToleranceComparator(comparators[i]) && rhsColumns.isDoubleColumn(column.getRhsIndex()) && lhsColumns.isDoubleColumn(column.getLhsIndex()))
+            {
+                kernelColumns.add(i);
+                tolerances.add(comparators[i].getFormatter().getTolerance());
+            }
+            else
+            {
+                otherColumns.add(i);
+            }
+        }
+        return kernelColumns.isEmpty()
+                ? null
+                : new ColumnarHappyPath(comparators, matchedColumns, rhsColumns, lhsColumns, kernelColumns.toArray(), tolerances.toArray(), otherColumns.toArray());
+    }
+
+    private static boolean isToleranceComparator(CellComparator comparator)
+    {
+        CellComparator configured = comparator instanceof TypedCellComparator ? ((TypedCellComparator) comparator).getDelegate() : comparator;
+        return configured.getClass() == ToleranceCellComparator.class;
+    }
+
+    /**
+     * @return the number of rows matching by position from the start of the tables
+     */
+    int countMatchingRows()
+    {
+        int minRowCount = Math.min(this.rhsData.getRowCount(), this.lhsData.getRowCount());
+        for (int from = 0; from < minRowCount; from += BLOCK_SIZE)
+        {
+            int length = Math.min(BLOCK_SIZE, minRowCount - from);
+            this.markMismatches(from, from, length);
+            for (int i = 0; i < length; i++)
+            {
+                if (!this.matches(from + i, from + i, i))
+                {
+                    return from + i;
+                }
+            }
+        }
+        return minRowCount;
+    }
+
+    /**
+     * @return the number of rows matching by position from the end of the tables, stopping before the first unmatched
+     * index
+     */
+    int countReverseMatchingRows(int firstUnMatchedIndex)
+    {
+        int rhsIndex = this.rhsData.getRowCount() - 1;
+        int lhsIndex = this.lhsData.getRowCount() - 1;
+        int minIndex = firstUnMatchedIndex + 1;
+        while (rhsIndex >= minIndex && lhsIndex >= minIndex)
+        {
+            int length = Math.min(BLOCK_SIZE, Math.min(rhsIndex, lhsIndex) - minIndex + 1);
+            int rhsFrom = rhsIndex - length + 1;
+            int lhsFrom = lhsIndex - length + 1;
+            this.markMismatches(rhsFrom, lhsFrom, length);
+            for (int i = length - 1; i >= 0; i--)
+            {
+                if (!this.matches(rhsFrom + i, lhsFrom + i, i))
+                {
+                    return this.rhsData.getRowCount() - 1 - (rhsFrom + i);
+                }
+            }
+            rhsIndex -= length;
+            lhsIndex -= length;
+        }
+        return this.rhsData.getRowCount() - 1 - rhsIndex;
+    }
+
+    private void markMismatches(int rhsFrom, int lhsFrom, int length)
+    {
+        Arrays.fill(this.mismatches, 0L);
+        for (int k = 0; k < this.kernelColumns.length; k++)
+        {
+            IndexMap column = this.matchedColumns.get(this.kernelColumns[k]);
+            ColumnarComparableTable.markDoubleMismatches(this.rhsData, column.getRhsIndex(), rhsFrom, this.lhsData, column.getLhsIndex(), lhsFrom, length, this.tolerances[k], this.mismatches);
+        }
+    }
+
+    private boolean matches(int rhsIndex, int lhsIndex, int bit)
+    {
+        if ((this.mismatches[bit >>> 6] & (1L << bit)) != 0L && !this.cellsMatch(this.kernelColumns, rhsIndex, lhsIndex))
+        {
+            return false;
+        }
+        return this.cellsMatch(this.otherColumns, rhsIndex, lhsIndex);
+    }
+
+    private boolean cellsMatch(int[] columns, int rhsIndex, int lhsIndex)
+    {
+        for (int i : columns)
+        {
+            IndexMap column = this.matchedColumns.get(i);
+            if (!this.comparators[i].equals(this.rhsData.getValueAt(rhsIndex, column.getRhsIndex()), this.lhsData.getValueAt(lhsIndex, column.getLhsIndex())))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,543 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare.indexmap;
+
+import com.gs.tablasco.ComparableTable;
+import com.gs.tablasco.compare.CellComparator;
+import com.gs.tablasco.compare.CellFormatter;
+import com.gs.tablasco.compare.ResultCell;
+import com.gs.tablasco.compare.ResultTable;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.list.mutable.FastList;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A result table that keeps the row indices of each compared row and a byte per cell instead of result cells. Cells
+ * are created from the compared tables when rows are read, so the tables are retained for as long as this is. Runs of
+ * rows matching like rows matched by position, which is most rows of a passing table, are kept as spans of row indices
+ * without any state per row.
+ */
+final class CompactResultTable extends ResultTable implements RowIndexedResults
+{
+    private static final byte PASSED = 0;
+    private static final byte OUT_OF_ORDER = 1;
+    private static final byte FAILED = 2;
+    private static final byte MISSING = 3;
+    private static final byte SURPLUS = 4;
+    private static final byte MISSING_BLANK = 5;
+    private static final byte SURPLUS_BLANK = 6;
+
+    private final Columns columns;
+    private final boolean[] keyColumns;
+    private final List<ResultCell> headers;
+    private final int rowCount;
+    private final Segments segments;
+    private final int[] rhsRows;
+    private final int[] lhsRows;
+    private final byte[] states;
+
+    private CompactResultTable(Builder builder)
+    {
+        super(builder.matchedColumns, builder.totalCellCount, builder.passedCellCount, builder.partialMatchTruncated);
+        this.columns = builder.columns;
+        this.keyColumns = builder.keyColumns;
+        this.headers = builder.headers;
+        this.rowCount = builder.rowCount;
+        this.segments = builder.segments;
+        this.rhsRows = builder.rhsRows;
+        this.lhsRows = builder.lhsRows;
+        this.states = builder.states;
+    }
+
+    @Override
+    public List<List<ResultCell>> getComparedRows()
+    {
+        return new Rows();
+    }
+
+    @Override
+    public List<ResultCell> getHeaders()
+    {
+        return this.headers;
+    }
+
+    @Override
+    protected boolean isMatchedRow(int rowIndex)
+    {
+        if (rowIndex == 0)
+        {
+            return super.isMatchedRow(rowIndex);
+        }
+        int row = rowIndex - 1;
+        int segment = this.segments.find(row);
+        if (this.segments.isSpan(segment))
+        {
+            return this.columns.templateMatched;
+        }
+        return isMatchedRow(this.states, this.segments.detailOffset(segment, row) * this.columns.size, this.columns.size);
+    }
+
+    @Override
+    protected int getMatchedRowsFrom(int rowIndex)
+    {
+        if (rowIndex > 0)
+        {
+            int row = rowIndex - 1;
+            int segment = this.segments.find(row);
+            if (this.segments.isSpan(segment))
+            {
+                return this.columns.templateMatched ? this.segments.end(segment) - row : 0;
+            }
+        }
+        return super.getMatchedRowsFrom(rowIndex);
+    }
+
+    @Override
+    public int getRhsRowIndex(int row)
+    {
+        int segment = this.segments.find(row);
+        return this.segments.isSpan(segment)
+                ? this.segments.rhsStarts[segment] + row - this.segments.starts[segment]
+                : this.rhsRows[this.segments.detailOffset(segment, row)];
+    }
+
+    @Override
+    public int getLhsRowIndex(int row)
+    {
+        int segment = this.segments.find(row);
+        return this.segments.isSpan(segment)
+                ? this.segments.lhsStarts[segment] + row - this.segments.starts[segment]
+                : this.lhsRows[this.segments.detailOffset(segment, row)];
+    }
+
+    /**
+     * Returns a result table holding the cells of this one, along with the row indices of its rows.
+     */
+    ResultTable toResultTable()
+    {
+        int[] rhsRowIndices = new int[this.rowCount];
+        int[] lhsRowIndices = new int[this.rowCount];
+        for (int row = 0; row < this.rowCount; row++)
+        {
+            rhsRowIndices[row] = this.getRhsRowIndex(row);
+            lhsRowIndices[row] = this.getLhsRowIndex(row);
+        }
+        return new Expanded(this.keyColumns, FastList.newList(this.getComparedRows()), this.isPartialMatchTruncated(), rhsRowIndices, lhsRowIndices);
+    }
+
+    private List<ResultCell> createRow(int row)
+    {
+        int segment = this.segments.find(row);
+        int offsetInSegment = row - this.segments.starts[segment];
+        byte[] rowStates = this.columns.template;
+        int offset = 0;
+        int rhsRow = this.segments.rhsStarts[segment] + offsetInSegment;
+        int lhsRow = this.segments.lhsStarts[segment] + offsetInSegment;
+        if (!this.segments.isSpan(segment))
+        {
+            int detail = this.segments.detailOffset(segment, row);
+            rowStates = this.states;
+            offset = detail * this.columns.size;
+            rhsRow = this.rhsRows[detail];
+            lhsRow = this.lhsRows[detail];
+        }
+        MutableList<ResultCell> cells = FastList.newList(this.columns.size);
+        for (int col = 0; col < this.columns.size; col++)
+        {
+            cells.add(this.columns.createCell(col, rowStates[offset + col], rhsRow, lhsRow));
+        }
+        return cells;
+    }
+
+    private static boolean isMatchedRow(byte[] states, int offset, int length)
+    {
+        boolean passed = false;
+        for (int col = 0; col < length; col++)
+        {
+            byte state = states[offset + col];
+            if (state == FAILED)
+            {
+                return false;
+            }
+            passed |= state == PASSED;
+        }
+        return passed;
+    }
+
+    /**
+     * The cells of a compact result table, created once.
+     */
+    private static final class Expanded extends ResultTable implements RowIndexedResults
+    {
+        private final int[] rhsRowIndices;
+        private final int[] lhsRowIndices;
+
+        private Expanded(boolean[] keyColumns, List<List<ResultCell>> tableCells, boolean partialMatchTruncated, int[] rhsRowIndices, int[] lhsRowIndices)
+        {
+            super(keyColumns, tableCells, partialMatchTruncated);
+            this.rhsRowIndices = rhsRowIndices;
+            this.lhsRowIndices = lhsRowIndices;
+        }
+
+        @Override
+        public int getRhsRowIndex(int row)
+        {
+            return this.rhsRowIndices[row];
+        }
+
+        @Override
+        public int getLhsRowIndex(int row)
+        {
+            return this.lhsRowIndices[row];
+        }
+    }
+
+    private final class Rows extends AbstractList<List<ResultCell>> implements RandomAccess
+    {
+        @Override
+        public List<ResultCell> get(int index)
+        {
+            if (index < 0 || index > CompactResultTable.this.rowCount)
+            {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size());
+            }
+            return index == 0 ? CompactResultTable.this.headers : CompactResultTable.this.createRow(index - 1);
+        }
+
+        @Override
+        public int size()
+        {
+            return CompactResultTable.this.rowCount + 1;
+        }
+    }
+
+    /**
+     * The compared columns, with the comparators and formatters their cells are created with, and the cell states of
+     * a row matched by position.
+     */
+    private static final class Columns
+    {
+        private final int size;
+        private final ComparableTable rhsData;
+        private final ComparableTable lhsData;
+        private final int[] rhsIndices;
+        private final int[] lhsIndices;
+        private final boolean[] outOfOrder;
+        private final CellComparator[] comparators;
+        private final CellFormatter[] rhsFormatters;
+        private final CellFormatter[] lhsFormatters;
+        private final CellFormatter defaultFormatter;
+        private final byte[] template;
+        private final boolean templateMatched;
+        private final int templatePassedCount;
+
+        private Columns(ComparisonPlan plan, ComparableTable rhsData, ComparableTable lhsData)
+        {
+            List<IndexMap> columnIndices = plan.getColumns();
+            this.size = columnIndices.size();
+            this.rhsData = rhsData;
+            this.lhsData = lhsData;
+            this.rhsIndices = new int[this.size];
+            this.lhsIndices = new int[this.size];
+            this.outOfOrder = new boolean[this.size];
+            this.comparators = new CellComparator[this.size];
+            this.rhsFormatters = new CellFormatter[this.size];
+            this.lhsFormatters = new CellFormatter[this.size];
+            this.defaultFormatter = plan.getDefaultComparator().getFormatter();
+            this.template = new byte[this.size];
+            int passedCount = 0;
+            for (int col = 0; col < this.size; col++)
+            {
+                IndexMap column = columnIndices.get(col);
+                this.rhsIndices[col] = column.getRhsIndex();
+                this.lhsIndices[col] = column.getLhsIndex();
+                this.outOfOrder[col] = column.isOutOfOrder();
+                this.rhsFormatters[col] = plan.getRhsFormatter(col);
+                this.comparators[col] = plan.getLhsComparator(col);
+                this.lhsFormatters[col] = plan.getLhsFormatter(col);
+                if (column.getLhsIndex() < 0)
+                {
+                    this.template[col] = SURPLUS;
+                }
+                else if (column.getRhsIndex() < 0)
+                {
+                    this.template[col] = MISSING;
+                }
+                else
+                {
+                    this.template[col] = column.isOutOfOrder() ? OUT_OF_ORDER : PASSED;
+                    passedCount += column.isOutOfOrder() ? 0 : 1;
+                }
+            }
+            this.templateMatched = isMatchedRow(this.template, 0, this.size);
+            this.templatePassedCount = passedCount;
+        }
+
+        private boolean isMatched(int col)
+        {
+            return this.rhsIndices[col] >= 0 && this.lhsIndices[col] >= 0;
+        }
+
+        private ResultCell createCell(int col, byte state, int rhsRow, int lhsRow)
+        {
+            switch (state)
+            {
+                case PASSED:
+                    return ResultCell.createPassedCell(this.lhsFormatters[col], this.rhsValue(rhsRow, col));
+                case OUT_OF_ORDER:
+                    return ResultCell.createOutOfOrderCell(this.lhsFormatters[col], this.rhsValue(rhsRow, col));
+                case FAILED:
+                    return ResultCell.createFailedCell(this.lhsFormatters[col], this.rhsValue(rhsRow, col), this.lhsValue(lhsRow, col));
+                case MISSING:
+                    return ResultCell.createMissingCell(this.lhsFormatters[col], this.lhsValue(lhsRow, col));
+                case SURPLUS:
+                    return ResultCell.createSurplusCell(this.rhsFormatters[col], this.rhsValue(rhsRow, col));
+                case MISSING_BLANK:
+                    return ResultCell.createMissingCell(this.defaultFormatter, "");
+                case SURPLUS_BLANK:
+                    return ResultCell.createSurplusCell(this.defaultFormatter, "");
+                default:
+                    throw new IllegalStateException("Unexpected cell state " + state);
+            }
+        }
+
+        private Object rhsValue(int rhsRow, int col)
+        {
+            return this.rhsData.getValueAt(rhsRow, this.rhsIndices[col]);
+        }
+
+        private Object lhsValue(int lhsRow, int col)
+        {
+            return this.lhsData.getValueAt(lhsRow, this.lhsIndices[col]);
+        }
+    }
+
+    /**
+     * Consecutive rows, each segment either a span of rows in the cell states of a row matched by position, whose row
+     * indices follow on from those of its first row, or a run of rows with their own indices and states.
+     */
+    private static final class Segments
+    {
+        private int size;
+        private int[] starts = new int[16];
+        private int[] lengths = new int[16];
+        private int[] rhsStarts = new int[16];
+        private int[] lhsStarts = new int[16];
+        private int[] detailStarts = new int[16];
+
+        private boolean isSpan(int segment)
+        {
+            return this.detailStarts[segment] < 0;
+        }
+
+        private int end(int segment)
+        {
+            return this.starts[segment] + this.lengths[segment];
+        }
+
+        private int detailOffset(int segment, int row)
+        {
+            return this.detailStarts[segment] + row - this.starts[segment];
+        }
+
+        private int find(int row)
+        {
+            int low = 0;
+            int high = this.size - 1;
+            while (low < high)
+            {
+                int mid = (low + high + 1) >>> 1;
+                if (this.starts[mid] <= row)
+                {
+                    low = mid;
+                }
+                else
+                {
+                    high = mid - 1;
+                }
+            }
+            return low;
+        }
+
+        private void addSpanRow(int row, int rhsIndex, int lhsIndex)
+        {
+            int last = this.size - 1;
+            if (last >= 0 && this.isSpan(last)
+                    && rhsIndex == this.rhsStarts[last] + this.lengths[last]
+                    && lhsIndex == this.lhsStarts[last] + this.lengths[last])
+            {
+                this.lengths[last]++;
+            }
+            else
+            {
+                this.add(row, rhsIndex, lhsIndex, -1);
+            }
+        }
+
+        private void addDetailRow(int row, int detail)
+        {
+            int last = this.size - 1;
+            if (last >= 0 && !this.isSpan(last))
+            {
+                this.lengths[last]++;
+            }
+            else
+            {
+                this.add(row, -1, -1, detail);
+            }
+        }
+
+        private void add(int row, int rhsIndex, int lhsIndex, int detail)
+        {
+            if (this.size == this.starts.length)
+            {
+                int capacity = this.size * 2;
+                this.starts = Arrays.copyOf(this.starts, capacity);
+                this.lengths = Arrays.copyOf(this.lengths, capacity);
+                this.rhsStarts = Arrays.copyOf(this.rhsStarts, capacity);
+                this.lhsStarts = Arrays.copyOf(this.lhsStarts, capacity);
+                this.detailStarts = Arrays.copyOf(this.detailStarts, capacity);
+            }
+            this.starts[this.size] = row;
+            this.lengths[this.size] = 1;
+            this.rhsStarts[this.size] = rhsIndex;
+            this.lhsStarts[this.size] = lhsIndex;
+            this.detailStarts[this.size] = detail;
+            this.size++;
+        }
+    }
+
+    /**
+     * Collects the compared rows in display order along with the cell counts of the table.
+     */
+    static final class Builder
+    {
+        private final Columns columns;
+        private final boolean[] keyColumns;
+        private final List<ResultCell> headers;
+        private final boolean[] matchedColumns;
+        private final Segments segments = new Segments();
+        private final byte[] rowStates;
+        private int totalCellCount;
+        private int passedCellCount;
+        private int rowCount;
+        private int detailCount;
+        private boolean partialMatchTruncated;
+        private int[] rhsRows = new int[16];
+        private int[] lhsRows = new int[16];
+        private byte[] states;
+
+        Builder(boolean[] keyColumns, List<ResultCell> headers, ComparisonPlan plan, ComparableTable rhsData, ComparableTable lhsData)
+        {
+            this.columns = new Columns(plan, rhsData, lhsData);
+            this.keyColumns = keyColumns;
+            this.headers = headers;
+            this.matchedColumns = new boolean[headers.size()];
+            for (int col = 0; col < headers.size(); col++)
+            {
+                boolean passed = ResultCell.IS_PASSED_CELL.accept(headers.get(col));
+                this.matchedColumns[col] = !keyColumns[col] && passed;
+                this.passedCellCount += passed ? 1 : 0;
+            }
+            this.totalCellCount = headers.size();
+            this.rowStates = new byte[this.columns.size];
+            this.states = new byte[16 * this.columns.size];
+        }
+
+        /**
+         * Adds a row whose matched columns are known to be equal, as found when matching rows by position. Such rows
+         * fail no column, so they only add to the cell counts.
+         */
+        void addMatchingRow(int rhsIndex, int lhsIndex)
+        {
+            this.segments.addSpanRow(this.rowCount++, rhsIndex, lhsIndex);
+            this.passedCellCount += this.columns.templatePassedCount;
+            this.totalCellCount += this.columns.size;
+        }
+
+        /**
+         * Adds a matched, missing or surplus row, comparing the cells of matched rows.
+         */
+        void addRow(IndexMap row)
+        {
+            boolean matchingRow = row.isMatched() && !row.isOutOfOrder();
+            for (int col = 0; col < this.columns.size; col++)
+            {
+                byte state;
+                if (row.isMissing())
+                {
+                    state = this.columns.lhsIndices[col] >= 0 ? MISSING : MISSING_BLANK;
+                }
+                else if (row.isSurplus())
+                {
+                    state = this.columns.rhsIndices[col] >= 0 ? SURPLUS : SURPLUS_BLANK;
+                }
+                else if (!this.columns.isMatched(col))
+                {
+                    state = this.columns.rhsIndices[col] < 0 ? MISSING : SURPLUS;
+                }
+                else if (this.columns.comparators[col].equals(this.columns.rhsValue(row.getRhsIndex(), col), this.columns.lhsValue(row.getLhsIndex(), col)))
+                {
+                    state = row.isOutOfOrder() || this.columns.outOfOrder[col] ? OUT_OF_ORDER : PASSED;
+                }
+                else
+                {
+                    state = FAILED;
+                    matchingRow = false;
+                }
+                this.rowStates[col] = state;
+            }
+            if (matchingRow)
+            {
+                this.addMatchingRow(row.getRhsIndex(), row.getLhsIndex());
+                return;
+            }
+            if (this.detailCount == this.rhsRows.length)
+            {
+                int capacity = this.detailCount * 2;
+                this.rhsRows = Arrays.copyOf(this.rhsRows, capacity);
+                this.lhsRows = Arrays.copyOf(this.lhsRows, capacity);
+                this.states = Arrays.copyOf(this.states, capacity * this.columns.size);
+            }
+            this.rhsRows[this.detailCount] = row.getRhsIndex();
+            this.lhsRows[this.detailCount] = row.getLhsIndex();
+            System.arraycopy(this.rowStates, 0, this.states, this.detailCount * this.columns.size, this.columns.size);
+            for (int col = 0; col < this.columns.size; col++)
+            {
+                this.passedCellCount += this.rowStates[col] == PASSED ? 1 : 0;
+                this.matchedColumns[col] &= this.rowStates[col] != FAILED;
+            }
+            this.totalCellCount += this.columns.size;
+            this.segments.addDetailRow(this.rowCount++, this.detailCount++);
+        }
+
+        Builder withPartialMatchTruncated(boolean partialMatchTruncated)
+        {
+            this.partialMatchTruncated = partialMatchTruncated;
+            return this;
+        }
+
+        CompactResultTable build()
+        {
+            return new CompactResultTable(this);
+        }
+    }
+}
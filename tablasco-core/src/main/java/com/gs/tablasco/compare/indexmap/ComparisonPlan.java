@@ -0,0 +1,223 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare.indexmap;
+
+import com.gs.tablasco.ComparableTable;
+import com.gs.tablasco.compare.CellComparator;
+import com.gs.tablasco.compare.CellFormatter;
+import com.gs.tablasco.compare.ColumnComparators;
+import com.gs.tablasco.compare.KeyedComparableTable;
+import com.gs.tablasco.compare.TypedCellComparator;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.list.mutable.FastList;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The columns of a comparison with everything needed to compare their cells, looked up once per pair of tables: the
+ * lhs and rhs column indices, the comparator of each side (each side's comparator is found by that side's column
+ * name) and whether the column is a key column of the rhs table. Columns are addressed by their position in the list
+ * the plan is compiled from, and the position of any of those columns is found from its lhs or rhs index, so that
+ * comparators are never looked up by column name while comparing rows.
+ * <p>
+ * The comparators of columns in both tables are specialised for the type of the column's values, see
+ * {@link TypedCellComparator}.
+ */
+public final class ComparisonPlan
+{
+    private final MutableList<IndexMap> columns;
+    private final int[] lhsIndices;
+    private final int[] rhsIndices;
+    private final CellComparator[] lhsComparators;
+    private final CellComparator[] rhsComparators;
+    private final boolean[] keyColumns;
+    private final int[] positionsByLhsIndex;
+    private final int[] positionsByRhsIndex;
+    private final CellComparator defaultComparator;
+
+    private ComparisonPlan(MutableList<IndexMap> columns, ComparableTable rhsData, ComparableTable lhsData, ColumnComparators columnComparators)
+    {
+        int size = columns.size();
+        this.columns = columns;
+        this.lhsIndices = new int[size];
+        this.rhsIndices = new int[size];
+        this.lhsComparators = new CellComparator[size];
+        this.rhsComparators = new CellComparator[size];
+        this.keyColumns = new boolean[size];
+        this.positionsByLhsIndex = new int[lhsData.getColumnCount()];
+        this.positionsByRhsIndex = new int[rhsData.getColumnCount()];
+        Arrays.fill(this.positionsByLhsIndex, -1);
+        Arrays.fill(this.positionsByRhsIndex, -1);
+        this.defaultComparator = columnComparators.getDefaultComparator();
+        for (int i = 0; i < size; i++)
+        {
+            IndexMap column = columns.get(i);
+            this.lhsIndices[i] = column.getLhsIndex();
+            this.rhsIndices[i] = column.getRhsIndex();
+            if (column.getLhsIndex() >= 0)
+            {
+                this.lhsComparators[i] = columnComparators.getComparator(lhsData.getColumnName(column.getLhsIndex()));
+                this.positionsByLhsIndex[column.getLhsIndex()] = i;
+            }
+            if (column.getRhsIndex() >= 0)
+            {
+                this.rhsComparators[i] = columnComparators.getComparator(rhsData.getColumnName(column.getRhsIndex()));
+                this.positionsByRhsIndex[column.getRhsIndex()] = i;
+                this.keyColumns[i] = rhsData instanceof KeyedComparableTable && ((KeyedComparableTable) rhsData).isKeyColumn(column.getRhsIndex());
+            }
+            if (column.isMatched())
+            {
+                CellComparator lhsComparator = this.lhsComparators[i];
+                this.lhsComparators[i] = TypedCellComparator.specialize(lhsComparator, rhsData, column.getRhsIndex(), lhsData, column.getLhsIndex());
+                this.rhsComparators[i] = this.rhsComparators[i] == lhsComparator
+                        ? this.lhsComparators[i]
+                        : TypedCellComparator.specialize(this.rhsComparators[i], rhsData, column.getRhsIndex(), lhsData, column.getLhsIndex());
+            }
+        }
+    }
+
+    /**
+     * Compiles the plan of the given columns of two tables.
+     *
+     * @param columns the columns compared, as matched by name between the tables
+     */
+    public static ComparisonPlan compile(MutableList<IndexMap> columns, ComparableTable rhsData, ComparableTable lhsData, ColumnComparators columnComparators)
+    {
+        return new ComparisonPlan(columns, rhsData, lhsData, columnComparators);
+    }
+
+    public int size()
+    {
+        return this.lhsIndices.length;
+    }
+
+    public MutableList<IndexMap> getColumns()
+    {
+        return this.columns;
+    }
+
+    public int getLhsIndex(int position)
+    {
+        return this.lhsIndices[position];
+    }
+
+    public int getRhsIndex(int position)
+    {
+        return this.rhsIndices[position];
+    }
+
+    /**
+     * @return the comparator of the lhs column, or <tt>null</tt> if the column is only in the rhs table
+     */
+    public CellComparator getLhsComparator(int position)
+    {
+        return this.lhsComparators[position];
+    }
+
+    /**
+     * @return the comparator of the rhs column, or <tt>null</tt> if the column is only in the lhs table
+     */
+    public CellComparator getRhsComparator(int position)
+    {
+        return this.rhsComparators[position];
+    }
+
+    public CellFormatter getLhsFormatter(int position)
+    {
+        return this.lhsComparators[position] == null ? null : this.lhsComparators[position].getFormatter();
+    }
+
+    public CellFormatter getRhsFormatter(int position)
+    {
+        return this.rhsComparators[position] == null ? null : this.rhsComparators[position].getFormatter();
+    }
+
+    public CellComparator getDefaultComparator()
+    {
+        return this.defaultComparator;
+    }
+
+    public boolean isKeyColumn(int position)
+    {
+        return this.keyColumns[position];
+    }
+
+    /**
+     * Returns the position of one of the plan's columns, or -1 if it is not in the plan.
+     */
+    public int positionOf(IndexMap column)
+    {
+        if (column.getLhsIndex() >= 0)
+        {
+            return column.getLhsIndex() < this.positionsByLhsIndex.length ? this.positionsByLhsIndex[column.getLhsIndex()] : -1;
+        }
+        return column.getRhsIndex() >= 0 && column.getRhsIndex() < this.positionsByRhsIndex.length ? this.positionsByRhsIndex[column.getRhsIndex()] : -1;
+    }
+
+    /**
+     * Returns the lhs comparators of the given columns of the plan, in the same order, with <tt>null</tt> for columns
+     * that are not in both tables.
+     */
+    public CellComparator[] getLhsComparators(List<IndexMap> columns)
+    {
+        CellComparator[] comparators = new CellComparator[columns.size()];
+        for (int i = 0; i < comparators.length; i++)
+        {
+            IndexMap column = columns.get(i);
+            if (column.isMatched())
+            {
+                comparators[i] = this.lhsComparators[this.positionOf(column)];
+            }
+        }
+        return comparators;
+    }
+
+    /**
+     * Returns the rhs comparators of the given columns of the plan, in the same order, with <tt>null</tt> for columns
+     * that are not in both tables.
+     */
+    public CellComparator[] getRhsComparators(List<IndexMap> columns)
+    {
+        CellComparator[] comparators = new CellComparator[columns.size()];
+        for (int i = 0; i < comparators.length; i++)
+        {
+            IndexMap column = columns.get(i);
+            if (column.isMatched())
+            {
+                comparators[i] = this.rhsComparators[this.positionOf(column)];
+            }
+        }
+        return comparators;
+    }
+
+    /**
+     * Returns the plan's columns matched between the tables that are key columns of the rhs table.
+     */
+    public MutableList<IndexMap> getKeyColumns()
+    {
+        MutableList<IndexMap> keyColumns = FastList.newList();
+        for (int i = 0; i < this.size(); i++)
+        {
+            if (this.keyColumns[i] && this.lhsIndices[i] >= 0)
+            {
+                keyColumns.add(this.columns.get(i));
+            }
+        }
+        return keyColumns;
+    }
+}
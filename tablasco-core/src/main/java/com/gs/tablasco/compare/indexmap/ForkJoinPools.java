@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare.indexmap;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The pools that shards are compared, rows hashed and partial matches scored on, one per level of parallelism. A pool
+ * is created the first time it is needed and then shared by every comparison, so comparing several tables or shards
+ * concurrently does not multiply the number of threads. Idle workers retire on their own, so the pools are never shut down.
+ */
+final class ForkJoinPools
+{
+    private static final ConcurrentMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    private ForkJoinPools()
+    {
+    }
+
+    static ForkJoinPool get(int parallelism)
+    {
+        return POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+    }
+}
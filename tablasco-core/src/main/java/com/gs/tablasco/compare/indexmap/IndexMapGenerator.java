@@ -16,30 +16,42 @@
 
 package com.gs.tablasco.compare.indexmap;
 
+import org.eclipse.collections.api.block.function.primitive.LongFunction;
+import org.eclipse.collections.api.block.procedure.primitive.IntProcedure;
 import org.eclipse.collections.api.list.MutableList;
 import org.eclipse.collections.impl.list.mutable.FastList;
 
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
 public class IndexMapGenerator<T>
 {
+    private static final int NONE = -1;
+
     private final Iterator<T> rhsIterator;
     private final Iterator<T> lhsIterator;
+    private final LongFunction<? super T> hashFunction;
     private MutableList<IndexMap> matched;
     private MutableList<UnmatchedIndexMap> missing;
     private MutableList<UnmatchedIndexMap> surplus;
     private final int initialIndex;
 
     public IndexMapGenerator(Iterator<T> lhsIterator, Iterator<T> rhsIterator, int initialIndex)
+    {
+        this(lhsIterator, rhsIterator, initialIndex, Object::hashCode);
+    }
+
+    /**
+     * @param hashFunction a hash consistent with <tt>equals</tt>; wider hashes save <tt>equals</tt> calls on collisions
+     */
+    public IndexMapGenerator(Iterator<T> lhsIterator, Iterator<T> rhsIterator, int initialIndex, LongFunction<? super T> hashFunction)
     {
         this.rhsIterator = rhsIterator;
         this.lhsIterator = lhsIterator;
         this.initialIndex = initialIndex;
+        this.hashFunction = hashFunction;
     }
 
     public MutableList<IndexMap> getMatched()
@@ -66,70 +78,199 @@ public class IndexMapGenerator<T>
         return FastList.newList(all);
     }
 
+    /**
+     * Matches each lhs row with the first remaining equal rhs row. Equal rhs rows are grouped in an open-addressing
+     * index of row hashes and chained by row offset, so duplicates cost neither boxing nor list copies. A group that
+     * has been partly consumed takes the matching lhs row as its key and moves to the end of the surplus order.
+     */
     public void generate()
     {
         this.matched = FastList.newList();
         this.missing = FastList.newList();
         this.surplus = FastList.newList();
 
-        Map<T, Object> rhsIndices = new LinkedHashMap<T, Object>();
-        int ai = this.initialIndex;
-
+        RowIndex<T> rhsIndices = new RowIndex<>();
         while (this.rhsIterator.hasNext())
         {
             T next = this.rhsIterator.next();
-            Object indexOrListOf = rhsIndices.get(next);
-            if (indexOrListOf == null)
+            rhsIndices.add(next, this.hashFunction.longValueOf(next));
+        }
+        int ei = this.initialIndex;
+        while (this.lhsIterator.hasNext())
+        {
+            T next = this.lhsIterator.next();
+            int rhsOffset = rhsIndices.remove(next, this.hashFunction.longValueOf(next));
+            if (rhsOffset == NONE)
+            {
+                this.missing.add(new UnmatchedIndexMap(ei, -1, next));
+            }
+            else
+            {
+                this.matched.add(new IndexMap(ei, this.initialIndex + rhsOffset));
+            }
+            ei++;
+        }
+        rhsIndices.forEachRemaining(rhsOffset -> this.surplus.add(
+                new UnmatchedIndexMap(-1, this.initialIndex + rhsOffset, rhsIndices.getRow(rhsOffset))));
+    }
+
+    private static final class RowIndex<T>
+    {
+        private Object[] rows = new Object[16];
+        private int[] nextRow = new int[16];
+        private int rowCount;
+
+        private Object[] groupKeys = new Object[16];
+        private long[] groupHashes = new long[16];
+        private int[] groupHeads = new int[16];
+        private int[] groupTails = new int[16];
+        private int[] groupOrder = new int[16];
+        private int groupCount;
+
+        private int[] order = new int[16];
+        private int orderSize;
+
+        private int[] slots = new int[32];
+
+        private void add(T row, long hash)
+        {
+            if (this.rowCount == this.rows.length)
             {
-                rhsIndices.put(next, Integer.valueOf(ai));
+                this.rows = Arrays.copyOf(this.rows, this.rowCount * 2);
+                this.nextRow = Arrays.copyOf(this.nextRow, this.rowCount * 2);
             }
-            else if (indexOrListOf instanceof Integer)
+            int offset = this.rowCount++;
+            this.rows[offset] = row;
+            this.nextRow[offset] = NONE;
+
+            int slot = this.find(row, hash);
+            int group = this.slots[slot] - 1;
+            if (group < 0)
             {
-                rhsIndices.put(next, FastList.newListWith((Integer) indexOrListOf, Integer.valueOf(ai)));
+                group = this.newGroup(row, hash, offset);
+                this.slots[slot] = group + 1;
+                if (this.groupCount * 2 > this.slots.length)
+                {
+                    this.rehash();
+                }
             }
             else
             {
-                ((List) indexOrListOf).add(Integer.valueOf(ai));
+                this.nextRow[this.groupTails[group]] = offset;
+                this.groupTails[group] = offset;
             }
-            ai++;
         }
-        int ei = this.initialIndex;
-        while (this.lhsIterator.hasNext())
+
+        /**
+         * Removes and returns the first row of the group equal to the given row, or <tt>NONE</tt>.
+         */
+        private int remove(T row, long hash)
         {
-            T next = this.lhsIterator.next();
-            Object rhsIndexOrListOf = rhsIndices.remove(next);
-            if (rhsIndexOrListOf == null)
+            int group = this.slots[this.find(row, hash)] - 1;
+            if (group < 0)
             {
-                this.missing.add(new UnmatchedIndexMap(ei, -1));
+                return NONE;
             }
-            else if (rhsIndexOrListOf instanceof Integer)
+            int offset = this.groupHeads[group];
+            int next = this.nextRow[offset];
+            this.groupHeads[group] = next;
+            if (next != NONE)
             {
-                this.matched.add(new IndexMap(ei, (Integer) rhsIndexOrListOf));
+                this.groupKeys[group] = row;
+                this.appendToOrder(group);
             }
-            else
+            return offset;
+        }
+
+        private Object getRow(int offset)
+        {
+            return this.rows[offset];
+        }
+
+        private void forEachRemaining(IntProcedure procedure)
+        {
+            for (int i = 0; i < this.orderSize; i++)
             {
-                List indices = (List) rhsIndexOrListOf;
-                Integer rhsIndex = (Integer) indices.remove(0);
-                this.matched.add(new IndexMap(ei, rhsIndex));
-                rhsIndices.put(next, indices.size() == 1 ? indices.get(0) : indices);
+                int group = this.order[i];
+                if (this.groupOrder[group] == i)
+                {
+                    for (int offset = this.groupHeads[group]; offset != NONE; offset = this.nextRow[offset])
+                    {
+                        procedure.value(offset);
+                    }
+                }
             }
-            ei++;
         }
-        for (Map.Entry<T, Object> rhsEntry : rhsIndices.entrySet())
+
+        /**
+         * Returns the slot of the non-empty group equal to the given row or, failing that, the empty slot ending its
+         * probe sequence. Emptied groups keep their slots so that probe sequences are never broken.
+         */
+        private int find(T row, long hash)
         {
-            Object indexOrListOf = rhsEntry.getValue();
-            if (indexOrListOf instanceof Integer)
+            int mask = this.slots.length - 1;
+            int slot = spread(hash) & mask;
+            while (this.slots[slot] != 0)
             {
-                this.surplus.add(new UnmatchedIndexMap(-1, (Integer) indexOrListOf));
+                int group = this.slots[slot] - 1;
+                if (this.groupHeads[group] != NONE && this.groupHashes[group] == hash && row.equals(this.groupKeys[group]))
+                {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
             }
-            else
+            return slot;
+        }
+
+        private int newGroup(T row, long hash, int offset)
+        {
+            if (this.groupCount == this.groupKeys.length)
+            {
+                int capacity = this.groupCount * 2;
+                this.groupKeys = Arrays.copyOf(this.groupKeys, capacity);
+                this.groupHashes = Arrays.copyOf(this.groupHashes, capacity);
+                this.groupHeads = Arrays.copyOf(this.groupHeads, capacity);
+                this.groupTails = Arrays.copyOf(this.groupTails, capacity);
+                this.groupOrder = Arrays.copyOf(this.groupOrder, capacity);
+            }
+            int group = this.groupCount++;
+            this.groupKeys[group] = row;
+            this.groupHashes[group] = hash;
+            this.groupHeads[group] = offset;
+            this.groupTails[group] = offset;
+            this.appendToOrder(group);
+            return group;
+        }
+
+        private void appendToOrder(int group)
+        {
+            if (this.orderSize == this.order.length)
             {
-                for (Object index : (List) indexOrListOf)
+                this.order = Arrays.copyOf(this.order, this.orderSize * 2);
+            }
+            this.groupOrder[group] = this.orderSize;
+            this.order[this.orderSize++] = group;
+        }
+
+        private void rehash()
+        {
+            int[] slots = new int[this.slots.length * 2];
+            int mask = slots.length - 1;
+            for (int group = 0; group < this.groupCount; group++)
+            {
+                int slot = spread(this.groupHashes[group]) & mask;
+                while (slots[slot] != 0)
                 {
-                    this.surplus.add(new UnmatchedIndexMap(-1, (Integer) index));
+                    slot = (slot + 1) & mask;
                 }
+                slots[slot] = group + 1;
             }
+            this.slots = slots;
+        }
+
+        private static int spread(long hash)
+        {
+            return (int) ((hash * 0x9E3779B97F4A7C15L) >>> 32);
         }
     }
 }
-
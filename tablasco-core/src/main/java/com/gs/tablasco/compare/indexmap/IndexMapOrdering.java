@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare.indexmap;
+
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.list.mutable.FastList;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Orders the rows of a comparison for output in linear time, by bucketing them by index instead of sorting them.
+ * <p>
+ * Rows with an rhs index (matched and surplus rows) are ordered by rhs index. Missing rows are ordered by lhs index
+ * and each is placed immediately before the first row with an rhs index whose key is greater than the missing row's
+ * lhs index, the key of a matched row being its lhs index and that of a surplus row its rhs index; a missing row
+ * therefore follows a surplus row with an rhs index equal to its lhs index, and rows are appended at the end if no such
+ * row exists. While matched rows are in the same order in both tables this is the order defined by
+ * <tt>IndexMap.compareTo</tt>; once they are not, that comparator is not transitive and this order is its well defined
+ * counterpart.
+ */
+public class IndexMapOrdering
+{
+    /**
+     * @param rows        the rows to order, each with a distinct lhs and rhs index
+     * @param lhsRowCount the number of rows in the lhs table
+     * @param rhsRowCount the number of rows in the rhs table
+     * @return a new list of the rows in order
+     */
+    public static MutableList<IndexMap> order(List<? extends IndexMap> rows, int lhsRowCount, int rhsRowCount)
+    {
+        int[] rhsIndices = new int[rows.size()];
+        int[] lhsIndices = new int[rows.size()];
+        for (int position = 0; position < rows.size(); position++)
+        {
+            rhsIndices[position] = rows.get(position).getRhsIndex();
+            lhsIndices[position] = rows.get(position).getLhsIndex();
+        }
+        MutableList<IndexMap> ordered = FastList.newList(rows.size());
+        for (int position : order(rhsIndices, lhsIndices, lhsRowCount, rhsRowCount))
+        {
+            ordered.add(rows.get(position));
+        }
+        return ordered;
+    }
+
+    /**
+     * Orders rows given by their indices, such as the rows of several comparisons mapped back to the tables they were
+     * taken from.
+     *
+     * @param rhsIndices  the rhs index of each row, negative for missing rows
+     * @param lhsIndices  the lhs index of each row, negative for surplus rows
+     * @param lhsRowCount the number of rows in the lhs table
+     * @param rhsRowCount the number of rows in the rhs table
+     * @return the positions of the rows in the index arrays, in order
+     */
+    public static int[] order(int[] rhsIndices, int[] lhsIndices, int lhsRowCount, int rhsRowCount)
+    {
+        int[] rowsByRhsIndex = new int[rhsRowCount];
+        int[] missingRowsByLhsIndex = new int[lhsRowCount];
+        Arrays.fill(rowsByRhsIndex, -1);
+        Arrays.fill(missingRowsByLhsIndex, -1);
+        for (int position = 0; position < rhsIndices.length; position++)
+        {
+            if (rhsIndices[position] < 0)
+            {
+                missingRowsByLhsIndex[lhsIndices[position]] = position;
+            }
+            else
+            {
+                rowsByRhsIndex[rhsIndices[position]] = position;
+            }
+        }
+        int[] ordered = new int[rhsIndices.length];
+        int size = 0;
+        int maxKey = -1;
+        int lhsIndex = 0;
+        for (int position : rowsByRhsIndex)
+        {
+            if (position >= 0)
+            {
+                // missing rows go before the first row whose key exceeds their index, i.e. before the running maximum does
+                maxKey = Math.max(maxKey, lhsIndices[position] >= 0 ? lhsIndices[position] : rhsIndices[position]);
+                for (int to = Math.min(maxKey, lhsRowCount); lhsIndex < to; lhsIndex++)
+                {
+                    size = addMissingRow(ordered, size, missingRowsByLhsIndex[lhsIndex]);
+                }
+                ordered[size++] = position;
+            }
+        }
+        for (; lhsIndex < lhsRowCount; lhsIndex++)
+        {
+            size = addMissingRow(ordered, size, missingRowsByLhsIndex[lhsIndex]);
+        }
+        return ordered;
+    }
+
+    private static int addMissingRow(int[] ordered, int size, int position)
+    {
+        if (position >= 0)
+        {
+            ordered[size] = position;
+            return size + 1;
+        }
+        return size;
+    }
+}
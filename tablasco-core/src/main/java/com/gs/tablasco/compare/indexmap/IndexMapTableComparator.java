@@ -27,8 +27,10 @@ import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
-import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 public class IndexMapTableComparator implements SingleTableComparator
@@ -37,6 +39,7 @@ public class IndexMapTableComparator implements SingleTableComparator
 
     public static final int DEFAULT_BEST_MATCH_THRESHOLD = 1000000;
     public static final long DEFAULT_PARTIAL_MATCH_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5L);
+    private static final int MIN_ROWS_PER_TASK = 1024;
 
     private final ColumnComparators columnComparators;
     private final boolean verifyRowOrder;
@@ -46,6 +49,13 @@ public class IndexMapTableComparator implements SingleTableComparator
     private final boolean ignoreSurplusColumns;
     private final boolean ignoreMissingColumns;
     private final long partialMatchTimeoutMillis;
+    private int parallelism = 1;
+    private int partialMatchCandidateLimit;
+    private boolean compactResults;
+    private boolean anytimePartialMatch;
+    private boolean sortedKeys;
+    private boolean keyJoin;
+    private ComparisonMetrics metrics = ComparisonMetrics.NONE;
 
     public IndexMapTableComparator(ColumnComparators columnComparators, boolean verifyRowOrder, int bestMatchThreshold)
     {
@@ -69,118 +79,462 @@ public class IndexMapTableComparator implements SingleTableComparator
         this.partialMatchTimeoutMillis = partialMatchTimeoutMillis;
     }
 
+    /**
+     * Formats and hashes unmatched rows, and scores best-match candidates, on up to the given number of threads.
+     * Results are identical to the single-threaded comparison; tables must support concurrent reads. The threads come
+     * from a pool shared by all comparisons with the same parallelism.
+     *
+     * @param parallelism number of threads; 1 (the default) hashes rows on the calling thread
+     * @return this
+     */
+    public IndexMapTableComparator withParallelism(int parallelism)
+    {
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Limits the number of best scoring surplus rows kept as partial match candidates for each missing row, which
+     * bounds the memory used by the best-match algorithm. A missing row whose candidates are all matched to other rows
+     * is reported as missing even if a lower scoring surplus row is left.
+     *
+     * @param partialMatchCandidateLimit candidates kept per row; zero or less (the default) keeps all of them
+     * @return this
+     */
+    public IndexMapTableComparator withPartialMatchCandidateLimit(int partialMatchCandidateLimit)
+    {
+        this.partialMatchCandidateLimit = partialMatchCandidateLimit;
+        return this;
+    }
+
+    /**
+     * Keeps only the row indices and a byte per cell of the results, creating result cells from the compared tables
+     * whenever the rows of the result table are read. This saves most of the memory held by large results but keeps
+     * the tables reachable from the result table, and cells are created anew each time rows are read.
+     *
+     * @param compactResults whether to create result cells on demand; false (the default) creates them up front
+     * @return this
+     */
+    public IndexMapTableComparator withCompactResults(boolean compactResults)
+    {
+        this.compactResults = compactResults;
+        return this;
+    }
+
+    /**
+     * On reaching the partial match timeout, keeps the rows partially matched so far and reports the others as missing
+     * or surplus, marking the result as truncated, instead of failing the comparison. Groups of rows sharing column
+     * values are matched smallest first, so that as many as possible are matched in time.
+     *
+     * @param anytimePartialMatch whether to keep partial matches on timeout; false (the default) throws
+     * @return this
+     */
+    public IndexMapTableComparator withAnytimePartialMatch(boolean anytimePartialMatch)
+    {
+        this.anytimePartialMatch = anytimePartialMatch;
+        return this;
+    }
+
+    /**
+     * Matches the rows of keyed tables by walking both tables in key order, instead of hashing every row, when both are
+     * sorted by their key columns. Only rows sharing a key are hashed and the remaining rows are partially matched as
+     * usual, so results are identical. Tables that turn out not to be sorted are compared as if this were not set.
+     *
+     * @param sortedKeys whether keyed tables are expected to be sorted by key; false (the default) hashes every row
+     * @return this
+     */
+    public IndexMapTableComparator withSortedKeys(boolean sortedKeys)
+    {
+        this.sortedKeys = sortedKeys;
+        return this;
+    }
+
+    /**
+     * Joins the rows of keyed tables on their key columns instead of hashing every row, pairing rows whose key is
+     * unique on both sides whether or not their other cells are equal. Only rows with repeated keys are hashed and
+     * partially matched, so results are identical while changed rows no longer need partial matching.
+     *
+     * @param keyJoin whether to join keyed tables on their key columns; false (the default) hashes every row
+     * @return this
+     */
+    public IndexMapTableComparator withKeyJoin(boolean keyJoin)
+    {
+        this.keyJoin = keyJoin;
+        return this;
+    }
+
+    /**
+     * Records the time and allocations of each phase of comparisons, and how rows were matched, in the given metrics.
+     * Fail fast comparisons are not recorded.
+     *
+     * @param metrics the metrics to add to; <tt>ComparisonMetrics.NONE</tt> (the default) records nothing
+     * @return this
+     */
+    public IndexMapTableComparator withMetrics(ComparisonMetrics metrics)
+    {
+        this.metrics = metrics;
+        return this;
+    }
+
     @Override
     public ResultTable compare(ComparableTable rhsData, ComparableTable lhsData)
     {
         if (rhsData == null)
         {
-            return new ResultTable(new boolean[lhsData.getColumnCount()], toListOfRows(lhsData,
-                    (columnName, value) -> ResultCell.createMissingCell(columnComparators.getComparator(columnName).getFormatter(), value)));
+            this.metrics.addRows(ComparisonMetrics.RowOutcome.MISSING, lhsData.getRowCount());
+            return new ResultTable(new boolean[lhsData.getColumnCount()], toListOfRows(lhsData, ResultCell::createMissingCell));
         }
         if (lhsData == null)
         {
-            return new ResultTable(new boolean[rhsData.getColumnCount()], toListOfRows(rhsData,
-                    (columnName, value) -> ResultCell.createSurplusCell(columnComparators.getComparator(columnName).getFormatter(), value)));
+            this.metrics.addRows(ComparisonMetrics.RowOutcome.SURPLUS, rhsData.getRowCount());
+            return new ResultTable(new boolean[rhsData.getColumnCount()], toListOfRows(rhsData, ResultCell::createSurplusCell));
         }
 
         LOGGER.info("Verifying {} col {} row rhs and {} col {} row lhs tables", rhsData.getColumnCount(), rhsData.getRowCount(), lhsData.getColumnCount(), lhsData.getRowCount());
 
         LOGGER.debug("Generating column indices");
+        ComparisonMetrics.Timer timer = this.metrics.start(ComparisonPhase.HEADERS);
         MutableList<IndexMap> columnIndices = getColumnIndices(rhsData, lhsData, columnComparators.getDefaultComparator());
         identifyOutOfOrderIndices(columnIndices, 0);
+        ComparisonPlan plan = ComparisonPlan.compile(columnIndices, rhsData, lhsData, columnComparators);
 
         boolean[] keyColumns = new boolean[columnIndices.size()];
         for (int i = 0; i < keyColumns.length; i++)
         {
-            keyColumns[i] = rhsData instanceof KeyedComparableTable && ((KeyedComparableTable) rhsData).isKeyColumn(columnIndices.get(i).getRhsIndex());
+            keyColumns[i] = plan.isKeyColumn(i);
         }
 
-        List<List<ResultCell>> results = FastList.newList(rhsData.getRowCount() + 1);
-        verifyHeaders(columnIndices, results, rhsData, lhsData, columnComparators.getDefaultComparator());
+        List<ResultCell> headers = verifyHeaders(columnIndices, rhsData, lhsData, columnComparators.getDefaultComparator());
+        CompactResultTable.Builder results = new CompactResultTable.Builder(keyColumns, headers, plan, rhsData, lhsData);
+        MutableList<IndexMap> matchedColumns = columnIndices.select(IndexMap::isMatched);
+        CellComparator[] comparators = plan.getLhsComparators(matchedColumns);
 
         LOGGER.debug("Starting Happy Path");
-        collectMatchingRows(columnIndices, results, rhsData, lhsData, columnComparators);
-        int happyPathSize = results.size() - 1; // minus headers
+        timer.lap(ComparisonPhase.HAPPY_PATH);
+        ColumnarHappyPath columnarHappyPath = ColumnarHappyPath.of(comparators, matchedColumns, rhsData, lhsData);
+        int happyPathSize = columnarHappyPath == null
+                ? countMatchingRows(comparators, matchedColumns, rhsData, lhsData)
+                : columnarHappyPath.countMatchingRows();
+        for (int rowIndex = 0; rowIndex < happyPathSize; rowIndex++)
+        {
+            results.addMatchingRow(rowIndex, rowIndex);
+        }
+        this.metrics.addRows(ComparisonMetrics.RowOutcome.HAPPY_PATH, happyPathSize);
         if (happyPathSize == rhsData.getRowCount() && happyPathSize == lhsData.getRowCount())
         {
             LOGGER.debug("(Happily) Done!");
-            return new ResultTable(keyColumns, results);
+            timer.lap(ComparisonPhase.RESULT_BUILD);
+            ResultTable resultTable = this.toResultTable(results.build());
+            timer.stop();
+            return resultTable;
         }
         LOGGER.debug("Matched {} rows happily", happyPathSize);
         int firstUnMatchedIndex = happyPathSize;
 
         LOGGER.debug("Starting Reverse Happy Path (tm)");
-        List<List<ResultCell>> reversePathResults = FastList.newList(rhsData.getRowCount() - happyPathSize);
-        collectReverseMatchingRows(columnIndices, reversePathResults, rhsData, lhsData, columnComparators, firstUnMatchedIndex);
-        int lastUnMatchedOffset = reversePathResults.size();
+        timer.lap(ComparisonPhase.REVERSE_HAPPY_PATH);
+        int lastUnMatchedOffset = columnarHappyPath == null
+                ? countReverseMatchingRows(comparators, matchedColumns, rhsData, lhsData, firstUnMatchedIndex)
+                : columnarHappyPath.countReverseMatchingRows(firstUnMatchedIndex);
         LOGGER.debug("Matched {} rows reverse-happily", lastUnMatchedOffset);
+        this.metrics.addRows(ComparisonMetrics.RowOutcome.REVERSE_HAPPY_PATH, lastUnMatchedOffset);
+        timer.lap(ComparisonPhase.ROW_HASHING);
 
         LOGGER.debug("Generating row indices from index " + firstUnMatchedIndex + '.');
-        RhsRowIterator rhsRowIterator = new RhsRowIterator(rhsData, columnIndices, columnComparators, firstUnMatchedIndex, lastUnMatchedOffset);
-        LhsRowIterator lhsRowIterator = new LhsRowIterator(lhsData, columnIndices, columnComparators, firstUnMatchedIndex, lastUnMatchedOffset);
-        IndexMapGenerator<RowView> rowGenerator = new IndexMapGenerator<RowView>(lhsRowIterator, rhsRowIterator, firstUnMatchedIndex);
-        rowGenerator.generate();
-        MutableList<IndexMap> allMatchedRows = rowGenerator.getMatched();
-        LOGGER.debug("Matched a further {} rows using row hashing", allMatchedRows.size());
-        MutableList<UnmatchedIndexMap> allMissingRows = rowGenerator.getMissing();
-        MutableList<UnmatchedIndexMap> allSurplusRows = rowGenerator.getSurplus();
+        MutableList<IndexMap> allMatchedRows = null;
+        MutableList<UnmatchedIndexMap> allMissingRows = null;
+        MutableList<UnmatchedIndexMap> allSurplusRows = null;
+        if (this.sortedKeys && rhsData instanceof KeyedComparableTable)
+        {
+            SortedKeyIndexMapGenerator sortedKeyGenerator = new SortedKeyIndexMapGenerator((KeyedComparableTable) rhsData, lhsData, plan, firstUnMatchedIndex, lastUnMatchedOffset);
+            if (!sortedKeyGenerator.hasKeyColumns())
+            {
+                LOGGER.debug("No matched key columns, falling back to row hashing");
+            }
+            else if (sortedKeyGenerator.generate())
+            {
+                allMatchedRows = sortedKeyGenerator.getMatched();
+                LOGGER.debug("Matched a further {} rows by sorted key", allMatchedRows.size());
+                allMissingRows = sortedKeyGenerator.getMissing();
+                allSurplusRows = sortedKeyGenerator.getSurplus();
+            }
+            else
+            {
+                LOGGER.warn("Tables are not sorted by key columns, falling back to row hashing");
+            }
+        }
+        if (allMatchedRows == null && this.keyJoin && rhsData instanceof KeyedComparableTable)
+        {
+            KeyJoinIndexMapGenerator keyJoinGenerator = new KeyJoinIndexMapGenerator((KeyedComparableTable) rhsData, lhsData, plan, firstUnMatchedIndex, lastUnMatchedOffset);
+            if (keyJoinGenerator.hasKeyColumns())
+            {
+                keyJoinGenerator.generate();
+                allMatchedRows = keyJoinGenerator.getMatched();
+                LOGGER.debug("Joined a further {} rows on key columns", allMatchedRows.size());
+                allMissingRows = keyJoinGenerator.getMissing();
+                allSurplusRows = keyJoinGenerator.getSurplus();
+            }
+        }
+        if (allMatchedRows == null)
+        {
+            RowIterator rhsRowIterator = new RhsRowIterator(plan, rhsData, firstUnMatchedIndex, lastUnMatchedOffset);
+            RowIterator lhsRowIterator = new LhsRowIterator(plan, lhsData, firstUnMatchedIndex, lastUnMatchedOffset);
+            Iterator<RowView> rhsRows = rhsRowIterator;
+            Iterator<RowView> lhsRows = lhsRowIterator;
+            int unmatchedRowCount = Math.max(rhsData.getRowCount(), lhsData.getRowCount()) - firstUnMatchedIndex - lastUnMatchedOffset;
+            if (this.parallelism > 1 && unmatchedRowCount > MIN_ROWS_PER_TASK)
+            {
+                LOGGER.debug("Hashing rows on {} threads", this.parallelism);
+                int chunkSize = Math.max(MIN_ROWS_PER_TASK, unmatchedRowCount / (4 * this.parallelism));
+                ForkJoinPool pool = ForkJoinPools.get(this.parallelism);
+                rhsRows = Arrays.asList(rhsRowIterator.nextAll(pool, chunkSize)).iterator();
+                lhsRows = Arrays.asList(lhsRowIterator.nextAll(pool, chunkSize)).iterator();
+            }
+            IndexMapGenerator<RowView> rowGenerator = new IndexMapGenerator<RowView>(lhsRows, rhsRows, firstUnMatchedIndex, RowView::longHashCode);
+            rowGenerator.generate();
+            allMatchedRows = rowGenerator.getMatched();
+            LOGGER.debug("Matched a further {} rows using row hashing", allMatchedRows.size());
+            allMissingRows = rowGenerator.getMissing();
+            allSurplusRows = rowGenerator.getSurplus();
+        }
+
+        this.metrics.addRows(ComparisonMetrics.RowOutcome.MATCHED, allMatchedRows.size());
+        timer.stop();
 
-        MutableList<IndexMap> matchedColumns = columnIndices.select(IndexMap::isMatched);
         LOGGER.debug("Partial-matching {} missing and {} surplus rows", allMissingRows.size(), allSurplusRows.size());
-        PartialMatcher partialMatcher = new AdaptivePartialMatcher(rhsData, lhsData, columnComparators, this.bestMatchThreshold);
+        // partial matchers time their grouping and best matching themselves
+        PartialMatcher partialMatcher = new AdaptivePartialMatcher(rhsData, lhsData, plan, this.bestMatchThreshold, this.parallelism, this.partialMatchCandidateLimit, this.metrics);
         if (rhsData instanceof KeyedComparableTable)
         {
-            partialMatcher = new KeyColumnPartialMatcher((KeyedComparableTable) rhsData, lhsData, columnComparators, partialMatcher);
+            partialMatcher = new KeyColumnPartialMatcher((KeyedComparableTable) rhsData, lhsData, plan, partialMatcher, this.metrics);
         }
+        TimeBoundPartialMatcher timeBoundPartialMatcher = null;
         if (this.partialMatchTimeoutMillis > 0)
         {
-            partialMatcher = new TimeBoundPartialMatcher(partialMatcher, this.partialMatchTimeoutMillis);
+            timeBoundPartialMatcher = new TimeBoundPartialMatcher(partialMatcher, this.partialMatchTimeoutMillis, this.anytimePartialMatch);
+            partialMatcher = timeBoundPartialMatcher;
         }
         partialMatcher.match(allMissingRows, allSurplusRows, matchedColumns);
+        results.withPartialMatchTruncated(timeBoundPartialMatcher != null && timeBoundPartialMatcher.isTruncated());
 
         LOGGER.debug("Merging partial-matches and remaining missing/surplus");
+        timer = this.metrics.start(ComparisonPhase.LINKING);
         MutableList<IndexMap> finalRowIndices = allMatchedRows;
-        mergePartialMatches(finalRowIndices, allMissingRows, allSurplusRows);
+        int partiallyMatchedCount = mergePartialMatches(finalRowIndices, allMissingRows, allSurplusRows);
+        this.metrics.addRows(ComparisonMetrics.RowOutcome.PARTIALLY_MATCHED, partiallyMatchedCount);
+        this.metrics.addRows(ComparisonMetrics.RowOutcome.MISSING, allMissingRows.size() - partiallyMatchedCount);
+        this.metrics.addRows(ComparisonMetrics.RowOutcome.SURPLUS, allSurplusRows.size() - partiallyMatchedCount);
 
-        // todo: fix transitive bug in compareTo() and use finalRowIndices.sortThis()
-        finalRowIndices = FastList.newList(new TreeSet<>(finalRowIndices));
+        timer.lap(ComparisonPhase.FINAL_ORDERING);
+        finalRowIndices = IndexMapOrdering.order(finalRowIndices, lhsData.getRowCount(), rhsData.getRowCount());
         if (this.verifyRowOrder)
         {
             LOGGER.debug("Looking for out of order rows");
             identifyOutOfOrderIndices(finalRowIndices, firstUnMatchedIndex);
+            if (this.metrics.isEnabled())
+            {
+                this.metrics.addRows(ComparisonMetrics.RowOutcome.OUT_OF_ORDER, finalRowIndices.count(IndexMap::isOutOfOrder));
+            }
         }
 
         LOGGER.debug("Generating final results");
-        buildResults(columnIndices, finalRowIndices, results, reversePathResults, rhsData, lhsData, columnComparators);
+        timer.lap(ComparisonPhase.RESULT_BUILD);
+        buildResults(columnIndices, finalRowIndices, results, rhsData, lhsData, lastUnMatchedOffset);
+        ResultTable resultTable = this.toResultTable(results.build());
+        timer.stop();
         LOGGER.debug("Done");
 
-        return new ResultTable(keyColumns, results);
+        return resultTable;
     }
 
-    private List<List<ResultCell>> toListOfRows(ComparableTable comparableTable, Function2<String, Object, ResultCell> cellFunction)
+    private ResultTable toResultTable(CompactResultTable results)
+    {
+        return this.compactResults ? results : results.toResultTable();
+    }
+
+    /**
+     * Compares the tables only as far as needed to tell whether they match, stopping once the given number of breaks
+     * has been found. Rows are compared by position until the first mismatch; if row order is verified and no rows
+     * are ignored every mismatched row is a break, otherwise the remaining rows are matched by hashing and each
+     * missing, surplus or out-of-order row is a break. Rows are never partially matched and no result cells are
+     * created. As a full comparison would partially match them, rows left unmatched on both sides are a break even if
+     * missing and surplus rows are ignored.
+     *
+     * @param breakLimit number of breaks after which to stop
+     * @return the outcome, with the location of the first break
+     */
+    public FailFastResultTable compareFailFast(ComparableTable rhsData, ComparableTable lhsData, int breakLimit)
+    {
+        FailFastResultTable.Builder result = new FailFastResultTable.Builder(breakLimit);
+        if (rhsData == null || lhsData == null)
+        {
+            ComparableTable table = rhsData == null ? lhsData : rhsData;
+            for (int col = 0; col < table.getColumnCount(); col++)
+            {
+                result.withHeader(table.getColumnName(col));
+            }
+            result.addBreak(-1, -1, null, rhsData == null ? "Missing table" : "Surplus table");
+            return result.build();
+        }
+
+        MutableList<IndexMap> columnIndices = getColumnIndices(rhsData, lhsData, columnComparators.getDefaultComparator());
+        identifyOutOfOrderIndices(columnIndices, 0);
+        ComparisonPlan plan = ComparisonPlan.compile(columnIndices, rhsData, lhsData, columnComparators);
+        for (IndexMap column : columnIndices)
+        {
+            String columnName = column.isMissing() ? lhsData.getColumnName(column.getLhsIndex()) : rhsData.getColumnName(column.getRhsIndex());
+            result.withHeader(columnName);
+            if (column.isMatched() && !column.isOutOfOrder())
+            {
+                result.withPassedCells(1);
+            }
+            else if (result.addBreak(-1, -1, columnName, column.isMissing() ? "Missing column" : column.isSurplus() ? "Surplus column" : "Column out of order"))
+            {
+                return result.build();
+            }
+        }
+
+        MutableList<IndexMap> matchedColumns = columnIndices.select(IndexMap::isMatched);
+        CellComparator[] comparators = plan.getLhsComparators(matchedColumns);
+        boolean breaksByPosition = this.verifyRowOrder && !this.ignoreMissingRows && !this.ignoreSurplusRows;
+        int minRowCount = Math.min(rhsData.getRowCount(), lhsData.getRowCount());
+        int rowIndex = 0;
+        while (rowIndex < minRowCount)
+        {
+            int mismatch = firstMismatch(comparators, matchedColumns, rhsData, lhsData, rowIndex, rowIndex);
+            if (mismatch < 0)
+            {
+                result.withPassedCells(comparators.length);
+            }
+            else if (!breaksByPosition)
+            {
+                break;
+            }
+            else
+            {
+                IndexMap column = matchedColumns.get(mismatch);
+                Object rhs = rhsData.getValueAt(rowIndex, column.getRhsIndex());
+                Object lhs = lhsData.getValueAt(rowIndex, column.getLhsIndex());
+                CellFormatter formatter = comparators[mismatch].getFormatter();
+                String description = formatter.getLhsLabel() + " " + formatter.format(lhs) + ", " + formatter.getRhsLabel() + " " + formatter.format(rhs);
+                if (result.addBreak(rowIndex, rowIndex, rhsData.getColumnName(column.getRhsIndex()), description))
+                {
+                    return result.build();
+                }
+            }
+            rowIndex++;
+        }
+        if (breaksByPosition)
+        {
+            for (int rhsIndex = minRowCount; rhsIndex < rhsData.getRowCount(); rhsIndex++)
+            {
+                if (result.addBreak(rhsIndex, -1, null, "Surplus row"))
+                {
+                    return result.build();
+                }
+            }
+            for (int lhsIndex = minRowCount; lhsIndex < lhsData.getRowCount(); lhsIndex++)
+            {
+                if (result.addBreak(-1, lhsIndex, null, "Missing row"))
+                {
+                    return result.build();
+                }
+            }
+            return result.build();
+        }
+        // like a full comparison, match rows by position from the end before hashing the rest
+        int lastUnMatchedOffset = countReverseMatchingRows(comparators, matchedColumns, rhsData, lhsData, rowIndex);
+        result.withPassedCells(lastUnMatchedOffset * comparators.length);
+        this.addUnmatchedRowBreaks(result, matchedColumns.size(), plan, rhsData, lhsData, rowIndex, lastUnMatchedOffset);
+        return result.build();
+    }
+
+    private static int firstMismatch(CellComparator[] comparators, MutableList<IndexMap> matchedColumns, ComparableTable rhsData, ComparableTable lhsData, int rhsIndex, int lhsIndex)
+    {
+        for (int i = 0; i < comparators.length; i++)
+        {
+            IndexMap column = matchedColumns.get(i);
+            if (!comparators[i].equals(rhsData.getValueAt(rhsIndex, column.getRhsIndex()), lhsData.getValueAt(lhsIndex, column.getLhsIndex())))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void addUnmatchedRowBreaks(FailFastResultTable.Builder result, int matchedColumnCount, ComparisonPlan plan, ComparableTable rhsData, ComparableTable lhsData, int firstUnMatchedIndex, int lastUnMatchedOffset)
+    {
+        IndexMapGenerator<RowView> rowGenerator = new IndexMapGenerator<RowView>(
+                new LhsRowIterator(plan, lhsData, firstUnMatchedIndex, lastUnMatchedOffset),
+                new RhsRowIterator(plan, rhsData, firstUnMatchedIndex, lastUnMatchedOffset),
+                firstUnMatchedIndex,
+                RowView::longHashCode);
+        rowGenerator.generate();
+        MutableList<IndexMap> matchedRows = rowGenerator.getMatched();
+        MutableList<UnmatchedIndexMap> missingRows = rowGenerator.getMissing();
+        MutableList<UnmatchedIndexMap> surplusRows = rowGenerator.getSurplus();
+        result.withPassedCells(matchedRows.size() * matchedColumnCount);
+        boolean partiallyMatchable = missingRows.notEmpty() && surplusRows.notEmpty();
+        for (UnmatchedIndexMap missing : missingRows)
+        {
+            if ((partiallyMatchable || !this.ignoreMissingRows) && result.addBreak(-1, missing.getLhsIndex(), null, "Missing row"))
+            {
+                return;
+            }
+        }
+        for (UnmatchedIndexMap surplus : surplusRows)
+        {
+            if ((partiallyMatchable || !this.ignoreSurplusRows) && result.addBreak(surplus.getRhsIndex(), -1, null, "Surplus row"))
+            {
+                return;
+            }
+        }
+        if (this.verifyRowOrder)
+        {
+            MutableList<IndexMap> allRows = FastList.newList(matchedRows);
+            allRows.addAll(missingRows);
+            allRows.addAll(surplusRows);
+            MutableList<IndexMap> orderedRows = IndexMapOrdering.order(allRows, lhsData.getRowCount(), rhsData.getRowCount());
+            identifyOutOfOrderIndices(orderedRows, firstUnMatchedIndex);
+            for (IndexMap row : orderedRows)
+            {
+                if (row.isMatched() && row.isOutOfOrder() && result.addBreak(row.getRhsIndex(), row.getLhsIndex(), null, "Row out of order"))
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    private List<List<ResultCell>> toListOfRows(ComparableTable comparableTable, Function2<CellFormatter, Object, ResultCell> cellFunction)
     {
         List<List<ResultCell>> results = FastList.newList(comparableTable.getRowCount() + 1);
-        List<ResultCell> headers = FastList.newList(comparableTable.getColumnCount());
-        for (int ci = 0; ci < comparableTable.getColumnCount(); ci++)
+        CellFormatter[] formatters = new CellFormatter[comparableTable.getColumnCount()];
+        List<ResultCell> headers = FastList.newList(formatters.length);
+        for (int ci = 0; ci < formatters.length; ci++)
         {
             String columnName = comparableTable.getColumnName(ci);
-            headers.add(cellFunction.value(columnName, columnName));
+            formatters[ci] = this.columnComparators.getComparator(columnName).getFormatter();
+            headers.add(cellFunction.value(formatters[ci], columnName));
         }
         results.add(headers);
         for (int ri = 0; ri < comparableTable.getRowCount(); ri++)
         {
-            List<ResultCell> row = FastList.newList(comparableTable.getColumnCount());
-            for (int ci = 0; ci < comparableTable.getColumnCount(); ci++)
+            List<ResultCell> row = FastList.newList(formatters.length);
+            for (int ci = 0; ci < formatters.length; ci++)
             {
-                String columnName = comparableTable.getColumnName(ci);
-                row.add(cellFunction.value(columnName, comparableTable.getValueAt(ri, ci)));
+                row.add(cellFunction.value(formatters[ci], comparableTable.getValueAt(ri, ci)));
             }
             results.add(row);
         }
         return results;
     }
 
-    private static void verifyHeaders(MutableList<IndexMap> columnIndices, List<List<ResultCell>> results, ComparableTable rhsData, ComparableTable lhsData, CellComparator comparator)
+    private static List<ResultCell> verifyHeaders(MutableList<IndexMap> columnIndices, ComparableTable rhsData, ComparableTable lhsData, CellComparator comparator)
     {
         MutableList<ResultCell> verifiedHeaders = FastList.newList(columnIndices.size());
         for (IndexMap column : columnIndices)
@@ -207,79 +561,37 @@ public class IndexMapTableComparator implements SingleTableComparator
                 verifiedHeaders.add(cell);
             }
         }
-        results.add(verifiedHeaders);
+        return verifiedHeaders;
     }
 
-    private static void collectMatchingRows(MutableList<IndexMap> columnIndices, List<List<ResultCell>> results, ComparableTable rhsData, ComparableTable lhsData, ColumnComparators columnComparators)
+    private static int countMatchingRows(CellComparator[] comparators, MutableList<IndexMap> matchedColumns, ComparableTable rhsData, ComparableTable lhsData)
     {
         int minRowCount = Math.min(rhsData.getRowCount(), lhsData.getRowCount());
-        for (int rowIndex = 0; rowIndex < minRowCount; rowIndex++)
+        int rowIndex = 0;
+        while (rowIndex < minRowCount && firstMismatch(comparators, matchedColumns, rhsData, lhsData, rowIndex, rowIndex) < 0)
         {
-            MutableList<ResultCell> row = FastList.newList(columnIndices.size());
-            if (!checkRowMatches(columnIndices, results, rhsData, lhsData, columnComparators, rowIndex, rowIndex, row))
-            {
-                return;
-            }
+            rowIndex++;
         }
+        return rowIndex;
     }
 
-    private static void collectReverseMatchingRows(MutableList<IndexMap> columnIndices, List<List<ResultCell>> reverseHappyPathResults, ComparableTable rhsData, ComparableTable lhsData, ColumnComparators columnComparators, int firstUnMatchedIndex)
+    /**
+     * Returns the number of rows matching by position from the end of the tables, stopping before the first unmatched
+     * index.
+     */
+    private static int countReverseMatchingRows(CellComparator[] comparators, MutableList<IndexMap> matchedColumns, ComparableTable rhsData, ComparableTable lhsData, int firstUnMatchedIndex)
     {
         int rhsIndex = rhsData.getRowCount() - 1;
         int lhsIndex = lhsData.getRowCount() - 1;
         int minRhsIndex = firstUnMatchedIndex + 1;
         int minLhsIndex = firstUnMatchedIndex + 1;
-        while (lhsIndex >= minLhsIndex && rhsIndex >= minRhsIndex)
+        while (lhsIndex >= minLhsIndex && rhsIndex >= minRhsIndex
+                && firstMismatch(comparators, matchedColumns, rhsData, lhsData, rhsIndex, lhsIndex) < 0)
         {
-            MutableList<ResultCell> row = FastList.newList(columnIndices.size());
-
-            if (!checkRowMatches(columnIndices, reverseHappyPathResults, rhsData, lhsData, columnComparators, rhsIndex, lhsIndex, row))
-            {
-                return;
-            }
             lhsIndex--;
             rhsIndex--;
         }
-    }
-
-    private static boolean checkRowMatches(MutableList<IndexMap> columnIndices, List<List<ResultCell>> results, ComparableTable rhsData, ComparableTable lhsData, ColumnComparators columnComparators, int rhsIndex, int lhsIndex, MutableList<ResultCell> row)
-    {
-        for (IndexMap column : columnIndices)
-        {
-            if (column.isMissing())
-            {
-                CellComparator comparator = columnComparators.getComparator(lhsData.getColumnName(column.getLhsIndex()));
-                Object lhs = lhsData.getValueAt(lhsIndex, column.getLhsIndex());
-                row.add(ResultCell.createMissingCell(comparator.getFormatter(), lhs));
-            }
-            else if (column.isSurplus())
-            {
-                CellComparator comparator = columnComparators.getComparator(rhsData.getColumnName(column.getRhsIndex()));
-                Object rhs = rhsData.getValueAt(rhsIndex, column.getRhsIndex());
-                row.add(ResultCell.createSurplusCell(comparator.getFormatter(), rhs));
-            }
-            else
-            {
-                CellComparator comparator = columnComparators.getComparator(lhsData.getColumnName(column.getLhsIndex()));
-                Object rhs = rhsData.getValueAt(rhsIndex, column.getRhsIndex());
-                Object lhs = lhsData.getValueAt(lhsIndex, column.getLhsIndex());
-                ResultCell cell = ResultCell.createMatchedCell(comparator, rhs, lhs);
-                if (cell.isMatch())
-                {
-                    if (column.isOutOfOrder())
-                    {
-                        cell = ResultCell.createOutOfOrderCell(comparator.getFormatter(), rhs);
-                    }
-                    row.add(cell);
-                }
-                else
-                {
-                    return false;
-                }
-            }
-        }
-        results.add(row);
-        return true;
+        return rhsData.getRowCount() - 1 - rhsIndex;
     }
 
     private static void identifyOutOfOrderIndices(MutableList<IndexMap> indexMaps, int nextLhsIndex)
@@ -312,105 +624,26 @@ public class IndexMapTableComparator implements SingleTableComparator
         }
     }
 
-    private void buildResults(MutableList<IndexMap> columnIndices, MutableList<IndexMap> finalRowIndices, List<List<ResultCell>> results, List<List<ResultCell>> reverseResults, ComparableTable rhsData, ComparableTable lhsData, ColumnComparators columnComparators)
+    private void buildResults(MutableList<IndexMap> columnIndices, MutableList<IndexMap> finalRowIndices, CompactResultTable.Builder results, ComparableTable rhsData, ComparableTable lhsData, int lastUnMatchedOffset)
     {
         for (IndexMap rowIndexMap : finalRowIndices)
         {
-            MutableList<ResultCell> row = FastList.newList();
-            if (rowIndexMap.isMissing())
-            {
-                if (!this.ignoreMissingRows)
-                {
-                    for (IndexMap colIndexMap : columnIndices)
-                    {
-                        addMissingRecord(rowIndexMap, row, colIndexMap, lhsData, columnComparators);
-                    }
-                }
-            }
-            else if (rowIndexMap.isSurplus())
-            {
-                if (!this.ignoreSurplusRows)
-                {
-                    for (IndexMap colIndexMap : columnIndices)
-                    {
-                        addSurplusRecord(rowIndexMap, row, colIndexMap, rhsData, columnComparators);
-                    }
-                }
-            }
-            else
+            boolean ignored = rowIndexMap.isMissing() ? this.ignoreMissingRows : rowIndexMap.isSurplus() && this.ignoreSurplusRows;
+            if (!ignored && columnIndices.notEmpty())
             {
-                for (IndexMap colIndexMap : columnIndices)
-                {
-                    addMatchedRecord(rowIndexMap, row, colIndexMap, rhsData, lhsData, columnComparators);
-                }
-            }
-
-            if (row.notEmpty())
-            {
-                results.add(row);
+                results.addRow(rowIndexMap);
             }
         }
-        for (int i = reverseResults.size() - 1; i >= 0; i--)
-        {
-            results.add(reverseResults.get(i));
-        }
-    }
-
-    private static void addSurplusRecord(IndexMap rowIndexMap, MutableList<ResultCell> row, IndexMap colIndexMap, ComparableTable rhsData, ColumnComparators columnComparators)
-    {
-        if (rowIndexMap.getRhsIndex() >= 0 && colIndexMap.getRhsIndex() >= 0)
-        {
-            CellComparator comparator = columnComparators.getComparator(rhsData.getColumnName(colIndexMap.getRhsIndex()));
-            Object displayValue = rhsData.getValueAt(rowIndexMap.getRhsIndex(), colIndexMap.getRhsIndex());
-            row.add(ResultCell.createSurplusCell(comparator.getFormatter(), displayValue));
-        }
-        else
-        {
-            row.add(ResultCell.createSurplusCell(columnComparators.getDefaultComparator().getFormatter(), ""));
-        }
-    }
-
-    private static void addMissingRecord(IndexMap rowIndexMap, MutableList<ResultCell> row, IndexMap colIndexMap, ComparableTable lhsData, ColumnComparators columnComparators)
-    {
-        if (rowIndexMap.getLhsIndex() >= 0 && colIndexMap.getLhsIndex() >= 0)
-        {
-            CellComparator comparator = columnComparators.getComparator(lhsData.getColumnName(colIndexMap.getLhsIndex()));
-            Object displayValue = lhsData.getValueAt(rowIndexMap.getLhsIndex(), colIndexMap.getLhsIndex());
-            row.add(ResultCell.createMissingCell(comparator.getFormatter(), displayValue));
-        }
-        else
-        {
-            row.add(ResultCell.createMissingCell(columnComparators.getDefaultComparator().getFormatter(), ""));
-        }
-    }
-
-    private static void addMatchedRecord(IndexMap rowIndexMap, MutableList<ResultCell> row, IndexMap colIndexMap, ComparableTable rhsData, ComparableTable lhsData, ColumnComparators columnComparators)
-    {
-        if (colIndexMap.isMissing())
-        {
-            addMissingRecord(rowIndexMap, row, colIndexMap, lhsData, columnComparators);
-        }
-        else if (colIndexMap.isSurplus())
-        {
-            addSurplusRecord(rowIndexMap, row, colIndexMap, rhsData, columnComparators);
-        }
-        else
+        for (int offset = lastUnMatchedOffset; offset > 0; offset--)
         {
-            CellComparator comparator = columnComparators.getComparator(lhsData.getColumnName(colIndexMap.getLhsIndex()));
-            Object rhs = rhsData.getValueAt(rowIndexMap.getRhsIndex(), colIndexMap.getRhsIndex());
-            Object lhs = lhsData.getValueAt(rowIndexMap.getLhsIndex(), colIndexMap.getLhsIndex());
-            ResultCell comparisonResult = ResultCell.createMatchedCell(comparator, rhs, lhs);
-            boolean outOfOrder = rowIndexMap.isOutOfOrder() || colIndexMap.isOutOfOrder();
-            // todo: modify comparator to handle out-of-order state internally
-            if (outOfOrder && comparisonResult.isMatch())
-            {
-                comparisonResult = ResultCell.createOutOfOrderCell(comparator.getFormatter(), rhs);
-            }
-            row.add(comparisonResult);
+            results.addMatchingRow(rhsData.getRowCount() - offset, lhsData.getRowCount() - offset);
         }
     }
 
-    private static void mergePartialMatches(MutableList<IndexMap> finalRowIndices, MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows)
+    /**
+     * @return the number of partially matched rows
+     */
+    private static int mergePartialMatches(MutableList<IndexMap> finalRowIndices, MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows)
     {
         MutableSet<IndexMap> partiallyMatchedSurplus = UnifiedSet.newSet();
         for (UnmatchedIndexMap lhs : allMissingRows)
@@ -435,6 +668,7 @@ public class IndexMapTableComparator implements SingleTableComparator
                 finalRowIndices.add(indexMap);
             }
         }
+        return partiallyMatchedSurplus.size();
     }
 
     private MutableList<IndexMap> getColumnIndices(ComparableTable rhsData, ComparableTable lhsData, CellComparator comparator)
@@ -17,7 +17,10 @@
 package com.gs.tablasco.compare.indexmap;
 
 import com.gs.tablasco.ComparableTable;
+import com.gs.tablasco.compare.CellComparator;
 import com.gs.tablasco.compare.ColumnComparators;
+import com.gs.tablasco.compare.ComparisonMetrics;
+import com.gs.tablasco.compare.ComparisonPhase;
 import com.gs.tablasco.compare.KeyedComparableTable;
 import org.eclipse.collections.api.block.function.Function0;
 import org.eclipse.collections.api.list.MutableList;
@@ -40,6 +43,10 @@ public class KeyColumnPartialMatcher implements PartialMatcher
     private final ComparableTable lhsData;
     private final ColumnComparators columnComparators;
     private final PartialMatcher keyGroupPartialMatcher;
+    private final ComparisonPlan plan;
+    private final ComparisonMetrics metrics;
+    private List<IndexMap> keyPositionsColumns;
+    private int[] keyPositions;
 
     public KeyColumnPartialMatcher(KeyedComparableTable rhsData, ComparableTable lhsData, ColumnComparators columnComparators, PartialMatcher keyGroupPartialMatcher)
     {
@@ -47,10 +54,28 @@ public class KeyColumnPartialMatcher implements PartialMatcher
         this.lhsData = lhsData;
         this.columnComparators = columnComparators;
         this.keyGroupPartialMatcher = keyGroupPartialMatcher;
+        this.plan = null;
+        this.metrics = ComparisonMetrics.NONE;
+    }
+
+    KeyColumnPartialMatcher(KeyedComparableTable rhsData, ComparableTable lhsData, ComparisonPlan plan, PartialMatcher keyGroupPartialMatcher, ComparisonMetrics metrics)
+    {
+        this.rhsData = rhsData;
+        this.lhsData = lhsData;
+        this.columnComparators = null;
+        this.keyGroupPartialMatcher = keyGroupPartialMatcher;
+        this.plan = plan;
+        this.metrics = metrics;
     }
 
     @Override
     public void match(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> matchedColumns)
+    {
+        this.match(allMissingRows, allSurplusRows, matchedColumns, new CancellationToken());
+    }
+
+    @Override
+    public void match(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> matchedColumns, CancellationToken cancellationToken)
     {
         List<IndexMap> keyColumnIndices = this.getKeyColumnIndexMaps(matchedColumns);
         if (keyColumnIndices.isEmpty())
@@ -58,27 +83,55 @@ public class KeyColumnPartialMatcher implements PartialMatcher
             LOGGER.warn("No key columns found!");
             return;
         }
+        ComparisonMetrics.Timer timer = this.metrics.start(ComparisonPhase.ADAPTIVE_GROUPING);
+        for (IndexMap keyColumn : keyColumnIndices)
+        {
+            this.metrics.addGroupingColumn(this.rhsData.getColumnName(keyColumn.getRhsIndex()));
+        }
+        ComparisonPlan plan = this.plan == null ? ComparisonPlan.compile(matchedColumns, this.rhsData, this.lhsData, this.columnComparators) : this.plan;
+        CellComparator[] lhsKeyComparators = plan.getLhsComparators(keyColumnIndices);
+        CellComparator[] rhsKeyComparators = plan.getRhsComparators(keyColumnIndices);
         MutableMap<RowView, MutableList<UnmatchedIndexMap>> missingByKey = UnifiedMap.newMap(allMissingRows.size());
         for (UnmatchedIndexMap lhs : allMissingRows)
         {
-            LhsRowView lhsRowView = new LhsRowView(this.lhsData, keyColumnIndices, this.columnComparators, lhs.getLhsIndex());
+            RowView lhsRowView = lhs.getRowView() == null
+                    ? new LhsRowView(this.lhsData, keyColumnIndices, lhsKeyComparators, null, lhs.getLhsIndex())
+                    : this.getKeyView(lhs.getRowView(), keyColumnIndices);
             missingByKey.getIfAbsentPut(lhsRowView, NEW_LIST).add(lhs);
         }
         MutableMap<RowView, MutableList<UnmatchedIndexMap>> surplusByKey = UnifiedMap.newMap(allSurplusRows.size());
         for (UnmatchedIndexMap rhs : allSurplusRows)
         {
-            RhsRowView rhsRowView = new RhsRowView(this.rhsData, keyColumnIndices, this.columnComparators, rhs.getRhsIndex());
+            RowView rhsRowView = rhs.getRowView() == null
+                    ? new RhsRowView(this.rhsData, keyColumnIndices, rhsKeyComparators, null, rhs.getRhsIndex())
+                    : this.getKeyView(rhs.getRowView(), keyColumnIndices);
             surplusByKey.getIfAbsentPut(rhsRowView, NEW_LIST).add(rhs);
         }
-        for (RowView rowView : missingByKey.keysView())
+        // key groups are independent, so matching the smallest first only changes how many are matched if cancelled
+        MutableList<RowView> keys = missingByKey.keysView()
+                .select(key -> Iterate.notEmpty(missingByKey.get(key)) && Iterate.notEmpty(surplusByKey.get(key)))
+                .toSortedListBy(key -> (long) missingByKey.get(key).size() * (long) surplusByKey.get(key).size());
+        timer.stop();
+        for (RowView rowView : keys)
+        {
+            cancellationToken.checkCancelled();
+            this.keyGroupPartialMatcher.match(missingByKey.get(rowView), surplusByKey.get(rowView), matchedColumns, cancellationToken);
+        }
+    }
+
+    private RowView getKeyView(RowView rowView, List<IndexMap> keyColumnIndices)
+    {
+        List<IndexMap> columns = rowView.getColumnIndices();
+        if (columns != this.keyPositionsColumns)
         {
-            MutableList<UnmatchedIndexMap> missing = missingByKey.get(rowView);
-            MutableList<UnmatchedIndexMap> surplus = surplusByKey.get(rowView);
-            if (Iterate.notEmpty(missing) && Iterate.notEmpty(surplus))
+            this.keyPositions = new int[keyColumnIndices.size()];
+            for (int i = 0; i < this.keyPositions.length; i++)
             {
-                this.keyGroupPartialMatcher.match(missing, surplus, matchedColumns);
+                this.keyPositions[i] = columns.indexOf(keyColumnIndices.get(i));
             }
+            this.keyPositionsColumns = columns;
         }
+        return rowView.project(keyColumnIndices, this.keyPositions);
     }
 
     private List<IndexMap> getKeyColumnIndexMaps(List<IndexMap> columnIndices)
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare.indexmap;
+
+import com.gs.tablasco.ComparableTable;
+import com.gs.tablasco.compare.CellComparator;
+import com.gs.tablasco.compare.KeyedComparableTable;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.api.list.primitive.MutableIntList;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+
+import java.util.List;
+
+/**
+ * Joins the rows of a keyed table to those of another table on their key columns. Rows whose key is unique on both
+ * sides are paired straight away, equal or not, so that their differences are reported as cell breaks without partial
+ * matching them. Rows whose key is repeated on either side are matched like <tt>IndexMapGenerator</tt> matches them,
+ * leaving the rest to be partially matched. Results are identical to those of <tt>IndexMapGenerator</tt> followed by
+ * <tt>KeyColumnPartialMatcher</tt>.
+ * <p>
+ * Keys are indexed by the 64-bit hash of their formatted values; only the hashes are kept, and pairs are checked for
+ * equal keys so that colliding keys are never joined.
+ */
+public class KeyJoinIndexMapGenerator
+{
+    private final ComparableTable rhsData;
+    private final ComparableTable lhsData;
+    private final ComparisonPlan plan;
+    private final int firstUnMatchedIndex;
+    private final int lastUnMatchedOffset;
+    private final List<IndexMap> keyColumns;
+    private final CellComparator[] rhsKeyComparators;
+    private final CellComparator[] lhsKeyComparators;
+    private MutableList<IndexMap> matched;
+    private MutableList<UnmatchedIndexMap> missing;
+    private MutableList<UnmatchedIndexMap> surplus;
+
+    public KeyJoinIndexMapGenerator(KeyedComparableTable rhsData, ComparableTable lhsData, ComparisonPlan plan, int firstUnMatchedIndex, int lastUnMatchedOffset)
+    {
+        this.rhsData = rhsData;
+        this.lhsData = lhsData;
+        this.plan = plan;
+        this.firstUnMatchedIndex = firstUnMatchedIndex;
+        this.lastUnMatchedOffset = lastUnMatchedOffset;
+        this.keyColumns = plan.getKeyColumns();
+        this.rhsKeyComparators = plan.getRhsComparators(this.keyColumns);
+        this.lhsKeyComparators = plan.getLhsComparators(this.keyColumns);
+    }
+
+    public boolean hasKeyColumns()
+    {
+        return !this.keyColumns.isEmpty();
+    }
+
+    public MutableList<IndexMap> getMatched()
+    {
+        return this.matched;
+    }
+
+    public MutableList<UnmatchedIndexMap> getMissing()
+    {
+        return this.missing;
+    }
+
+    public MutableList<UnmatchedIndexMap> getSurplus()
+    {
+        return this.surplus;
+    }
+
+    public void generate()
+    {
+        this.matched = FastList.newList();
+        this.missing = FastList.newList();
+        this.surplus = FastList.newList();
+        int rhsCount = this.rhsData.getRowCount() - this.lastUnMatchedOffset - this.firstUnMatchedIndex;
+        int lhsCount = this.lhsData.getRowCount() - this.lastUnMatchedOffset - this.firstUnMatchedIndex;
+
+        long[] rhsHashes = new long[Math.max(0, rhsCount)];
+        LongIntHashMap rhsByHash = new LongIntHashMap(rhsHashes.length);
+        LongHashSet repeatedHashes = new LongHashSet();
+        for (int i = 0; i < rhsHashes.length; i++)
+        {
+            rhsHashes[i] = this.rhsKeyView(this.firstUnMatchedIndex + i).longHashCode();
+            if (rhsByHash.containsKey(rhsHashes[i]))
+            {
+                repeatedHashes.add(rhsHashes[i]);
+            }
+            else
+            {
+                rhsByHash.put(rhsHashes[i], this.firstUnMatchedIndex + i);
+            }
+        }
+        long[] lhsHashes = new long[Math.max(0, lhsCount)];
+        LongHashSet lhsHashSet = new LongHashSet(lhsHashes.length);
+        for (int i = 0; i < lhsHashes.length; i++)
+        {
+            lhsHashes[i] = this.lhsKeyView(this.firstUnMatchedIndex + i).longHashCode();
+            if (!lhsHashSet.add(lhsHashes[i]))
+            {
+                repeatedHashes.add(lhsHashes[i]);
+            }
+        }
+
+        boolean[] rhsJoined = new boolean[rhsHashes.length];
+        MutableIntList repeatedLhsRows = new IntArrayList();
+        for (int i = 0; i < lhsHashes.length; i++)
+        {
+            int lhsIndex = this.firstUnMatchedIndex + i;
+            if (repeatedHashes.contains(lhsHashes[i]))
+            {
+                repeatedLhsRows.add(lhsIndex);
+                continue;
+            }
+            int rhsIndex = rhsByHash.getIfAbsent(lhsHashes[i], -1);
+            if (rhsIndex >= 0 && this.lhsKeyView(lhsIndex).equals(this.rhsKeyView(rhsIndex)))
+            {
+                this.matched.add(new IndexMap(lhsIndex, rhsIndex));
+                rhsJoined[rhsIndex - this.firstUnMatchedIndex] = true;
+            }
+            else
+            {
+                this.missing.add(new UnmatchedIndexMap(lhsIndex, -1));
+            }
+        }
+        MutableIntList repeatedRhsRows = new IntArrayList();
+        for (int i = 0; i < rhsHashes.length; i++)
+        {
+            int rhsIndex = this.firstUnMatchedIndex + i;
+            if (repeatedHashes.contains(rhsHashes[i]))
+            {
+                repeatedRhsRows.add(rhsIndex);
+            }
+            else if (!rhsJoined[i])
+            {
+                this.surplus.add(new UnmatchedIndexMap(-1, rhsIndex));
+            }
+        }
+
+        if (repeatedLhsRows.notEmpty() || repeatedRhsRows.notEmpty())
+        {
+            this.matchRepeatedKeys(repeatedLhsRows, repeatedRhsRows);
+            this.missing.sortThisBy(IndexMap::getLhsIndex);
+            this.surplus.sortThisBy(IndexMap::getRhsIndex);
+        }
+    }
+
+    /**
+     * Matches rows whose key is repeated by hashing all their columns, as equal rows always have equal keys.
+     */
+    private void matchRepeatedKeys(MutableIntList lhsRows, MutableIntList rhsRows)
+    {
+        RowIterator lhsRowIterator = new LhsRowIterator(this.plan, this.lhsData, this.firstUnMatchedIndex, this.lastUnMatchedOffset);
+        RowIterator rhsRowIterator = new RhsRowIterator(this.plan, this.rhsData, this.firstUnMatchedIndex, this.lastUnMatchedOffset);
+        MutableList<RowView> lhsViews = FastList.newList(lhsRows.size());
+        lhsRows.forEach(lhsIndex -> lhsViews.add(lhsRowIterator.createRowView(lhsIndex, null)));
+        MutableList<RowView> rhsViews = FastList.newList(rhsRows.size());
+        rhsRows.forEach(rhsIndex -> rhsViews.add(rhsRowIterator.createRowView(rhsIndex, null)));
+        IndexMapGenerator<RowView> generator = new IndexMapGenerator<>(lhsViews.iterator(), rhsViews.iterator(), 0, RowView::longHashCode);
+        generator.generate();
+        for (IndexMap row : generator.getMatched())
+        {
+            this.matched.add(new IndexMap(lhsRows.get(row.getLhsIndex()), rhsRows.get(row.getRhsIndex())));
+        }
+        for (UnmatchedIndexMap row : generator.getMissing())
+        {
+            this.missing.add(new UnmatchedIndexMap(lhsRows.get(row.getLhsIndex()), -1, row.getRowView()));
+        }
+        for (UnmatchedIndexMap row : generator.getSurplus())
+        {
+            this.surplus.add(new UnmatchedIndexMap(-1, rhsRows.get(row.getRhsIndex()), row.getRowView()));
+        }
+    }
+
+    private RowView rhsKeyView(int rowIndex)
+    {
+        return new RhsRowView(this.rhsData, this.keyColumns, this.rhsKeyComparators, null, rowIndex);
+    }
+
+    private RowView lhsKeyView(int rowIndex)
+    {
+        return new LhsRowView(this.lhsData, this.keyColumns, this.lhsKeyComparators, null, rowIndex);
+    }
+}
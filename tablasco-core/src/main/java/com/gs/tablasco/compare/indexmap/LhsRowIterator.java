@@ -17,6 +17,7 @@
 package com.gs.tablasco.compare.indexmap;
 
 import com.gs.tablasco.ComparableTable;
+import com.gs.tablasco.compare.CellFormatter;
 import com.gs.tablasco.compare.ColumnComparators;
 import org.eclipse.collections.api.list.MutableList;
 
@@ -27,9 +28,20 @@ public class LhsRowIterator extends RowIterator
         super(table, columns, columnComparators, initialIndex, lastUnMatchedOffset);
     }
 
+    LhsRowIterator(ComparisonPlan plan, ComparableTable table, int initialIndex, int lastUnMatchedOffset)
+    {
+        super(table, plan.getColumns(), plan.getLhsComparators(plan.getColumns()), initialIndex, lastUnMatchedOffset);
+    }
+
+    @Override
+    protected int getColumnIndex(IndexMap column)
+    {
+        return column.getLhsIndex();
+    }
+
     @Override
-    protected RowView createRowView(int rowIndex)
+    protected RowView createRowView(int rowIndex, CellFormatter[] formatters)
     {
-        return new LhsRowView(this.getTable(), this.getColumns(), this.getColumnComparators(), rowIndex);
+        return new LhsRowView(this.getTable(), this.getColumns(), this.getComparators(), formatters, rowIndex);
     }
 }
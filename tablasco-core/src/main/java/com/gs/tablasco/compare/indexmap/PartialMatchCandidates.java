@@ -0,0 +1,267 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare.indexmap;
+
+import org.eclipse.collections.api.list.MutableList;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The candidate partial matches of a range of missing rows, each row's best first. A candidate is packed into a
+ * <tt>long</tt> holding its score and the rank of its surplus row (surplus rows ranked by index), so that packed
+ * values order candidates the way <tt>UnmatchedIndexMap</tt> ranks partial matches. With a limit, the best candidates
+ * of the row being collected are kept in a min-heap whose root is the worst one kept so far, which bounds memory to
+ * <tt>limit</tt> candidates per row however many pairs score.
+ */
+final class PartialMatchCandidates
+{
+    private final int limit;
+    private final int[] rowEnds;
+    private long[] candidates = new long[16];
+    private int size;
+    private int rowCount;
+    private int rowStart;
+
+    /**
+     * @param rowCount number of missing rows
+     * @param limit    maximum number of candidates kept per row, zero or less for no limit
+     */
+    PartialMatchCandidates(int rowCount, int limit)
+    {
+        this.rowEnds = new int[rowCount];
+        this.limit = limit;
+    }
+
+    void add(int score, int surplusRank)
+    {
+        long candidate = (long) score << 32 | (Integer.MAX_VALUE - surplusRank);
+        int count = this.size - this.rowStart;
+        if (this.limit <= 0 || count < this.limit)
+        {
+            if (this.size == this.candidates.length)
+            {
+                this.candidates = Arrays.copyOf(this.candidates, this.size * 2);
+            }
+            this.candidates[this.size++] = candidate;
+            if (this.limit > 0)
+            {
+                this.siftUp(count);
+            }
+        }
+        else if (candidate > this.candidates[this.rowStart])
+        {
+            this.candidates[this.rowStart] = candidate;
+            this.siftDown(0, count);
+        }
+    }
+
+    void endRow()
+    {
+        Arrays.sort(this.candidates, this.rowStart, this.size);
+        for (int i = this.rowStart, j = this.size - 1; i < j; i++, j--)
+        {
+            long candidate = this.candidates[i];
+            this.candidates[i] = this.candidates[j];
+            this.candidates[j] = candidate;
+        }
+        this.rowEnds[this.rowCount++] = this.size;
+        this.rowStart = this.size;
+    }
+
+    private void siftUp(int position)
+    {
+        long candidate = this.candidates[this.rowStart + position];
+        while (position > 0)
+        {
+            int parent = (position - 1) >>> 1;
+            if (this.candidates[this.rowStart + parent] <= candidate)
+            {
+                break;
+            }
+            this.candidates[this.rowStart + position] = this.candidates[this.rowStart + parent];
+            position = parent;
+        }
+        this.candidates[this.rowStart + position] = candidate;
+    }
+
+    private void siftDown(int position, int count)
+    {
+        long candidate = this.candidates[this.rowStart + position];
+        while (true)
+        {
+            int child = 2 * position + 1;
+            if (child >= count)
+            {
+                break;
+            }
+            if (child + 1 < count && this.candidates[this.rowStart + child + 1] < this.candidates[this.rowStart + child])
+            {
+                child++;
+            }
+            if (this.candidates[this.rowStart + child] >= candidate)
+            {
+                break;
+            }
+            this.candidates[this.rowStart + position] = this.candidates[this.rowStart + child];
+            position = child;
+        }
+        this.candidates[this.rowStart + position] = candidate;
+    }
+
+    /**
+     * Returns whether the candidates of all the missing rows were collected.
+     */
+    boolean isComplete()
+    {
+        return this.rowCount == this.rowEnds.length;
+    }
+
+    /**
+     * Joins the candidates of consecutive ranges of missing rows.
+     */
+    static PartialMatchCandidates concat(List<PartialMatchCandidates> ranges)
+    {
+        if (ranges.size() == 1)
+        {
+            return ranges.get(0);
+        }
+        int rowCount = 0;
+        int size = 0;
+        for (PartialMatchCandidates range : ranges)
+        {
+            rowCount += range.rowCount;
+            size += range.size;
+        }
+        PartialMatchCandidates all = new PartialMatchCandidates(rowCount, 0);
+        all.candidates = new long[Math.max(1, size)];
+        for (PartialMatchCandidates range : ranges)
+        {
+            System.arraycopy(range.candidates, 0, all.candidates, all.size, range.size);
+            for (int row = 0; row < range.rowCount; row++)
+            {
+                all.rowEnds[all.rowCount++] = all.size + range.rowEnds[row];
+            }
+            all.size += range.size;
+        }
+        all.rowStart = all.size;
+        return all;
+    }
+
+    /**
+     * Links missing rows with their best mutual matches among their candidates. Candidates are ranked by score and
+     * then surplus index, which is consistent with ranking all pairs by score, missing index and surplus index;
+     * linking the best unlinked pair in that global order until none is left therefore yields the mutual best
+     * matches, the same as repeatedly calling <tt>UnmatchedIndexMap.match()</tt> when candidates are not limited. A
+     * heap of missing rows is ordered by each row's best remaining candidate, and candidates whose surplus row has
+     * meanwhile been linked are skipped lazily, so that each candidate is looked at once.
+     *
+     * <p>
+     * Only the missing rows whose candidates were collected are linked, which may be fewer than all of them if
+     * collecting was cancelled. Linking is not cancelled itself, as it takes time in proportion to the candidates.
+     *
+     * @param missingRows the missing rows, in the order candidates were collected
+     * @param surplusRows the surplus rows, in order of rank
+     */
+    void link(MutableList<UnmatchedIndexMap> missingRows, List<UnmatchedIndexMap> surplusRows)
+    {
+        int[] cursors = new int[this.rowCount];
+        int[] heap = new int[this.rowCount];
+        int heapSize = 0;
+        for (int row = 0; row < this.rowCount; row++)
+        {
+            cursors[row] = row == 0 ? 0 : this.rowEnds[row - 1];
+            if (missingRows.get(row).getBestMutualMatch() == null && this.advance(row, cursors, surplusRows))
+            {
+                heap[heapSize++] = row;
+            }
+        }
+        for (int position = heapSize / 2 - 1; position >= 0; position--)
+        {
+            this.siftDown(heap, heapSize, position, cursors, missingRows);
+        }
+        while (heapSize > 0)
+        {
+            int row = heap[0];
+            UnmatchedIndexMap surplus = surplusRows.get(surplusRank(this.candidates[cursors[row]]));
+            if (surplus.getBestMutualMatch() == null)
+            {
+                missingRows.get(row).link(surplus);
+                heap[0] = heap[--heapSize];
+            }
+            else if (!this.advance(row, cursors, surplusRows))
+            {
+                heap[0] = heap[--heapSize];
+            }
+            this.siftDown(heap, heapSize, 0, cursors, missingRows);
+        }
+    }
+
+    private boolean advance(int row, int[] cursors, List<UnmatchedIndexMap> surplusRows)
+    {
+        while (cursors[row] < this.rowEnds[row])
+        {
+            if (surplusRows.get(surplusRank(this.candidates[cursors[row]])).getBestMutualMatch() == null)
+            {
+                return true;
+            }
+            cursors[row]++;
+        }
+        return false;
+    }
+
+    private void siftDown(int[] heap, int heapSize, int position, int[] cursors, MutableList<UnmatchedIndexMap> missingRows)
+    {
+        int row = heap[position];
+        while (true)
+        {
+            int child = 2 * position + 1;
+            if (child >= heapSize)
+            {
+                break;
+            }
+            if (child + 1 < heapSize && this.isBefore(heap[child + 1], heap[child], cursors, missingRows))
+            {
+                child++;
+            }
+            if (!this.isBefore(heap[child], row, cursors, missingRows))
+            {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = row;
+    }
+
+    private boolean isBefore(int row, int that, int[] cursors, MutableList<UnmatchedIndexMap> missingRows)
+    {
+        long candidate = this.candidates[cursors[row]];
+        long thatCandidate = this.candidates[cursors[that]];
+        int result = Integer.compare((int) (thatCandidate >>> 32), (int) (candidate >>> 32));
+        if (result == 0)
+        {
+            result = Integer.compare(missingRows.get(row).getLhsIndex(), missingRows.get(that).getLhsIndex());
+        }
+        return result == 0 ? surplusRank(candidate) < surplusRank(thatCandidate) : result < 0;
+    }
+
+    private static int surplusRank(long candidate)
+    {
+        return Integer.MAX_VALUE - (int) candidate;
+    }
+}
@@ -21,4 +21,13 @@ import org.eclipse.collections.api.list.MutableList;
 public interface PartialMatcher
 {
     void match(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> matchedColumns);
+
+    /**
+     * Matches rows as <tt>match</tt> does, throwing a <tt>CancellationException</tt> soon after the token is
+     * cancelled. Matchers that do not poll the token run to completion.
+     */
+    default void match(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> matchedColumns, CancellationToken cancellationToken)
+    {
+        this.match(allMissingRows, allSurplusRows, matchedColumns);
+    }
 }
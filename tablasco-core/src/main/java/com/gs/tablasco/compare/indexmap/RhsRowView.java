@@ -17,6 +17,8 @@
 package com.gs.tablasco.compare.indexmap;
 
 import com.gs.tablasco.ComparableTable;
+import com.gs.tablasco.compare.CellComparator;
+import com.gs.tablasco.compare.CellFormatter;
 import com.gs.tablasco.compare.ColumnComparators;
 
 import java.util.List;
@@ -28,6 +30,11 @@ public class RhsRowView extends RowView
         super(rhsData, keyColumns, columnComparators, rowIndex);
     }
 
+    RhsRowView(ComparableTable rhsData, List<IndexMap> columns, CellComparator[] comparators, CellFormatter[] formatters, int rowIndex)
+    {
+        super(rhsData, columns, comparators, formatters, null, rowIndex);
+    }
+
     @Override
     protected int getColumnIndex(IndexMap column)
     {
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare.indexmap;
+
+/**
+ * Results that know the rows of the compared tables that each of their rows shows.
+ */
+interface RowIndexedResults
+{
+    /**
+     * @param row the index of a compared row, not counting the headers
+     * @return the index of the rhs row shown, or -1 for a missing row
+     */
+    int getRhsRowIndex(int row);
+
+    /**
+     * @param row the index of a compared row, not counting the headers
+     * @return the index of the lhs row shown, or -1 for a surplus row
+     */
+    int getLhsRowIndex(int row);
+}
@@ -17,10 +17,14 @@
 package com.gs.tablasco.compare.indexmap;
 
 import com.gs.tablasco.ComparableTable;
+import com.gs.tablasco.compare.CellComparator;
+import com.gs.tablasco.compare.CellFormatter;
 import com.gs.tablasco.compare.ColumnComparators;
 import org.eclipse.collections.api.list.MutableList;
 
 import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public abstract class RowIterator implements Iterator<RowView>
 {
@@ -29,6 +33,7 @@ public abstract class RowIterator implements Iterator<RowView>
     private final ColumnComparators columnComparators;
     private int rowIndex;
     private final int lastUnMatchedOffset;
+    private CellComparator[] comparators;
 
     protected RowIterator(ComparableTable table, MutableList<IndexMap> columns, ColumnComparators columnComparators, int initialIndex, int lastUnMatchedOffset)
     {
@@ -39,6 +44,15 @@ public abstract class RowIterator implements Iterator<RowView>
         this.lastUnMatchedOffset = lastUnMatchedOffset;
     }
 
+    /**
+     * @param comparators the comparator of each matched column, as found in the comparison plan
+     */
+    RowIterator(ComparableTable table, MutableList<IndexMap> columns, CellComparator[] comparators, int initialIndex, int lastUnMatchedOffset)
+    {
+        this(table, columns, (ColumnComparators) null, initialIndex, lastUnMatchedOffset);
+        this.comparators = comparators;
+    }
+
     @Override
     public boolean hasNext()
     {
@@ -48,12 +62,37 @@ public abstract class RowIterator implements Iterator<RowView>
     @Override
     public RowView next()
     {
-        RowView rowView = this.createRowView(this.rowIndex);
+        RowView rowView = this.createRowView(this.rowIndex, null);
         this.rowIndex++;
         return rowView;
     }
 
-    protected abstract RowView createRowView(int rowIndex);
+    /**
+     * Creates the views of all the remaining rows, splitting them in chunks that are formatted on the given pool.
+     * Formatters are not thread-safe so every chunk formats with its own copies; the views themselves share this
+     * iterator's comparators and are identical to the ones returned by <tt>next()</tt>.
+     *
+     * @param pool      the pool to format on
+     * @param chunkSize the number of rows formatted by each task
+     * @return the views in row order
+     */
+    public RowView[] nextAll(ForkJoinPool pool, int chunkSize)
+    {
+        int from = this.rowIndex;
+        int to = this.table.getRowCount() - this.lastUnMatchedOffset;
+        RowView[] rowViews = new RowView[Math.max(0, to - from)];
+        this.getComparators();
+        pool.invoke(new RowViewsTask(rowViews, from, 0, rowViews.length, chunkSize));
+        this.rowIndex = Math.max(from, to);
+        return rowViews;
+    }
+
+    /**
+     * @param formatters the formatters of the matched columns if not the comparators' own, or <tt>null</tt>
+     */
+    protected abstract RowView createRowView(int rowIndex, CellFormatter[] formatters);
+
+    protected abstract int getColumnIndex(IndexMap column);
 
     @Override
     public void remove()
@@ -75,4 +114,76 @@ public abstract class RowIterator implements Iterator<RowView>
     {
         return this.columnComparators;
     }
+
+    /**
+     * Returns the comparator of each matched column (<tt>null</tt> for unmatched columns), looked up once and shared
+     * by all the rows created by this iterator.
+     */
+    protected CellComparator[] getComparators()
+    {
+        if (this.comparators == null)
+        {
+            this.comparators = new CellComparator[this.columns.size()];
+            for (int i = 0; i < this.comparators.length; i++)
+            {
+                IndexMap column = this.columns.get(i);
+                if (column.isMatched())
+                {
+                    this.comparators[i] = this.columnComparators.getComparator(this.table.getColumnName(this.getColumnIndex(column)));
+                }
+            }
+        }
+        return this.comparators;
+    }
+
+    private CellFormatter[] copyFormatters()
+    {
+        CellComparator[] comparators = this.getComparators();
+        CellFormatter[] formatters = new CellFormatter[comparators.length];
+        for (int i = 0; i < comparators.length; i++)
+        {
+            if (comparators[i] != null)
+            {
+                formatters[i] = comparators[i].getFormatter().copy();
+            }
+        }
+        return formatters;
+    }
+
+    private final class RowViewsTask extends RecursiveAction
+    {
+        private final RowView[] rowViews;
+        private final int firstRowIndex;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+
+        private RowViewsTask(RowView[] rowViews, int firstRowIndex, int from, int to, int chunkSize)
+        {
+            this.rowViews = rowViews;
+            this.firstRowIndex = firstRowIndex;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (this.to - this.from <= this.chunkSize)
+            {
+                CellFormatter[] formatters = RowIterator.this.copyFormatters();
+                for (int i = this.from; i < this.to; i++)
+                {
+                    this.rowViews[i] = RowIterator.this.createRowView(this.firstRowIndex + i, formatters);
+                }
+            }
+            else
+            {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new RowViewsTask(this.rowViews, this.firstRowIndex, this.from, middle, this.chunkSize),
+                        new RowViewsTask(this.rowViews, this.firstRowIndex, middle, this.to, this.chunkSize));
+            }
+        }
+    }
 }
@@ -19,47 +19,181 @@ package com.gs.tablasco.compare.indexmap;
 
 import com.gs.tablasco.ComparableTable;
 import com.gs.tablasco.compare.CellComparator;
+import com.gs.tablasco.compare.CellFormatter;
 import com.gs.tablasco.compare.ColumnComparators;
+import com.gs.tablasco.compare.ColumnarComparableTable;
 
 import java.util.List;
 
+/**
+ * A row of a table viewed through the matched columns of a comparison. Every matched cell is formatted exactly once,
+ * when the view is created; the formatted keys and the resulting hash code are then reused by every <tt>hashCode</tt>
+ * and <tt>equals</tt> call. Raw values are only read back when two keys differ, so that tolerance based equality is
+ * unchanged. Rows of a columnar snapshot are formatted and compared without boxing their values.
+ */
 public abstract class RowView
 {
     private final ComparableTable table;
     private final List<IndexMap> columnIndices;
     private final int rowIndex;
-    private final ColumnComparators columnComparators;
+    private final CellComparator[] comparators;
+    private final String[] keys;
+    private final int hashCode;
+    private final int secondaryHashCode;
 
     RowView(ComparableTable table, List<IndexMap> columnIndices, ColumnComparators columnComparators, int rowIndex)
+    {
+        this(table, columnIndices, null, null, columnComparators, rowIndex);
+    }
+
+    /**
+     * @param comparators the comparator of each matched column, or <tt>null</tt> to look them up
+     * @param formatters  the formatter of each matched column if it is not the comparator's own, e.g. a copy used by
+     *                    another thread, or <tt>null</tt>
+     */
+    RowView(ComparableTable table, List<IndexMap> columnIndices, CellComparator[] comparators, CellFormatter[] formatters, ColumnComparators columnComparators, int rowIndex)
     {
         this.table = table;
         this.columnIndices = columnIndices;
         this.rowIndex = rowIndex;
-        this.columnComparators = columnComparators;
+        this.comparators = comparators == null ? this.getComparators(columnComparators) : comparators;
+        this.keys = new String[this.comparators.length];
+        int hashCode = 0;
+        int secondaryHashCode = 0;
+        for (int i = 0; i < this.keys.length; i++)
+        {
+            CellComparator comparator = this.comparators[i];
+            if (comparator != null)
+            {
+                CellFormatter formatter = formatters == null ? comparator.getFormatter() : formatters[i];
+                String key = this.format(i, formatter);
+                this.keys[i] = key;
+                hashCode += key.hashCode();
+                secondaryHashCode += secondaryHashCode(key);
+            }
+        }
+        this.hashCode = hashCode;
+        this.secondaryHashCode = secondaryHashCode;
     }
 
-    @Override
-    public int hashCode()
+    private RowView(RowView source, List<IndexMap> columnIndices, int[] positions)
     {
+        this.table = source.table;
+        this.columnIndices = columnIndices;
+        this.rowIndex = source.rowIndex;
+        this.comparators = new CellComparator[positions.length];
+        this.keys = new String[positions.length];
         int hashCode = 0;
-        for (IndexMap column : this.columnIndices)
+        int secondaryHashCode = 0;
+        for (int i = 0; i < positions.length; i++)
+        {
+            this.comparators[i] = source.comparators[positions[i]];
+            this.keys[i] = source.keys[positions[i]];
+            if (this.keys[i] != null)
+            {
+                hashCode += this.keys[i].hashCode();
+                secondaryHashCode += secondaryHashCode(this.keys[i]);
+            }
+        }
+        this.hashCode = hashCode;
+        this.secondaryHashCode = secondaryHashCode;
+    }
+
+    /**
+     * Returns a view of the same row restricted to the given subset of this view's columns, reusing the keys that
+     * have already been formatted.
+     *
+     * @param columnIndices the subset of columns
+     * @param positions     the position of each of the subset's columns in <tt>getColumnIndices()</tt>
+     */
+    RowView project(List<IndexMap> columnIndices, int[] positions)
+    {
+        RowView source = this;
+        return new RowView(this, columnIndices, positions)
         {
+            @Override
+            protected int getColumnIndex(IndexMap column)
+            {
+                return source.getColumnIndex(column);
+            }
+        };
+    }
+
+    List<IndexMap> getColumnIndices()
+    {
+        return this.columnIndices;
+    }
+
+    private CellComparator[] getComparators(ColumnComparators columnComparators)
+    {
+        CellComparator[] comparators = new CellComparator[this.columnIndices.size()];
+        for (int i = 0; i < comparators.length; i++)
+        {
+            IndexMap column = this.columnIndices.get(i);
             if (column.isMatched())
             {
-                CellComparator comparator = getCellComparator(column);
-                hashCode += comparator.computeHashCode(this.getValue(column));
+                comparators[i] = columnComparators.getComparator(this.table.getColumnName(this.getColumnIndex(column)));
             }
         }
-        return hashCode;
+        return comparators;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return this.hashCode;
+    }
+
+    /**
+     * Returns a 64-bit hash of the row's keys: <tt>hashCode()</tt> in the upper half and an independent (FNV-1a based)
+     * hash in the lower half. Rows with equal keys have equal hashes; rows whose keys differ rarely collide.
+     */
+    public long longHashCode()
+    {
+        return ((long) this.hashCode << 32) | (this.secondaryHashCode & 0xFFFFFFFFL);
+    }
+
+    private static int secondaryHashCode(String key)
+    {
+        int hash = 0x811C9DC5;
+        for (int i = 0; i < key.length(); i++)
+        {
+            hash = (hash ^ key.charAt(i)) * 0x01000193;
+        }
+        return hash;
+    }
+
+    private String format(int position, CellFormatter formatter)
+    {
+        if (this.table instanceof ColumnarComparableTable)
+        {
+            return ((ColumnarComparableTable) this.table).format(this.rowIndex, this.getColumnIndex(this.columnIndices.get(position)), formatter);
+        }
+        return formatter.format(this.getValue(position));
+    }
+
+    /**
+     * Returns <tt>true</tt> if the cell is a non-null value of a double column of a columnar snapshot.
+     */
+    private boolean isDouble(int position)
+    {
+        if (this.table instanceof ColumnarComparableTable)
+        {
+            ColumnarComparableTable columnar = (ColumnarComparableTable) this.table;
+            int columnIndex = this.getColumnIndex(this.columnIndices.get(position));
+            return columnar.isDoubleColumn(columnIndex) && !columnar.isNull(this.rowIndex, columnIndex);
+        }
+        return false;
     }
 
-    private CellComparator getCellComparator(IndexMap column) {
-        return this.columnComparators.getComparator(this.table.getColumnName(this.getColumnIndex(column)));
+    private double getDouble(int position)
+    {
+        return ((ColumnarComparableTable) this.table).getDouble(this.rowIndex, this.getColumnIndex(this.columnIndices.get(position)));
     }
 
-    private Object getValue(IndexMap column)
+    private Object getValue(int position)
     {
-        return this.table.getValueAt(this.rowIndex, getColumnIndex(column));
+        return this.table.getValueAt(this.rowIndex, this.getColumnIndex(this.columnIndices.get(position)));
     }
 
     protected abstract int getColumnIndex(IndexMap column);
@@ -70,20 +204,36 @@ public abstract class RowView
         if (obj instanceof RowView)
         {
             RowView that = (RowView) obj;
-            for (IndexMap column : this.columnIndices)
+            for (int i = 0; i < this.keys.length; i++)
             {
-                if (column.isMatched())
+                CellComparator comparator = this.comparators[i];
+                if (comparator == that.comparators[i])
                 {
-                    Object thisVal = this.getValue(column);
-                    Object thatVal = that.getValue(column);
-                    if (!this.getCellComparator(column).equals(thisVal, thatVal))
+                    if (comparator != null && !this.keys[i].equals(that.keys[i]) && !this.equalValues(comparator, i, that))
                     {
                         return false;
                     }
                 }
+                else if (comparator != null && !comparator.equals(this.getValue(i), that.getValue(i)))
+                {
+                    // keys formatted by different comparators are not comparable
+                    return false;
+                }
             }
             return true;
         }
         return false;
     }
+
+    /**
+     * Returns <tt>true</tt> if the comparator considers two cells with different keys equal.
+     */
+    private boolean equalValues(CellComparator comparator, int position, RowView that)
+    {
+        if (this.isDouble(position) && that.isDouble(position))
+        {
+            return comparator.compareDoubles(this.getDouble(position), that.getDouble(position));
+        }
+        return comparator.equals(this.getValue(position), this.keys[position], that.getValue(position), that.keys[position]);
+    }
 }
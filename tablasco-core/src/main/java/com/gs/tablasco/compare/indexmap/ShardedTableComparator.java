@@ -0,0 +1,283 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare.indexmap;
+
+import com.gs.tablasco.ComparableTable;
+import com.gs.tablasco.compare.CellComparator;
+import com.gs.tablasco.compare.CellFormatter;
+import com.gs.tablasco.compare.ColumnComparators;
+import com.gs.tablasco.compare.DefaultComparableTableAdapter;
+import com.gs.tablasco.compare.KeyedComparableTable;
+import com.gs.tablasco.compare.ResultTable;
+import com.gs.tablasco.compare.SingleTableComparator;
+import org.eclipse.collections.api.block.function.Function;
+import org.eclipse.collections.api.list.primitive.MutableIntList;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Splits keyed tables into shards by the hash of their key columns and compares the shards on a shared pool of
+ * threads, each with its own copy of the column comparators, merging their results in the order of the rows of the
+ * compared tables. Rows with equal keys are always in the same shard, so rows are matched as in a single comparison,
+ * except that row order is only verified and rows without a matching key are only partially matched within each
+ * shard. Floating point key values are left out of the hash as they may be equal within tolerance; tables that are not
+ * keyed are compared in one piece.
+ * <p>
+ * Tables must support concurrent reads.
+ */
+public class ShardedTableComparator implements SingleTableComparator
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardedTableComparator.class);
+
+    private final ColumnComparators columnComparators;
+    private final Function<ColumnComparators, ? extends SingleTableComparator> shardComparatorFactory;
+    private final int shardCount;
+    private final int threadCount;
+
+    /**
+     * @param columnComparators      comparators to hash keys with, copied for each shard
+     * @param shardComparatorFactory creates the comparator of a shard from its copy of the column comparators
+     * @param shardCount             number of shards
+     * @param threadCount            number of threads comparing shards
+     */
+    public ShardedTableComparator(ColumnComparators columnComparators, Function<ColumnComparators, ? extends SingleTableComparator> shardComparatorFactory, int shardCount, int threadCount)
+    {
+        if (shardCount < 1 || threadCount < 1)
+        {
+            throw new IllegalArgumentException("Shard and thread counts must be at least 1");
+        }
+        this.columnComparators = columnComparators;
+        this.shardComparatorFactory = shardComparatorFactory;
+        this.shardCount = shardCount;
+        this.threadCount = threadCount;
+    }
+
+    @Override
+    public ResultTable compare(ComparableTable rhsData, ComparableTable lhsData)
+    {
+        int[] rhsKeyColumns = rhsData instanceof KeyedComparableTable ? getKeyColumns((KeyedComparableTable) rhsData) : new int[0];
+        int[] lhsKeyColumns = getColumnIndices(lhsData, rhsData, rhsKeyColumns);
+        if (this.shardCount == 1 || rhsKeyColumns.length == 0 || lhsKeyColumns == null)
+        {
+            LOGGER.debug("Comparing tables without sharding");
+            return this.shardComparatorFactory.valueOf(this.columnComparators).compare(rhsData, lhsData);
+        }
+        CellFormatter[] formatters = getKeyFormatters(this.columnComparators, rhsData, rhsKeyColumns);
+        LOGGER.info("Comparing tables in {} shards on {} threads", this.shardCount, this.threadCount);
+        int[][] rhsShards = this.shard(rhsData, rhsKeyColumns, formatters);
+        int[][] lhsShards = this.shard(lhsData, lhsKeyColumns, formatters);
+
+        List<Callable<ResultTable>> tasks = FastList.newList(this.shardCount);
+        for (int shard = 0; shard < this.shardCount; shard++)
+        {
+            ComparableTable rhsShard = new ShardTable(rhsData, rhsShards[shard]);
+            ComparableTable lhsShard = new ShardTable(lhsData, lhsShards[shard]);
+            ColumnComparators shardComparators = this.columnComparators.copy();
+            tasks.add(() -> this.shardComparatorFactory.valueOf(shardComparators).compare(rhsShard, lhsShard));
+        }
+        try
+        {
+            List<ResultTable> results = FastList.newList(this.shardCount);
+            for (Future<ResultTable> shardResult : ForkJoinPools.get(this.threadCount).invokeAll(tasks))
+            {
+                results.add(shardResult.get());
+            }
+            return merge(results, rhsShards, lhsShards, rhsData.getRowCount(), lhsData.getRowCount());
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Merges the results of the shards in the order of the rows they show in the compared tables, as ordered by
+     * <tt>IndexMapOrdering</tt>, or concatenates them in shard order if their rows are not known.
+     */
+    private static ResultTable merge(List<ResultTable> results, int[][] rhsShards, int[][] lhsShards, int rhsRowCount, int lhsRowCount)
+    {
+        int rowCount = 0;
+        for (ResultTable result : results)
+        {
+            if (!(result instanceof RowIndexedResults))
+            {
+                LOGGER.debug("Concatenating shard results in shard order");
+                return ResultTable.concat(results);
+            }
+            rowCount += result.getComparedRows().size() - 1;
+        }
+        int[] rhsIndices = new int[rowCount];
+        int[] lhsIndices = new int[rowCount];
+        int[] sources = new int[rowCount];
+        int[] sourceRows = new int[rowCount];
+        int position = 0;
+        for (int shard = 0; shard < results.size(); shard++)
+        {
+            RowIndexedResults result = (RowIndexedResults) results.get(shard);
+            int shardRowCount = results.get(shard).getComparedRows().size() - 1;
+            for (int row = 0; row < shardRowCount; row++)
+            {
+                int rhsIndex = result.getRhsRowIndex(row);
+                int lhsIndex = result.getLhsRowIndex(row);
+                rhsIndices[position] = rhsIndex < 0 ? -1 : rhsShards[shard][rhsIndex];
+                lhsIndices[position] = lhsIndex < 0 ? -1 : lhsShards[shard][lhsIndex];
+                sources[position] = shard;
+                sourceRows[position] = row;
+                position++;
+            }
+        }
+        int[] order = IndexMapOrdering.order(rhsIndices, lhsIndices, lhsRowCount, rhsRowCount);
+        int[] rowSources = new int[rowCount];
+        int[] rowsInSources = new int[rowCount];
+        for (int row = 0; row < rowCount; row++)
+        {
+            rowSources[row] = sources[order[row]];
+            rowsInSources[row] = sourceRows[order[row]];
+        }
+        return ResultTable.merge(results, rowSources, rowsInSources);
+    }
+
+    private int[][] shard(ComparableTable table, int[] keyColumns, CellFormatter[] formatters)
+    {
+        MutableIntList[] shards = new MutableIntList[this.shardCount];
+        for (int shard = 0; shard < this.shardCount; shard++)
+        {
+            shards[shard] = new IntArrayList(table.getRowCount() / this.shardCount + 1);
+        }
+        for (int rowIndex = 0; rowIndex < table.getRowCount(); rowIndex++)
+        {
+            shards[getShard(table, rowIndex, keyColumns, formatters, this.shardCount)].add(rowIndex);
+        }
+        int[][] rowIndices = new int[this.shardCount][];
+        for (int shard = 0; shard < this.shardCount; shard++)
+        {
+            rowIndices[shard] = shards[shard].toArray();
+        }
+        return rowIndices;
+    }
+
+    static CellFormatter[] getKeyFormatters(ColumnComparators columnComparators, ComparableTable table, int[] keyColumns)
+    {
+        CellFormatter[] formatters = new CellFormatter[keyColumns.length];
+        for (int i = 0; i < formatters.length; i++)
+        {
+            formatters[i] = columnComparators.getComparator(table.getColumnName(keyColumns[i])).getFormatter();
+        }
+        return formatters;
+    }
+
+    /**
+     * Returns the shard of a row from the hash of its formatted key values, leaving out floating point values.
+     */
+    static int getShard(ComparableTable table, int rowIndex, int[] keyColumns, CellFormatter[] formatters, int shardCount)
+    {
+        int hashCode = 0;
+        for (int i = 0; i < keyColumns.length; i++)
+        {
+            Object value = table.getValueAt(rowIndex, keyColumns[i]);
+            hashCode = 31 * hashCode + (CellComparator.isFloatingPoint(value) ? 0 : formatters[i].format(value).hashCode());
+        }
+        // spread the bits so that keys differing only in their last characters are spread over the shards
+        hashCode ^= hashCode >>> 16;
+        return Math.floorMod(hashCode, shardCount);
+    }
+
+    static int[] getKeyColumns(KeyedComparableTable table)
+    {
+        MutableIntList keyColumns = new IntArrayList();
+        for (int columnIndex = 0; columnIndex < table.getColumnCount(); columnIndex++)
+        {
+            if (table.isKeyColumn(columnIndex))
+            {
+                keyColumns.add(columnIndex);
+            }
+        }
+        return keyColumns.toArray();
+    }
+
+    /**
+     * Returns the indices of the table's columns named like the other table's columns, or null if any is missing.
+     */
+    static int[] getColumnIndices(ComparableTable table, ComparableTable otherTable, int[] otherColumns)
+    {
+        int[] columns = new int[otherColumns.length];
+        for (int i = 0; i < columns.length; i++)
+        {
+            columns[i] = -1;
+            String columnName = otherTable.getColumnName(otherColumns[i]);
+            for (int columnIndex = 0; columnIndex < table.getColumnCount() && columns[i] < 0; columnIndex++)
+            {
+                if (columnName.equals(table.getColumnName(columnIndex)))
+                {
+                    columns[i] = columnIndex;
+                }
+            }
+            if (columns[i] < 0)
+            {
+                return null;
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * The rows of a table in one shard, keyed like the table.
+     */
+    private static final class ShardTable extends DefaultComparableTableAdapter implements KeyedComparableTable
+    {
+        private final ComparableTable table;
+        private final int[] rowIndices;
+
+        private ShardTable(ComparableTable table, int[] rowIndices)
+        {
+            super(table);
+            this.table = table;
+            this.rowIndices = rowIndices;
+        }
+
+        @Override
+        public int getRowCount()
+        {
+            return this.rowIndices.length;
+        }
+
+        @Override
+        public Object getValueAt(int rowIndex, int columnIndex)
+        {
+            return super.getValueAt(this.rowIndices[rowIndex], columnIndex);
+        }
+
+        @Override
+        public boolean isKeyColumn(int columnIndex)
+        {
+            return this.table instanceof KeyedComparableTable && ((KeyedComparableTable) this.table).isKeyColumn(columnIndex);
+        }
+    }
+}
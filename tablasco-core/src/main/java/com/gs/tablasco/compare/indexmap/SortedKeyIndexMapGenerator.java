@@ -0,0 +1,255 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare.indexmap;
+
+import com.gs.tablasco.ComparableTable;
+import com.gs.tablasco.compare.CellComparator;
+import com.gs.tablasco.compare.CellFormatter;
+import com.gs.tablasco.compare.KeyedComparableTable;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.list.mutable.FastList;
+
+/**
+ * Matches the rows of tables sorted by their key columns by walking both tables in key order, like a merge join.
+ * Rows whose key is only on one side are missing or surplus straight away; rows sharing a key are matched like
+ * <tt>IndexMapGenerator</tt> matches them, within their key group only. Results are therefore identical to those of
+ * <tt>IndexMapGenerator</tt>, without hashing every row.
+ * <p>
+ * Key values are ordered by their natural order if they are of the same class or both numbers, or else by their
+ * formatted values, and are equal if formatted identically. Sort order is checked while walking the tables;
+ * <tt>generate</tt> gives up and returns false as soon as a key is found out of order, or a floating point key that
+ * could be equal within tolerance to a differently formatted one.
+ */
+public class SortedKeyIndexMapGenerator
+{
+    private final ComparableTable rhsData;
+    private final ComparableTable lhsData;
+    private final RowIterator rhsRows;
+    private final RowIterator lhsRows;
+    private final int firstUnMatchedIndex;
+    private final int lastUnMatchedOffset;
+    private final int[] rhsKeyColumns;
+    private final int[] lhsKeyColumns;
+    private final CellFormatter[] keyFormatters;
+    private MutableList<IndexMap> matched;
+    private MutableList<UnmatchedIndexMap> missing;
+    private MutableList<UnmatchedIndexMap> surplus;
+    private boolean floatingPointKey;
+
+    public SortedKeyIndexMapGenerator(KeyedComparableTable rhsData, ComparableTable lhsData, ComparisonPlan plan, int firstUnMatchedIndex, int lastUnMatchedOffset)
+    {
+        this.rhsData = rhsData;
+        this.lhsData = lhsData;
+        this.rhsRows = new RhsRowIterator(plan, rhsData, firstUnMatchedIndex, lastUnMatchedOffset);
+        this.lhsRows = new LhsRowIterator(plan, lhsData, firstUnMatchedIndex, lastUnMatchedOffset);
+        this.firstUnMatchedIndex = firstUnMatchedIndex;
+        this.lastUnMatchedOffset = lastUnMatchedOffset;
+        MutableList<IndexMap> keyColumns = plan.getKeyColumns();
+        this.rhsKeyColumns = new int[keyColumns.size()];
+        this.lhsKeyColumns = new int[keyColumns.size()];
+        this.keyFormatters = new CellFormatter[keyColumns.size()];
+        for (int i = 0; i < this.keyFormatters.length; i++)
+        {
+            IndexMap column = keyColumns.get(i);
+            this.rhsKeyColumns[i] = column.getRhsIndex();
+            this.lhsKeyColumns[i] = column.getLhsIndex();
+            this.keyFormatters[i] = plan.getLhsFormatter(plan.positionOf(column));
+        }
+    }
+
+    public boolean hasKeyColumns()
+    {
+        return this.keyFormatters.length > 0;
+    }
+
+    public MutableList<IndexMap> getMatched()
+    {
+        return this.matched;
+    }
+
+    public MutableList<UnmatchedIndexMap> getMissing()
+    {
+        return this.missing;
+    }
+
+    public MutableList<UnmatchedIndexMap> getSurplus()
+    {
+        return this.surplus;
+    }
+
+    /**
+     * @return false if either table is not sorted by key, in which case no rows are matched
+     */
+    public boolean generate()
+    {
+        this.matched = FastList.newList();
+        this.missing = FastList.newList();
+        this.surplus = FastList.newList();
+        this.floatingPointKey = false;
+        int rhsEnd = this.rhsData.getRowCount() - this.lastUnMatchedOffset;
+        int lhsEnd = this.lhsData.getRowCount() - this.lastUnMatchedOffset;
+        int rhsIndex = this.firstUnMatchedIndex;
+        int lhsIndex = this.firstUnMatchedIndex;
+        while (rhsIndex < rhsEnd || lhsIndex < lhsEnd)
+        {
+            int comparison = rhsIndex == rhsEnd ? 1 : lhsIndex == lhsEnd ? -1 : this.compareKeys(this.rhsData, this.rhsKeyColumns, rhsIndex, this.lhsData, this.lhsKeyColumns, lhsIndex);
+            int rhsGroupEnd = rhsIndex;
+            int lhsGroupEnd = lhsIndex;
+            if (comparison <= 0)
+            {
+                rhsGroupEnd = this.groupEnd(this.rhsData, this.rhsKeyColumns, rhsIndex, rhsEnd);
+            }
+            if (comparison >= 0)
+            {
+                lhsGroupEnd = this.groupEnd(this.lhsData, this.lhsKeyColumns, lhsIndex, lhsEnd);
+            }
+            if (rhsGroupEnd < 0 || lhsGroupEnd < 0 || this.floatingPointKey)
+            {
+                this.matched = null;
+                this.missing = null;
+                this.surplus = null;
+                return false;
+            }
+            this.matchGroup(rhsIndex, rhsGroupEnd, lhsIndex, lhsGroupEnd);
+            rhsIndex = rhsGroupEnd;
+            lhsIndex = lhsGroupEnd;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the end of the group of rows with the same key as the given row, or -1 if the next key is lower.
+     */
+    private int groupEnd(ComparableTable table, int[] keyColumns, int rowIndex, int end)
+    {
+        int groupEnd = rowIndex + 1;
+        while (groupEnd < end)
+        {
+            int comparison = this.compareKeys(table, keyColumns, groupEnd, table, keyColumns, rowIndex);
+            if (comparison < 0)
+            {
+                return -1;
+            }
+            if (comparison > 0)
+            {
+                return groupEnd;
+            }
+            groupEnd++;
+        }
+        return groupEnd;
+    }
+
+    private void matchGroup(int rhsFrom, int rhsTo, int lhsFrom, int lhsTo)
+    {
+        if (rhsTo - rhsFrom == 1 && lhsTo - lhsFrom == 1)
+        {
+            RowView rhs = this.rhsRows.createRowView(rhsFrom, null);
+            RowView lhs = this.lhsRows.createRowView(lhsFrom, null);
+            if (lhs.longHashCode() == rhs.longHashCode() && lhs.equals(rhs))
+            {
+                this.matched.add(new IndexMap(lhsFrom, rhsFrom));
+            }
+            else
+            {
+                this.missing.add(new UnmatchedIndexMap(lhsFrom, -1, lhs));
+                this.surplus.add(new UnmatchedIndexMap(-1, rhsFrom, rhs));
+            }
+            return;
+        }
+        if (rhsFrom == rhsTo)
+        {
+            for (int lhsIndex = lhsFrom; lhsIndex < lhsTo; lhsIndex++)
+            {
+                this.missing.add(new UnmatchedIndexMap(lhsIndex, -1));
+            }
+            return;
+        }
+        if (lhsFrom == lhsTo)
+        {
+            for (int rhsIndex = rhsFrom; rhsIndex < rhsTo; rhsIndex++)
+            {
+                this.surplus.add(new UnmatchedIndexMap(-1, rhsIndex));
+            }
+            return;
+        }
+        MutableList<RowView> rhsViews = FastList.newList(rhsTo - rhsFrom);
+        for (int rhsIndex = rhsFrom; rhsIndex < rhsTo; rhsIndex++)
+        {
+            rhsViews.add(this.rhsRows.createRowView(rhsIndex, null));
+        }
+        MutableList<RowView> lhsViews = FastList.newList(lhsTo - lhsFrom);
+        for (int lhsIndex = lhsFrom; lhsIndex < lhsTo; lhsIndex++)
+        {
+            lhsViews.add(this.lhsRows.createRowView(lhsIndex, null));
+        }
+        IndexMapGenerator<RowView> generator = new IndexMapGenerator<>(lhsViews.iterator(), rhsViews.iterator(), 0, RowView::longHashCode);
+        generator.generate();
+        for (IndexMap row : generator.getMatched())
+        {
+            this.matched.add(new IndexMap(lhsFrom + row.getLhsIndex(), rhsFrom + row.getRhsIndex()));
+        }
+        for (UnmatchedIndexMap row : generator.getMissing())
+        {
+            this.missing.add(new UnmatchedIndexMap(lhsFrom + row.getLhsIndex(), -1, row.getRowView()));
+        }
+        for (UnmatchedIndexMap row : generator.getSurplus())
+        {
+            this.surplus.add(new UnmatchedIndexMap(-1, rhsFrom + row.getRhsIndex(), row.getRowView()));
+        }
+    }
+
+    private int compareKeys(ComparableTable table1, int[] keyColumns1, int rowIndex1, ComparableTable table2, int[] keyColumns2, int rowIndex2)
+    {
+        for (int i = 0; i < this.keyFormatters.length; i++)
+        {
+            Object value1 = table1.getValueAt(rowIndex1, keyColumns1[i]);
+            Object value2 = table2.getValueAt(rowIndex2, keyColumns2[i]);
+            if (CellComparator.isFloatingPoint(value1) || CellComparator.isFloatingPoint(value2))
+            {
+                this.floatingPointKey = true;
+                return 0;
+            }
+            int comparison = compareValues(value1, value2, this.keyFormatters[i]);
+            if (comparison != 0)
+            {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Object value1, Object value2, CellFormatter formatter)
+    {
+        String formatted1 = formatter.format(value1);
+        String formatted2 = formatter.format(value2);
+        if (formatted1.equals(formatted2))
+        {
+            return 0;
+        }
+        int comparison = 0;
+        if (value1 instanceof Number && value2 instanceof Number && value1.getClass() != value2.getClass())
+        {
+            comparison = Double.compare(((Number) value1).doubleValue(), ((Number) value2).doubleValue());
+        }
+        else if (value1 instanceof Comparable && value1.getClass() == value2.getClass())
+        {
+            comparison = ((Comparable<Object>) value1).compareTo(value2);
+        }
+        return comparison == 0 ? formatted1.compareTo(formatted2) : comparison;
+    }
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare.indexmap;
+
+import com.gs.tablasco.ComparableTable;
+import com.gs.tablasco.compare.CellFormatter;
+import com.gs.tablasco.compare.ColumnComparators;
+import com.gs.tablasco.compare.KeyedComparableTable;
+import com.gs.tablasco.compare.KeyedComparableTableAdapter;
+import com.gs.tablasco.compare.ListComparableTable;
+import com.gs.tablasco.compare.ResultTable;
+import com.gs.tablasco.compare.SingleTableComparator;
+import org.eclipse.collections.api.block.function.Function;
+import org.eclipse.collections.api.block.procedure.Procedure;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Compares keyed tables that do not fit in memory by hash partitioning the rows of both tables by their key columns
+ * into spill files, then comparing one partition at a time. Each table is read once, row by row, so tables backed by a
+ * file or a database cursor are never held in memory in full. The number of partitions is chosen so that the estimated
+ * size of a partition's rows and of the structures built to compare them fits in the memory budget. Rows are written
+ * to a bounded number of files at a time, whose buffers also fit in the budget; with more partitions than that, files
+ * cover ranges of partitions and are split again in further passes before they are compared.
+ * <p>
+ * Rows are partitioned like {@link ShardedTableComparator} shards them, so rows are matched as in a single comparison
+ * except that row order is only verified and rows without a matching key are only partially matched within each
+ * partition. Cell values must be serializable. Tables that are not keyed, or that fit in the budget, are compared in
+ * one piece without spilling.
+ * <p>
+ * <tt>compare(rhs, lhs, partitionResults)</tt> passes the results of each partition on as soon as it is compared, so
+ * that they can be summarised without holding the results of all partitions; <tt>compare(rhs, lhs)</tt> concatenates
+ * them, which holds the results of the whole comparison in memory.
+ */
+public class SpillingTableComparator implements SingleTableComparator
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpillingTableComparator.class);
+
+    // rows, indices and results of a comparison take a few times the size of the rows themselves
+    private static final int WORKING_SET_FACTOR = 4;
+    private static final int SAMPLE_SIZE = 256;
+    private static final int RESET_INTERVAL = 1024;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MIN_BUFFER_SIZE = 1 << 10;
+    // an object stream's own block buffer and handle tables, in addition to the buffer of the file
+    private static final int STREAM_BYTES = 1 << 12;
+    private static final int MAX_OPEN_FILES = 256;
+
+    private final ColumnComparators columnComparators;
+    private final Function<ColumnComparators, ? extends SingleTableComparator> partitionComparatorFactory;
+    private final long memoryBudgetBytes;
+    private final Path spillDirectory;
+
+    /**
+     * @param columnComparators          comparators to hash keys with and to compare partitions with
+     * @param partitionComparatorFactory creates the comparator of the partitions from the column comparators
+     * @param memoryBudgetBytes          the memory available to compare a partition
+     * @param spillDirectory             the directory of the spill files, or <tt>null</tt> for the default temporary
+     *                                   directory
+     */
+    public SpillingTableComparator(ColumnComparators columnComparators, Function<ColumnComparators, ? extends SingleTableComparator> partitionComparatorFactory, long memoryBudgetBytes, Path spillDirectory)
+    {
+        if (memoryBudgetBytes < 1L)
+        {
+            throw new IllegalArgumentException("Memory budget must be positive");
+        }
+        this.columnComparators = columnComparators;
+        this.partitionComparatorFactory = partitionComparatorFactory;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+        this.spillDirectory = spillDirectory;
+    }
+
+    @Override
+    public ResultTable compare(ComparableTable rhsData, ComparableTable lhsData)
+    {
+        List<ResultTable> results = FastList.newList();
+        this.compare(rhsData, lhsData, results::add);
+        if (results.size() > 1)
+        {
+            LOGGER.warn("Holding the results of {} spilled partitions in memory; pass the results of each partition on instead to summarise them as they are compared", results.size());
+        }
+        return results.size() == 1 ? results.get(0) : ResultTable.concat(results);
+    }
+
+    /**
+     * Compares two tables a partition at a time, passing the results of each partition on in partition order.
+     */
+    public void compare(ComparableTable rhsData, ComparableTable lhsData, Procedure<? super ResultTable> partitionResults)
+    {
+        int partitionCount = this.getPartitionCount(rhsData, lhsData);
+        int[] rhsKeyColumns = partitionCount > 1 && rhsData instanceof KeyedComparableTable ? ShardedTableComparator.getKeyColumns((KeyedComparableTable) rhsData) : new int[0];
+        int[] lhsKeyColumns = rhsKeyColumns.length == 0 ? null : ShardedTableComparator.getColumnIndices(lhsData, rhsData, rhsKeyColumns);
+        SingleTableComparator comparator = this.partitionComparatorFactory.valueOf(this.columnComparators);
+        if (lhsKeyColumns == null)
+        {
+            LOGGER.debug("Comparing tables without spilling");
+            partitionResults.value(comparator.compare(rhsData, lhsData));
+            return;
+        }
+        Spill spill = new Spill(partitionCount);
+        LOGGER.info("Comparing tables in {} partitions spilled to {}, {} at a time", partitionCount, this.spillDirectory == null ? "the temporary directory" : this.spillDirectory, spill.fanOut);
+        CellFormatter[] formatters = ShardedTableComparator.getKeyFormatters(this.columnComparators, rhsData, rhsKeyColumns);
+        try
+        {
+            SpillFile[] rhsFiles = spill.write("rhs", rhsData, rhsKeyColumns, formatters);
+            SpillFile[] lhsFiles = spill.write("lhs", lhsData, lhsKeyColumns, formatters);
+            for (int i = 0; i < rhsFiles.length; i++)
+            {
+                this.compare(spill, rhsFiles[i], lhsFiles[i], rhsData, lhsData, rhsKeyColumns, comparator, partitionResults);
+            }
+        }
+        finally
+        {
+            spill.delete();
+        }
+    }
+
+    /**
+     * Compares the partitions of two spill files covering the same partitions, splitting them further first if they
+     * cover more than one.
+     */
+    private void compare(Spill spill, SpillFile rhsFile, SpillFile lhsFile, ComparableTable rhsData, ComparableTable lhsData, int[] rhsKeyColumns, SingleTableComparator comparator, Procedure<? super ResultTable> partitionResults)
+    {
+        if (rhsFile.to - rhsFile.from > 1)
+        {
+            SpillFile[] rhsFiles = spill.split(rhsFile, rhsData);
+            SpillFile[] lhsFiles = spill.split(lhsFile, lhsData);
+            for (int i = 0; i < rhsFiles.length; i++)
+            {
+                this.compare(spill, rhsFiles[i], lhsFiles[i], rhsData, lhsData, rhsKeyColumns, comparator, partitionResults);
+            }
+            return;
+        }
+        ComparableTable rhsPartition = new KeyedComparableTableAdapter(spill.read(rhsFile, rhsData), rhsKeyColumns);
+        ComparableTable lhsPartition = lhsData instanceof KeyedComparableTable
+                ? new KeyedComparableTableAdapter(spill.read(lhsFile, lhsData), ShardedTableComparator.getKeyColumns((KeyedComparableTable) lhsData))
+                : spill.read(lhsFile, lhsData);
+        partitionResults.value(comparator.compare(rhsPartition, lhsPartition));
+    }
+
+    private int getPartitionCount(ComparableTable rhsData, ComparableTable lhsData)
+    {
+        if (rhsData == null || lhsData == null)
+        {
+            return 1;
+        }
+        long bytes = (estimateRowBytes(rhsData) * rhsData.getRowCount() + estimateRowBytes(lhsData) * lhsData.getRowCount()) * WORKING_SET_FACTOR;
+        // more partitions than rows would only add empty spill files
+        long maximumPartitionCount = Math.max(rhsData.getRowCount(), lhsData.getRowCount());
+        return (int) Math.max(1L, Math.min(maximumPartitionCount, (bytes + this.memoryBudgetBytes - 1L) / this.memoryBudgetBytes));
+    }
+
+    /**
+     * Estimates the heap size of a row from the values of evenly spaced rows.
+     */
+    static long estimateRowBytes(ComparableTable table)
+    {
+        int rowCount = table.getRowCount();
+        if (rowCount == 0)
+        {
+            return 0L;
+        }
+        int step = Math.max(1, rowCount / SAMPLE_SIZE);
+        long bytes = 0L;
+        int sampled = 0;
+        for (int rowIndex = 0; rowIndex < rowCount; rowIndex += step)
+        {
+            // the row's list and its array of references
+            bytes += 32L + 8L * table.getColumnCount();
+            for (int columnIndex = 0; columnIndex < table.getColumnCount(); columnIndex++)
+            {
+                bytes += estimateValueBytes(table.getValueAt(rowIndex, columnIndex));
+            }
+            sampled++;
+        }
+        return bytes / sampled;
+    }
+
+    private static long estimateValueBytes(Object value)
+    {
+        if (value == null)
+        {
+            return 0L;
+        }
+        if (value instanceof String)
+        {
+            return 40L + 2L * ((String) value).length();
+        }
+        if (value instanceof BigDecimal)
+        {
+            return 64L;
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character)
+        {
+            return 24L;
+        }
+        return 48L;
+    }
+
+    /**
+     * A file of spilled rows of one table, each preceded by its partition, covering partitions <tt>from</tt>
+     * (inclusive) to <tt>to</tt> (exclusive).
+     */
+    private static final class SpillFile
+    {
+        private final String prefix;
+        private final int from;
+        private final int to;
+        private Path path;
+        private int rowCount;
+
+        private SpillFile(String prefix, int from, int to)
+        {
+            this.prefix = prefix;
+            this.from = from;
+            this.to = to;
+        }
+    }
+
+    /**
+     * The spill files of a comparison. Rows are written to at most <tt>fanOut</tt> files at a time, so that the buffers
+     * of the open streams fit in the memory budget and the number of open files stays bounded. When there are more
+     * partitions than that, each file covers a range of partitions and is split again before it is compared.
+     */
+    private final class Spill
+    {
+        private final int partitionCount;
+        private final int fanOut;
+        private final int bufferSize;
+        private final List<SpillFile> files = FastList.newList();
+
+        private Spill(int partitionCount)
+        {
+            long budget = SpillingTableComparator.this.memoryBudgetBytes;
+            this.partitionCount = partitionCount;
+            this.fanOut = (int) Math.min(Math.min(partitionCount, MAX_OPEN_FILES), Math.max(2L, budget / (MIN_BUFFER_SIZE + STREAM_BYTES)));
+            this.bufferSize = (int) Math.min(BUFFER_SIZE, Math.max(MIN_BUFFER_SIZE, budget / this.fanOut - STREAM_BYTES));
+        }
+
+        /**
+         * Writes the rows of a table to files covering all partitions.
+         */
+        private SpillFile[] write(String prefix, ComparableTable table, int[] keyColumns, CellFormatter[] formatters)
+        {
+            SpillFile[] targets = this.newFiles(prefix, 0, this.partitionCount);
+            ObjectOutputStream[] streams = new ObjectOutputStream[targets.length];
+            try
+            {
+                this.open(targets, streams);
+                for (int rowIndex = 0; rowIndex < table.getRowCount(); rowIndex++)
+                {
+                    int partition = ShardedTableComparator.getShard(table, rowIndex, keyColumns, formatters, this.partitionCount);
+                    ObjectOutputStream stream = this.startRow(targets, streams, 0, partition);
+                    for (int columnIndex = 0; columnIndex < table.getColumnCount(); columnIndex++)
+                    {
+                        stream.writeObject(table.getValueAt(rowIndex, columnIndex));
+                    }
+                }
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException("Cannot spill rows of " + table.getTableName() + " to " + SpillingTableComparator.this.spillDirectory, e);
+            }
+            finally
+            {
+                for (ObjectOutputStream stream : streams)
+                {
+                    close(stream);
+                }
+            }
+            return targets;
+        }
+
+        /**
+         * Splits the rows of a file covering several partitions into files covering fewer, and deletes it.
+         */
+        private SpillFile[] split(SpillFile source, ComparableTable table)
+        {
+            SpillFile[] targets = this.newFiles(source.prefix, source.from, source.to);
+            ObjectOutputStream[] streams = new ObjectOutputStream[targets.length];
+            try (ObjectInputStream input = this.openInput(source))
+            {
+                this.open(targets, streams);
+                for (int rowIndex = 0; rowIndex < source.rowCount; rowIndex++)
+                {
+                    ObjectOutputStream stream = this.startRow(targets, streams, source.from, input.readInt());
+                    for (int columnIndex = 0; columnIndex < table.getColumnCount(); columnIndex++)
+                    {
+                        stream.writeObject(input.readObject());
+                    }
+                }
+            }
+            catch (IOException | ClassNotFoundException e)
+            {
+                throw new RuntimeException("Cannot split spilled rows of " + table.getTableName() + " from " + source.path, e);
+            }
+            finally
+            {
+                for (ObjectOutputStream stream : streams)
+                {
+                    close(stream);
+                }
+            }
+            this.delete(source);
+            return targets;
+        }
+
+        /**
+         * Reads the rows of a file covering one partition, and deletes it.
+         */
+        private ComparableTable read(SpillFile source, ComparableTable table)
+        {
+            MutableList<Object> headers = FastList.newList(table.getColumnCount());
+            for (int columnIndex = 0; columnIndex < table.getColumnCount(); columnIndex++)
+            {
+                headers.add(table.getColumnName(columnIndex));
+            }
+            MutableList<List<Object>> rows = FastList.newList(source.rowCount);
+            try (ObjectInputStream input = this.openInput(source))
+            {
+                for (int rowIndex = 0; rowIndex < source.rowCount; rowIndex++)
+                {
+                    input.readInt();
+                    List<Object> row = FastList.newList(headers.size());
+                    for (int columnIndex = 0; columnIndex < headers.size(); columnIndex++)
+                    {
+                        row.add(input.readObject());
+                    }
+                    rows.add(row);
+                }
+            }
+            catch (IOException | ClassNotFoundException e)
+            {
+                throw new RuntimeException("Cannot read spilled rows of " + table.getTableName() + " from " + source.path, e);
+            }
+            this.delete(source);
+            return new ListComparableTable(table.getTableName(), headers, rows);
+        }
+
+        /**
+         * Returns files covering up to <tt>fanOut</tt> equal ranges of the partitions <tt>from</tt> to <tt>to</tt>.
+         */
+        private SpillFile[] newFiles(String prefix, int from, int to)
+        {
+            int step = (to - from + this.fanOut - 1) / this.fanOut;
+            SpillFile[] targets = new SpillFile[(to - from + step - 1) / step];
+            for (int i = 0; i < targets.length; i++)
+            {
+                targets[i] = new SpillFile(prefix, from + i * step, Math.min(to, from + (i + 1) * step));
+                this.files.add(targets[i]);
+            }
+            return targets;
+        }
+
+        private void open(SpillFile[] targets, ObjectOutputStream[] streams) throws IOException
+        {
+            Path directory = SpillingTableComparator.this.spillDirectory;
+            for (int i = 0; i < targets.length; i++)
+            {
+                targets[i].path = directory == null
+                        ? Files.createTempFile("tablasco-" + targets[i].prefix + '-', ".spill")
+                        : Files.createTempFile(directory, "tablasco-" + targets[i].prefix + '-', ".spill");
+                streams[i] = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(targets[i].path), this.bufferSize));
+            }
+        }
+
+        private ObjectInputStream openInput(SpillFile source) throws IOException
+        {
+            return new ObjectInputStream(new BufferedInputStream(Files.newInputStream(source.path), this.bufferSize));
+        }
+
+        /**
+         * Writes the partition of a row to the file covering it, and returns the file's stream to write the row's
+         * values to.
+         */
+        private ObjectOutputStream startRow(SpillFile[] targets, ObjectOutputStream[] streams, int from, int partition) throws IOException
+        {
+            int target = (partition - from) / (targets[0].to - targets[0].from);
+            ObjectOutputStream stream = streams[target];
+            // forget the values written so far, so that the stream does not hold on to them
+            if (targets[target].rowCount++ % RESET_INTERVAL == RESET_INTERVAL - 1)
+            {
+                stream.reset();
+            }
+            stream.writeInt(partition);
+            return stream;
+        }
+
+        private void delete()
+        {
+            for (SpillFile file : this.files)
+            {
+                this.delete(file);
+            }
+        }
+
+        private void delete(SpillFile file)
+        {
+            if (file.path != null)
+            {
+                try
+                {
+                    Files.deleteIfExists(file.path);
+                    file.path = null;
+                }
+                catch (IOException e)
+                {
+                    LOGGER.warn("Cannot delete spill file {}", file.path, e);
+                }
+            }
+        }
+    }
+
+    private static void close(ObjectOutputStream stream)
+    {
+        if (stream != null)
+        {
+            try
+            {
+                stream.close();
+            }
+            catch (IOException e)
+            {
+                LOGGER.warn("Cannot close spill file", e);
+            }
+        }
+    }
+}
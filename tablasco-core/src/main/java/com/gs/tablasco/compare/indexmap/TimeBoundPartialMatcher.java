@@ -20,42 +20,169 @@ import org.eclipse.collections.api.list.MutableList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Runs partial matches on daemon threads shared by all comparisons and gives up on a match that takes longer than the
+ * timeout. A match given up on is cancelled and its thread interrupted, so that matchers polling their cancellation
+ * token free the thread soon after. At most as many matches as there are processors run at a time; further matches
+ * wait for one to finish, the wait counting against their timeout. A match that ignores cancellation is left to
+ * finish on its thread, which then no longer counts against that limit, so it cannot hold up later matches.
+ * <p>
+ * Matches timing out either fail or, when keeping partial matches, stop and keep the rows linked so far. The latter
+ * relies on the matcher observing cancellation; one that has not stopped after a short grace period fails all the
+ * same. A match timing out before it could start has linked no rows.
+ */
 public class TimeBoundPartialMatcher implements PartialMatcher
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(TimeBoundPartialMatcher.class);
 
+    private static final long STOP_GRACE_MILLIS = 1000L;
+    private static final int MAX_RUNNING_MATCHES = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final Semaphore RUNNING_MATCHES = new Semaphore(MAX_RUNNING_MATCHES, true);
+    private static final ExecutorService EXECUTOR = newExecutor();
+
     private final PartialMatcher delegate;
     private final long timeoutMillis;
+    private final boolean keepPartialMatches;
+    private volatile boolean truncated;
 
     public TimeBoundPartialMatcher(PartialMatcher delegate, long timeoutMillis)
+    {
+        this(delegate, timeoutMillis, false);
+    }
+
+    /**
+     * @param keepPartialMatches whether to stop and keep the rows matched so far on timeout, rather than fail
+     */
+    public TimeBoundPartialMatcher(PartialMatcher delegate, long timeoutMillis, boolean keepPartialMatches)
     {
         this.delegate = delegate;
         this.timeoutMillis = timeoutMillis;
+        this.keepPartialMatches = keepPartialMatches;
+    }
+
+    /**
+     * Returns whether the last match timed out and was stopped, keeping the rows matched until then.
+     */
+    public boolean isTruncated()
+    {
+        return this.truncated;
+    }
+
+    /**
+     * Returns an executor that never queues or rejects a match, starting a thread whenever none is idle. The number of
+     * threads is bounded by <tt>RUNNING_MATCHES</tt> instead, plus the matches left running after timing out.
+     */
+    private static ExecutorService newExecutor()
+    {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable ->
+        {
+            Thread thread = new Thread(runnable, "tablasco-partial-match-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), threadFactory);
+    }
+
+    /**
+     * Cancels the match and waits for it to stop, so that the rows it linked can be safely read.
+     *
+     * @return whether the match stopped within the grace period
+     */
+    private static boolean stop(Future<?> result, CancellationToken cancellationToken)
+    {
+        cancellationToken.cancel();
+        try
+        {
+            result.get(STOP_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+            return true;
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof CancellationException)
+            {
+                return true;
+            }
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        catch (TimeoutException e)
+        {
+            return false;
+        }
     }
 
     @Override
     public void match(final MutableList<UnmatchedIndexMap> allMissingRows, final MutableList<UnmatchedIndexMap> allSurplusRows, final MutableList<IndexMap> matchedColumns)
+    {
+        this.match(allMissingRows, allSurplusRows, matchedColumns, new CancellationToken());
+    }
+
+    @Override
+    public void match(final MutableList<UnmatchedIndexMap> allMissingRows, final MutableList<UnmatchedIndexMap> allSurplusRows, final MutableList<IndexMap> matchedColumns, final CancellationToken cancellationToken)
     {
         LOGGER.debug("Starting partial match");
-        ExecutorService executorService = Executors.newSingleThreadExecutor();
-        Future<?> result = executorService.submit(new Runnable()
+        this.truncated = false;
+        long start = System.nanoTime();
+        try
+        {
+            if (!RUNNING_MATCHES.tryAcquire(this.timeoutMillis, TimeUnit.MILLISECONDS))
+            {
+                if (this.keepPartialMatches)
+                {
+                    LOGGER.warn("Partial match timed out waiting for one of {} running matches to finish, no rows matched", MAX_RUNNING_MATCHES);
+                    this.truncated = true;
+                    return;
+                }
+                LOGGER.error("Partial match timed out waiting for one of {} running matches to finish", MAX_RUNNING_MATCHES);
+                throw new RuntimeException(new TimeoutException());
+            }
+        }
+        catch (InterruptedException e)
+        {
+            LOGGER.error("Partial match interrupted", e);
+            return;
+        }
+        final AtomicBoolean finished = new AtomicBoolean(false);
+        Future<?> result = EXECUTOR.submit(new Runnable()
         {
             @Override
             public void run()
             {
-                TimeBoundPartialMatcher.this.delegate.match(allMissingRows, allSurplusRows, matchedColumns);
+                try
+                {
+                    TimeBoundPartialMatcher.this.delegate.match(allMissingRows, allSurplusRows, matchedColumns, cancellationToken);
+                }
+                finally
+                {
+                    if (finished.compareAndSet(false, true))
+                    {
+                        RUNNING_MATCHES.release();
+                    }
+                }
             }
         });
         try
         {
-            result.get(this.timeoutMillis, TimeUnit.MILLISECONDS);
+            result.get(this.timeoutMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), TimeUnit.MILLISECONDS);
             LOGGER.debug("Partial match complete");
         }
         catch (InterruptedException e)
@@ -70,14 +197,26 @@ public class TimeBoundPartialMatcher implements PartialMatcher
         }
         catch (TimeoutException e)
         {
+            if (this.keepPartialMatches && stop(result, cancellationToken))
+            {
+                LOGGER.warn("Partial match timed out, keeping the rows matched so far");
+                this.truncated = true;
+                return;
+            }
             LOGGER.error("Partial match timed out");
             throw new RuntimeException(e);
         }
         finally
         {
-            if (!executorService.isTerminated())
+            if (!result.isDone())
             {
-                executorService.shutdownNow();
+                cancellationToken.cancel();
+                result.cancel(true);
+                if (finished.compareAndSet(false, true))
+                {
+                    LOGGER.warn("Partial match ignored cancellation, leaving it to finish on its own thread");
+                    RUNNING_MATCHES.release();
+                }
             }
         }
     }
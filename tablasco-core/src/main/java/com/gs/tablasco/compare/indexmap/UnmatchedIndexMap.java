@@ -18,7 +18,6 @@ package com.gs.tablasco.compare.indexmap;
 
 import org.eclipse.collections.api.block.SerializableComparator;
 import org.eclipse.collections.api.block.function.primitive.IntFunction;
-import org.eclipse.collections.api.list.MutableList;
 import org.eclipse.collections.impl.block.factory.Comparators;
 
 import java.util.SortedSet;
@@ -28,23 +27,25 @@ public class UnmatchedIndexMap extends IndexMap
 {
     private SortedSet<Match> partialMatches;
     private UnmatchedIndexMap bestMutualMatch;
+    private RowView rowView;
 
     public UnmatchedIndexMap(int lhsIndex, int rhsIndex)
     {
         super(lhsIndex, rhsIndex);
     }
 
-    static void linkBestMatches(MutableList<UnmatchedIndexMap> allMissingRows)
+    UnmatchedIndexMap(int lhsIndex, int rhsIndex, Object rowView)
     {
-        boolean keepMatching = true;
-        while (keepMatching)
-        {
-            keepMatching = false;
-            for (UnmatchedIndexMap lhs : allMissingRows)
-            {
-                keepMatching |= lhs.match();
-            }
-        }
+        this(lhsIndex, rhsIndex);
+        this.rowView = rowView instanceof RowView ? (RowView) rowView : null;
+    }
+
+    /**
+     * Returns the view (with its formatted keys) the row was hashed with, if known.
+     */
+    RowView getRowView()
+    {
+        return this.rowView;
     }
 
     public void addMatch(int matchScore, UnmatchedIndexMap match)
@@ -78,16 +79,21 @@ public class UnmatchedIndexMap extends IndexMap
             UnmatchedIndexMap thatBest = thisBest.getBestMatch();
             if (this.equals(thatBest))
             {
-                this.bestMutualMatch = thisBest;
-                this.partialMatches = null;
-                thisBest.bestMutualMatch = this;
-                thisBest.partialMatches = null;
+                this.link(thisBest);
                 return true;
             }
         }
         return false;
     }
 
+    void link(UnmatchedIndexMap match)
+    {
+        this.bestMutualMatch = match;
+        this.partialMatches = null;
+        match.bestMutualMatch = this;
+        match.partialMatches = null;
+    }
+
     private UnmatchedIndexMap getBestMatch()
     {
         if (this.partialMatches != null)
@@ -129,4 +135,5 @@ public class UnmatchedIndexMap extends IndexMap
             return MATCH_COMPARATOR.compare(this, that);
         }
     }
+
 }
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.results.parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The values of a parsed table stored by column in direct buffers, outside the heap. Each column has a byte per row
+ * for the type of the value and eight bytes per row for the value: the bits of a number, or the offset of a string in
+ * buffers of length-prefixed UTF-8 strings shared by the columns.
+ * <p>
+ * Buffers are allocated in chunks that are never copied or released while the table is in use, so the direct memory
+ * held is what the values need plus at most one partly filled chunk per column and for the strings. Chunks start
+ * small for small tables and double in size up to a fixed maximum.
+ * <p>
+ * Repeated strings are stored once where recently added strings are recognised, and recently read strings and
+ * numbers are cached by offset and bits, so that repeated reads of a value, like those of a comparison, return the
+ * same instance rather than decoding or boxing it again.
+ * <p>
+ * Rows must not be added while the values are read; reads use absolute positions and may be concurrent.
+ */
+final class OffHeapColumns
+{
+    private static final byte NULL = 0;
+    private static final byte NUMBER = 1;
+    private static final byte STRING = 2;
+
+    private static final int INITIAL_CHUNK_ROWS = 64;
+    private static final int GROWING_ROW_CHUNKS = 10;
+    private static final int MAX_CHUNK_ROWS = INITIAL_CHUNK_ROWS << GROWING_ROW_CHUNKS;
+    private static final int GROWING_CHUNK_ROWS = INITIAL_CHUNK_ROWS * ((1 << GROWING_ROW_CHUNKS) - 1);
+    private static final int INITIAL_STRING_CHUNK_SIZE = 1024;
+    private static final int MAX_STRING_CHUNK_SIZE = 1024 * 1024;
+    private static final int CACHE_SIZE = 1024;
+
+    private final String tableName;
+    private final int columnCount;
+    private ByteBuffer[][] types;
+    private ByteBuffer[][] values;
+    private int rowChunkCount = 0;
+    private int rowChunkCapacity = 8;
+    private int rowCount = 0;
+    private ByteBuffer[] strings = new ByteBuffer[8];
+    private int stringChunkCount = 0;
+    private final String[] recentStrings = new String[CACHE_SIZE];
+    private final long[] recentStringOffsets = new long[CACHE_SIZE];
+    private final CachedValue[] stringCache = new CachedValue[CACHE_SIZE];
+    private final CachedValue[] numberCache = new CachedValue[CACHE_SIZE];
+
+    OffHeapColumns(String tableName, int columnCount)
+    {
+        this.tableName = tableName;
+        this.columnCount = columnCount;
+        this.types = new ByteBuffer[columnCount][this.rowChunkCapacity];
+        this.values = new ByteBuffer[columnCount][this.rowChunkCapacity];
+    }
+
+    int getRowCount()
+    {
+        return this.rowCount;
+    }
+
+    /**
+     * Appends a row of <tt>Double</tt>, <tt>String</tt> or null values; columns missing at the end of the row are null.
+     */
+    void addRow(List<?> row)
+    {
+        if (this.rowCount == Integer.MAX_VALUE)
+        {
+            throw new IllegalStateException("Table '" + this.tableName + "' is too large to store off-heap");
+        }
+        int chunk = chunkOf(this.rowCount);
+        int index = indexInChunk(this.rowCount, chunk);
+        if (chunk == this.rowChunkCount)
+        {
+            this.addRowChunk(chunkRows(chunk));
+        }
+        for (int col = 0; col < this.columnCount; col++)
+        {
+            Object value = col < row.size() ? row.get(col) : null;
+            if (value instanceof Double)
+            {
+                this.types[col][chunk].put(index, NUMBER);
+                this.values[col][chunk].putDouble(index * 8, (Double) value);
+            }
+            else if (value instanceof String)
+            {
+                this.types[col][chunk].put(index, STRING);
+                this.values[col][chunk].putLong(index * 8, this.addString((String) value));
+            }
+            else
+            {
+                this.types[col][chunk].put(index, NULL);
+            }
+        }
+        this.rowCount++;
+    }
+
+    Object getValueAt(int rowIndex, int columnIndex)
+    {
+        int chunk = chunkOf(rowIndex);
+        int index = indexInChunk(rowIndex, chunk);
+        switch (this.types[columnIndex][chunk].get(index))
+        {
+            case NUMBER:
+                return this.getNumber(this.values[columnIndex][chunk].getLong(index * 8));
+            case STRING:
+                return this.getString(this.values[columnIndex][chunk].getLong(index * 8));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the row chunk of a row: chunks double in size from <tt>INITIAL_CHUNK_ROWS</tt> rows until they reach
+     * <tt>MAX_CHUNK_ROWS</tt> rows.
+     */
+    private static int chunkOf(int row)
+    {
+        if (row < GROWING_CHUNK_ROWS)
+        {
+            return 31 - Integer.numberOfLeadingZeros(row / INITIAL_CHUNK_ROWS + 1);
+        }
+        return GROWING_ROW_CHUNKS + (row - GROWING_CHUNK_ROWS) / MAX_CHUNK_ROWS;
+    }
+
+    private static int indexInChunk(int row, int chunk)
+    {
+        if (chunk < GROWING_ROW_CHUNKS)
+        {
+            return row - INITIAL_CHUNK_ROWS * ((1 << chunk) - 1);
+        }
+        return (row - GROWING_CHUNK_ROWS) % MAX_CHUNK_ROWS;
+    }
+
+    private static int chunkRows(int chunk)
+    {
+        return chunk < GROWING_ROW_CHUNKS ? INITIAL_CHUNK_ROWS << chunk : MAX_CHUNK_ROWS;
+    }
+
+    private void addRowChunk(int rows)
+    {
+        if (this.rowChunkCount == this.rowChunkCapacity)
+        {
+            this.rowChunkCapacity *= 2;
+            for (int col = 0; col < this.columnCount; col++)
+            {
+                this.types[col] = Arrays.copyOf(this.types[col], this.rowChunkCapacity);
+                this.values[col] = Arrays.copyOf(this.values[col], this.rowChunkCapacity);
+            }
+        }
+        for (int col = 0; col < this.columnCount; col++)
+        {
+            this.types[col][this.rowChunkCount] = ByteBuffer.allocateDirect(rows);
+            this.values[col][this.rowChunkCount] = ByteBuffer.allocateDirect(rows * 8);
+        }
+        this.rowChunkCount++;
+    }
+
+    /**
+     * Stores a string unless it was added recently, and returns its chunk in the high and its position in the low
+     * four bytes.
+     */
+    private long addString(String value)
+    {
+        int recent = cacheIndex(value.hashCode());
+        if (value.equals(this.recentStrings[recent]))
+        {
+            return this.recentStringOffsets[recent];
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int size = 4 + bytes.length;
+        if (size < 0)
+        {
+            throw new IllegalStateException("Table '" + this.tableName + "' is too large to store off-heap");
+        }
+        ByteBuffer chunk = this.stringChunkCount == 0 ? null : this.strings[this.stringChunkCount - 1];
+        if (chunk == null || chunk.remaining() < size)
+        {
+            chunk = this.addStringChunk(size);
+        }
+        int position = chunk.position();
+        chunk.putInt(bytes.length);
+        chunk.put(bytes);
+        long offset = (long) (this.stringChunkCount - 1) << 32 | position;
+        this.recentStrings[recent] = value;
+        this.recentStringOffsets[recent] = offset;
+        return offset;
+    }
+
+    /**
+     * Adds a chunk twice the size of the previous one up to <tt>MAX_STRING_CHUNK_SIZE</tt>, or the size of a larger
+     * string.
+     */
+    private ByteBuffer addStringChunk(int required)
+    {
+        int size = this.stringChunkCount == 0 ? INITIAL_STRING_CHUNK_SIZE : Math.min(this.strings[this.stringChunkCount - 1].capacity() * 2, MAX_STRING_CHUNK_SIZE);
+        if (this.stringChunkCount == this.strings.length)
+        {
+            this.strings = Arrays.copyOf(this.strings, this.stringChunkCount * 2);
+        }
+        ByteBuffer chunk = ByteBuffer.allocateDirect(Math.max(size, required));
+        this.strings[this.stringChunkCount++] = chunk;
+        return chunk;
+    }
+
+    private String getString(long offset)
+    {
+        int index = cacheIndex(Long.hashCode(offset * 0x9E3779B97F4A7C15L));
+        CachedValue cached = this.stringCache[index];
+        if (cached != null && cached.key == offset)
+        {
+            return (String) cached.value;
+        }
+        ByteBuffer source = this.strings[(int) (offset >>> 32)].duplicate();
+        int position = (int) offset;
+        byte[] bytes = new byte[source.getInt(position)];
+        source.position(position + 4);
+        source.get(bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        this.stringCache[index] = new CachedValue(offset, value);
+        return value;
+    }
+
+    private Double getNumber(long bits)
+    {
+        int index = cacheIndex(Long.hashCode(bits * 0x9E3779B97F4A7C15L));
+        CachedValue cached = this.numberCache[index];
+        if (cached != null && cached.key == bits)
+        {
+            return (Double) cached.value;
+        }
+        Double value = Double.longBitsToDouble(bits);
+        this.numberCache[index] = new CachedValue(bits, value);
+        return value;
+    }
+
+    private static int cacheIndex(int hash)
+    {
+        return (hash ^ hash >>> 16) & (CACHE_SIZE - 1);
+    }
+
+    /**
+     * A cache entry; its fields are final so that entries are safely shared by concurrent readers without locking.
+     */
+    private static final class CachedValue
+    {
+        private final long key;
+        private final Object value;
+
+        private CachedValue(long key, Object value)
+        {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -28,10 +28,22 @@ public class ParsedTable implements ComparableTable
     private final List<String> headers = FastList.newList();
     private final List<List<?>> rowValues = FastList.newList();
     private final String tableName;
+    private final boolean offHeap;
+    private OffHeapColumns offHeapColumns;
 
     public ParsedTable(String tableName)
+    {
+        this(tableName, false);
+    }
+
+    /**
+     * @param offHeap whether to store values by column in direct buffers rather than as lists of boxed values, so that
+     *                large tables add little to the heap and to garbage collection pauses
+     */
+    public ParsedTable(String tableName, boolean offHeap)
     {
         this.tableName = tableName;
+        this.offHeap = offHeap;
     }
 
     public void addColumnHeader(String header)
@@ -57,7 +69,16 @@ public class ParsedTable implements ComparableTable
 
     public void addRowToList(List<Object> rowValue)
     {
-        this.rowValues.add(rowValue);
+        if (!this.offHeap)
+        {
+            this.rowValues.add(rowValue);
+            return;
+        }
+        if (this.offHeapColumns == null)
+        {
+            this.offHeapColumns = new OffHeapColumns(this.tableName, this.headers.size());
+        }
+        this.offHeapColumns.addRow(rowValue);
     }
 
     @Override
@@ -69,6 +90,10 @@ public class ParsedTable implements ComparableTable
     @Override
     public int getRowCount()
     {
+        if (this.offHeap)
+        {
+            return this.offHeapColumns == null ? 0 : this.offHeapColumns.getRowCount();
+        }
         return this.rowValues.size();
     }
 
@@ -87,6 +112,10 @@ public class ParsedTable implements ComparableTable
     @Override
     public Object getValueAt(int rowIndex, int columnIndex)
     {
+        if (this.offHeap)
+        {
+            return rowIndex < this.getRowCount() && columnIndex < this.getColumnCount() ? this.offHeapColumns.getValueAt(rowIndex, columnIndex) : null;
+        }
         if (rowIndex < this.getRowCount())
         {
             List<?> rowData = this.rowValues.get(rowIndex);
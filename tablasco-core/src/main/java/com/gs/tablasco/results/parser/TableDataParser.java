@@ -28,6 +28,7 @@ public class TableDataParser
     static final String METADATA_IDENTIFIER = "Metadata";
 
     private final TableDataLoader loader;
+    private final boolean offHeap;
     private File file;
     private ParsedResults results;
     private ParsedTable parsedTable;
@@ -38,15 +39,24 @@ public class TableDataParser
     private MetadataReaderState metadataReaderState;
 
     public TableDataParser(TableDataLoader loader, File file)
+    {
+        this(loader, file, false);
+    }
+
+    /**
+     * @param offHeap whether to store the values of parsed tables outside the heap, see <tt>ParsedTable</tt>
+     */
+    public TableDataParser(TableDataLoader loader, File file, boolean offHeap)
     {
         this.loader = loader;
         this.file = file;
+        this.offHeap = offHeap;
         this.initializeStates();
     }
 
     void startNewSection(String testName, String tableName)
     {
-        this.parsedTable = new ParsedTable(tableName);
+        this.parsedTable = new ParsedTable(tableName, this.offHeap);
         this.results.addTable(testName, tableName, this.parsedTable);
         this.dataReaderState.setSectionName(testName);
     }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.compare;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The vectorised implementation of {@link DoubleColumnKernel}. {@link DoubleColumnKernel} loads it reflectively, and
+ * loading it fails if the <tt>jdk.incubator.vector</tt> module is not resolved.
+ */
+final class VectorDoubleColumnKernel implements DoubleColumnKernel.Implementation
+{
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    VectorDoubleColumnKernel()
+    {
+    }
+
+    @Override
+    public void markMismatches(double[] rhs, int rhsFrom, double[] lhs, int lhsFrom, int length, double tolerance, long[] mismatches)
+    {
+        int i = 0;
+        // the number of lanes is a power of two no greater than 64, so the lanes of a vector never span two words
+        for (int upperBound = SPECIES.loopBound(length); i < upperBound; i += SPECIES.length())
+        {
+            DoubleVector rhsValues = DoubleVector.fromArray(SPECIES, rhs, rhsFrom + i);
+            DoubleVector lhsValues = DoubleVector.fromArray(SPECIES, lhs, lhsFrom + i);
+            VectorMask<Double> equal = rhsValues.eq(lhsValues)
+                    .or(rhsValues.test(VectorOperators.IS_NAN).and(lhsValues.test(VectorOperators.IS_NAN)))
+                    .or(lhsValues.sub(rhsValues).abs().compare(VectorOperators.LE, tolerance));
+            mismatches[i >>> 6] |= equal.not().toLong() << i;
+        }
+        ScalarDoubleColumnKernel.markMismatches(rhs, rhsFrom, lhs, lhsFrom, i, length, tolerance, mismatches);
+    }
+}
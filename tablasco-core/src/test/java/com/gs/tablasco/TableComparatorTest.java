@@ -1,12 +1,20 @@
 package com.gs.tablasco;
 
+import com.gs.tablasco.compare.ComparisonMetrics;
+import com.gs.tablasco.compare.ComparisonPhase;
 import com.gs.tablasco.compare.DefaultComparableTableAdapter;
+import com.gs.tablasco.compare.KeyedComparableTableAdapter;
+import com.gs.tablasco.compare.Metadata;
 import org.eclipse.collections.api.block.function.Function;
+import org.eclipse.collections.impl.list.mutable.FastList;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TableComparatorTest
 {
@@ -150,6 +158,177 @@ public class TableComparatorTest
         Assert.assertTrue(result.isSuccess());
     }
 
+    @Test
+    public void columnarSnapshot()
+    {
+        TableComparator comparator = this.constructComparator().withColumnarSnapshot(true);
+        Assert.assertTrue(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_1).isSuccess());
+        Assert.assertFalse(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_2).isSuccess());
+        Assert.assertTrue(comparator.withColumnFilter(column -> !"First".equals(column)).compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_1).isSuccess());
+    }
+
+    @Test
+    public void parallelism()
+    {
+        TableComparator comparator = this.constructComparator().withParallelism(4);
+        Assert.assertTrue(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_1).isSuccess());
+        Assert.assertFalse(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_2).isSuccess());
+    }
+
+    @Test
+    public void partialMatchCandidateLimit()
+    {
+        TableComparator comparator = this.constructComparator().withPartialMatchCandidateLimit(1);
+        Assert.assertTrue(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_1).isSuccess());
+        Assert.assertFalse(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_2).isSuccess());
+    }
+
+    @Test
+    public void failFast()
+    {
+        TableComparator comparator = this.constructComparator().withFailFast(true);
+        Assert.assertTrue(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_1).isSuccess());
+        Assert.assertFalse(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_2).isSuccess());
+        Assert.assertFalse(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_3).isSuccess());
+    }
+
+    @Test
+    public void failFastWithBreakLimit()
+    {
+        TableComparator comparator = this.constructComparator().withFailFast(3).withCompareRowOrder(false);
+        Assert.assertTrue(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_1).isSuccess());
+        Assert.assertFalse(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_2).isSuccess());
+    }
+
+    @Test
+    public void compactResults()
+    {
+        TableComparator comparator = this.constructComparator().withCompactResults(true);
+        Assert.assertTrue(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_1).isSuccess());
+        Assert.assertFalse(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_2).isSuccess());
+    }
+
+    @Test
+    public void hideMatchedRowsWithoutCompactResults() throws Exception
+    {
+        AtomicInteger reads = new AtomicInteger();
+        ComparableTable rhs = new DefaultComparableTableAdapter(TableTestUtils.TEST_DATA_2)
+        {
+            @Override
+            public Object getValueAt(int rowIndex, int columnIndex)
+            {
+                reads.incrementAndGet();
+                return super.getValueAt(rowIndex, columnIndex);
+            }
+        };
+        // results hold their cells, so the report does not read the tables again
+        ComparisonResult eager = this.constructComparator().withHideMatchedRows(true).compare(TableTestUtils.TEST_DATA_1, rhs);
+        int readsToCompare = reads.get();
+        eager.writeBreakReportToStream("hideMatchedRows", Metadata.newEmpty(), new ByteArrayOutputStream());
+        Assert.assertEquals(readsToCompare, reads.get());
+        // compact results create the cells of rows shown from the tables
+        ComparisonResult compact = this.constructComparator().withHideMatchedRows(true).withCompactResults(true).compare(TableTestUtils.TEST_DATA_1, rhs);
+        readsToCompare = reads.get();
+        compact.writeBreakReportToStream("hideMatchedRows", Metadata.newEmpty(), new ByteArrayOutputStream());
+        Assert.assertTrue(reads.get() > readsToCompare);
+    }
+
+    @Test
+    public void anytimePartialMatch()
+    {
+        TableComparator comparator = this.constructComparator().withAnytimePartialMatch(true);
+        Assert.assertTrue(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_1).isSuccess());
+        Assert.assertFalse(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_2).isSuccess());
+    }
+
+    @Test
+    public void sortedKeys()
+    {
+        TableComparator comparator = this.constructComparator().withRhsAdapter(rhs -> new KeyedComparableTableAdapter((ComparableTable) rhs, 0));
+        comparator.withSortedKeys(true);
+        Assert.assertTrue(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_1).isSuccess());
+        Assert.assertFalse(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_2).isSuccess());
+    }
+
+    @Test
+    public void keyJoin()
+    {
+        TableComparator comparator = this.constructComparator().withRhsAdapter(rhs -> new KeyedComparableTableAdapter((ComparableTable) rhs, 0));
+        comparator.withKeyJoin(true);
+        Assert.assertTrue(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_1).isSuccess());
+        Assert.assertFalse(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_2).isSuccess());
+    }
+
+    @Test
+    public void shards()
+    {
+        TableComparator comparator = this.constructComparator().withRhsAdapter(rhs -> new KeyedComparableTableAdapter((ComparableTable) rhs, 0));
+        comparator.withShards(3, 2).withCompareRowOrder(false);
+        Assert.assertTrue(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_1).isSuccess());
+        Assert.assertFalse(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_2).isSuccess());
+    }
+
+    @Test
+    public void spill()
+    {
+        TableComparator comparator = this.constructComparator().withRhsAdapter(rhs -> new KeyedComparableTableAdapter((ComparableTable) rhs, 0));
+        comparator.withSpill(1L, null).withCompareRowOrder(false);
+        try
+        {
+            comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_1);
+            Assert.fail("spilling without summarised results should fail");
+        }
+        catch (IllegalStateException e)
+        {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("summarised results"));
+        }
+        comparator.withSummarisedResults(true);
+        Assert.assertTrue(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_1).isSuccess());
+        Assert.assertFalse(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_2).isSuccess());
+    }
+
+    @Test
+    public void spillWithColumnarSnapshot()
+    {
+        AtomicInteger reads = new AtomicInteger();
+        TableComparator comparator = this.constructComparator().withRhsAdapter(rhs -> new KeyedComparableTableAdapter(new DefaultComparableTableAdapter((ComparableTable) rhs)
+        {
+            @Override
+            public Object getValueAt(int rowIndex, int columnIndex)
+            {
+                reads.incrementAndGet();
+                return super.getValueAt(rowIndex, columnIndex);
+            }
+        }, 0));
+        comparator.withSpill(1L, null).withCompareRowOrder(false).withSummarisedResults(true);
+        Assert.assertTrue(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_1).isSuccess());
+        int readsWithoutSnapshot = reads.getAndSet(0);
+        comparator.withColumnarSnapshot(true);
+        Assert.assertTrue(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_1).isSuccess());
+        // the tables are spilled as they are, not from a snapshot of them taken up front
+        Assert.assertEquals(readsWithoutSnapshot, reads.get());
+        Assert.assertFalse(comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_2).isSuccess());
+    }
+
+    @Test
+    public void comparisonListener() throws Exception
+    {
+        List<String> comparisonNames = FastList.newList();
+        TableComparator comparator = this.constructComparator();
+        comparator.withComparisonListener((name, metrics) ->
+        {
+            Assert.assertTrue(((ComparisonMetrics) metrics).getElapsedNanos(ComparisonPhase.HEADERS) > 0L);
+            comparisonNames.add((String) name);
+        });
+        ComparisonResult result = comparator.compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_1);
+        Assert.assertEquals(FastList.newListWith(TableTestUtils.TEST_DATA_1.getTableName()), comparisonNames);
+        Assert.assertEquals(TableTestUtils.TEST_DATA_1.getRowCount(), result.getMetrics().getRowCount(ComparisonMetrics.RowOutcome.HAPPY_PATH));
+        result.writeBreakReportToStream("comparisonListener", Metadata.newEmpty(), new ByteArrayOutputStream());
+        Assert.assertTrue(result.getMetrics().getElapsedNanos(ComparisonPhase.HTML_RENDER) > 0L);
+
+        Assert.assertSame(ComparisonMetrics.NONE, this.constructComparator().compare(TableTestUtils.TEST_DATA_1, TableTestUtils.TEST_DATA_2).getMetrics());
+    }
+
     @Test
     public void rhsAdapter()
     {
@@ -58,6 +58,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -110,10 +111,12 @@ public final class TableVerifier extends TableComparator<TableVerifier> implemen
     private Set<String> tablesNotToAdapt = UnifiedSet.newSet();
     private Predicate<String> tableFilter = s -> true;
     private TableDataLoader expectedResultsLoader = new FileSystemExpectedResultsLoader();
+    private boolean offHeapExpectedResults = false;
     private Future<ParsedResults> expectedResultsFuture;
     private LifecycleEventHandler lifecycleEventHandler = new DefaultLifecycleEventHandler();
     private ExceptionHandler exceptionHandler = new DefaultExceptionHandler();
     private int verifyCount = 0;
+    private int tableParallelism = 1;
 
     private final TestWatcherBridge bridge = new TestWatcherBridge(this);
 
@@ -335,6 +338,20 @@ public final class TableVerifier extends TableComparator<TableVerifier> implemen
         return self();
     }
 
+    /**
+     * Returns the same instance of <tt>TableVerifier</tt> configured to compare up to the specified number of tables
+     * at a time when verifying several tables. Results are reported in the same order as when comparing tables one
+     * after the other; adapters must be safe to call from several threads.
+     *
+     * @param tableParallelism number of tables compared at a time, 1 (the default) compares them one at a time
+     * @return this
+     */
+    public final TableVerifier withTableParallelism(int tableParallelism)
+    {
+        this.tableParallelism = tableParallelism;
+        return self();
+    }
+
     /**
      * Returns the same instance of <tt>TableVerifier</tt> configured with a function for adapting actual results. Each
      * table in the actual results will be adapted using the specified function before being verified or rebased.
@@ -429,6 +446,22 @@ public final class TableVerifier extends TableComparator<TableVerifier> implemen
         return self();
     }
 
+    /**
+     * Returns the same instance of <tt>TableVerifier</tt> configured to store the values of parsed expected results
+     * outside the heap, in direct buffers, so that large baselines add little to garbage collection pauses. Values are
+     * boxed as they are compared and direct memory is limited by <tt>-XX:MaxDirectMemorySize</tt>. Only the off-heap
+     * results of the expected results file last verified are cached; call
+     * {@link ExpectedResultsCache#releaseOffHeapResults()} to drop them sooner, for example after the test class.
+     *
+     * @param offHeapExpectedResults whether to store expected results outside the heap
+     * @return this
+     */
+    public final TableVerifier withOffHeapExpectedResults(boolean offHeapExpectedResults)
+    {
+        this.offHeapExpectedResults = offHeapExpectedResults;
+        return self();
+    }
+
     /**
      * Returns the same instance of <tt>TableVerifier</tt> configured with a custom LifecycleEventHandler instance.
      *
@@ -456,7 +489,7 @@ public final class TableVerifier extends TableComparator<TableVerifier> implemen
         this.description = description;
         if (!this.isRebasing)
         {
-            this.expectedResultsFuture = EXPECTED_RESULTS_LOADER_EXECUTOR.submit(() -> ExpectedResultsCache.getExpectedResults(expectedResultsLoader, getExpectedFile()));
+            this.expectedResultsFuture = EXPECTED_RESULTS_LOADER_EXECUTOR.submit(() -> ExpectedResultsCache.getExpectedResults(expectedResultsLoader, getExpectedFile(), offHeapExpectedResults));
         }
         this.lifecycleEventHandler.onStarted(description);
     }
@@ -654,17 +687,22 @@ public final class TableVerifier extends TableComparator<TableVerifier> implemen
 
     private void verifyTables(List<Pair<VerifiableTable, VerifiableTable>> expectedAndActualTables, Metadata metadata)
     {
-        ComparisonResult comparisonResult = ComparisonResult.newEmpty(this.getHtmlOptions(Sets.fixedSize.of()));
-
+        List<Pair<VerifiableTable, VerifiableTable>> tablesToCompare = FastList.newList(expectedAndActualTables.size());
         for (Pair<VerifiableTable, VerifiableTable> expectedAndActualTable : expectedAndActualTables)
         {
             VerifiableTable expected = ignoreTable(expectedAndActualTable.getOne()) ? null : expectedAndActualTable.getOne();
             VerifiableTable actual = ignoreTable(expectedAndActualTable.getTwo()) ? null : expectedAndActualTable.getTwo();
             if (expected != null || actual != null)
             {
-                comparisonResult = comparisonResult.combine(this.compare(expected, actual, skipAdaptation(expected), skipAdaptation(actual)), false);
+                tablesToCompare.add(Tuples.pair(expected, actual));
             }
         }
+        ComparisonResult.Builder comparisonResults = new ComparisonResult.Builder(this.getHtmlOptions(Sets.fixedSize.of()));
+        for (ComparisonResult result : this.compareTables(tablesToCompare))
+        {
+            comparisonResults.add(result);
+        }
+        ComparisonResult comparisonResult = comparisonResults.build();
 
         boolean verificationSuccess = comparisonResult.isSuccess();
 
@@ -684,6 +722,44 @@ public final class TableVerifier extends TableComparator<TableVerifier> implemen
         Assert.assertTrue("Some tests failed. Check test results file " + this.getOutputFile().getAbsolutePath() + " for more details.", verificationSuccess);
     }
 
+    private List<ComparisonResult> compareTables(List<Pair<VerifiableTable, VerifiableTable>> expectedAndActualTables)
+    {
+        if (this.tableParallelism <= 1 || expectedAndActualTables.size() <= 1)
+        {
+            return ListIterate.collect(expectedAndActualTables, pair -> this.compare(pair.getOne(), pair.getTwo(), skipAdaptation(pair.getOne()), skipAdaptation(pair.getTwo())));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.tableParallelism, expectedAndActualTables.size()));
+        try
+        {
+            List<Future<ComparisonResult>> futures = ListIterate.collect(expectedAndActualTables, pair ->
+                    executor.submit(() -> this.compare(pair.getOne(), pair.getTwo(), skipAdaptation(pair.getOne()), skipAdaptation(pair.getTwo()))));
+            List<ComparisonResult> results = FastList.newList(futures.size());
+            for (Future<ComparisonResult> future : futures)
+            {
+                results.add(future.get());
+            }
+            return results;
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error)
+            {
+                throw (Error) cause;
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
     /**
      * Compares results from two environments and drills down on breaks in multiple
      * steps until it finds the underlying data responsible for the breaks.
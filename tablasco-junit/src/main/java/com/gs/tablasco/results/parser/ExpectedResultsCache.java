@@ -20,22 +20,66 @@ import com.gs.tablasco.results.ParsedResults;
 import com.gs.tablasco.results.TableDataLoader;
 
 import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.WeakHashMap;
 
+/**
+ * Caches parsed expected results by file. Results are held by soft references, so that they stay cached until memory
+ * runs low rather than until the next collection: the files used as keys are not retained by callers.
+ * <p>
+ * Results stored off-heap are not held by soft references, as the heap running low is not what clears them: only
+ * the results of the file last asked for are cached, which covers the tests of a class sharing an expected results
+ * file, and the results of other files become unreachable so that their direct buffers can be reclaimed. They can
+ * also be released explicitly with {@link #releaseOffHeapResults()}.
+ */
 public class ExpectedResultsCache
 {
-    private static final Map<File, ParsedResults> RESULT_CACHES = new WeakHashMap<>();
+    private static final Map<File, SoftReference<ParsedResults>> RESULT_CACHES = new HashMap<>();
+    private static File offHeapResultsFile;
+    private static ParsedResults offHeapResults;
 
     public static ParsedResults getExpectedResults(TableDataLoader expectedResultsLoader, File expectedResultsFile)
     {
-        ParsedResults cached = RESULT_CACHES.get(expectedResultsFile);
-        if (cached != null)
+        return getExpectedResults(expectedResultsLoader, expectedResultsFile, false);
+    }
+
+    public static ParsedResults getExpectedResults(TableDataLoader expectedResultsLoader, File expectedResultsFile, boolean offHeap)
+    {
+        if (offHeap)
         {
-            return cached;
+            return getOffHeapResults(expectedResultsLoader, expectedResultsFile);
+        }
+        SoftReference<ParsedResults> cached = RESULT_CACHES.get(expectedResultsFile);
+        ParsedResults cachedResults = cached == null ? null : cached.get();
+        if (cachedResults != null)
+        {
+            return cachedResults;
         }
         ParsedResults expectedResults = new TableDataParser(expectedResultsLoader, expectedResultsFile).parse();
-        RESULT_CACHES.put(expectedResultsFile, expectedResults);
+        RESULT_CACHES.put(expectedResultsFile, new SoftReference<>(expectedResults));
         return expectedResults;
     }
+
+    /**
+     * Drops the cached off-heap results, so that their direct buffers can be reclaimed once no comparison uses them.
+     */
+    public static synchronized void releaseOffHeapResults()
+    {
+        offHeapResultsFile = null;
+        offHeapResults = null;
+    }
+
+    private static synchronized ParsedResults getOffHeapResults(TableDataLoader expectedResultsLoader, File expectedResultsFile)
+    {
+        if (expectedResultsFile.equals(offHeapResultsFile))
+        {
+            return offHeapResults;
+        }
+        // release the previous results before parsing, so that both are not held at once
+        releaseOffHeapResults();
+        offHeapResults = new TableDataParser(expectedResultsLoader, expectedResultsFile, true).parse();
+        offHeapResultsFile = expectedResultsFile;
+        return offHeapResults;
+    }
 }
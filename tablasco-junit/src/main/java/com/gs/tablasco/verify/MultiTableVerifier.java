@@ -19,11 +19,16 @@ package com.gs.tablasco.verify;
 import com.gs.tablasco.VerifiableTable;
 import com.gs.tablasco.compare.ResultTable;
 import com.gs.tablasco.compare.SingleTableComparator;
+import org.eclipse.collections.api.block.function.Function0;
 import org.eclipse.collections.impl.list.mutable.FastList;
 
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Verifies that a set of grids (in form of VerifiedCell) matches expected results. Heavy lifting is delegated to
@@ -33,11 +38,25 @@ import java.util.Map;
 
 public class MultiTableVerifier
 {
-    private final SingleTableComparator singleTableComparator;
+    private final Function0<? extends SingleTableComparator> singleTableComparatorFactory;
+    private final int parallelism;
 
     public MultiTableVerifier(SingleTableComparator singleSingleTableVerifier)
     {
-        this.singleTableComparator = singleSingleTableVerifier;
+        this(() -> singleSingleTableVerifier, 1);
+    }
+
+    /**
+     * Compares up to <tt>parallelism</tt> tables at a time, each with a comparator of its own as comparators are not
+     * safe to share between threads. Results are in the same order as when comparing tables one at a time.
+     *
+     * @param singleTableComparatorFactory creates the comparator of a table
+     * @param parallelism                  number of tables compared at a time
+     */
+    public MultiTableVerifier(Function0<? extends SingleTableComparator> singleTableComparatorFactory, int parallelism)
+    {
+        this.singleTableComparatorFactory = singleTableComparatorFactory;
+        this.parallelism = parallelism;
     }
 
     public Map<String, ResultTable> verifyTables(Map<String, ? extends VerifiableTable> expectedResults, Map<String, ? extends VerifiableTable> actualResults)
@@ -51,14 +70,46 @@ public class MultiTableVerifier
                 allTableNames.add(actualTable);
             }
         }
-        for (String tableName : allTableNames)
+        if (this.parallelism <= 1 || allTableNames.size() <= 1)
+        {
+            SingleTableComparator singleTableComparator = this.singleTableComparatorFactory.value();
+            for (String tableName : allTableNames)
+            {
+                results.put(tableName, verifyTable(tableName, actualResults, expectedResults, singleTableComparator));
+            }
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.parallelism, allTableNames.size()));
+        try
+        {
+            Map<String, Future<ResultTable>> futures = new LinkedHashMap<>();
+            for (String tableName : allTableNames)
+            {
+                futures.put(tableName, executor.submit(() -> verifyTable(tableName, actualResults, expectedResults, this.singleTableComparatorFactory.value())));
+            }
+            for (Map.Entry<String, Future<ResultTable>> future : futures.entrySet())
+            {
+                results.put(future.getKey(), future.getValue().get());
+            }
+            return results;
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        finally
         {
-            verifyTable(tableName, actualResults, expectedResults, results);
+            executor.shutdownNow();
         }
-        return results;
     }
 
-    private void verifyTable(String tableName, Map<String, ? extends VerifiableTable> actualResults, Map<String, ? extends VerifiableTable> expectedResults, Map<String, ResultTable> resultsMap)
+    private static ResultTable verifyTable(String tableName, Map<String, ? extends VerifiableTable> actualResults, Map<String, ? extends VerifiableTable> expectedResults, SingleTableComparator singleTableComparator)
     {
         VerifiableTable actualData = actualResults.get(tableName);
         VerifiableTable expectedData = expectedResults.get(tableName);
@@ -71,7 +122,6 @@ public class MultiTableVerifier
         {
             throw new IllegalStateException("Expected table '" + tableName + "' has no columns");
         }
-        ResultTable results = this.singleTableComparator.compare(actualData, expectedData);
-        resultsMap.put(tableName, results);
+        return singleTableComparator.compare(actualData, expectedData);
     }
 }
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ColumnarSnapshotTest
+{
+    @Rule
+    public final TableVerifier tableVerifier = new TableVerifier()
+            .withFilePerMethod()
+            .withMavenDirectoryStrategy()
+            .withTolerance(0.01d)
+            .withColumnarSnapshot(true);
+
+    private final VerifiableTable expected = TableTestUtils.createVerifiableTable("name", 3, "Entity", "Account", "Amount",
+            "A", 1, 1.0d,
+            "A", 2, -0.0d,
+            "B", 1, null,
+            "B", 2, Double.NaN,
+            "C", 1, 3.0d);
+
+    private final VerifiableTable actual = TableTestUtils.createVerifiableTable("name", 3, "Entity", "Account", "Amount",
+            "A", 2, 0.0d,
+            "A", 1, 1.004d,
+            "B", 1, null,
+            "C", 1, 4.0d,
+            "D", 1, 5.0d);
+
+    @Test
+    public void tablesAreReadOnce()
+    {
+        AtomicInteger reads = new AtomicInteger();
+        VerifiableTable actual = new DefaultVerifiableTableAdapter(this.actual)
+        {
+            @Override
+            public Object getValueAt(int rowIndex, int columnIndex)
+            {
+                reads.incrementAndGet();
+                return super.getValueAt(rowIndex, columnIndex);
+            }
+        };
+        Assert.assertFalse(this.tableVerifier.compare(this.expected, actual).isSuccess());
+        Assert.assertEquals(15, reads.get());
+    }
+
+    @Test
+    public void sameResultsAsDefault()
+    {
+        for (boolean compareRowOrder : new boolean[]{true, false})
+        {
+            this.tableVerifier.withCompareRowOrder(compareRowOrder);
+            Assert.assertEquals(
+                    TableTestUtils.getBreakReport(this.tableVerifier.withColumnarSnapshot(false).compare(this.expected, this.actual)),
+                    TableTestUtils.getBreakReport(this.tableVerifier.withColumnarSnapshot(true).compare(this.expected, this.actual)));
+        }
+    }
+
+    @Test
+    public void rowsInOrderSameResultsAsDefault()
+    {
+        // rows match by position up to the removed row and after it, comparing their amounts a column block at a time
+        VerifiableTable expected = TableTestUtils.createVerifiableTable("name", 3, "Entity", "Account", "Amount",
+                "A", 1, 1.0d,
+                "A", 2, 0.0d,
+                "A", 3, null,
+                "A", 4, Double.NaN,
+                "B", 1, 2.0d,
+                "B", 2, 3.0d,
+                "B", 3, 4.0d,
+                "B", 4, 5.0d);
+        VerifiableTable actual = TableTestUtils.createVerifiableTable("name", 3, "Entity", "Account", "Amount",
+                "A", 1, 1.004d,
+                "A", 2, -0.0d,
+                "A", 3, null,
+                "A", 4, Double.NaN,
+                "B", 2, 3.0d,
+                "B", 3, 5.0d,
+                "B", 4, 5.0d);
+        for (boolean compareRowOrder : new boolean[]{true, false})
+        {
+            this.tableVerifier.withCompareRowOrder(compareRowOrder);
+            Assert.assertEquals(
+                    TableTestUtils.getBreakReport(this.tableVerifier.withColumnarSnapshot(false).compare(expected, actual)),
+                    TableTestUtils.getBreakReport(this.tableVerifier.withColumnarSnapshot(true).compare(expected, actual)));
+            Assert.assertTrue(this.tableVerifier.withColumnarSnapshot(true).compare(expected, expected).isSuccess());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco;
+
+import com.gs.tablasco.compare.ComparisonMetrics;
+import com.gs.tablasco.compare.ComparisonPhase;
+import com.gs.tablasco.verify.KeyedVerifiableTableAdapter;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class ComparisonMetricsTest
+{
+    @Rule
+    public final TableVerifier tableVerifier = new TableVerifier()
+            .withFilePerMethod()
+            .withMavenDirectoryStrategy()
+            .withTolerance(0.01d)
+            .withComparisonMetrics(true);
+
+    private final VerifiableTable expected = TableTestUtils.createVerifiableTable("name", 3, "Entity", "Account", "Amount",
+            "A", 1, 1.0d,
+            "A", 2, 2.0d,
+            "B", 1, 3.0d,
+            "B", 2, 4.0d,
+            "C", 1, 5.0d,
+            "D", 1, 6.0d,
+            "E", 1, 7.0d,
+            "F", 1, 8.0d);
+
+    // matched in place from either end, out of order, changed, missing (D) and surplus (G)
+    private final VerifiableTable actual = TableTestUtils.createVerifiableTable("name", 3, "Entity", "Account", "Amount",
+            "A", 1, 1.0d,
+            "A", 2, 2.0d,
+            "B", 2, 4.0d,
+            "B", 1, 3.0d,
+            "C", 1, 5.5d,
+            "G", 9, 99.0d,
+            "E", 1, 7.0d,
+            "F", 1, 8.0d);
+
+    @Test
+    public void rowOutcomesAndPhases()
+    {
+        ComparisonMetrics metrics = this.tableVerifier.compare(this.expected, this.actual).getMetrics();
+        Assert.assertEquals(2L, metrics.getRowCount(ComparisonMetrics.RowOutcome.HAPPY_PATH));
+        Assert.assertEquals(2L, metrics.getRowCount(ComparisonMetrics.RowOutcome.REVERSE_HAPPY_PATH));
+        Assert.assertEquals(2L, metrics.getRowCount(ComparisonMetrics.RowOutcome.MATCHED));
+        Assert.assertEquals(1L, metrics.getRowCount(ComparisonMetrics.RowOutcome.PARTIALLY_MATCHED));
+        Assert.assertEquals(1L, metrics.getRowCount(ComparisonMetrics.RowOutcome.MISSING));
+        Assert.assertEquals(1L, metrics.getRowCount(ComparisonMetrics.RowOutcome.SURPLUS));
+        Assert.assertTrue(metrics.getRowCount(ComparisonMetrics.RowOutcome.OUT_OF_ORDER) > 0L);
+        Assert.assertTrue(metrics.getElapsedNanos(ComparisonPhase.ROW_HASHING) > 0L);
+        Assert.assertTrue(metrics.getElapsedNanos(ComparisonPhase.RESULT_BUILD) > 0L);
+    }
+
+    @Test
+    public void listenerReceivesMetrics()
+    {
+        MutableList<ComparisonMetrics> received = FastList.newList();
+        ComparisonResult result = this.tableVerifier.withComparisonListener((name, metrics) -> received.add(metrics)).compare(this.expected, this.actual);
+        Assert.assertEquals(FastList.newListWith(result.getMetrics()), received);
+    }
+
+    @Test
+    public void listenerReceivesRenderTimeOfReport()
+    {
+        MutableList<String> events = FastList.newList();
+        MutableList<ComparisonMetrics> reportMetrics = FastList.newList();
+        this.tableVerifier.withComparisonListener(new ComparisonListener()
+        {
+            @Override
+            public void comparisonCompleted(String comparisonName, ComparisonMetrics metrics)
+            {
+                events.add("compared " + comparisonName);
+            }
+
+            @Override
+            public void breakReportWritten(String reportName, ComparisonMetrics metrics)
+            {
+                events.add("written " + reportName);
+                reportMetrics.add(metrics);
+            }
+        });
+        VerifiableTable other = TableTestUtils.createVerifiableTable("other", 2, "Entity", "Amount", "A", 1.0d, "B", 2.0d);
+        this.tableVerifier.verify(FastList.newListWith(this.expected, other), FastList.newListWith(this.expected, other));
+        Assert.assertEquals(FastList.newListWith("compared name", "compared other", "written listenerReceivesRenderTimeOfReport"), events);
+        Assert.assertTrue(reportMetrics.get(0).getElapsedNanos(ComparisonPhase.HTML_RENDER) > 0L);
+        Assert.assertEquals(this.expected.getRowCount() + other.getRowCount(), reportMetrics.get(0).getRowCount(ComparisonMetrics.RowOutcome.HAPPY_PATH));
+    }
+
+    @Test
+    public void metricsOfShardsAddUp()
+    {
+        VerifiableTable actual = new KeyedVerifiableTableAdapter(this.actual, 0, 1);
+        ComparisonMetrics metrics = this.tableVerifier.withCompareRowOrder(false).withShards(3, 2).compare(this.expected, actual).getMetrics();
+        Assert.assertEquals(1L, metrics.getRowCount(ComparisonMetrics.RowOutcome.MISSING));
+        Assert.assertEquals(1L, metrics.getRowCount(ComparisonMetrics.RowOutcome.SURPLUS));
+        Assert.assertEquals(this.expected.getRowCount() - 1L, metrics.getRowCount(ComparisonMetrics.RowOutcome.HAPPY_PATH)
+                + metrics.getRowCount(ComparisonMetrics.RowOutcome.REVERSE_HAPPY_PATH)
+                + metrics.getRowCount(ComparisonMetrics.RowOutcome.MATCHED)
+                + metrics.getRowCount(ComparisonMetrics.RowOutcome.PARTIALLY_MATCHED));
+    }
+}
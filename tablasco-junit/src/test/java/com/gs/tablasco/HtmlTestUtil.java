@@ -40,4 +40,9 @@ public class HtmlTestUtil
 
         htmlFormatter.appendResults(path, methodName, results, Metadata.newEmpty());
     }
+
+    public static HtmlOptions newHtmlOptions(boolean hideMatchedRows)
+    {
+        return new HtmlOptions(false, HtmlFormatter.DEFAULT_ROW_LIMIT, false, hideMatchedRows, false, Sets.fixedSize.of());
+    }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco;
+
+import com.gs.tablasco.verify.ListVerifiableTable;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ParallelismTest
+{
+    private static final int ROW_COUNT = 5000;
+
+    @Rule
+    public final TableVerifier tableVerifier = new TableVerifier()
+            .withFilePerMethod()
+            .withMavenDirectoryStrategy()
+            .withTolerance(0.01d);
+
+    @Test
+    public void rowsAreHashedOnSeveralThreads()
+    {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        VerifiableTable actual = new DefaultVerifiableTableAdapter(createTable(true))
+        {
+            @Override
+            public Object getValueAt(int rowIndex, int columnIndex)
+            {
+                threads.add(Thread.currentThread());
+                return super.getValueAt(rowIndex, columnIndex);
+            }
+        };
+        Assert.assertFalse(this.tableVerifier.withParallelism(4).compare(createTable(false), actual).isSuccess());
+        threads.remove(Thread.currentThread());
+        Assert.assertFalse(threads.isEmpty());
+    }
+
+    @Test
+    public void sameResultsAsSingleThreaded()
+    {
+        VerifiableTable expected = createTable(false);
+        VerifiableTable actual = createTable(true);
+        for (boolean compareRowOrder : new boolean[]{true, false})
+        {
+            this.tableVerifier.withCompareRowOrder(compareRowOrder);
+            Assert.assertEquals(
+                    TableTestUtils.getBreakReport(this.tableVerifier.withParallelism(1).compare(expected, actual)),
+                    TableTestUtils.getBreakReport(this.tableVerifier.withParallelism(4).compare(expected, actual)));
+        }
+    }
+
+    @Test
+    public void partialMatchesAreScoredOnSeveralThreads()
+    {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        VerifiableTable actual = new DefaultVerifiableTableAdapter(createBreaks(true))
+        {
+            @Override
+            public Object getValueAt(int rowIndex, int columnIndex)
+            {
+                threads.add(Thread.currentThread());
+                return super.getValueAt(rowIndex, columnIndex);
+            }
+        };
+        Assert.assertFalse(this.tableVerifier.withParallelism(4).compare(createBreaks(false), actual).isSuccess());
+        threads.remove(Thread.currentThread());
+        Assert.assertFalse(threads.isEmpty());
+    }
+
+    @Test
+    public void samePartialMatchesAsSingleThreaded()
+    {
+        VerifiableTable expected = createBreaks(false);
+        VerifiableTable actual = createBreaks(true);
+        Assert.assertEquals(
+                TableTestUtils.getBreakReport(this.tableVerifier.withParallelism(1).compare(expected, actual)),
+                TableTestUtils.getBreakReport(this.tableVerifier.withParallelism(4).compare(expected, actual)));
+    }
+
+    /**
+     * Returns a table of positions with few distinct entities; the actual table lists them in reverse order, with an
+     * amount off by less than the tolerance in every third row, an amount break in every hundredth row and a few
+     * missing and surplus rows.
+     */
+    private static VerifiableTable createTable(boolean actual)
+    {
+        MutableList<List<Object>> rows = FastList.newList(ROW_COUNT);
+        for (int i = 0; i < ROW_COUNT; i++)
+        {
+            int row = actual ? ROW_COUNT - 1 - i : i;
+            double amount = row * 1.5d;
+            if (actual && row % 3 == 0)
+            {
+                amount += 0.004d;
+            }
+            if (actual && row % 100 == 0)
+            {
+                amount += 10.0d;
+            }
+            if (!actual || row % 500 != 7)
+            {
+                rows.add(FastList.newListWith("Entity" + row % 7, actual && row % 1000 == 9 ? -row : row, amount));
+            }
+        }
+        return new ListVerifiableTable("name", FastList.newListWith("Entity", "Account", "Amount"), rows);
+    }
+
+    /**
+     * Returns a table too small to be hashed in parallel, in which every actual amount is a break, so that all rows are
+     * partially matched.
+     */
+    private static VerifiableTable createBreaks(boolean actual)
+    {
+        MutableList<List<Object>> rows = FastList.newList(1000);
+        for (int row = 0; row < 1000; row++)
+        {
+            rows.add(FastList.newListWith("Entity" + row % 7, row, actual ? row * 1.5d + 10.0d : row * 1.5d));
+        }
+        return new ListVerifiableTable("name", FastList.newListWith("Entity", "Account", "Amount"), rows);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco;
+
+import org.eclipse.collections.impl.map.mutable.UnifiedMap;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class TableParallelismTest
+{
+    @Rule
+    public final TableVerifier tableVerifier = new TableVerifier()
+            .withFilePerMethod()
+            .withMavenDirectoryStrategy()
+            .withTableParallelism(3);
+
+    @Test
+    public void tablesReportedInOrder() throws IOException
+    {
+        Map<String, VerifiableTable> tables = new LinkedHashMap<>();
+        for (int i = 9; i >= 0; i--)
+        {
+            tables.put("table" + i, new DefaultVerifiableTableAdapter(TableTestUtils.createTable("name", 2, "Col 1", "A" + i, "Col 2", i)));
+        }
+        this.tableVerifier.verify(tables, UnifiedMap.newMap(tables));
+
+        String html = TableTestUtils.getHtml(this.tableVerifier, "body");
+        for (int i = 9; i > 0; i--)
+        {
+            Assert.assertTrue(html.indexOf("<h2>table" + i + "</h2>") < html.indexOf("<h2>table" + (i - 1) + "</h2>"));
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.gs.tablasco;
 
+import com.gs.tablasco.compare.Metadata;
 import com.gs.tablasco.verify.ListVerifiableTable;
 import org.eclipse.collections.impl.list.fixed.ArrayAdapter;
 import org.eclipse.collections.impl.list.mutable.FastList;
@@ -30,6 +31,7 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerException;
 import java.io.*;
 import java.util.Arrays;
 import java.util.List;
@@ -168,4 +170,21 @@ public class TableTestUtils
     {
         return MapIterate.collect(expectedTables, (name, comparableTable) -> Tuples.pair(name, new DefaultVerifiableTableAdapter(comparableTable)));
     }
+
+    /**
+     * Returns the break report of a comparison as written to the HTML output, without metadata.
+     */
+    static String getBreakReport(ComparisonResult result)
+    {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try
+        {
+            result.writeBreakReportToStream("test", Metadata.newEmpty(), stream);
+            return stream.toString("UTF-8");
+        }
+        catch (TransformerException | UnsupportedEncodingException e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
 }
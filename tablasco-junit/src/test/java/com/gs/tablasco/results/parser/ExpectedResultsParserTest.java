@@ -20,11 +20,14 @@ import com.gs.tablasco.ComparableTable;
 import com.gs.tablasco.TableTestUtils;
 import com.gs.tablasco.results.FileSystemExpectedResultsLoader;
 import com.gs.tablasco.results.ParsedResults;
+import com.gs.tablasco.results.TableDataLoader;
 import org.eclipse.collections.impl.tuple.Tuples;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.IdentityHashMap;
 import java.util.Map;
 
@@ -50,6 +53,51 @@ public class ExpectedResultsParserTest
         Assert.assertEquals(Tuples.pair("App Server URL", "http://test"), results.getMetadata().getData().get(1));
     }
 
+    @Test
+    public void testParseOffHeap()
+    {
+        File expected = new File(TableTestUtils.getExpectedDirectory(), ExpectedResultsParserTest.class.getSimpleName() + ".txt");
+        assertSameTables(new TableDataParser(new FileSystemExpectedResultsLoader(), expected).parse(), new TableDataParser(new FileSystemExpectedResultsLoader(), expected, true).parse(), "Summary", "DrillDown");
+
+        // enough rows and strings to fill several chunks of the largest size, with short rows, multi-byte characters
+        // and repeated strings
+        StringBuilder data = new StringBuilder("Section Large\n\"Id\",\"Name\",\"Value\",\"Group\"\n");
+        for (int i = 0; i < 200000; i++)
+        {
+            data.append(i).append(",\"name \u20ac").append(i).append('"');
+            data.append(i % 7 == 0 ? "\n" : "," + (i * 0.5d) + ",\"group " + i % 3 + "\"\n");
+        }
+        TableDataLoader loader = file -> new ByteArrayInputStream(data.toString().getBytes(StandardCharsets.UTF_8));
+        ParsedResults offHeap = new TableDataParser(loader, expected, true).parse();
+        assertSameTables(new TableDataParser(loader, expected).parse(), offHeap, "Large");
+        ComparableTable large = offHeap.getTable("Large");
+        Assert.assertEquals(200000, large.getRowCount());
+        Assert.assertEquals("name \u20ac199999", large.getValueAt(199999, 1));
+        Assert.assertEquals(99999.5d, large.getValueAt(199999, 2));
+        Assert.assertNull(large.getValueAt(199997, 2));
+        Assert.assertSame("repeated reads are cached", large.getValueAt(199999, 1), large.getValueAt(199999, 1));
+        Assert.assertSame("repeated reads are cached", large.getValueAt(199999, 2), large.getValueAt(199999, 2));
+        Assert.assertSame("repeated strings are stored once", large.getValueAt(3, 3), large.getValueAt(6, 3));
+    }
+
+    private static void assertSameTables(ParsedResults expected, ParsedResults actual, String... tableNames)
+    {
+        for (String tableName : tableNames)
+        {
+            ComparableTable expectedTable = expected.getTable(tableName);
+            ComparableTable actualTable = actual.getTable(tableName);
+            Assert.assertEquals(expectedTable.getRowCount(), actualTable.getRowCount());
+            Assert.assertEquals(expectedTable.getColumnCount(), actualTable.getColumnCount());
+            for (int row = 0; row < expectedTable.getRowCount(); row++)
+            {
+                for (int col = 0; col < expectedTable.getColumnCount(); col++)
+                {
+                    Assert.assertEquals(expectedTable.getValueAt(row, col), actualTable.getValueAt(row, col));
+                }
+            }
+        }
+    }
+
     @Test
     public void testCache()
     {
@@ -62,6 +110,22 @@ public class ExpectedResultsParserTest
         Assert.assertTrue("cache was hit at least once", results.size() < 10);
     }
 
+    @Test
+    public void testOffHeapCache()
+    {
+        File expected = new File(TableTestUtils.getExpectedDirectory(), ExpectedResultsParserTest.class.getSimpleName() + ".txt");
+        File other = new File(TableTestUtils.getExpectedDirectory(), "other.txt");
+        TableDataLoader loader = file -> new FileSystemExpectedResultsLoader().load(expected);
+        ParsedResults results = ExpectedResultsCache.getExpectedResults(loader, expected, true);
+        Assert.assertSame(results, ExpectedResultsCache.getExpectedResults(loader, expected, true));
+        Assert.assertNotSame("only the last file is cached", results, ExpectedResultsCache.getExpectedResults(loader, other, true));
+        Assert.assertNotSame(results, ExpectedResultsCache.getExpectedResults(loader, expected, true));
+        results = ExpectedResultsCache.getExpectedResults(loader, expected, true);
+        ExpectedResultsCache.releaseOffHeapResults();
+        Assert.assertNotSame(results, ExpectedResultsCache.getExpectedResults(loader, expected, true));
+        ExpectedResultsCache.releaseOffHeapResults();
+    }
+
     @Test
     public void testMissingExpectedResultsFileResultsInClearErrorMessage()
     {
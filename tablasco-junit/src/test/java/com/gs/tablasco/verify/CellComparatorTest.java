@@ -16,12 +16,21 @@
 
 package com.gs.tablasco.verify;
 
+import com.gs.tablasco.compare.CellComparator;
 import com.gs.tablasco.compare.CellFormatter;
 import com.gs.tablasco.compare.ToleranceCellComparator;
+import com.gs.tablasco.compare.TypedCellComparator;
 import com.gs.tablasco.compare.VarianceCellComparator;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.list.mutable.FastList;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
 
 public class CellComparatorTest
 {
@@ -86,4 +95,141 @@ public class CellComparatorTest
         Assert.assertFalse("Results mismatch expected. Actual(actual) and Expected(1045.0) outside Variance range(5%).", this.varianceCellComparator.compare("actual", new Double(1045.0)));
     }
 
+    @Test
+    public void testEqualsMatchesFormattedComparison()
+    {
+        Object[] values = {0.0d, -0.0d, 0.05d, 0.15d, 0.25d, 1.04d, 1.06d, 1.14d, 20.0d, 20.09d, 20.11d, 2100.0d, 1.0e20d,
+                1.00000001e20d, 7894.87f, 7894.79f, Double.NaN, Float.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                0, 1, 1L, 20L, Long.MAX_VALUE, Long.MAX_VALUE - 1L, (short) 20, (byte) 1, "20", " 20 ", "", null};
+        for (CellComparator comparator : new CellComparator[]{this.toleranceCellComparator, this.varianceCellComparator})
+        {
+            CellFormatter formatter = comparator.getFormatter();
+            for (Object rhs : values)
+            {
+                for (Object lhs : values)
+                {
+                    boolean expected = formatter.format(rhs).equals(formatter.format(lhs)) || this.compare(comparator, rhs, lhs);
+                    Assert.assertEquals(rhs + " vs " + lhs, expected, comparator.equals(rhs, lhs));
+                    if (rhs instanceof Double && lhs instanceof Double)
+                    {
+                        Assert.assertEquals(rhs + " vs " + lhs, expected, comparator.equalsDoubles((Double) rhs, (Double) lhs));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testTypedComparatorsMatchConfiguredComparators()
+    {
+        Object[][] columns = {
+                {0.0d, -0.0d, 0.05d, 20.0d, 20.09d, 20.11d, 2100.0d, Double.NaN},
+                {0L, 1L, 20L, Long.MAX_VALUE, Long.MIN_VALUE},
+                {0, 1, -20},
+                {new BigDecimal("0"), new BigDecimal("-0.04"), new BigDecimal("20.0"), new BigDecimal("20.04"),
+                        new BigDecimal("20.05"), new BigDecimal("20.15"), new BigDecimal("20.1"), new BigDecimal("2E+1")},
+                {"20", " 20 ", "20\n", "", "a b", "a\tb"},
+                {LocalDate.of(2017, 1, 1), LocalDate.of(2017, 1, 2)},
+                {LocalDateTime.of(2017, 1, 1, 0, 0), LocalDateTime.of(2017, 1, 1, 0, 0, 0, 5000), LocalDateTime.of(2017, 1, 1, 0, 0, 1)},
+                {Timestamp.valueOf("2009-02-13 23:31:30.0001"), Timestamp.valueOf("2009-02-13 23:31:30.9"), Timestamp.valueOf("2009-02-13 23:31:31")}};
+        for (CellComparator comparator : new CellComparator[]{this.toleranceCellComparator, this.varianceCellComparator})
+        {
+            for (Object[] column : columns)
+            {
+                MutableList<Object> values = FastList.newListWith(column);
+                ListVerifiableTable table = new ListVerifiableTable("Test", FastList.<Object>newListWith("Column"), values.collect(FastList::newListWith));
+                CellComparator typed = TypedCellComparator.specialize(comparator, table, 0, table, 0);
+                Assert.assertSame(column[0].getClass(), ((TypedCellComparator) typed).getType());
+                // values of other types fall back to the configured comparator
+                values.add(null);
+                values.add(20.0d);
+                values.add("20");
+                for (Object rhs : values)
+                {
+                    for (Object lhs : values)
+                    {
+                        Assert.assertEquals(rhs + " vs " + lhs, comparator.equals(rhs, lhs), typed.equals(rhs, lhs));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testEqualsFollowsReconfiguredNumberFormat()
+    {
+        CellFormatter formatter = new CellFormatter(0.0001d, true, "Expected", "Actual");
+        CellComparator comparator = new ToleranceCellComparator(formatter);
+        Assert.assertFalse(comparator.equals(1.2d, 1.4d));
+        formatter.getNumberFormat().setMaximumFractionDigits(0);
+        Assert.assertTrue(comparator.equals(1.2d, 1.4d));
+        Assert.assertTrue(comparator.equalsDoubles(1.2d, 1.4d));
+        Assert.assertTrue(comparator.equals(new BigDecimal("1.2"), new BigDecimal("1.4")));
+        Assert.assertFalse(comparator.equals(1.2d, 1.6d));
+        formatter.getNumberFormat().setMaximumIntegerDigits(1);
+        Assert.assertTrue(comparator.equals(12L, 22L));
+        Assert.assertFalse(comparator.equals(12L, 23L));
+        ListVerifiableTable table = new ListVerifiableTable("Test", FastList.<Object>newListWith("Column"), FastList.newListWith(FastList.<Object>newListWith(12L)));
+        Assert.assertTrue(TypedCellComparator.specialize(comparator, table, 0, table, 0).equals(12L, 22L));
+    }
+
+    @Test
+    public void testEqualsFollowsFormatterSubclass()
+    {
+        CellFormatter formatter = new CellFormatter(0.0001d, true, "Expected", "Actual")
+        {
+            @Override
+            public String format(Object value)
+            {
+                return value instanceof Number ? "number" : super.format(value);
+            }
+        };
+        CellComparator comparator = new ToleranceCellComparator(formatter);
+        Assert.assertTrue(comparator.equals(1.2d, 1.4d));
+        Assert.assertTrue(comparator.equals(1L, 2L));
+        Assert.assertTrue(comparator.equals(new BigDecimal("1.2"), new BigDecimal("5")));
+    }
+
+    @Test
+    public void testCopy()
+    {
+        for (CellComparator comparator : new CellComparator[]{this.toleranceCellComparator, this.varianceCellComparator})
+        {
+            CellComparator copy = comparator.copy();
+            Assert.assertSame(comparator.getClass(), copy.getClass());
+            Assert.assertNotSame(comparator.getFormatter(), copy.getFormatter());
+            Assert.assertEquals(comparator.getFormatter().getTolerance(), copy.getFormatter().getTolerance(), 0.0d);
+            Assert.assertEquals(comparator.getFormatter().format(1234.56789d), copy.getFormatter().format(1234.56789d));
+            Assert.assertEquals(comparator.equals(2000.0d, 2100.0d), copy.equals(2000.0d, 2100.0d));
+            Assert.assertEquals(comparator.equals(20.0d, 20.09d), copy.equals(20.0d, 20.09d));
+        }
+    }
+
+    @Test
+    public void testDefaultCopy()
+    {
+        CellComparator comparator = new CellComparator(new CellFormatter(0.1d, false, "Expected", "Actual"))
+        {
+            @Override
+            protected boolean compare(Object rhs, Object lhs)
+            {
+                return String.valueOf(rhs).equalsIgnoreCase(String.valueOf(lhs));
+            }
+        };
+        CellComparator copy = comparator.copy();
+        Assert.assertNotSame(comparator.getFormatter(), copy.getFormatter());
+        Assert.assertEquals(comparator.getFormatter().format(1234.56789d), copy.getFormatter().format(1234.56789d));
+        Assert.assertTrue(copy.equals("abc", "ABC"));
+        Assert.assertFalse(copy.equals("abc", "abd"));
+        Assert.assertTrue(copy.equals(1.0d, 1.01d));
+        Assert.assertEquals(comparator.computeHashCode(1.01d), copy.computeHashCode(1.01d));
+        Assert.assertTrue(copy.copy().equals("abc", "ABC"));
+    }
+
+    private boolean compare(CellComparator comparator, Object rhs, Object lhs)
+    {
+        return comparator == this.toleranceCellComparator
+                ? this.toleranceCellComparator.compare(rhs, lhs)
+                : this.varianceCellComparator.compare(rhs, lhs);
+    }
 }
@@ -17,10 +17,18 @@
 package com.gs.tablasco.verify;
 
 import com.gs.tablasco.compare.CellFormatter;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.list.mutable.FastList;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
 import java.sql.Timestamp;
+import java.text.DecimalFormat;
+import java.util.Locale;
+import java.util.Random;
 
 public class CellFormatterTest
 {
@@ -48,6 +56,94 @@ public class CellFormatterTest
         Assert.assertEquals("0", formatter.format(new Double(-0.0001)));
     }
 
+    @Test
+    public void formatDecimalsEquallyLikeFormat()
+    {
+        Locale defaultLocale = Locale.getDefault();
+        try
+        {
+            for (Locale locale : new Locale[]{Locale.US, Locale.GERMANY, Locale.FRANCE, new Locale("de", "CH"), new Locale("ar", "EG"), new Locale("hi", "IN")})
+            {
+                Locale.setDefault(locale);
+                for (double tolerance : new double[]{0.0d, 1.0e-14d, 0.0001d, 0.01d, 0.5d, 1.0d, 100.0d})
+                {
+                    CellFormatter formatter = new CellFormatter(tolerance, true, "Expected", "Actual");
+                    assertFormatEquallyLikeFormat(formatter, locale + " " + tolerance);
+                }
+            }
+        }
+        finally
+        {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    public void formatDecimalsEquallyAfterNumberFormatChanges()
+    {
+        CellFormatter formatter = new CellFormatter(0.01d, true, "Expected", "Actual");
+        assertFormatEquallyLikeFormat(formatter, "default");
+        formatter.getNumberFormat().setMaximumFractionDigits(0);
+        assertFormatEquallyLikeFormat(formatter, "no fraction digits");
+        formatter.getNumberFormat().setRoundingMode(RoundingMode.UP);
+        assertFormatEquallyLikeFormat(formatter, "rounding up");
+        ((DecimalFormat) formatter.getNumberFormat()).setMultiplier(100);
+        assertFormatEquallyLikeFormat(formatter, "percent");
+        ((DecimalFormat) formatter.getNumberFormat()).applyPattern("0.##E0");
+        assertFormatEquallyLikeFormat(formatter, "scientific");
+        ((DecimalFormat) formatter.getNumberFormat()).applyPattern("#,##0.00;(#,##0.00)");
+        assertFormatEquallyLikeFormat(formatter, "accounting");
+    }
+
+    private static void assertFormatEquallyLikeFormat(CellFormatter formatter, String message)
+    {
+        Random random = new Random(42L);
+        MutableList<BigDecimal> values = FastList.newListWith(BigDecimal.ZERO, new BigDecimal("-0.00"), new BigDecimal("-0.001"),
+                new BigDecimal("0.001"), new BigDecimal("0.005"), new BigDecimal("0.015"), new BigDecimal("1000"), new BigDecimal("1E+3"),
+                new BigDecimal("-1234567.891"), new BigDecimal("0.0000000000000001"), new BigDecimal("0.4"), new BigDecimal("0.6"),
+                new BigDecimal("-0.4"), new BigDecimal("1.5"), new BigDecimal("2.5"), new BigDecimal("-2.5"));
+        for (int i = 0; i < 200; i++)
+        {
+            BigDecimal value = new BigDecimal(new BigInteger(random.nextInt(40) + 1, random).subtract(BigInteger.ONE.shiftLeft(20)), random.nextInt(20) - 4);
+            values.add(value);
+            // a nearby value, formatted identically or not depending on the rounding
+            values.add(value.add(new BigDecimal(BigInteger.valueOf(random.nextInt(11) - 5), value.scale() + random.nextInt(3))));
+        }
+        for (int i = 0; i < values.size(); i++)
+        {
+            for (BigDecimal other : new BigDecimal[]{values.get(i), values.get(i ^ 1), values.get((i + 1) % values.size()), values.get(i).negate()})
+            {
+                BigDecimal value = values.get(i);
+                Assert.assertEquals(message + ": " + value + " and " + other, formatter.format(value).equals(formatter.format(other)), formatter.formatEqually(value, other));
+            }
+        }
+    }
+
+    @Test
+    public void formatEqually()
+    {
+        CellFormatter formatter = new CellFormatter(0.01, true, "Expected", "Actual");
+        Assert.assertTrue(formatter.formatEqually(new BigDecimal("1.10"), new BigDecimal("1.1")));
+        Assert.assertTrue(formatter.formatEqually(new BigDecimal("1.114"), new BigDecimal("1.11")));
+        Assert.assertTrue(formatter.formatEqually(new BigDecimal("-0.001"), BigDecimal.ZERO));
+        Assert.assertFalse(formatter.formatEqually(new BigDecimal("1.116"), new BigDecimal("1.11")));
+    }
+
+    @Test
+    public void formatStringsEqually()
+    {
+        CellFormatter formatter = new CellFormatter(0, false, "Expected", "Actual");
+        String[] values = {"", " ", "foo", " foo ", "foo\r", "\n foo", "foo bar", "foo  bar", "foo\nbar ", " foo\rbar", "foo\tbar",
+                " foo\r \nbar ", "foo\u0000", "\u0000foo", "foo\u00a0bar", "foo\u2003bar", "\n \r ", "Foo"};
+        for (String value1 : values)
+        {
+            for (String value2 : values)
+            {
+                Assert.assertEquals(value1 + " and " + value2, formatter.format(value1).equals(formatter.format(value2)), formatter.formatEqually(value1, value2));
+            }
+        }
+    }
+
     @Test
     public void formatNegativeZero()
     {
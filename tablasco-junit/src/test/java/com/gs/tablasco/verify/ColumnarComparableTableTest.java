@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.verify;
+
+import com.gs.tablasco.ComparableTable;
+import com.gs.tablasco.compare.CellFormatter;
+import com.gs.tablasco.compare.ColumnarComparableTable;
+import com.gs.tablasco.compare.DoubleColumnKernel;
+import com.gs.tablasco.compare.KeyedComparableTable;
+import com.gs.tablasco.compare.KeyedComparableTableAdapter;
+import com.gs.tablasco.compare.ToleranceCellComparator;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+public class ColumnarComparableTableTest
+{
+    private static final ComparableTable TABLE = new ListVerifiableTable(
+            "Test",
+            FastList.<Object>newListWith("String", "Double", "Long", "Integer", "Mixed"),
+            FastList.newListWith(
+                    FastList.newListWith("A", 1.5, 10L, 100, "x"),
+                    FastList.newListWith(null, null, null, null, 1.0),
+                    FastList.newListWith("A", -0.0, Long.MAX_VALUE, -1, null),
+                    FastList.newListWith("B", Double.NaN, 0L, 0, 3L)));
+
+    @Test
+    public void valuesAreUnchanged()
+    {
+        ColumnarComparableTable columnar = ColumnarComparableTable.of(TABLE);
+        Assert.assertEquals(TABLE.getTableName(), columnar.getTableName());
+        Assert.assertEquals(TABLE.getRowCount(), columnar.getRowCount());
+        Assert.assertEquals(TABLE.getColumnCount(), columnar.getColumnCount());
+        for (int col = 0; col < TABLE.getColumnCount(); col++)
+        {
+            Assert.assertEquals(TABLE.getColumnName(col), columnar.getColumnName(col));
+            for (int row = 0; row < TABLE.getRowCount(); row++)
+            {
+                Object value = TABLE.getValueAt(row, col);
+                Assert.assertEquals(value, columnar.getValueAt(row, col));
+                Assert.assertEquals(value == null, columnar.isNull(row, col));
+                if (value != null)
+                {
+                    Assert.assertSame(value.getClass(), columnar.getValueAt(row, col).getClass());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void primitiveAccessors()
+    {
+        ColumnarComparableTable columnar = ColumnarComparableTable.of(TABLE);
+        Assert.assertTrue(columnar.isTypedColumn(0));
+        Assert.assertTrue(columnar.isDoubleColumn(1));
+        Assert.assertEquals(1.5, columnar.getDouble(0, 1), 0.0);
+        Assert.assertTrue(columnar.isTypedColumn(2));
+        Assert.assertTrue(columnar.isTypedColumn(3));
+        Assert.assertFalse(columnar.isDoubleColumn(4));
+        Assert.assertFalse(columnar.isTypedColumn(4));
+    }
+
+    @Test
+    public void formatIsUnchanged()
+    {
+        ColumnarComparableTable columnar = ColumnarComparableTable.of(TABLE);
+        for (CellFormatter formatter : FastList.newListWith(new CellFormatter(0.01d, true, "Expected", "Actual"), new CellFormatter(1.0E-6d, false, "Expected", "Actual")))
+        {
+            for (int col = 0; col < TABLE.getColumnCount(); col++)
+            {
+                for (int row = 0; row < TABLE.getRowCount(); row++)
+                {
+                    Assert.assertEquals(formatter.format(TABLE.getValueAt(row, col)), columnar.format(row, col, formatter));
+                }
+            }
+        }
+        CellFormatter formatter = new CellFormatter(0.01d, true, "Expected", "Actual");
+        Assert.assertSame(columnar.format(0, 0, formatter), columnar.format(2, 0, formatter));
+    }
+
+    @Test
+    public void keyColumnsArePreserved()
+    {
+        ColumnarComparableTable columnar = ColumnarComparableTable.of(new KeyedComparableTableAdapter(TABLE, 0, 2));
+        Assert.assertTrue(columnar instanceof KeyedComparableTable);
+        Assert.assertTrue(((KeyedComparableTable) columnar).isKeyColumn(0));
+        Assert.assertFalse(((KeyedComparableTable) columnar).isKeyColumn(1));
+        Assert.assertTrue(((KeyedComparableTable) columnar).isKeyColumn(2));
+        Assert.assertFalse(ColumnarComparableTable.of(TABLE) instanceof KeyedComparableTable);
+        Assert.assertSame(columnar, ColumnarComparableTable.of(columnar));
+    }
+
+    @Test
+    public void vectorizedIfExpected()
+    {
+        // the Java 21 build tests the multi-release jar with jdk.incubator.vector resolved and expects vectorisation
+        Assert.assertEquals(Boolean.getBoolean("tablasco.expectVectorized"), DoubleColumnKernel.isVectorized());
+    }
+
+    @Test
+    public void markDoubleMismatches()
+    {
+        double tolerance = 0.01d;
+        ToleranceCellComparator comparator = new ToleranceCellComparator(new CellFormatter(tolerance, true, "Expected", "Actual"));
+        double[] specialValues = {0.0d, -0.0d, 1.0d, 1.005d, 1.01d, 1.02d, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        Random random = new Random(3L);
+        MutableList<List<Object>> rows = FastList.newList();
+        for (int i = 0; i < 1000; i++)
+        {
+            Object rhs = random.nextInt(20) == 0 ? null : (Object) specialValues[random.nextInt(specialValues.length)];
+            Object lhs = random.nextInt(20) == 0 ? null : (Object) specialValues[random.nextInt(specialValues.length)];
+            rows.add(FastList.newListWith(rhs, lhs));
+        }
+        ColumnarComparableTable table = ColumnarComparableTable.of(new ListVerifiableTable("Test", FastList.<Object>newListWith("Rhs", "Lhs"), rows));
+        Assert.assertTrue(table.isDoubleColumn(0));
+        Assert.assertTrue(table.isDoubleColumn(1));
+        for (int[] block : new int[][]{{0, 0, 1000}, {3, 5, 130}, {900, 7, 64}, {10, 10, 0}})
+        {
+            long[] mismatches = new long[(block[2] + 63) / 64];
+            ColumnarComparableTable.markDoubleMismatches(table, 0, block[0], table, 1, block[1], block[2], tolerance, mismatches);
+            for (int i = 0; i < block[2]; i++)
+            {
+                Object rhs = table.getValueAt(block[0] + i, 0);
+                Object lhs = table.getValueAt(block[1] + i, 1);
+                boolean expected = rhs == null || lhs == null || !comparator.compareDoubles((Double) rhs, (Double) lhs);
+                Assert.assertEquals(rhs + " vs " + lhs + " (vectorized: " + DoubleColumnKernel.isVectorized() + ")", expected, (mismatches[i >>> 6] & (1L << i)) != 0L);
+            }
+        }
+    }
+}
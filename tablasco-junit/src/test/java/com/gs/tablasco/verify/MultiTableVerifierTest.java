@@ -94,6 +94,31 @@ public class MultiTableVerifierTest
         this.expectedTables = 3;
     }
 
+    @Test
+    public void parallelism()
+    {
+        Map<String, ComparableTable> actual = createTables("assets", "liabs", "equity", "income");
+        Map<String, ComparableTable> expected = createTables("assets", "liabz", "equity", "income");
+        Map<String, ResultTable> sequentialResults = this.verifier.verifyTables(TableTestUtils.adapt(expected), TableTestUtils.adapt(actual));
+        this.verifier = new MultiTableVerifier(() -> new IndexMapTableComparator(new ColumnComparators.Builder().build(), true, IndexMapTableComparator.DEFAULT_BEST_MATCH_THRESHOLD, false, false), 3);
+        Map<String, ResultTable> results = this.verifyTables(actual, expected);
+        Assert.assertEquals(FastList.newList(sequentialResults.keySet()), FastList.newList(results.keySet()));
+        for (String tableName : results.keySet())
+        {
+            Assert.assertEquals(sequentialResults.get(tableName).getComparedRows(), results.get(tableName).getComparedRows());
+        }
+        this.expectedTables = 5;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void noColumnsInParallel()
+    {
+        this.verifier = new MultiTableVerifier(() -> new IndexMapTableComparator(new ColumnComparators.Builder().build(), true, IndexMapTableComparator.DEFAULT_BEST_MATCH_THRESHOLD, false, false), 2);
+        this.verifyTables(
+                Maps.fixedSize.of("table", TableTestUtils.createTable("name", 1, "Col"), "other", TableTestUtils.createTable("name", 1, "Col")),
+                Maps.fixedSize.of("table", TableTestUtils.createTable("name", 0), "other", TableTestUtils.createTable("name", 1, "Col")));
+    }
+
     @Test(expected = IllegalStateException.class)
     public void noExpectedColumns()
     {
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.verify.indexmap;
+
+import com.gs.tablasco.ComparableTable;
+import com.gs.tablasco.DefaultVerifiableTableAdapter;
+import com.gs.tablasco.HtmlTestUtil;
+import com.gs.tablasco.VerifiableTable;
+import com.gs.tablasco.compare.ColumnComparators;
+import com.gs.tablasco.compare.ResultCell;
+import com.gs.tablasco.compare.ResultTable;
+import com.gs.tablasco.compare.indexmap.IndexMapTableComparator;
+import com.gs.tablasco.verify.ListVerifiableTable;
+import org.eclipse.collections.api.bag.MutableBag;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.bag.mutable.HashBag;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.util.List;
+
+public class AnytimePartialMatchTest
+{
+    private static final ColumnComparators COLUMN_COMPARATORS = new ColumnComparators.Builder().withTolerance(0.1d).build();
+
+    @Test
+    public void completedWithinTimeout()
+    {
+        VerifiableTable expected = table("Expected", 0, 20);
+        VerifiableTable actual = table("Actual", 0, 20);
+        ResultTable anytime = newComparator(60000L).withAnytimePartialMatch(true).compare(actual, expected);
+        Assert.assertFalse(anytime.isPartialMatchTruncated());
+        Assert.assertEquals(newComparator(60000L).compare(actual, expected).getComparedRows(), anytime.getComparedRows());
+        Assert.assertEquals(20, rowOutcomes(anytime).occurrencesOf("pass"));
+    }
+
+    @Test
+    public void truncatedOnTimeout() throws ParserConfigurationException
+    {
+        // with a best-match threshold of one, rows are grouped by the Group column, reading every amount once, then
+        // twenty groups of one missing and one surplus row are matched quickly; reading the amounts of the last group a
+        // second time to match it takes the comparison past the timeout
+        VerifiableTable expected = table("Expected", 20, 10);
+        ComparableTable actual = new DefaultVerifiableTableAdapter(table("Actual", 20, 10))
+        {
+            @Override
+            public Object getValueAt(int rowIndex, int columnIndex)
+            {
+                if (rowIndex >= 20 && columnIndex == 1)
+                {
+                    try
+                    {
+                        Thread.sleep(100L);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.getValueAt(rowIndex, columnIndex);
+            }
+        };
+        IndexMapTableComparator comparator = new IndexMapTableComparator(COLUMN_COMPARATORS, false, 1, false, false, false, false, 1500L);
+        ResultTable result = comparator.withAnytimePartialMatch(true).compare(actual, expected);
+        Assert.assertTrue(result.isPartialMatchTruncated());
+        MutableBag<String> outcomes = rowOutcomes(result);
+        Assert.assertEquals(20, outcomes.occurrencesOf("pass"));
+        Assert.assertEquals(10, outcomes.occurrencesOf("missing"));
+        Assert.assertEquals(10, outcomes.occurrencesOf("surplus"));
+        Element table = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument().createElement("table");
+        result.appendTo("test", "Test", table, HtmlTestUtil.newHtmlOptions(false));
+        Assert.assertTrue(table.getChildNodes().item(1).getTextContent().startsWith("Partial matching timed out"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void failsOnTimeoutByDefault()
+    {
+        VerifiableTable expected = table("Expected", 0, 10);
+        ComparableTable actual = new DefaultVerifiableTableAdapter(table("Actual", 0, 10))
+        {
+            @Override
+            public Object getValueAt(int rowIndex, int columnIndex)
+            {
+                if (columnIndex == 1)
+                {
+                    try
+                    {
+                        Thread.sleep(100L);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.getValueAt(rowIndex, columnIndex);
+            }
+        };
+        newComparator(200L).compare(actual, expected);
+    }
+
+    /**
+     * Returns the outcome of each compared row, by the style of its group cell.
+     */
+    private static MutableBag<String> rowOutcomes(ResultTable result)
+    {
+        MutableBag<String> outcomes = HashBag.newBag();
+        List<List<ResultCell>> rows = result.getComparedRows();
+        for (List<ResultCell> row : rows.subList(1, rows.size()))
+        {
+            outcomes.add(row.get(0).getCssClass());
+        }
+        return outcomes;
+    }
+
+    private static IndexMapTableComparator newComparator(long partialMatchTimeoutMillis)
+    {
+        return new IndexMapTableComparator(COLUMN_COMPARATORS, false, IndexMapTableComparator.DEFAULT_BEST_MATCH_THRESHOLD, false, false, false, false, partialMatchTimeoutMillis);
+    }
+
+    /**
+     * Returns one row per group for the quick groups followed by a slow group of the given size, each row breaking on
+     * its amount and value so that it can only be partially matched.
+     */
+    private static VerifiableTable table(String prefix, int quickGroups, int slowGroupSize)
+    {
+        MutableList<List<Object>> rows = FastList.newList();
+        for (int i = 0; i < quickGroups + slowGroupSize; i++)
+        {
+            String group = i < quickGroups ? "G" + i : "Slow";
+            double amount = "Actual".equals(prefix) ? i + 0.5d : i;
+            rows.add(FastList.<Object>newListWith(group, amount, prefix + i));
+        }
+        return new ListVerifiableTable("Test", FastList.<Object>newListWith("Group", "Amount", "Value"), rows);
+    }
+}
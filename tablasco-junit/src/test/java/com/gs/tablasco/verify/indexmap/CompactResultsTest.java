@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.verify.indexmap;
+
+import com.gs.tablasco.ComparableTable;
+import com.gs.tablasco.DefaultVerifiableTableAdapter;
+import com.gs.tablasco.HtmlOptions;
+import com.gs.tablasco.HtmlTestUtil;
+import com.gs.tablasco.VerifiableTable;
+import com.gs.tablasco.compare.ColumnComparators;
+import com.gs.tablasco.compare.ResultTable;
+import com.gs.tablasco.compare.indexmap.IndexMapTableComparator;
+import com.gs.tablasco.verify.ListVerifiableTable;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CompactResultsTest
+{
+    private static final ColumnComparators COLUMN_COMPARATORS = new ColumnComparators.Builder().withTolerance(0.1d).build();
+
+    private static final VerifiableTable EXPECTED = new ListVerifiableTable(
+            "Test",
+            FastList.<Object>newListWith("Entity", "Account", "Amount", "Note"),
+            FastList.newListWith(
+                    FastList.newListWith("A", 1, 1.0, "x"),
+                    FastList.newListWith("A", 2, 2.0, "y"),
+                    FastList.newListWith("B", 1, 3.0, null),
+                    FastList.newListWith("B", 2, 4.0, "x"),
+                    FastList.newListWith("C", 1, 5.0, "y"),
+                    FastList.newListWith("D", 1, 6.0, "z")));
+
+    private static final VerifiableTable ACTUAL = new ListVerifiableTable(
+            "Test",
+            FastList.<Object>newListWith("Entity", "Account", "Extra", "Amount"),
+            FastList.newListWith(
+                    FastList.newListWith("A", 1, "e", 1.05),
+                    FastList.newListWith("B", 1, "e", 3.0),
+                    FastList.newListWith("A", 2, "e", 2.0),
+                    FastList.newListWith("B", 2, "e", 4.5),
+                    FastList.newListWith("C", 1, "e", 5.0),
+                    FastList.newListWith("E", 1, "e", 7.0)));
+
+    @Test
+    public void sameResultsAsEager()
+    {
+        for (boolean verifyRowOrder : new boolean[]{true, false})
+        {
+            ResultTable eager = newComparator(verifyRowOrder).compare(ACTUAL, EXPECTED);
+            ResultTable compact = newComparator(verifyRowOrder).withCompactResults(true).compare(ACTUAL, EXPECTED);
+            Assert.assertFalse(compact.isSuccess());
+            Assert.assertEquals(eager.getHeaders(), compact.getHeaders());
+            Assert.assertEquals(eager.getComparedRows(), compact.getComparedRows());
+            Assert.assertEquals(eager.getTotalCellCount(), compact.getTotalCellCount());
+            Assert.assertEquals(eager.getPassedCellCount(), compact.getPassedCellCount());
+            for (int col = 0; col < eager.getHeaders().size(); col++)
+            {
+                Assert.assertEquals(eager.getMatchedColumnsAhead(col), compact.getMatchedColumnsAhead(col));
+            }
+        }
+    }
+
+    @Test
+    public void cellsAreCreatedWhenRowsAreRead()
+    {
+        AtomicInteger reads = new AtomicInteger();
+        ComparableTable actual = new DefaultVerifiableTableAdapter(ACTUAL)
+        {
+            @Override
+            public Object getValueAt(int rowIndex, int columnIndex)
+            {
+                reads.incrementAndGet();
+                return super.getValueAt(rowIndex, columnIndex);
+            }
+        };
+        ResultTable compact = newComparator(true).withCompactResults(true).compare(actual, EXPECTED);
+        int readsToCompare = reads.get();
+        Assert.assertEquals(5, compact.getComparedRows().get(1).size());
+        Assert.assertTrue(reads.get() > readsToCompare);
+    }
+
+    @Test
+    public void sameHtmlAsEager() throws ParserConfigurationException
+    {
+        for (boolean hideMatchedRows : new boolean[]{true, false})
+        {
+            HtmlOptions htmlOptions = HtmlTestUtil.newHtmlOptions(hideMatchedRows);
+            ResultTable eager = newComparator(true).compare(ACTUAL, EXPECTED);
+            ResultTable compact = newComparator(true).withCompactResults(true).compare(ACTUAL, EXPECTED);
+            Assert.assertTrue(toHtml(eager, htmlOptions).isEqualNode(toHtml(compact, htmlOptions)));
+        }
+    }
+
+    @Test
+    public void hiddenMatchedRowsAreNotRead() throws ParserConfigurationException
+    {
+        VerifiableTable table = new ListVerifiableTable(
+                "Test",
+                FastList.<Object>newListWith("Entity", "Amount"),
+                FastList.newListWith(
+                        FastList.newListWith("A", 1.0),
+                        FastList.newListWith("B", 2.0),
+                        FastList.newListWith("C", 3.0),
+                        FastList.newListWith("D", 4.0)));
+        AtomicInteger reads = new AtomicInteger();
+        ComparableTable actual = new DefaultVerifiableTableAdapter(table)
+        {
+            @Override
+            public Object getValueAt(int rowIndex, int columnIndex)
+            {
+                reads.incrementAndGet();
+                return super.getValueAt(rowIndex, columnIndex);
+            }
+        };
+        ResultTable compact = newComparator(true).withCompactResults(true).compare(actual, table);
+        Assert.assertTrue(compact.isSuccess());
+        int readsToCompare = reads.get();
+        toHtml(compact, HtmlTestUtil.newHtmlOptions(true));
+        Assert.assertEquals(readsToCompare, reads.get());
+        toHtml(compact, HtmlTestUtil.newHtmlOptions(false));
+        Assert.assertTrue(reads.get() > readsToCompare);
+    }
+
+    private static Element toHtml(ResultTable resultTable, HtmlOptions htmlOptions) throws ParserConfigurationException
+    {
+        Element table = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument().createElement("table");
+        resultTable.appendTo("test", "Test", table, htmlOptions);
+        return table;
+    }
+
+    private static IndexMapTableComparator newComparator(boolean verifyRowOrder)
+    {
+        return new IndexMapTableComparator(COLUMN_COMPARATORS, verifyRowOrder, IndexMapTableComparator.DEFAULT_BEST_MATCH_THRESHOLD);
+    }
+}
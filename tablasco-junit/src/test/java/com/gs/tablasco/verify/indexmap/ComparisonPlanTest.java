@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.verify.indexmap;
+
+import com.gs.tablasco.VerifiableTable;
+import com.gs.tablasco.compare.ColumnComparators;
+import com.gs.tablasco.compare.TypedCellComparator;
+import com.gs.tablasco.compare.indexmap.ComparisonPlan;
+import com.gs.tablasco.compare.indexmap.IndexMap;
+import com.gs.tablasco.verify.KeyedVerifiableTableAdapter;
+import com.gs.tablasco.verify.ListVerifiableTable;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ComparisonPlanTest
+{
+    private static final VerifiableTable LHS = new ListVerifiableTable(
+            "Test",
+            FastList.<Object>newListWith("Entity", "Net", "Missing"),
+            FastList.newListWith(
+                    FastList.newListWith("GSIL", 100.0, "A")));
+
+    private static final VerifiableTable RHS = new KeyedVerifiableTableAdapter(new ListVerifiableTable(
+            "Test",
+            FastList.<Object>newListWith("Entity", "Surplus", "Net"),
+            FastList.newListWith(
+                    FastList.newListWith("GSIL", "B", 100.0))), 0);
+
+    private static final MutableList<IndexMap> COLUMNS = FastList.newListWith(
+            new IndexMap(0, 0), new IndexMap(1, 2), new IndexMap(2, -1), new IndexMap(-1, 1));
+
+    private static final ColumnComparators COMPARATORS = new ColumnComparators.Builder().withTolerance(0.1).withTolerance("Net", 1.0).build();
+
+    @Test
+    public void comparatorsAreResolvedOncePerColumn()
+    {
+        ComparisonPlan plan = ComparisonPlan.compile(COLUMNS, RHS, LHS, COMPARATORS);
+        Assert.assertEquals(4, plan.size());
+        Assert.assertEquals(1, plan.getLhsIndex(1));
+        Assert.assertEquals(2, plan.getRhsIndex(1));
+        Assert.assertSame(COMPARATORS.getComparator("Net"), ((TypedCellComparator) plan.getLhsComparator(1)).getDelegate());
+        Assert.assertSame(plan.getLhsComparator(1), plan.getRhsComparator(1));
+        Assert.assertSame(COMPARATORS.getComparator("Net").getFormatter(), plan.getLhsFormatter(1));
+        Assert.assertSame(COMPARATORS.getComparator("Missing"), plan.getLhsComparator(2));
+        Assert.assertNull(plan.getRhsComparator(2));
+        Assert.assertNull(plan.getLhsComparator(3));
+        Assert.assertSame(COMPARATORS.getDefaultComparator(), plan.getDefaultComparator());
+    }
+
+    @Test
+    public void comparatorsOfMixedColumnsAreNotSpecialized()
+    {
+        VerifiableTable mixed = new ListVerifiableTable(
+                "Test",
+                FastList.<Object>newListWith("Entity", "Net", "Missing"),
+                FastList.newListWith(
+                        FastList.newListWith("GSIL", 100L, "A"),
+                        FastList.newListWith("GSIL", 100.0, "A")));
+        ComparisonPlan plan = ComparisonPlan.compile(COLUMNS, RHS, mixed, COMPARATORS);
+        Assert.assertTrue(plan.getLhsComparator(0) instanceof TypedCellComparator);
+        Assert.assertSame(COMPARATORS.getComparator("Net"), plan.getLhsComparator(1));
+    }
+
+    @Test
+    public void positionsAndKeyColumns()
+    {
+        ComparisonPlan plan = ComparisonPlan.compile(COLUMNS, RHS, LHS, COMPARATORS);
+        Assert.assertEquals(1, plan.positionOf(COLUMNS.get(1)));
+        Assert.assertEquals(3, plan.positionOf(COLUMNS.get(3)));
+        Assert.assertTrue(plan.isKeyColumn(0));
+        Assert.assertFalse(plan.isKeyColumn(1));
+        Assert.assertEquals(FastList.newListWith(COLUMNS.get(0)), plan.getKeyColumns());
+        Assert.assertNull(plan.getLhsComparators(COLUMNS)[2]);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.verify.indexmap;
+
+import com.gs.tablasco.VerifiableTable;
+import com.gs.tablasco.compare.ColumnComparators;
+import com.gs.tablasco.compare.FailFastResultTable;
+import com.gs.tablasco.compare.indexmap.IndexMapTableComparator;
+import com.gs.tablasco.verify.ListVerifiableTable;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class FailFastTest
+{
+    private static final ColumnComparators COLUMN_COMPARATORS = new ColumnComparators.Builder().withTolerance(0.1d).build();
+
+    private static final VerifiableTable EXPECTED = new ListVerifiableTable(
+            "Test",
+            FastList.<Object>newListWith("Entity", "Account", "Amount"),
+            FastList.newListWith(
+                    FastList.newListWith("A", 1, 1.0),
+                    FastList.newListWith("A", 2, 2.0),
+                    FastList.newListWith("B", 1, 3.0),
+                    FastList.newListWith("B", 2, 4.0)));
+
+    @Test
+    public void identicalTablesPass()
+    {
+        for (boolean verifyRowOrder : new boolean[]{true, false})
+        {
+            FailFastResultTable result = newComparator(verifyRowOrder).compareFailFast(EXPECTED, EXPECTED, 1);
+            Assert.assertTrue(result.isSuccess());
+            Assert.assertEquals(0, result.getBreakCount());
+            Assert.assertEquals(newComparator(verifyRowOrder).compare(EXPECTED, EXPECTED).getTotalCellCount(), result.getTotalCellCount());
+        }
+    }
+
+    @Test
+    public void firstBreak()
+    {
+        VerifiableTable actual = table(
+                FastList.newListWith("A", 1, 1.05),
+                FastList.newListWith("A", 2, 2.0),
+                FastList.newListWith("B", 1, 3.5),
+                FastList.newListWith("B", 2, 4.0));
+        FailFastResultTable result = newComparator(true).compareFailFast(actual, EXPECTED, 1);
+        Assert.assertFalse(result.isSuccess());
+        Assert.assertEquals(1, result.getBreakCount());
+        Assert.assertEquals(2, result.getFirstBreakRhsRowIndex());
+        Assert.assertEquals(2, result.getFirstBreakLhsRowIndex());
+        Assert.assertEquals("Amount", result.getFirstBreakColumnName());
+    }
+
+    @Test
+    public void stopsAtBreakLimit()
+    {
+        VerifiableTable actual = table(
+                FastList.newListWith("A", 1, 1.5),
+                FastList.newListWith("A", 2, 2.5),
+                FastList.newListWith("B", 1, 3.5),
+                FastList.newListWith("B", 2, 4.5));
+        FailFastResultTable result = newComparator(true).compareFailFast(actual, EXPECTED, 2);
+        Assert.assertEquals(2, result.getBreakCount());
+        Assert.assertTrue(result.isStoppedEarly());
+    }
+
+    @Test
+    public void rowOrder()
+    {
+        VerifiableTable reversed = table(
+                FastList.newListWith("B", 2, 4.0),
+                FastList.newListWith("B", 1, 3.0),
+                FastList.newListWith("A", 2, 2.0),
+                FastList.newListWith("A", 1, 1.0));
+        Assert.assertFalse(newComparator(true).compareFailFast(reversed, EXPECTED, 1).isSuccess());
+        Assert.assertTrue(newComparator(false).compareFailFast(reversed, EXPECTED, 1).isSuccess());
+    }
+
+    @Test
+    public void ignoreSurplusRows()
+    {
+        VerifiableTable withSurplus = table(
+                FastList.newListWith("A", 1, 1.0),
+                FastList.newListWith("A", 2, 2.0),
+                FastList.newListWith("A", 3, 2.5),
+                FastList.newListWith("B", 1, 3.0),
+                FastList.newListWith("B", 2, 4.0));
+        FailFastResultTable surplus = newComparator(false).compareFailFast(withSurplus, EXPECTED, 1);
+        Assert.assertFalse(surplus.isSuccess());
+        Assert.assertEquals(2, surplus.getFirstBreakRhsRowIndex());
+        Assert.assertEquals(-1, surplus.getFirstBreakLhsRowIndex());
+        IndexMapTableComparator ignoringSurplus = new IndexMapTableComparator(COLUMN_COMPARATORS, false, IndexMapTableComparator.DEFAULT_BEST_MATCH_THRESHOLD, true, false);
+        Assert.assertTrue(ignoringSurplus.compareFailFast(withSurplus, EXPECTED, 1).isSuccess());
+    }
+
+    private static IndexMapTableComparator newComparator(boolean verifyRowOrder)
+    {
+        return new IndexMapTableComparator(COLUMN_COMPARATORS, verifyRowOrder, IndexMapTableComparator.DEFAULT_BEST_MATCH_THRESHOLD);
+    }
+
+    @SafeVarargs
+    private static VerifiableTable table(List<Object>... rows)
+    {
+        return new ListVerifiableTable("Test", FastList.<Object>newListWith("Entity", "Account", "Amount"), FastList.newListWith(rows));
+    }
+}
@@ -19,10 +19,15 @@ package com.gs.tablasco.verify.indexmap;
 import com.gs.tablasco.compare.indexmap.IndexMap;
 import com.gs.tablasco.compare.indexmap.IndexMapGenerator;
 import com.gs.tablasco.compare.indexmap.UnmatchedIndexMap;
+import org.eclipse.collections.api.list.MutableList;
 import org.eclipse.collections.impl.list.mutable.FastList;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
 public class IndexMapGeneratorTest
 {
     @Test
@@ -37,6 +42,90 @@ public class IndexMapGeneratorTest
         Assert.assertEquals(FastList.newListWith(uim(-1, 5), uim(-1, 6), uim(-1, 7), uim(-1, 8), uim(-1, 9)), generator.getSurplus());
     }
 
+    @Test
+    public void duplicatesAreMatchedInOrder()
+    {
+        IndexMapGenerator<String> generator = new IndexMapGenerator<String>(
+                FastList.newListWith("A", "B", "A", "C").iterator(),
+                FastList.newListWith("A", "A", "A", "B", "B", "D").iterator(), 1);
+        generator.generate();
+        Assert.assertEquals(FastList.newListWith(im(1, 1), im(2, 4), im(3, 2)), generator.getMatched());
+        Assert.assertEquals(FastList.newListWith(uim(4, -1)), generator.getMissing());
+        // partly matched groups move to the end of the surplus order
+        Assert.assertEquals(FastList.newListWith(uim(-1, 6), uim(-1, 5), uim(-1, 3)), generator.getSurplus());
+    }
+
+    @Test
+    public void matchesLinkedHashMapImplementation()
+    {
+        Random random = new Random(42L);
+        for (int run = 0; run < 100; run++)
+        {
+            MutableList<Integer> lhs = randomRows(random);
+            MutableList<Integer> rhs = randomRows(random);
+            IndexMapGenerator<Integer> generator = new IndexMapGenerator<Integer>(lhs.iterator(), rhs.iterator(), 0, i -> i % 3);
+            generator.generate();
+            MutableList<IndexMap> matched = FastList.newList();
+            MutableList<UnmatchedIndexMap> missing = FastList.newList();
+            MutableList<UnmatchedIndexMap> surplus = FastList.newList();
+            generateWithLinkedHashMap(lhs, rhs, matched, missing, surplus);
+            Assert.assertEquals(matched, generator.getMatched());
+            Assert.assertEquals(missing, generator.getMissing());
+            Assert.assertEquals(surplus, generator.getSurplus());
+        }
+    }
+
+    private static MutableList<Integer> randomRows(Random random)
+    {
+        MutableList<Integer> rows = FastList.newList();
+        int size = random.nextInt(200);
+        for (int i = 0; i < size; i++)
+        {
+            rows.add(random.nextInt(20));
+        }
+        return rows;
+    }
+
+    private static void generateWithLinkedHashMap(MutableList<Integer> lhs, MutableList<Integer> rhs, MutableList<IndexMap> matched, MutableList<UnmatchedIndexMap> missing, MutableList<UnmatchedIndexMap> surplus)
+    {
+        Map<Integer, MutableList<Integer>> rhsIndices = new LinkedHashMap<>();
+        for (int ai = 0; ai < rhs.size(); ai++)
+        {
+            MutableList<Integer> indices = rhsIndices.get(rhs.get(ai));
+            if (indices == null)
+            {
+                rhsIndices.put(rhs.get(ai), FastList.newListWith(ai));
+            }
+            else
+            {
+                indices.add(ai);
+            }
+        }
+        for (int ei = 0; ei < lhs.size(); ei++)
+        {
+            MutableList<Integer> indices = rhsIndices.remove(lhs.get(ei));
+            if (indices == null)
+            {
+                missing.add(uim(ei, -1));
+            }
+            else
+            {
+                matched.add(im(ei, indices.remove(0)));
+                if (indices.notEmpty())
+                {
+                    rhsIndices.put(lhs.get(ei), indices);
+                }
+            }
+        }
+        for (MutableList<Integer> indices : rhsIndices.values())
+        {
+            for (Integer index : indices)
+            {
+                surplus.add(uim(-1, index));
+            }
+        }
+    }
+
     private static IndexMap im(int expectedIndex, int actualIndex)
     {
         return new IndexMap(expectedIndex, actualIndex);
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.verify.indexmap;
+
+import com.gs.tablasco.compare.indexmap.IndexMap;
+import com.gs.tablasco.compare.indexmap.IndexMapOrdering;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Random;
+
+public class IndexMapOrderingTest
+{
+    @Test
+    public void missingRowsFollowSurplusRowsWithSameIndex()
+    {
+        this.assertOrder(5, 4, im(0, 0), im(-1, 1), im(1, -1), im(2, -1), im(3, 2), im(-1, 3), im(4, -1));
+    }
+
+    @Test
+    public void missingRowPrecedesFirstRowWithGreaterKey()
+    {
+        // compareTo is not transitive here: (-1, 6) < (3, 7) < (4, -1) < (-1, 6)
+        this.assertOrder(5, 8, im(4, -1), im(-1, 6), im(3, 7));
+        this.assertOrder(6, 2, im(2, -1), im(5, 0), im(1, 1));
+    }
+
+    @Test
+    public void matchesSortOrderWhenMatchedRowsAreInOrder()
+    {
+        Random random = new Random(7L);
+        for (int run = 0; run < 50; run++)
+        {
+            MutableList<IndexMap> rows = FastList.newList();
+            int lhsIndex = 0;
+            int rhsIndex = 0;
+            for (int i = 0; i < 100; i++)
+            {
+                int type = random.nextInt(3);
+                if (type == 0)
+                {
+                    rows.add(im(lhsIndex++, rhsIndex++));
+                }
+                else if (type == 1)
+                {
+                    rows.add(im(lhsIndex++, -1));
+                }
+                else
+                {
+                    rhsIndex++;
+                }
+            }
+            MutableList<IndexMap> expected = rows.toSortedList();
+            Collections.shuffle(rows, random);
+            Assert.assertEquals(expected, IndexMapOrdering.order(rows, lhsIndex, rhsIndex));
+        }
+    }
+
+    private void assertOrder(int lhsRowCount, int rhsRowCount, IndexMap... expected)
+    {
+        MutableList<IndexMap> rows = FastList.newListWith(expected.clone()).reverseThis();
+        Assert.assertEquals(FastList.newListWith(expected), IndexMapOrdering.order(rows, lhsRowCount, rhsRowCount));
+    }
+
+    private static IndexMap im(int lhs, int rhs)
+    {
+        return new IndexMap(lhs, rhs);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.verify.indexmap;
+
+import com.gs.tablasco.ComparableTable;
+import com.gs.tablasco.VerifiableTable;
+import com.gs.tablasco.compare.ColumnComparators;
+import com.gs.tablasco.compare.KeyedComparableTableAdapter;
+import com.gs.tablasco.compare.ResultCell;
+import com.gs.tablasco.compare.ResultTable;
+import com.gs.tablasco.compare.indexmap.IndexMapTableComparator;
+import com.gs.tablasco.verify.ListVerifiableTable;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class KeyJoinTest
+{
+    private static final ColumnComparators COLUMN_COMPARATORS = new ColumnComparators.Builder().withTolerance(0.1d).build();
+
+    private static final VerifiableTable EXPECTED = table(
+            FastList.newListWith(1, "A", 1.0),
+            FastList.newListWith(2, "A", 2.0),
+            FastList.newListWith(3, "B", 3.0),
+            FastList.newListWith(3, "B", 3.5),
+            FastList.newListWith(4, "C", 4.0),
+            FastList.newListWith(5, "D", 5.0),
+            FastList.newListWith(6, "E", 6.0));
+
+    private static final VerifiableTable ACTUAL = table(
+            FastList.newListWith(2, "A", 2.05),
+            FastList.newListWith(1, "A", 1.0),
+            FastList.newListWith(3, "B", 3.5),
+            FastList.newListWith(3, "B", 3.0),
+            FastList.newListWith(4, "Z", 9.0),
+            FastList.newListWith(6, "E", 6.0),
+            FastList.newListWith(7, "F", 7.0));
+
+    @Test
+    public void sameResultsAsHashing()
+    {
+        ComparableTable actual = new KeyedComparableTableAdapter(ACTUAL, 0);
+        for (boolean verifyRowOrder : new boolean[]{true, false})
+        {
+            ResultTable hashed = newComparator(verifyRowOrder).compare(actual, EXPECTED);
+            ResultTable joined = newComparator(verifyRowOrder).withKeyJoin(true).compare(actual, EXPECTED);
+            Assert.assertEquals(hashed.getComparedRows(), joined.getComparedRows());
+            ResultTable compact = newComparator(verifyRowOrder).withKeyJoin(true).withCompactResults(true).compare(actual, EXPECTED);
+            Assert.assertEquals(hashed.getComparedRows(), compact.getComparedRows());
+        }
+    }
+
+    @Test
+    public void uniqueKeysArePairedWhateverTheirValues()
+    {
+        ComparableTable actual = new KeyedComparableTableAdapter(ACTUAL, 0);
+        List<List<ResultCell>> rows = newComparator(false).withKeyJoin(true).compare(actual, EXPECTED).getComparedRows();
+        List<ResultCell> changed = rows.stream().filter(row -> Integer.valueOf(4).equals(row.get(0).getLhs())).findFirst().get();
+        Assert.assertEquals("pass", changed.get(0).getCssClass());
+        Assert.assertEquals("fail", changed.get(1).getCssClass());
+        Assert.assertEquals("fail", changed.get(2).getCssClass());
+    }
+
+    @Test
+    public void identicalTablesPass()
+    {
+        ComparableTable expected = new KeyedComparableTableAdapter(EXPECTED, 0);
+        Assert.assertTrue(newComparator(true).withKeyJoin(true).compare(expected, EXPECTED).isSuccess());
+    }
+
+    private static IndexMapTableComparator newComparator(boolean verifyRowOrder)
+    {
+        return new IndexMapTableComparator(COLUMN_COMPARATORS, verifyRowOrder, IndexMapTableComparator.DEFAULT_BEST_MATCH_THRESHOLD);
+    }
+
+    @SafeVarargs
+    private static VerifiableTable table(List<Object>... rows)
+    {
+        return new ListVerifiableTable("Test", FastList.<Object>newListWith("Id", "Name", "Amount"), FastList.newListWith(rows));
+    }
+}
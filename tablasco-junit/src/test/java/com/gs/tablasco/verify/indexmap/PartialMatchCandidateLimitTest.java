@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.verify.indexmap;
+
+import com.gs.tablasco.VerifiableTable;
+import com.gs.tablasco.compare.CellComparator;
+import com.gs.tablasco.compare.CellFormatter;
+import com.gs.tablasco.compare.ColumnComparators;
+import com.gs.tablasco.compare.ResultCell;
+import com.gs.tablasco.compare.ToleranceCellComparator;
+import com.gs.tablasco.compare.indexmap.IndexMapTableComparator;
+import com.gs.tablasco.verify.ListVerifiableTable;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class PartialMatchCandidateLimitTest
+{
+    private static final CellComparator CELL_COMPARATOR = new ToleranceCellComparator(new CellFormatter(1.0, true, "Expected", "Actual"));
+
+    // the second expected row scores best against the first actual row, which matches the first expected row better
+    private static final VerifiableTable EXPECTED = new ListVerifiableTable(
+            "Test",
+            FastList.<Object>newListWith("Col 1", "Col 2", "Col 3", "Col 4"),
+            FastList.newListWith(
+                    FastList.newListWith("A", "B", "C", "X"),
+                    FastList.newListWith("A", "B", "W", "V")));
+
+    private static final VerifiableTable ACTUAL = new ListVerifiableTable(
+            "Test",
+            FastList.<Object>newListWith("Col 1", "Col 2", "Col 3", "Col 4"),
+            FastList.newListWith(
+                    FastList.newListWith("A", "B", "C", "Y"),
+                    FastList.newListWith("P", "Q", "W", "U")));
+
+    @Test
+    public void noLimit()
+    {
+        Assert.assertEquals(
+                Arrays.asList(
+                        row(pass("Col 1"), pass("Col 2"), pass("Col 3"), pass("Col 4")),
+                        row(pass("A"), pass("B"), pass("C"), fail("Y", "X")),
+                        row(fail("P", "A"), fail("Q", "B"), pass("W"), fail("U", "V"))),
+                compare(0));
+    }
+
+    @Test
+    public void limitAboveCandidateCount()
+    {
+        Assert.assertEquals(compare(0), compare(2));
+    }
+
+    @Test
+    public void rowWhoseCandidatesMatchBetterIsMissing()
+    {
+        Assert.assertEquals(
+                Arrays.asList(
+                        row(pass("Col 1"), pass("Col 2"), pass("Col 3"), pass("Col 4")),
+                        row(pass("A"), pass("B"), pass("C"), fail("Y", "X")),
+                        row(surplus("P"), surplus("Q"), surplus("W"), surplus("U")),
+                        row(missing("A"), missing("B"), missing("W"), missing("V"))),
+                compare(1));
+    }
+
+    private static List<List<ResultCell>> compare(int partialMatchCandidateLimit)
+    {
+        ColumnComparators columnComparators = new ColumnComparators.Builder().withLabels("Expected", "Actual").withTolerance(1.0d).build();
+        return new IndexMapTableComparator(columnComparators, true, IndexMapTableComparator.DEFAULT_BEST_MATCH_THRESHOLD)
+                .withPartialMatchCandidateLimit(partialMatchCandidateLimit)
+                .compare(ACTUAL, EXPECTED)
+                .getComparedRows();
+    }
+
+    private static ResultCell pass(String value)
+    {
+        return ResultCell.createMatchedCell(CELL_COMPARATOR, value, value);
+    }
+
+    private static ResultCell fail(String actual, String expected)
+    {
+        return ResultCell.createMatchedCell(CELL_COMPARATOR, actual, expected);
+    }
+
+    private static ResultCell missing(String expected)
+    {
+        return ResultCell.createMissingCell(CELL_COMPARATOR.getFormatter(), expected);
+    }
+
+    private static ResultCell surplus(String actual)
+    {
+        return ResultCell.createSurplusCell(CELL_COMPARATOR.getFormatter(), actual);
+    }
+
+    private static List<ResultCell> row(ResultCell... cells)
+    {
+        return Arrays.asList(cells);
+    }
+}
@@ -17,17 +17,26 @@
 package com.gs.tablasco.verify.indexmap;
 
 import com.gs.tablasco.VerifiableTable;
+import com.gs.tablasco.compare.CellComparator;
 import com.gs.tablasco.compare.ColumnComparators;
 import com.gs.tablasco.compare.indexmap.BestMatchPartialMatcher;
+import com.gs.tablasco.compare.indexmap.CancellationToken;
 import com.gs.tablasco.compare.indexmap.IndexMap;
 import com.gs.tablasco.compare.indexmap.UnmatchedIndexMap;
 import com.gs.tablasco.verify.ListVerifiableTable;
 import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.api.tuple.Pair;
+import org.eclipse.collections.impl.block.factory.Comparators;
 import org.eclipse.collections.impl.list.mutable.FastList;
+import org.eclipse.collections.impl.tuple.Tuples;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
 public class PartialMatcherTest
 {
     private static final VerifiableTable MISSING = new ListVerifiableTable(
@@ -77,4 +86,147 @@ public class PartialMatcherTest
         Assert.assertSame(this.missing.get(1), this.surplus.get(2).getBestMutualMatch());
         Assert.assertSame(this.missing.get(2), this.surplus.get(3).getBestMutualMatch());
     }
+
+    @Test
+    public void bestMatchPartialMatcherLinksScoredRowsWhenCancelled()
+    {
+        // cancelled as if timing out after the first missing row of the group is scored
+        CancellationToken cancellationToken = new CancellationToken()
+        {
+            private int polls;
+
+            @Override
+            public boolean isCancelled()
+            {
+                if (++this.polls > 1)
+                {
+                    this.cancel();
+                }
+                return super.isCancelled();
+            }
+        };
+        try
+        {
+            new BestMatchPartialMatcher(SURPLUS, MISSING, new ColumnComparators.Builder().build()).match(this.missing, this.surplus, COLUMNS, cancellationToken);
+            Assert.fail("cancellation not signalled");
+        }
+        catch (CancellationException expected)
+        {
+            Assert.assertSame(this.missing.get(0), this.surplus.get(1).getBestMutualMatch());
+            Assert.assertNull(this.missing.get(1).getBestMutualMatch());
+            Assert.assertNull(this.missing.get(2).getBestMutualMatch());
+        }
+    }
+
+    @Test
+    public void bestMatchPartialMatcherScoresLikeCellComparators()
+    {
+        ColumnComparators columnComparators = new ColumnComparators.Builder().withTolerance("MV", 100.0d).withVarianceThreshold("Quantity", 20.0d).build();
+        this.matchWithCellComparators(SURPLUS, MISSING, columnComparators, 0);
+        MutableList<UnmatchedIndexMap> expectedSurplus = this.surplus;
+
+        this.setUp();
+        new BestMatchPartialMatcher(SURPLUS, MISSING, columnComparators).match(this.missing, this.surplus, COLUMNS);
+        for (int i = 0; i < this.surplus.size(); i++)
+        {
+            Assert.assertEquals(expectedSurplus.get(i).getBestMutualMatch(), this.surplus.get(i).getBestMutualMatch());
+        }
+    }
+
+    @Test
+    public void bestMatchPartialMatcherLinksMutualBestMatches()
+    {
+        this.assertLinksMutualBestMatches(0);
+    }
+
+    @Test
+    public void bestMatchPartialMatcherLinksMutualBestMatchesAmongLimitedCandidates()
+    {
+        this.assertLinksMutualBestMatches(1);
+        this.assertLinksMutualBestMatches(3);
+    }
+
+    private void assertLinksMutualBestMatches(int candidateLimit)
+    {
+        Random random = new Random(42L);
+        ColumnComparators columnComparators = new ColumnComparators.Builder().build();
+        for (int run = 0; run < 20; run++)
+        {
+            VerifiableTable missingTable = randomTable(random, 40);
+            VerifiableTable surplusTable = randomTable(random, 50);
+            this.missing = FastList.newList();
+            for (int i = 0; i < missingTable.getRowCount(); i++)
+            {
+                this.missing.add(new UnmatchedIndexMap(i, -1));
+            }
+            this.surplus = FastList.newList();
+            for (int i = surplusTable.getRowCount() - 1; i >= 0; i--)
+            {
+                this.surplus.add(new UnmatchedIndexMap(-1, i));
+            }
+            MutableList<UnmatchedIndexMap> expectedMissing = this.missing;
+            this.matchWithCellComparators(surplusTable, missingTable, columnComparators, candidateLimit);
+
+            MutableList<UnmatchedIndexMap> actualMissing = expectedMissing.collect(each -> new UnmatchedIndexMap(each.getLhsIndex(), -1));
+            MutableList<UnmatchedIndexMap> actualSurplus = this.surplus.collect(each -> new UnmatchedIndexMap(-1, each.getRhsIndex()));
+            new BestMatchPartialMatcher(surplusTable, missingTable, columnComparators, 1, candidateLimit).match(actualMissing, actualSurplus, COLUMNS.take(4));
+            for (int i = 0; i < actualMissing.size(); i++)
+            {
+                Assert.assertEquals(expectedMissing.get(i).getBestMutualMatch(), actualMissing.get(i).getBestMutualMatch());
+            }
+        }
+    }
+
+    private static VerifiableTable randomTable(Random random, int rowCount)
+    {
+        MutableList<List<Object>> rows = FastList.newList();
+        for (int i = 0; i < rowCount; i++)
+        {
+            rows.add(FastList.<Object>newListWith("E" + random.nextInt(3), "A" + random.nextInt(3), (double) random.nextInt(3), (double) random.nextInt(3)));
+        }
+        return new ListVerifiableTable("Test", FastList.<Object>newListWith("Entity", "Account", "Net", "MV"), rows);
+    }
+
+    private void matchWithCellComparators(VerifiableTable surplusTable, VerifiableTable missingTable, ColumnComparators columnComparators, int candidateLimit)
+    {
+        MutableList<IndexMap> columns = COLUMNS.take(missingTable.getColumnCount());
+        for (UnmatchedIndexMap lhs : this.missing)
+        {
+            MutableList<Pair<Integer, UnmatchedIndexMap>> candidates = FastList.newList();
+            for (UnmatchedIndexMap rhs : this.surplus)
+            {
+                int matchScore = 0;
+                for (int colIndex = 0; colIndex < columns.size(); colIndex++)
+                {
+                    IndexMap column = columns.get(colIndex);
+                    CellComparator comparator = columnComparators.getComparator(missingTable.getColumnName(column.getLhsIndex()));
+                    if (comparator.equals(surplusTable.getValueAt(rhs.getRhsIndex(), column.getRhsIndex()), missingTable.getValueAt(lhs.getLhsIndex(), column.getLhsIndex())))
+                    {
+                        int inverseColumnNumber = columns.size() - colIndex;
+                        matchScore += inverseColumnNumber * inverseColumnNumber;
+                    }
+                }
+                if (matchScore > 0)
+                {
+                    candidates.add(Tuples.pair(matchScore, rhs));
+                }
+            }
+            candidates.sortThis(Comparators.chain(
+                    Comparators.reverse(Comparators.byFunction(Pair::getOne)),
+                    Comparators.byFunction(candidate -> candidate.getTwo().getRhsIndex())));
+            for (Pair<Integer, UnmatchedIndexMap> candidate : candidateLimit > 0 ? candidates.take(candidateLimit) : candidates)
+            {
+                lhs.addMatch(candidate.getOne(), candidate.getTwo());
+            }
+        }
+        boolean keepMatching = true;
+        while (keepMatching)
+        {
+            keepMatching = false;
+            for (UnmatchedIndexMap lhs : this.missing)
+            {
+                keepMatching |= lhs.match();
+            }
+        }
+    }
 }
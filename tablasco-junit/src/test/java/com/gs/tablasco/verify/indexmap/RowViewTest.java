@@ -0,0 +1,73 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.verify.indexmap;
+
+import com.gs.tablasco.VerifiableTable;
+import com.gs.tablasco.compare.ColumnComparators;
+import com.gs.tablasco.compare.indexmap.IndexMap;
+import com.gs.tablasco.compare.indexmap.LhsRowView;
+import com.gs.tablasco.compare.indexmap.RhsRowView;
+import com.gs.tablasco.compare.indexmap.RowView;
+import com.gs.tablasco.verify.ListVerifiableTable;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RowViewTest
+{
+    private static final VerifiableTable TABLE = new ListVerifiableTable(
+            "Test",
+            FastList.<Object>newListWith("Entity", "Net", "Ignored"),
+            FastList.newListWith(
+                    FastList.newListWith("GSIL", 100.0, "A"),
+                    FastList.newListWith("GSIL", 100.0, "B"),
+                    FastList.newListWith("GSIL", 100.05, "C"),
+                    FastList.newListWith("GSCO", 100.0, "D")));
+
+    private static final MutableList<IndexMap> COLUMNS = FastList.newListWith(
+            new IndexMap(0, 0), new IndexMap(1, 1), new IndexMap(2, -1));
+
+    private static final ColumnComparators COMPARATORS = new ColumnComparators.Builder().withTolerance(0.1).build();
+
+    @Test
+    public void unmatchedColumnsAreIgnored()
+    {
+        RowView rhs = new RhsRowView(TABLE, COLUMNS, COMPARATORS, 0);
+        RowView lhs = new LhsRowView(TABLE, COLUMNS, COMPARATORS, 1);
+        Assert.assertEquals(rhs, lhs);
+        Assert.assertEquals(rhs.hashCode(), lhs.hashCode());
+    }
+
+    @Test
+    public void valuesWithinToleranceAreEqual()
+    {
+        RowView rhs = new RhsRowView(TABLE, COLUMNS, COMPARATORS, 0);
+        RowView lhs = new LhsRowView(TABLE, COLUMNS, COMPARATORS, 2);
+        Assert.assertEquals(rhs, lhs);
+        Assert.assertEquals(lhs, rhs);
+    }
+
+    @Test
+    public void differentValuesAreNotEqual()
+    {
+        RowView rhs = new RhsRowView(TABLE, COLUMNS, COMPARATORS, 0);
+        RowView lhs = new LhsRowView(TABLE, COLUMNS, COMPARATORS, 3);
+        Assert.assertNotEquals(rhs, lhs);
+        Assert.assertNotEquals(rhs.hashCode(), lhs.hashCode());
+    }
+}
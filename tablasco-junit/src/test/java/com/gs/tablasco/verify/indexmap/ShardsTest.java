@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.verify.indexmap;
+
+import com.gs.tablasco.ComparableTable;
+import com.gs.tablasco.DefaultVerifiableTableAdapter;
+import com.gs.tablasco.HtmlTestUtil;
+import com.gs.tablasco.VerifiableTable;
+import com.gs.tablasco.compare.ColumnComparators;
+import com.gs.tablasco.compare.KeyedComparableTableAdapter;
+import com.gs.tablasco.compare.ResultTable;
+import com.gs.tablasco.compare.indexmap.IndexMapTableComparator;
+import com.gs.tablasco.compare.indexmap.ShardedTableComparator;
+import com.gs.tablasco.verify.ListVerifiableTable;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.eclipse.collections.impl.utility.ListIterate;
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Element;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ShardsTest
+{
+    private static final ColumnComparators COLUMN_COMPARATORS = new ColumnComparators.Builder().withTolerance(0.1d).build();
+
+    private static final VerifiableTable EXPECTED = table(
+            FastList.newListWith("A", 1, 1.0),
+            FastList.newListWith("A", 2, 2.0),
+            FastList.newListWith("B", 1, 3.0),
+            FastList.newListWith("B", 2, 4.0),
+            FastList.newListWith("C", 1, 5.0),
+            FastList.newListWith("D", 1, 6.0),
+            FastList.newListWith("E", 1, 7.0));
+
+    private static final ComparableTable ACTUAL = new KeyedComparableTableAdapter(table(
+            FastList.newListWith("B", 1, 3.0),
+            FastList.newListWith("A", 1, 1.05),
+            FastList.newListWith("A", 2, 2.5),
+            FastList.newListWith("B", 2, 4.0),
+            FastList.newListWith("C", 2, 5.0),
+            FastList.newListWith("E", 1, 7.0),
+            FastList.newListWith("F", 1, 8.0)), 0);
+
+    @Test
+    public void sameRowsAsUnsharded()
+    {
+        ResultTable expected = newComparator().compare(ACTUAL, EXPECTED);
+        for (int shardCount : new int[]{1, 3, 7})
+        {
+            ResultTable sharded = new ShardedTableComparator(COLUMN_COMPARATORS, comparators -> newComparator(), shardCount, 2).compare(ACTUAL, EXPECTED);
+            Assert.assertFalse(sharded.isSuccess());
+            Assert.assertEquals(expected.getHeaders(), sharded.getHeaders());
+            Assert.assertEquals(expected.getTotalCellCount(), sharded.getTotalCellCount());
+            Assert.assertEquals(expected.getPassedCellCount(), sharded.getPassedCellCount());
+            // rows are merged back into the order of the compared tables
+            Assert.assertEquals(ListIterate.collect(expected.getComparedRows(), Object::toString), ListIterate.collect(sharded.getComparedRows(), Object::toString));
+        }
+    }
+
+    @Test
+    public void compactShardResultsAreNotExpanded() throws ParserConfigurationException
+    {
+        AtomicInteger reads = new AtomicInteger();
+        ComparableTable actual = new KeyedComparableTableAdapter(new DefaultVerifiableTableAdapter(EXPECTED)
+        {
+            @Override
+            public Object getValueAt(int rowIndex, int columnIndex)
+            {
+                reads.incrementAndGet();
+                return super.getValueAt(rowIndex, columnIndex);
+            }
+        }, 0);
+        ResultTable sharded = new ShardedTableComparator(COLUMN_COMPARATORS, comparators -> newComparator().withCompactResults(true), 3, 2).compare(actual, EXPECTED);
+        Assert.assertTrue(sharded.isSuccess());
+        int readsToCompare = reads.get();
+        Element table = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument().createElement("table");
+        sharded.appendTo("test", "Test", table, HtmlTestUtil.newHtmlOptions(true));
+        Assert.assertEquals("hidden matched rows are not read", readsToCompare, reads.get());
+        Assert.assertEquals(3, sharded.getComparedRows().get(1).size());
+        Assert.assertTrue("cells are created when rows are read", reads.get() > readsToCompare);
+        Assert.assertEquals(ListIterate.collect(newComparator().compare(actual, EXPECTED).getComparedRows(), Object::toString), ListIterate.collect(sharded.getComparedRows(), Object::toString));
+    }
+
+    @Test
+    public void unkeyedTablesAreComparedInOnePiece()
+    {
+        ResultTable sharded = new ShardedTableComparator(COLUMN_COMPARATORS, comparators -> newComparator(), 3, 2).compare(EXPECTED, EXPECTED);
+        Assert.assertTrue(sharded.isSuccess());
+        Assert.assertEquals(newComparator().compare(EXPECTED, EXPECTED).getComparedRows(), sharded.getComparedRows());
+    }
+
+    private static IndexMapTableComparator newComparator()
+    {
+        return new IndexMapTableComparator(COLUMN_COMPARATORS, false, IndexMapTableComparator.DEFAULT_BEST_MATCH_THRESHOLD);
+    }
+
+    @SafeVarargs
+    private static VerifiableTable table(List<Object>... rows)
+    {
+        return new ListVerifiableTable("Test", FastList.<Object>newListWith("Entity", "Account", "Amount"), FastList.newListWith(rows));
+    }
+}
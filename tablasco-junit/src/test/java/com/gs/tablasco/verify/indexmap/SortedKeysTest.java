@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.verify.indexmap;
+
+import com.gs.tablasco.ComparableTable;
+import com.gs.tablasco.VerifiableTable;
+import com.gs.tablasco.compare.ColumnComparators;
+import com.gs.tablasco.compare.KeyedComparableTableAdapter;
+import com.gs.tablasco.compare.ResultTable;
+import com.gs.tablasco.compare.indexmap.IndexMapTableComparator;
+import com.gs.tablasco.verify.ListVerifiableTable;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+
+public class SortedKeysTest
+{
+    private static final ColumnComparators COLUMN_COMPARATORS = new ColumnComparators.Builder().withTolerance(0.1d).build();
+
+    private static final VerifiableTable EXPECTED = table(
+            FastList.newListWith("A", 1, 1.0, "x"),
+            FastList.newListWith("A", 2, 2.0, "y"),
+            FastList.newListWith("B", 1, 3.0, null),
+            FastList.newListWith("B", 1, 3.5, "z"),
+            FastList.newListWith("B", 2, 4.0, "x"),
+            FastList.newListWith("C", 1, 5.0, "y"),
+            FastList.newListWith("D", 1, 6.0, "z"));
+
+    private static final VerifiableTable ACTUAL = table(
+            FastList.newListWith("A", 1, 1.05, "x"),
+            FastList.newListWith("A", 3, 2.0, "y"),
+            FastList.newListWith("B", 1, 3.5, "z"),
+            FastList.newListWith("B", 1, 3.0, null),
+            FastList.newListWith("B", 2, 4.5, "x"),
+            FastList.newListWith("C", 1, 5.0, "q"),
+            FastList.newListWith("E", 1, 7.0, "z"));
+
+    @Test
+    public void sameResultsAsHashing()
+    {
+        for (int[] keyColumns : new int[][]{{0}, {0, 1}})
+        {
+            ComparableTable actual = new KeyedComparableTableAdapter(ACTUAL, keyColumns);
+            ComparableTable expected = new KeyedComparableTableAdapter(EXPECTED, keyColumns);
+            for (boolean verifyRowOrder : new boolean[]{true, false})
+            {
+                assertSameResults(verifyRowOrder, actual, expected);
+            }
+        }
+    }
+
+    @Test
+    public void identicalTablesPass()
+    {
+        ComparableTable expected = new KeyedComparableTableAdapter(EXPECTED, 0, 1);
+        Assert.assertTrue(newComparator(true).withSortedKeys(true).compare(expected, expected).isSuccess());
+    }
+
+    @Test
+    public void unsortedTablesFallBackToHashing()
+    {
+        ComparableTable unsorted = new KeyedComparableTableAdapter(table(
+                FastList.newListWith("B", 1, 3.0, null),
+                FastList.newListWith("A", 1, 1.0, "x"),
+                FastList.newListWith("D", 1, 6.0, "z"),
+                FastList.newListWith("A", 2, 2.0, "y"),
+                FastList.newListWith("C", 1, 5.5, "y")), 0);
+        ComparableTable expected = new KeyedComparableTableAdapter(EXPECTED, 0);
+        assertSameResults(true, unsorted, expected);
+        assertSameResults(false, unsorted, expected);
+    }
+
+    @Test
+    public void floatingPointKeysFallBackToHashing()
+    {
+        assertSameResults(false, new KeyedComparableTableAdapter(ACTUAL, 2), new KeyedComparableTableAdapter(EXPECTED, 2));
+    }
+
+    private static void assertSameResults(boolean verifyRowOrder, ComparableTable actual, ComparableTable expected)
+    {
+        ResultTable hashed = newComparator(verifyRowOrder).compare(actual, expected);
+        ResultTable merged = newComparator(verifyRowOrder).withSortedKeys(true).compare(actual, expected);
+        Assert.assertEquals(hashed.getComparedRows(), merged.getComparedRows());
+        Assert.assertEquals(hashed.getPassedCellCount(), merged.getPassedCellCount());
+    }
+
+    private static IndexMapTableComparator newComparator(boolean verifyRowOrder)
+    {
+        return new IndexMapTableComparator(COLUMN_COMPARATORS, verifyRowOrder, IndexMapTableComparator.DEFAULT_BEST_MATCH_THRESHOLD);
+    }
+
+    @SafeVarargs
+    private static VerifiableTable table(List<Object>... rows)
+    {
+        return new ListVerifiableTable("Test", FastList.<Object>newListWith("Entity", "Account", "Amount", "Note"), FastList.newListWith(rows));
+    }
+}
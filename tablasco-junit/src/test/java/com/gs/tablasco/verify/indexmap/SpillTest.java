@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017 Goldman Sachs.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.gs.tablasco.verify.indexmap;
+
+import com.gs.tablasco.ComparableTable;
+import com.gs.tablasco.VerifiableTable;
+import com.gs.tablasco.compare.ColumnComparators;
+import com.gs.tablasco.compare.KeyedComparableTableAdapter;
+import com.gs.tablasco.compare.ResultTable;
+import com.gs.tablasco.compare.indexmap.IndexMapTableComparator;
+import com.gs.tablasco.compare.indexmap.SpillingTableComparator;
+import com.gs.tablasco.verify.ListVerifiableTable;
+import org.eclipse.collections.api.bag.MutableBag;
+import org.eclipse.collections.api.list.MutableList;
+import org.eclipse.collections.impl.bag.mutable.HashBag;
+import org.eclipse.collections.impl.list.mutable.FastList;
+import org.eclipse.collections.impl.utility.ListIterate;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+public class SpillTest
+{
+    private static final ColumnComparators COLUMN_COMPARATORS = new ColumnComparators.Builder().withTolerance(0.1d).build();
+
+    private static final VerifiableTable EXPECTED = table(false);
+    private static final ComparableTable ACTUAL = new KeyedComparableTableAdapter(table(true), 0);
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void sameRowsAsInMemory()
+    {
+        File spillDirectory = this.temporaryFolder.getRoot();
+        ResultTable spilled = newSpillingComparator(64L * 1024L, spillDirectory).compare(ACTUAL, EXPECTED);
+        assertSameRows(newComparator().compare(ACTUAL, EXPECTED), spilled);
+        Assert.assertEquals(0, spillDirectory.list().length);
+    }
+
+    @Test
+    public void sameRowsWhenSplittingInManyPasses()
+    {
+        // a budget too small for more than three open files per pass, splitting partitions over several passes
+        File spillDirectory = this.temporaryFolder.getRoot();
+        ResultTable spilled = newSpillingComparator(16L * 1024L, spillDirectory).compare(ACTUAL, EXPECTED);
+        assertSameRows(newComparator().compare(ACTUAL, EXPECTED), spilled);
+        Assert.assertEquals(0, spillDirectory.list().length);
+    }
+
+    @Test
+    public void tablesWithinBudgetAreNotSpilled()
+    {
+        ResultTable withinBudget = newSpillingComparator(Long.MAX_VALUE, this.temporaryFolder.getRoot()).compare(ACTUAL, EXPECTED);
+        Assert.assertEquals(newComparator().compare(ACTUAL, EXPECTED).getComparedRows(), withinBudget.getComparedRows());
+    }
+
+    private static void assertSameRows(ResultTable expected, ResultTable actual)
+    {
+        Assert.assertEquals(expected.getTotalCellCount(), actual.getTotalCellCount());
+        Assert.assertEquals(expected.getPassedCellCount(), actual.getPassedCellCount());
+        // rows are in partition order, but are the same rows
+        Assert.assertEquals(rows(expected), rows(actual));
+    }
+
+    private static MutableBag<String> rows(ResultTable resultTable)
+    {
+        return HashBag.newBag(ListIterate.collect(resultTable.getComparedRows(), Object::toString));
+    }
+
+    private static SpillingTableComparator newSpillingComparator(long memoryBudgetBytes, File spillDirectory)
+    {
+        return new SpillingTableComparator(COLUMN_COMPARATORS, comparators -> newComparator(), memoryBudgetBytes, spillDirectory.toPath());
+    }
+
+    private static IndexMapTableComparator newComparator()
+    {
+        return new IndexMapTableComparator(COLUMN_COMPARATORS, false, IndexMapTableComparator.DEFAULT_BEST_MATCH_THRESHOLD);
+    }
+
+    /**
+     * Returns a table of 2000 rows keyed by id; the changed table misses every 97th row, breaks on every 31st amount
+     * and has a surplus row for every 89th.
+     */
+    private static VerifiableTable table(boolean changed)
+    {
+        MutableList<List<Object>> rows = FastList.newList();
+        for (int id = 0; id < 2000; id++)
+        {
+            if (changed && id % 97 == 0)
+            {
+                continue;
+            }
+            double amount = changed && id % 31 == 0 ? id + 1.0d : id;
+            rows.add(FastList.<Object>newListWith(id, "Entity" + id % 10, amount));
+            if (changed && id % 89 == 0)
+            {
+                rows.add(FastList.<Object>newListWith(10000 + id, "Entity" + id % 10, (double) id));
+            }
+        }
+        return new ListVerifiableTable("Test", FastList.<Object>newListWith("Id", "Entity", "Amount"), rows);
+    }
+}
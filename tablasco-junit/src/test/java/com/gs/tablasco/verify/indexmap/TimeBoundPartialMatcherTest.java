@@ -16,6 +16,7 @@
 
 package com.gs.tablasco.verify.indexmap;
 
+import com.gs.tablasco.compare.indexmap.CancellationToken;
 import com.gs.tablasco.compare.indexmap.IndexMap;
 import com.gs.tablasco.compare.indexmap.PartialMatcher;
 import com.gs.tablasco.compare.indexmap.TimeBoundPartialMatcher;
@@ -24,15 +25,30 @@ import org.eclipse.collections.api.list.MutableList;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class TimeBoundPartialMatcherTest
 {
+    private static final PartialMatcher NO_MATCHER = new PartialMatcher()
+    {
+        @Override
+        public void match(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> matchedColumns)
+        {
+        }
+    };
+
     @Test
     public void executionTimesOut()
     {
+        final AtomicBoolean finished = new AtomicBoolean(false);
         try
         {
             PartialMatcher endlessMatcher = new PartialMatcher()
@@ -40,10 +56,11 @@ public class TimeBoundPartialMatcherTest
                 @Override
                 public void match(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> matchedColumns)
                 {
+                    // ignores cancellation, but frees its shared thread once the test is over
                     boolean breakLoop = false;
                     while (!breakLoop)
                     {
-                        breakLoop = "foo".equals("bar");
+                        breakLoop = finished.get();
                     }
                 }
             };
@@ -54,6 +71,205 @@ public class TimeBoundPartialMatcherTest
         {
             Assert.assertTrue(e.getCause() instanceof TimeoutException);
         }
+        finally
+        {
+            finished.set(true);
+        }
+    }
+
+    @Test
+    public void timedOutMatchesDoNotHoldThreads()
+    {
+        final CountDownLatch released = new CountDownLatch(1);
+        PartialMatcher stuckMatcher = new PartialMatcher()
+        {
+            @Override
+            public void match(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> matchedColumns)
+            {
+                awaitIgnoringInterrupts(released);
+            }
+        };
+        int threadCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+        try
+        {
+            for (int i = 0; i < 2 * threadCount; i++)
+            {
+                try
+                {
+                    new TimeBoundPartialMatcher(stuckMatcher, 100L).match(null, null, null);
+                    Assert.fail("timeout expected");
+                }
+                catch (RuntimeException e)
+                {
+                    Assert.assertTrue(e.getCause() instanceof TimeoutException);
+                }
+            }
+            // the stuck matches are left running, but no longer stop others from starting
+            TimeBoundPartialMatcher quick = new TimeBoundPartialMatcher(NO_MATCHER, 10000L, true);
+            quick.match(null, null, null);
+            Assert.assertFalse(quick.isTruncated());
+        }
+        finally
+        {
+            released.countDown();
+        }
+    }
+
+    @Test
+    public void matchesWaitForRunningMatches() throws InterruptedException
+    {
+        int threadCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+        final CountDownLatch running = new CountDownLatch(threadCount);
+        final CountDownLatch released = new CountDownLatch(1);
+        final PartialMatcher blockedMatcher = new PartialMatcher()
+        {
+            @Override
+            public void match(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> matchedColumns)
+            {
+                running.countDown();
+                awaitIgnoringInterrupts(released);
+            }
+        };
+        List<Thread> callers = new ArrayList<>();
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        try
+        {
+            // many more matches than threads running at once, none timing out
+            for (int i = 0; i < threadCount + 100; i++)
+            {
+                Thread caller = new Thread(() ->
+                {
+                    try
+                    {
+                        new TimeBoundPartialMatcher(blockedMatcher, Long.MAX_VALUE).match(null, null, null);
+                    }
+                    catch (Throwable t)
+                    {
+                        failures.add(t);
+                    }
+                });
+                caller.start();
+                callers.add(caller);
+            }
+            Assert.assertTrue(running.await(10L, TimeUnit.SECONDS));
+            // a match still waiting for a running match to finish when it times out has linked no rows
+            TimeBoundPartialMatcher waiting = new TimeBoundPartialMatcher(NO_MATCHER, 100L, true);
+            waiting.match(null, null, null);
+            Assert.assertTrue(waiting.isTruncated());
+        }
+        finally
+        {
+            released.countDown();
+        }
+        for (Thread caller : callers)
+        {
+            caller.join(10000L);
+            Assert.assertFalse(caller.isAlive());
+        }
+        Assert.assertEquals(Collections.<Throwable>emptyList(), failures);
+    }
+
+    @Test
+    public void timedOutMatchIsCancelled() throws InterruptedException
+    {
+        final CountDownLatch stopped = new CountDownLatch(1);
+        PartialMatcher cancellableMatcher = new PartialMatcher()
+        {
+            @Override
+            public void match(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> matchedColumns)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void match(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> matchedColumns, CancellationToken cancellationToken)
+            {
+                try
+                {
+                    while (true)
+                    {
+                        cancellationToken.checkCancelled();
+                    }
+                }
+                finally
+                {
+                    stopped.countDown();
+                }
+            }
+        };
+        try
+        {
+            new TimeBoundPartialMatcher(cancellableMatcher, 1L).match(null, null, null);
+            Assert.fail("timeout expected");
+        }
+        catch (RuntimeException e)
+        {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        Assert.assertTrue(stopped.await(10L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void timedOutMatchKeepsMatchesSoFar()
+    {
+        final UnmatchedIndexMap missing = new UnmatchedIndexMap(0, -1);
+        final UnmatchedIndexMap surplus = new UnmatchedIndexMap(-1, 0);
+        PartialMatcher slowMatcher = new PartialMatcher()
+        {
+            @Override
+            public void match(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> matchedColumns)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void match(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> matchedColumns, CancellationToken cancellationToken)
+            {
+                missing.addMatch(1, surplus);
+                Assert.assertTrue(missing.match());
+                while (true)
+                {
+                    cancellationToken.checkCancelled();
+                }
+            }
+        };
+        TimeBoundPartialMatcher matcher = new TimeBoundPartialMatcher(slowMatcher, 1L, true);
+        matcher.match(null, null, null);
+        Assert.assertTrue(matcher.isTruncated());
+        Assert.assertSame(surplus, missing.getBestMutualMatch());
+        TimeBoundPartialMatcher notTimingOut = new TimeBoundPartialMatcher(new PartialMatcher()
+        {
+            @Override
+            public void match(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> matchedColumns)
+            {
+            }
+        }, Long.MAX_VALUE, true);
+        notTimingOut.match(null, null, null);
+        Assert.assertFalse(notTimingOut.isTruncated());
+    }
+
+    @Test
+    public void matchesOnSharedDaemonThreads()
+    {
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+        PartialMatcher matcher = new PartialMatcher()
+        {
+            @Override
+            public void match(MutableList<UnmatchedIndexMap> allMissingRows, MutableList<UnmatchedIndexMap> allSurplusRows, MutableList<IndexMap> matchedColumns)
+            {
+                threads.add(Thread.currentThread());
+            }
+        };
+        for (int i = 0; i < 10; i++)
+        {
+            new TimeBoundPartialMatcher(matcher, Long.MAX_VALUE).match(null, null, null);
+        }
+        Assert.assertTrue(threads.size() < 10);
+        for (Thread thread : threads)
+        {
+            Assert.assertTrue(thread.isDaemon());
+            Assert.assertTrue(thread.getName().startsWith("tablasco-partial-match-"));
+        }
     }
 
     @Test(expected = IndexOutOfBoundsException.class)
@@ -107,4 +323,19 @@ public class TimeBoundPartialMatcherTest
         new TimeBoundPartialMatcher(matcher, Long.MAX_VALUE).match(null, null, null);
         Assert.assertTrue(matched.get());
     }
+
+    private static void awaitIgnoringInterrupts(CountDownLatch latch)
+    {
+        while (latch.getCount() > 0L)
+        {
+            try
+            {
+                latch.await();
+            }
+            catch (InterruptedException ignored)
+            {
+                // ignores cancellation
+            }
+        }
+    }
 }